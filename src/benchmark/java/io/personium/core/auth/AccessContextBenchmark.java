@@ -0,0 +1,106 @@
+/**
+ * personium.io
+ * Copyright 2018 FUJITSU LIMITED
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.personium.core.auth;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import io.personium.common.auth.token.AbstractOAuth2Token;
+import io.personium.common.auth.token.CellLocalAccessToken;
+import io.personium.common.auth.token.LocalToken;
+import io.personium.common.auth.token.Role;
+import io.personium.common.auth.token.UnitLocalUnitUserToken;
+import io.personium.core.PersoniumUnitConfig;
+import io.personium.core.model.Box;
+import io.personium.core.model.Cell;
+import io.personium.core.model.impl.es.memory.MemoryCellFixture;
+
+/**
+ * Authorizationヘッダのトークン解析からAccessContextを生成するまでのベンチマーク.
+ * <p>
+ * Cellはメモリ上のデータストアから取得する. X509証明書の設定が必要なトランスセルトークンは対象外とする.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class AccessContextBenchmark {
+
+    private static final String HOST = "localhost";
+
+    private Cell cell;
+    private String baseUri;
+    private String cellLocalAuthz;
+    private String unitLocalAuthz;
+
+    /**
+     * Cellとトークンを準備する.
+     */
+    @Setup
+    public void setup() {
+        LocalToken.setKeyString(PersoniumUnitConfig.getTokenSecretKey());
+        cell = MemoryCellFixture.createCell("benchmarkcell");
+        baseUri = PersoniumUnitConfig.getBaseUrl();
+        long issuedAt = System.currentTimeMillis();
+
+        List<Role> roles = new ArrayList<Role>();
+        for (int i = 0; i < 3; i++) {
+            roles.add(new Role("role" + i, Box.DEFAULT_BOX_NAME, null, cell.getUrl()));
+        }
+        CellLocalAccessToken cellLocalToken = new CellLocalAccessToken(issuedAt,
+                CellLocalAccessToken.ACCESS_TOKEN_EXPIRES_HOUR * AbstractOAuth2Token.MILLISECS_IN_AN_HOUR,
+                cell.getUrl(), cell.getUrl() + "#account1", roles, null);
+        cellLocalAuthz = OAuth2Helper.Scheme.BEARER_CREDENTIALS_PREFIX + cellLocalToken.toTokenString();
+
+        UnitLocalUnitUserToken unitLocalToken = new UnitLocalUnitUserToken(issuedAt,
+                UnitLocalUnitUserToken.ACCESS_TOKEN_EXPIRES_HOUR * AbstractOAuth2Token.MILLISECS_IN_AN_HOUR,
+                "https://localhost/unituser/#owner", HOST);
+        unitLocalAuthz = OAuth2Helper.Scheme.BEARER_CREDENTIALS_PREFIX + unitLocalToken.toTokenString();
+    }
+
+    /**
+     * セルローカルトークンからAccessContextを生成する.
+     * @return AccessContext
+     */
+    @Benchmark
+    public AccessContext cellLocalToken() {
+        return AccessContext.create(cellLocalAuthz, null, null, null, cell, baseUri, HOST, null);
+    }
+
+    /**
+     * ユニットローカルユニットユーザトークンからAccessContextを生成する.
+     * @return AccessContext
+     */
+    @Benchmark
+    public AccessContext unitLocalUnitUserToken() {
+        return AccessContext.create(unitLocalAuthz, null, null, null, cell, baseUri, HOST, null);
+    }
+}
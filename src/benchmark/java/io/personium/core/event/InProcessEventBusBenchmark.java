@@ -0,0 +1,110 @@
+/**
+ * personium.io
+ * Copyright 2018 FUJITSU LIMITED
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.personium.core.event;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Group;
+import org.openjdk.jmh.annotations.GroupThreads;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import io.personium.core.PersoniumUnitConfig;
+
+/**
+ * Benchmark for the in-process EventBus.
+ * <p>
+ * Senders post to the event queue while one thread receives from it, as EventBus and the event processing
+ * threads do. Events are received in batches, so the throughput of "send" is the number to compare.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Group)
+public class InProcessEventBusBenchmark {
+
+    private EventSender sender;
+    private EventReceiver receiver;
+    private PersoniumEvent event;
+
+    /**
+     * Open sender and receiver.
+     */
+    @Setup
+    public void setup() {
+        if (!"inprocess".equals(PersoniumUnitConfig.getEventBusMQ())) {
+            throw new IllegalStateException("io.personium.core.eventbus.mq must be inprocess");
+        }
+        EventFactory.createEventSender();
+        sender = EventFactory.getEventSender();
+        receiver = EventFactory.createEventReceiver();
+        event = new PersoniumEvent.Builder()
+                .type("cellctl.Box.create")
+                .object("personium-localcell:/__ctl/Box('box1')")
+                .info("201")
+                .build();
+        event.setCellId("cell-id");
+        event.setTime();
+    }
+
+    /**
+     * Close sender and receiver.
+     */
+    @TearDown
+    public void tearDown() {
+        EventFactory.closeEventSender();
+        receiver.unsubscribe();
+    }
+
+    /**
+     * Send event.
+     */
+    @Benchmark
+    @Group("bus")
+    @GroupThreads(2)
+    public void send() {
+        sender.send(event);
+    }
+
+    /**
+     * Receive events.
+     * @return number of received events
+     */
+    @Benchmark
+    @Group("bus")
+    @GroupThreads(1)
+    public int receive() {
+        List<PersoniumEvent> events = receiver.receive();
+        receiver.commit();
+        if (events == null) {
+            return 0;
+        }
+        return events.size();
+    }
+}
@@ -0,0 +1,151 @@
+/**
+ * personium.io
+ * Copyright 2018 FUJITSU LIMITED
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.personium.core.event;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+/**
+ * Benchmark for event encoding.
+ * <p>
+ * Compares PersoniumEventCodec with Java serialization, which was used by ActiveMQ ObjectMessage,
+ * and Jackson JSON, which was used by the Kafka serializer.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class PersoniumEventCodecBenchmark {
+
+    private final ObjectMapper mapper = new ObjectMapper();
+    private PersoniumEvent event;
+    private byte[] binary;
+    private byte[] java;
+    private byte[] json;
+
+    /**
+     * Create event and its encoded forms.
+     * @throws IOException failed to encode
+     */
+    @Setup
+    public void setup() throws IOException {
+        event = new PersoniumEvent.Builder()
+                .schema("https://app.example/")
+                .subject("https://cell.example/#me")
+                .type("cellctl.Box.create")
+                .object("personium-localcell:/__ctl/Box('box1')")
+                .info("201")
+                .requestKey("req-1")
+                .eventId("event-1")
+                .ruleChain("1")
+                .via("https://cell.example/,https://other.example/")
+                .roles("https://cell.example/__role/__/admin,https://cell.example/__role/box/reader")
+                .build();
+        event.setCellId("cell-id");
+        event.setTime(1522576800123L);
+        binary = PersoniumEventCodec.encode(event);
+        java = javaSerialize(event);
+        json = mapper.writeValueAsBytes(event);
+    }
+
+    /**
+     * Encode with PersoniumEventCodec.
+     * @return encoded bytes
+     */
+    @Benchmark
+    public byte[] encodeBinary() {
+        return PersoniumEventCodec.encode(event);
+    }
+
+    /**
+     * Decode with PersoniumEventCodec.
+     * @return decoded event
+     */
+    @Benchmark
+    public PersoniumEvent decodeBinary() {
+        return PersoniumEventCodec.decode(binary);
+    }
+
+    /**
+     * Encode with Java serialization.
+     * @return encoded bytes
+     * @throws IOException failed to encode
+     */
+    @Benchmark
+    public byte[] encodeJava() throws IOException {
+        return javaSerialize(event);
+    }
+
+    /**
+     * Decode with Java serialization.
+     * @return decoded event
+     * @throws Exception failed to decode
+     */
+    @Benchmark
+    public PersoniumEvent decodeJava() throws Exception {
+        try (ObjectInputStream ois = new ObjectInputStream(new ByteArrayInputStream(java))) {
+            return (PersoniumEvent) ois.readObject();
+        }
+    }
+
+    /**
+     * Encode with Jackson.
+     * @return encoded bytes
+     * @throws IOException failed to encode
+     */
+    @Benchmark
+    public byte[] encodeJson() throws IOException {
+        return mapper.writeValueAsBytes(event);
+    }
+
+    /**
+     * Decode with Jackson.
+     * @return decoded event
+     * @throws IOException failed to decode
+     */
+    @Benchmark
+    public PersoniumEvent decodeJson() throws IOException {
+        return mapper.readValue(json, PersoniumEvent.class);
+    }
+
+    private static byte[] javaSerialize(PersoniumEvent event) throws IOException {
+        ByteArrayOutputStream baos = new ByteArrayOutputStream();
+        try (ObjectOutputStream oos = new ObjectOutputStream(baos)) {
+            oos.writeObject(event);
+        }
+        return baos.toByteArray();
+    }
+}
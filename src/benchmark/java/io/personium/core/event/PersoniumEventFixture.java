@@ -0,0 +1,37 @@
+/**
+ * personium.io
+ * Copyright 2018 FUJITSU LIMITED
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.personium.core.event;
+
+/**
+ * Builds events for the benchmarks of other packages.
+ * The cell id of an event is set within this package only, by EventBus when the event is posted.
+ */
+public final class PersoniumEventFixture {
+
+    private PersoniumEventFixture() {
+    }
+
+    /**
+     * Set cell id to the builder of an event.
+     * @param builder builder of the event
+     * @param cellId id of cell that event belongs to
+     * @return a reference to the builder
+     */
+    public static PersoniumEvent.Builder cellId(PersoniumEvent.Builder builder, String cellId) {
+        return builder.cellId(cellId);
+    }
+}
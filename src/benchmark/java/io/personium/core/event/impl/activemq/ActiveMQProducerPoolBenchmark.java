@@ -0,0 +1,119 @@
+/**
+ * personium.io
+ * Copyright 2018 FUJITSU LIMITED
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.personium.core.event.impl.activemq;
+
+import java.util.concurrent.TimeUnit;
+
+import javax.jms.Connection;
+import javax.jms.DeliveryMode;
+import javax.jms.JMSException;
+import javax.jms.MessageProducer;
+import javax.jms.Session;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import io.personium.core.PersoniumUnitConfig;
+import io.personium.core.event.PersoniumEvent;
+
+/**
+ * Benchmark for sending events to ActiveMQ.
+ * <p>
+ * Compares ActiveMQProducerPool with creating a session and a producer for each event as older versions did.
+ * Both send the same message to a topic without subscribers on the embedded broker
+ * configured by io.personium.core.eventbus.activemq.brokerUrl, so the difference is the cost of the session.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@Threads(4)
+@State(Scope.Benchmark)
+public class ActiveMQProducerPoolBenchmark {
+
+    private static final String TOPIC = "benchmark_topic";
+
+    private Connection connection;
+    private ActiveMQProducerPool pool;
+    private PersoniumEvent event;
+
+    /**
+     * Start connection to the embedded broker.
+     * @throws JMSException failed to connect
+     */
+    @Setup
+    public void setup() throws JMSException {
+        if (!PersoniumUnitConfig.getEventBusActiveMQBrokerUrl().startsWith("vm:")) {
+            throw new IllegalStateException("io.personium.core.eventbus.activemq.brokerUrl must be vm://");
+        }
+        connection = ActiveMQProducerPool.createConnectionFactory().createConnection();
+        connection.start();
+        pool = new ActiveMQProducerPool(connection, TOPIC, true,
+                PersoniumUnitConfig.getEventBusActiveMQSessionPoolSize());
+        event = new PersoniumEvent.Builder()
+                .type("cellctl.Box.create")
+                .object("personium-localcell:/__ctl/Box('box1')")
+                .info("201")
+                .build();
+    }
+
+    /**
+     * Close connection.
+     * @throws JMSException failed to close
+     */
+    @TearDown
+    public void tearDown() throws JMSException {
+        pool.close();
+        connection.close();
+    }
+
+    /**
+     * Send with a pooled session.
+     * @throws JMSException failed to send
+     */
+    @Benchmark
+    public void pooled() throws JMSException {
+        pool.send(event);
+    }
+
+    /**
+     * Send with a session created for the event.
+     * @throws JMSException failed to send
+     */
+    @Benchmark
+    public void sessionPerEvent() throws JMSException {
+        Session session = connection.createSession(false, Session.AUTO_ACKNOWLEDGE);
+        try {
+            MessageProducer producer = session.createProducer(session.createTopic(TOPIC));
+            producer.setDeliveryMode(DeliveryMode.NON_PERSISTENT);
+            producer.send(ActiveMQMessageConverter.toMessage(session, event));
+        } finally {
+            session.close();
+        }
+    }
+}
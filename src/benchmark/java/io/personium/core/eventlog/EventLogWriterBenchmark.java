@@ -0,0 +1,109 @@
+/**
+ * personium.io
+ * Copyright 2018 FUJITSU LIMITED
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.personium.core.eventlog;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * イベントログ書き込みのベンチマーク.
+ * <p>
+ * 一時ディレクトリのカレントログに追記する. 書き込み間隔が0の場合は同期的に書き込む.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@Threads(4)
+@State(Scope.Benchmark)
+public class EventLogWriterBenchmark {
+
+    private static final String RECORD = "2018-04-01T10:00:00.123Z,[INFO ],\"req-1\",\"false\",\"schema\","
+            + "\"subject\",\"cellctl.Box.create\",\"personium-localcell:/__ctl/Box('box1')\",\"201\"";
+    private static final int MAX_OPEN_FILES = 256;
+    private static final long MAX_FILE_SIZE = 64L * 1024L * 1024L;
+    private static final int MAX_ARCHIVES = 2;
+    private static final long MAX_PENDING_BYTES = 8L * 1024L * 1024L;
+
+    /** 書き込み間隔(ms). */
+    @Param({ "0", "100" })
+    public long interval;
+
+    private File dir;
+
+    /**
+     * 書き込みを開始する.
+     * @throws IOException 一時ディレクトリを作成できない
+     */
+    @Setup
+    public void setup() throws IOException {
+        dir = Files.createTempDirectory("eventlog-benchmark").toFile();
+        EventLogWriter.stop();
+        EventLogWriter.start(interval, MAX_OPEN_FILES, MAX_FILE_SIZE, MAX_ARCHIVES, MAX_PENDING_BYTES);
+    }
+
+    /**
+     * 書き込みを停止し、一時ディレクトリを削除する.
+     * @throws IOException 一時ディレクトリを削除できない
+     */
+    @TearDown
+    public void tearDown() throws IOException {
+        EventLogWriter.stop();
+        Files.walkFileTree(dir.toPath(), new SimpleFileVisitor<Path>() {
+            @Override
+            public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) throws IOException {
+                Files.delete(file);
+                return FileVisitResult.CONTINUE;
+            }
+
+            @Override
+            public FileVisitResult postVisitDirectory(Path d, IOException e) throws IOException {
+                Files.delete(d);
+                return FileVisitResult.CONTINUE;
+            }
+        });
+    }
+
+    /**
+     * 1レコードを追加する.
+     */
+    @Benchmark
+    public void append() {
+        EventLogWriter.append(dir, RECORD);
+    }
+}
@@ -0,0 +1,82 @@
+/**
+ * personium.io
+ * Copyright 2018 FUJITSU LIMITED
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.personium.core.model.impl.es.cache;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import io.personium.core.PersoniumUnitConfig;
+import io.personium.core.model.Box;
+import io.personium.core.model.Cell;
+import io.personium.core.model.impl.es.memory.MemoryCellFixture;
+
+/**
+ * Boxキャッシュの登録・取得のベンチマーク.
+ * <p>
+ * キャッシュクライアントには{@link SerializingCacheClient}を使用する.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class BoxCacheBenchmark {
+
+    private static final String BOX_NAME = "benchmarkbox";
+
+    private Box box;
+
+    /**
+     * Boxをキャッシュする.
+     */
+    @Setup
+    public void setup() {
+        PersoniumUnitConfig.set(PersoniumUnitConfig.Cache.BOX_CACHE_ENABLED, String.valueOf(true));
+        BoxCache.mcdClient = new SerializingCacheClient();
+        Cell cell = MemoryCellFixture.createCell("benchmarkcell");
+        box = new Box(cell, BOX_NAME, "https://localhost/appcell/", "benchmark-box-id", System.currentTimeMillis());
+        BoxCache.cache(box);
+    }
+
+    /**
+     * キャッシュからBoxを取得する.
+     * @return Box
+     */
+    @Benchmark
+    public Box get() {
+        return BoxCache.get(BOX_NAME, box.getCell());
+    }
+
+    /**
+     * Boxをキャッシュする.
+     */
+    @Benchmark
+    public void cache() {
+        BoxCache.cache(box);
+    }
+}
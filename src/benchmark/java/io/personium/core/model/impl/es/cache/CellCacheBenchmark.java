@@ -0,0 +1,78 @@
+/**
+ * personium.io
+ * Copyright 2018 FUJITSU LIMITED
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.personium.core.model.impl.es.cache;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import io.personium.core.PersoniumUnitConfig;
+import io.personium.core.model.Cell;
+import io.personium.core.model.ModelFactory;
+import io.personium.core.model.impl.es.memory.MemoryCellFixture;
+
+/**
+ * Cell名によるCell取得のベンチマーク.
+ * <p>
+ * キャッシュ有効時は{@link SerializingCacheClient}から、無効時はメモリ上のデータストアの検索で取得する.
+ * キャッシュ無効時の結果にはElasticsearchへの通信時間は含まれない.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class CellCacheBenchmark {
+
+    private static final String CELL_NAME = "benchmarkcell";
+
+    /** Cellキャッシュを有効にするかどうか. */
+    @Param({ "true", "false" })
+    public boolean cacheEnabled;
+
+    /**
+     * Cellを登録し、キャッシュを設定する.
+     */
+    @Setup
+    public void setup() {
+        PersoniumUnitConfig.set(PersoniumUnitConfig.Cache.CELL_CACHE_ENABLED, String.valueOf(cacheEnabled));
+        CellCache.mcdClient = new SerializingCacheClient();
+        MemoryCellFixture.createCell(CELL_NAME);
+        // 初回の取得でキャッシュされる
+        ModelFactory.cell(CELL_NAME);
+    }
+
+    /**
+     * Cell名でCellを取得する.
+     * @return Cell
+     */
+    @Benchmark
+    public Cell findCell() {
+        return ModelFactory.cell(CELL_NAME);
+    }
+}
@@ -0,0 +1,69 @@
+/**
+ * personium.io
+ * Copyright 2018 FUJITSU LIMITED
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.personium.core.model.impl.es.cache;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import io.personium.core.utils.CacheClient;
+import io.personium.core.utils.MemcachedClient.MemcachedClientException;
+
+/**
+ * memcachedの代わりにプロセス内で値を保持するキャッシュクライアント.
+ * <p>
+ * memcachedクライアントと同様に、値はJavaシリアライズしたバイト列として保持し、取得のたびに復元する.
+ * 有効期限は扱わない.
+ */
+class SerializingCacheClient implements CacheClient {
+
+    private final ConcurrentMap<String, byte[]> values = new ConcurrentHashMap<String, byte[]>();
+
+    @Override
+    public <T> T get(String key, Class<T> clazz) {
+        byte[] bytes = values.get(key);
+        if (bytes == null) {
+            return null;
+        }
+        try (ObjectInputStream in = new ObjectInputStream(new ByteArrayInputStream(bytes))) {
+            return clazz.cast(in.readObject());
+        } catch (IOException | ClassNotFoundException e) {
+            throw new MemcachedClientException(e);
+        }
+    }
+
+    @Override
+    public Boolean put(String key, int expiresIn, Object object) {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (ObjectOutputStream out = new ObjectOutputStream(bytes)) {
+            out.writeObject(object);
+        } catch (IOException e) {
+            throw new MemcachedClientException(e);
+        }
+        values.put(key, bytes.toByteArray());
+        return true;
+    }
+
+    @Override
+    public void delete(String key) {
+        values.remove(key);
+    }
+}
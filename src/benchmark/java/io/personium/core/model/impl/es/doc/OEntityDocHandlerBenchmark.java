@@ -0,0 +1,106 @@
+/**
+ * personium.io
+ * Copyright 2018 FUJITSU LIMITED
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.personium.core.model.impl.es.doc;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.odata4j.edm.EdmEntitySet;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import io.personium.common.es.EsType;
+import io.personium.common.es.response.PersoniumGetResponse;
+import io.personium.core.model.ctl.Account;
+import io.personium.core.model.ctl.CtlSchema;
+import io.personium.core.model.impl.es.memory.MemoryDataStore;
+import io.personium.core.odata.OEntityWrapper;
+
+/**
+ * Elasticsearchのドキュメントから OEntity への変換のベンチマーク.
+ * <p>
+ * ドキュメントはメモリ上のデータストアから取得する.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class OEntityDocHandlerBenchmark {
+
+    private static final String DOC_ID = "benchmark-account";
+
+    private EdmEntitySet entitySet;
+    private PersoniumGetResponse response;
+    private OEntityDocHandler handler;
+
+    /**
+     * Accountのドキュメントを登録する.
+     */
+    @Setup
+    public void setup() {
+        entitySet = CtlSchema.getEdmDataServicesForCellCtl().build().findEdmEntitySet(Account.EDM_TYPE_NAME);
+
+        long now = System.currentTimeMillis();
+        Map<String, Object> staticFields = new HashMap<String, Object>();
+        staticFields.put("Name", "account1");
+        staticFields.put("Type", "basic");
+        Map<String, Object> hiddenFields = new HashMap<String, Object>();
+        hiddenFields.put("HashedCredential", "hashedCredential");
+        Map<String, Object> dynamicFields = new HashMap<String, Object>();
+        dynamicFields.put("dynamicKey", "dynamicValue");
+        Map<String, Object> source = new HashMap<String, Object>();
+        source.put("s", staticFields);
+        source.put("h", hiddenFields);
+        source.put("d", dynamicFields);
+        source.put("p", now);
+        source.put("u", now);
+
+        EsType type = MemoryDataStore.type("benchmark_ad", Account.EDM_TYPE_NAME);
+        type.create(DOC_ID, source);
+        response = type.get(DOC_ID);
+        handler = new OEntityDocHandler(response);
+    }
+
+    /**
+     * 取得済みのドキュメントから OEntity を作成する.
+     * @return OEntity
+     */
+    @Benchmark
+    public OEntityWrapper createOEntity() {
+        return handler.createOEntity(entitySet);
+    }
+
+    /**
+     * 取得結果からドキュメントハンドラを作成し、OEntity を作成する.
+     * @return OEntity
+     */
+    @Benchmark
+    public OEntityWrapper fromGetResponse() {
+        return new OEntityDocHandler(response).createOEntity(entitySet);
+    }
+}
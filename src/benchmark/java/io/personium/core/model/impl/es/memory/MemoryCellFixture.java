@@ -0,0 +1,60 @@
+/**
+ * personium.io
+ * Copyright 2018 FUJITSU LIMITED
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.personium.core.model.impl.es.memory;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import io.personium.common.es.util.PersoniumUUID;
+import io.personium.core.model.Cell;
+import io.personium.core.model.ModelFactory;
+import io.personium.core.model.impl.es.EsModel;
+import io.personium.core.model.impl.es.accessor.CellAccessor;
+
+/**
+ * ベンチマーク用にメモリ上のデータストアへCellを登録する.
+ */
+public final class MemoryCellFixture {
+
+    private MemoryCellFixture() {
+    }
+
+    /**
+     * Cellのドキュメントを登録し、登録したCellを返却する.
+     * @param cellName Cell名
+     * @return Cell
+     */
+    public static Cell createCell(String cellName) {
+        if (!MemoryDataStore.isEnabled()) {
+            throw new IllegalStateException("io.personium.core.es.store must be " + MemoryDataStore.STORE_MEMORY);
+        }
+        long now = System.currentTimeMillis();
+        Map<String, Object> staticFields = new HashMap<String, Object>();
+        staticFields.put("Name", cellName);
+        Map<String, Object> hiddenFields = new HashMap<String, Object>();
+        hiddenFields.put("Owner", null);
+        Map<String, Object> source = new HashMap<String, Object>();
+        source.put("s", staticFields);
+        source.put("h", hiddenFields);
+        source.put("p", now);
+        source.put("u", now);
+
+        String id = PersoniumUUID.randomUUID();
+        ((CellAccessor) EsModel.cell()).create(id, source);
+        return ModelFactory.cell(id, null);
+    }
+}
@@ -0,0 +1,110 @@
+/**
+ * personium.io
+ * Copyright 2018 FUJITSU LIMITED
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.personium.core.model.impl.es.odata;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.core4j.Enumerable;
+import org.odata4j.edm.EdmEntityType;
+import org.odata4j.edm.EdmProperty;
+import org.odata4j.edm.EdmSimpleType;
+import org.odata4j.expression.BoolCommonExpression;
+import org.odata4j.expression.OrderByExpression;
+import org.odata4j.producer.QueryInfo;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import io.personium.core.odata.PersoniumOptionsQueryParser;
+
+/**
+ * EsQueryHandlerによる$filter/$orderbyからElasticsearchクエリへの変換のベンチマーク.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class EsQueryHandlerBenchmark {
+
+    private static final String ORDER_BY = "itemKey3 desc,itemKey";
+
+    /** $filterの値. */
+    @Param({
+        "itemKey eq 'itemValue'",
+        "itemKey eq 'itemValue' and (itemKey2 eq 'itemValue2' or itemKey3 ge 10)",
+        "substringof('itemValue', itemKey) and itemKey3 lt 100 and itemKey2 ne null" })
+    public String filter;
+
+    private EdmEntityType entityType;
+    private BoolCommonExpression filterExp;
+    private List<OrderByExpression> orderBy;
+
+    /**
+     * スキーマと解析済みのクエリを準備する.
+     */
+    @Setup
+    public void setup() {
+        entityType = EdmEntityType.newBuilder()
+                .setNamespace("namespace")
+                .setName("sample")
+                .addProperties(Enumerable.create(
+                        EdmProperty.newBuilder("itemKey").setType(EdmSimpleType.STRING),
+                        EdmProperty.newBuilder("itemKey2").setType(EdmSimpleType.STRING),
+                        EdmProperty.newBuilder("itemKey3").setType(EdmSimpleType.INT32)).toList())
+                .addKeys("__id").build();
+        filterExp = PersoniumOptionsQueryParser.parseFilter(filter);
+        orderBy = PersoniumOptionsQueryParser.parseOrderBy(ORDER_BY);
+    }
+
+    /**
+     * 解析済みのクエリからElasticsearchクエリを組み立てる.
+     * @return Elasticsearchクエリ
+     */
+    @Benchmark
+    public Map<String, Object> build() {
+        return toSource(filterExp, orderBy);
+    }
+
+    /**
+     * クエリ文字列の解析からElasticsearchクエリの組み立てまでを行う.
+     * @return Elasticsearchクエリ
+     */
+    @Benchmark
+    public Map<String, Object> parseAndBuild() {
+        return toSource(PersoniumOptionsQueryParser.parseFilter(filter),
+                PersoniumOptionsQueryParser.parseOrderBy(ORDER_BY));
+    }
+
+    private Map<String, Object> toSource(BoolCommonExpression filterExpression, List<OrderByExpression> orderByList) {
+        QueryInfo queryInfo = new QueryInfo(null, 100, 0, filterExpression, orderByList, null, null, null, null);
+        EsQueryHandler handler = new EsQueryHandler(entityType);
+        handler.initialize(queryInfo, null);
+        return handler.getSource();
+    }
+}
@@ -0,0 +1,90 @@
+/**
+ * personium.io
+ * Copyright 2018 FUJITSU LIMITED
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.personium.core.model.lock;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * ロックの取得・解放と参照カウントの増減のベンチマーク.
+ * <p>
+ * ロック種別はベンチマーク用の設定によりInProcessとなる. スレッドごとに異なるノードをロックするため、
+ * ロック待ちのリトライは発生しない.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@Threads(4)
+public class LockManagerBenchmark {
+
+    private static final String CELL_ID = "benchmark-cell";
+    private static final String BOX_ID = "benchmark-box";
+    private static final AtomicInteger NODE_SEQUENCE = new AtomicInteger();
+
+    /**
+     * スレッドごとのロック対象.
+     */
+    @State(Scope.Thread)
+    public static class Node {
+        private String nodeId;
+
+        /**
+         * ロック種別を確認し、ノードIDを割り当てる.
+         */
+        @Setup
+        public void setup() {
+            if (!LockManager.TYPE_IN_PROCESS.equals(LockManager.getLockType())) {
+                throw new IllegalStateException("io.personium.core.lock.type must be " + LockManager.TYPE_IN_PROCESS);
+            }
+            nodeId = "benchmark-node-" + NODE_SEQUENCE.incrementAndGet();
+        }
+    }
+
+    /**
+     * ロックを取得して解放する.
+     * @param node ロック対象
+     */
+    @Benchmark
+    public void acquireRelease(Node node) {
+        Lock lock = LockManager.getLock(Lock.CATEGORY_ODATA, CELL_ID, BOX_ID, node.nodeId);
+        lock.release();
+    }
+
+    /**
+     * Cellの参照カウントを増減する. 全スレッドが同じCellを参照する.
+     * @return 参照カウント
+     */
+    @Benchmark
+    public long referenceCount() {
+        CellLockManager.incrementReferenceCount(CELL_ID);
+        return CellLockManager.decrementReferenceCount(CELL_ID);
+    }
+}
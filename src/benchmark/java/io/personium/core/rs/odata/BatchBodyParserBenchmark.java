@@ -0,0 +1,98 @@
+/**
+ * personium.io
+ * Copyright 2018 FUJITSU LIMITED
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.personium.core.rs.odata;
+
+import java.io.StringReader;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * $batchのリクエストボディ解析のベンチマーク.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class BatchBodyParserBenchmark {
+
+    private static final String BOUNDARY = "batch_XAmu9BiJJLBa20sRWIq74jp2UlNAVueztqu";
+    private static final String CHANGESET = "changeset_cLzcDEEVPwvvoxS3yJTFTpRauSK_FAQ6mQtyo0aby93-SDP3lAs2A19a2uBb";
+    private static final String REQUEST_URI = "https://localhost/cell/box/col/$batch";
+
+    /** リクエスト数. 5件ごとに1件を取得、残りを登録とする. */
+    @Param({ "10", "100", "1000" })
+    public int requests;
+
+    private String body;
+
+    /**
+     * リクエストボディを作成する.
+     */
+    @Setup
+    public void setup() {
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < requests; i++) {
+            sb.append("--").append(BOUNDARY).append("\n");
+            if (i % 5 == 0) {
+                sb.append("Content-Type: application/http\n")
+                        .append("Content-Transfer-Encoding:binary\n\n")
+                        .append("GET Supplier('id").append(i).append("')\n")
+                        .append("Host: host\n\n");
+            } else {
+                String json = "{\"__id\":\"id" + i + "\",\"Name\":\"name" + i + "\"}";
+                sb.append("Content-Type: multipart/mixed; boundary=").append(CHANGESET).append("\n")
+                        .append("Content-Length: 995\n\n")
+                        .append("--").append(CHANGESET).append("\n")
+                        .append("Content-Type: application/http\n")
+                        .append("Content-Transfer-Encoding: binary\n\n")
+                        .append("POST Supplier HTTP/1.1\n")
+                        .append("Host:\n")
+                        .append("Connection: close\n")
+                        .append("Accept: application/json\n")
+                        .append("Content-Type: application/json\n")
+                        .append("Content-Length: ").append(json.length()).append("\n\n")
+                        .append(json).append("\n\n")
+                        .append("--").append(CHANGESET).append("--\n\n");
+            }
+        }
+        sb.append("--").append(BOUNDARY).append("--");
+        body = sb.toString();
+    }
+
+    /**
+     * リクエストボディを解析する.
+     * @return 解析結果
+     */
+    @Benchmark
+    public List<BatchBodyPart> parse() {
+        return new BatchBodyParser().parse(BOUNDARY, new StringReader(body), REQUEST_URI);
+    }
+}
@@ -0,0 +1,103 @@
+/**
+ * personium.io
+ * Copyright 2018 FUJITSU LIMITED
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.personium.core.rule;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import io.personium.core.event.PersoniumEvent;
+import io.personium.core.event.PersoniumEventFixture;
+import io.personium.core.model.Cell;
+import io.personium.core.model.impl.es.memory.MemoryCellFixture;
+
+/**
+ * Benchmark for RuleManager.judge().
+ * <p>
+ * The cell is loaded from the in-memory data store and locks are in-process. Rules are registered directly,
+ * without the rule event subscriber or the timer, and none of them matches the event, so that no action runs.
+ * Half of the rules differ in type and the other half in object, so both early and late mismatches are measured.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class RuleManagerBenchmark {
+
+    /** Number of rules in the cell. */
+    @Param({ "1", "10", "100" })
+    public int rules;
+
+    private RuleManager ruleManager;
+    private String cellId;
+
+    /**
+     * Create RuleManager and register rules.
+     */
+    @Setup
+    public void setup() {
+        Cell cell = MemoryCellFixture.createCell("benchmarkcell");
+        cellId = cell.getId();
+
+        // Avoid getInstance() that loads rules from the data store and starts subscriber.
+        ruleManager = new RuleManager();
+
+        Map<String, RuleManager.RuleInfo> ruleMap = new HashMap<>();
+        for (int i = 0; i < rules; i++) {
+            RuleManager.RuleInfo rule = ruleManager.new RuleInfo();
+            rule.name = "rule" + i;
+            rule.external = false;
+            rule.action = "log";
+            if (i % 2 == 0) {
+                rule.type = "boxctl.Rule" + i;
+            } else {
+                rule.type = "cellctl.Box";
+                rule.object = "personium-localcell:/__ctl/Box('box" + i + "')";
+            }
+            ruleMap.put(rule.name, rule);
+        }
+        ruleManager.setRules(cellId, ruleMap);
+    }
+
+    /**
+     * Judge an event.
+     * judge() converts the event, so a new event is created each time.
+     */
+    @Benchmark
+    public void judge() {
+        PersoniumEvent.Builder builder = new PersoniumEvent.Builder()
+                .type("cellctl.Box.create")
+                .object("personium-localcell:/__ctl/Box('benchmark')")
+                .info("201")
+                .eventId("benchmark-event");
+        ruleManager.judge(PersoniumEventFixture.cellId(builder, cellId).build());
+    }
+}
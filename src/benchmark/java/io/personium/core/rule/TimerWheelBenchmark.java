@@ -0,0 +1,93 @@
+/**
+ * personium.io
+ * Copyright 2018 FUJITSU LIMITED
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.personium.core.rule;
+
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Benchmark for TimerWheel.advance().
+ * <p>
+ * The wheel holds timers aligned to minutes within a day, as timer rules are. Each invocation advances the wheel
+ * by one tick and adds the expired timers again at a random minute within a day, so the number of timers stays
+ * constant and the cost of the ticks where a minute or an hour passes is included in the average.
+ * Run with "-prof gc" to see the allocation per tick.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class TimerWheelBenchmark {
+
+    private static final long MINUTE = 60000L;
+    private static final int MINUTES_PER_DAY = 1440;
+
+    /** Number of timers in the wheel. */
+    @Param({ "10000", "300000" })
+    public int timers;
+
+    private TimerWheel<Object> wheel;
+    private Random random;
+    private long now;
+
+    /**
+     * Create wheel and add timers.
+     */
+    @Setup
+    public void setup() {
+        wheel = new TimerWheel<>(0L);
+        random = new Random(1L);
+        now = 0L;
+        Object item = new Object();
+        for (int i = 0; i < timers; i++) {
+            wheel.add(nextMinute(), item);
+        }
+    }
+
+    private long nextMinute() {
+        return (now / MINUTE + random.nextInt(MINUTES_PER_DAY) + 1) * MINUTE;
+    }
+
+    /**
+     * Advance the wheel by one tick.
+     * @return number of timers expired
+     */
+    @Benchmark
+    public int advance() {
+        now += TimerWheel.DEFAULT_TICK;
+        List<Object> expired = wheel.advance(now);
+        for (Object item : expired) {
+            wheel.add(nextMinute(), item);
+        }
+        return expired.size();
+    }
+}
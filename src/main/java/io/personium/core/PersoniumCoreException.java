@@ -474,6 +474,15 @@ public class PersoniumCoreException extends RuntimeException {
          * {0} : File name
          */
         public static final PersoniumCoreException FILE_ALREADY_EXISTS = create("PR409-DV-0002");
+        /**
+         * 分割アップロードのContent-Rangeの開始位置が受信済みのサイズと一致しない時.
+         * {0}:受信済みのサイズ
+         */
+        public static final PersoniumCoreException UPLOAD_OFFSET_NOT_MATCH = create("PR409-DV-0003");
+        /**
+         * 同じファイルへの分割アップロードが処理中の時.
+         */
+        public static final PersoniumCoreException UPLOAD_IN_PROGRESS = create("PR409-DV-0004");
         /**
          * 該当リソースのEtagがマッチしない.
          */
@@ -20,7 +20,11 @@ import javax.servlet.annotation.WebListener;
 import javax.servlet.ServletContextListener;
 import javax.servlet.ServletContextEvent;
 
+import io.personium.core.auth.LastAuthenticatedUpdater;
 import io.personium.core.event.EventBus;
+import io.personium.core.eventlog.EventLogWriter;
+import io.personium.core.model.impl.es.CellPurgeQueue;
+import io.personium.core.model.impl.fs.DavContentStore;
 import io.personium.core.rs.PersoniumCoreApplication;
 import io.personium.core.ws.WebSocketService;
 
@@ -39,10 +43,34 @@ public class PersoniumCoreListener implements ServletContextListener {
 
         // Start WebSocketService.
         WebSocketService.start();
+
+        // Start write-behind of Account LastAuthenticated.
+        LastAuthenticatedUpdater.start();
+
+        // Start asynchronous writing of event log.
+        EventLogWriter.start();
+
+        // Start purge of deleted cells.
+        CellPurgeQueue.start();
+
+        // Start gc of WebDAV content store.
+        DavContentStore.start();
     }
 
     @Override
     public void contextDestroyed(ServletContextEvent sce) {
+        // Stop gc of WebDAV content store.
+        DavContentStore.stop();
+
+        // Stop purge of deleted cells. Unfinished purge is resumed on the next start.
+        CellPurgeQueue.stop();
+
+        // Write buffered event log.
+        EventLogWriter.stop();
+
+        // Write buffered Account LastAuthenticated.
+        LastAuthenticatedUpdater.stop();
+
         // Stop WebSocket service.
         WebSocketService.stop();
 
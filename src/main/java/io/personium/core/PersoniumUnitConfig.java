@@ -126,6 +126,14 @@ public class PersoniumUnitConfig {
     public static final class Account {
         /** パスワード認証成功時に、Accountの最終ログイン時刻を更新するか否か(true:更新する(デフォルト) false:更新しない). */
         public static final String ACCOUNT_LAST_AUTHENTICATED_ENABLED = KEY_ROOT + "account.lastauthenticated.enabled";
+
+        /** 最終ログイン時刻をまとめて書き込む間隔(秒). 0以下の場合は認証のたびに同期で更新する. */
+        public static final String ACCOUNT_LAST_AUTHENTICATED_FLUSH_INTERVAL = KEY_ROOT
+                + "account.lastauthenticated.flushIntervalInSec";
+
+        /** 書き込み待ちの最終ログイン時刻がこの件数に達した場合は、間隔を待たずに書き込む. */
+        public static final String ACCOUNT_LAST_AUTHENTICATED_FLUSH_THRESHOLD = KEY_ROOT
+                + "account.lastauthenticated.flushThreshold";
     }
 
     /**
@@ -137,6 +145,9 @@ public class PersoniumUnitConfig {
 
         /** コレクションの階層の深さの最大数. */
         public static final String COLLECTION_DEPTH_MAX_NUM = KEY_ROOT + "dav.depth.maxnum";
+
+        /** 分割アップロード中のファイルの有効期間(秒). */
+        public static final String UPLOAD_EXPIRE = KEY_ROOT + "dav.upload.expire";
     }
 
     /**
@@ -206,6 +217,9 @@ public class PersoniumUnitConfig {
 
         /** エラー発生時のリトライ間隔. */
         public static final String RETRY_INTERVAL = KEY_ROOT + "es.retryInterval";
+
+        /** OData/WebDAVのデータストア(es: ElasticSearch, memory: プロセス内のメモリ). */
+        public static final String STORE = KEY_ROOT + "es.store";
     }
 
     /**
@@ -231,6 +245,12 @@ public class PersoniumUnitConfig {
     public static final class BlobStore {
         /** Elastic Search を使用する際、blobデータを格納するルート(URL, PATH)設定のプロパティキー. */
         public static final String ROOT = KEY_ROOT + "blobStore.root";
+
+        /** WebDAVファイルの内容をハッシュ値で重複排除して格納するか否か. */
+        public static final String CONTENT_ADDRESSED_ENABLED = KEY_ROOT + "blobStore.contentAddressed.enabled";
+
+        /** 参照されなくなった内容を削除する間隔(秒). 0以下の場合は実行しない. */
+        public static final String CONTENT_ADDRESSED_GC_INTERVAL = KEY_ROOT + "blobStore.contentAddressed.gcInterval";
     }
 
     /**
@@ -258,6 +278,16 @@ public class PersoniumUnitConfig {
     public static final class Event {
         /** 最新のイベントログファイルの格納ディレクトリ. */
         public static final String EVENT_LOG_CURRENT_DIR = KEY_ROOT + "event.log.current.dir";
+        /** イベントログの書き込み間隔(ms). 0以下の場合は同期的に書き込む. */
+        public static final String EVENT_LOG_FLUSH_INTERVAL = KEY_ROOT + "event.log.flush.interval";
+        /** 開いたままにするイベントログファイルの最大数. */
+        public static final String EVENT_LOG_MAX_OPEN_FILES = KEY_ROOT + "event.log.maxOpenFiles";
+        /** イベントログをローテートするサイズ(byte). */
+        public static final String EVENT_LOG_MAX_FILE_SIZE = KEY_ROOT + "event.log.maxFileSize";
+        /** 保持するイベントログのアーカイブの世代数. */
+        public static final String EVENT_LOG_MAX_ARCHIVES = KEY_ROOT + "event.log.maxArchives";
+        /** 書き込み待ちのイベントログの最大サイズ(byte). */
+        public static final String EVENT_LOG_MAX_PENDING_BYTES = KEY_ROOT + "event.log.maxPendingBytes";
         /** Maximum event hop count. */
         public static final String EVENT_HOP_MAXNUM = KEY_ROOT + "event.hop.maxnum";
     }
@@ -336,6 +366,12 @@ public class PersoniumUnitConfig {
         /** ユーザデータの一括登録件数のプロパティキー. */
         public static final String BAR_USERDATA_BULK_SIZE = KEY_ROOT + "bar.userdata.bulkSize";
 
+        /** barインストール時にユーザデータの一括登録を待たせる件数のプロパティキー. */
+        public static final String BAR_INSTALL_BULK_QUEUE_SIZE = KEY_ROOT + "bar.install.bulkQueueSize";
+
+        /** Whether bar export writes the zip directly to the response without a temporary file. */
+        public static final String BAR_EXPORT_STREAMING_ENABLED = KEY_ROOT + "bar.export.streaming.enabled";
+
         /** Temporary storage directory for bar files. */
         public static final String BAR_TMP_DIR = KEY_ROOT + "bar.tmp.dir";
 
@@ -349,21 +385,75 @@ public class PersoniumUnitConfig {
     public static final class CellSnapshot {
         /** Root directory path to store the cell export file. */
         public static final String ROOT = KEY_ROOT + "cellSnapshot.root";
+        /** Number of threads that send bulk requests of OData at cell import. */
+        public static final String IMPORT_BULK_THREAD_NUM = KEY_ROOT + "cellSnapshot.import.bulkThreadNum";
+        /** Number of threads that extract WebDAV files at cell import. */
+        public static final String IMPORT_DAV_THREAD_NUM = KEY_ROOT + "cellSnapshot.import.davThreadNum";
+    }
+
+    /**
+     * cell purge configurations.
+     */
+    public static final class CellPurge {
+        /** Root directory path to store the purge job of deleted cells. */
+        public static final String ROOT = KEY_ROOT + "cellPurge.root";
+        /** Number of purge worker threads. */
+        public static final String THREAD_NUM = KEY_ROOT + "cellPurge.threadNum";
+        /** Max number of files and entities deleted per second. */
+        public static final String OPERATIONS_PER_SECOND = KEY_ROOT + "cellPurge.operationsPerSecond";
+        /** Number of entities deleted in one bulk request. */
+        public static final String ES_BATCH_SIZE = KEY_ROOT + "cellPurge.esBatchSize";
+        /** Interval (seconds) to look for released and stale purge jobs. */
+        public static final String SCAN_INTERVAL = KEY_ROOT + "cellPurge.scanIntervalInSec";
+        /** Delay (seconds) before the first retry of a failed purge job. Doubled on every failure. */
+        public static final String RETRY_INTERVAL = KEY_ROOT + "cellPurge.retryIntervalInSec";
+        /** Time (seconds) after which a running purge job without heartbeat is taken over by another node. */
+        public static final String STALE_TIMEOUT = KEY_ROOT + "cellPurge.staleTimeoutInSec";
     }
 
     /**
      * EventBus configurations.
      */
     public static final class EventBus {
-        /** message queue implementation to use. */
+        /** message queue implementation to use. activemq, kafka or inprocess. */
         public static final String MQ = KEY_ROOT + "eventbus.mq";
 
         /** ActiveMQ broker url. */
         public static final String ACTIVEMQ_BROKER_URL = KEY_ROOT + "eventbus.activemq.brokerUrl";
 
+        /** Max number of pooled ActiveMQ sessions for sending event. */
+        public static final String ACTIVEMQ_SESSION_POOL_SIZE = KEY_ROOT + "eventbus.activemq.sessionPool.size";
+
+        /** Whether to send event to ActiveMQ asynchronously. */
+        public static final String ACTIVEMQ_ASYNC_SEND = KEY_ROOT + "eventbus.activemq.asyncSend";
+
+        /** Whether to send event to ActiveMQ as persistent message. */
+        public static final String ACTIVEMQ_PERSISTENT = KEY_ROOT + "eventbus.activemq.persistent";
+
+        /** Max bytes of asynchronous sends not yet acknowledged by ActiveMQ broker. */
+        public static final String ACTIVEMQ_PRODUCER_WINDOW_SIZE = KEY_ROOT + "eventbus.activemq.producerWindowSize";
+
+        /**
+         * Whether to send event in the binary format of PersoniumEventCodec.
+         * Enable only after all nodes can read the binary format, since older versions cannot decode it.
+         */
+        public static final String BINARY_FORMAT = KEY_ROOT + "eventbus.binaryFormat";
+
         /** Kafka servers. */
         public static final String KAFKA_SERVERS = KEY_ROOT + "eventbus.kafka.bootstrap.servers";
 
+        /** Max number of events received from Kafka at once. */
+        public static final String KAFKA_MAX_POLL_RECORDS = KEY_ROOT + "eventbus.kafka.maxPollRecords";
+
+        /** Number of events each in-process queue or subscriber can hold. */
+        public static final String INPROCESS_BUFFER_SIZE = KEY_ROOT + "eventbus.inprocess.bufferSize";
+
+        /** Behavior when in-process buffer is full. block, dropNewest or dropOldest. */
+        public static final String INPROCESS_OVERFLOW_POLICY = KEY_ROOT + "eventbus.inprocess.overflowPolicy";
+
+        /** Milliseconds to wait for free space of in-process buffer with block policy. */
+        public static final String INPROCESS_BLOCK_TIMEOUT = KEY_ROOT + "eventbus.inprocess.blockTimeout";
+
         /** queue name of EventBus. */
         public static final String QUEUE = KEY_ROOT + "eventbus.queue";
 
@@ -383,6 +473,29 @@ public class PersoniumUnitConfig {
     public static final class Rule {
         /** Number of threads to manage timer event. */
         public static final String TIMEREVENT_THREAD_NUM = KEY_ROOT + "rule.timerEvent.thread.num";
+
+        /** Directory of the journal of timers. Timers are not kept over restart if empty. */
+        public static final String TIMEREVENT_JOURNAL_DIR = KEY_ROOT + "rule.timerEvent.journal.dir";
+
+        /** Behavior for missed fires of timer.oneshot rules. skip, fireOnce or fireAll. */
+        public static final String TIMEREVENT_MISFIRE_ONESHOT = KEY_ROOT + "rule.timerEvent.misfire.oneshot";
+
+        /** Behavior for missed fires of timer.periodic rules. skip, fireOnce or fireAll. */
+        public static final String TIMEREVENT_MISFIRE_PERIODIC = KEY_ROOT + "rule.timerEvent.misfire.periodic";
+    }
+
+    /**
+     * Response compression configurations.
+     */
+    public static final class Compression {
+        /** Whether to compress responses when the client accepts gzip. */
+        public static final String ENABLED = KEY_ROOT + "compression.enabled";
+
+        /** Minimum size of the response body to compress (bytes). */
+        public static final String MIN_SIZE = KEY_ROOT + "compression.minSize";
+
+        /** Comma separated media types to compress. "type/*" is allowed. */
+        public static final String MEDIA_TYPES = KEY_ROOT + "compression.mediaTypes";
     }
 
     static {
@@ -755,6 +868,14 @@ public class PersoniumUnitConfig {
         return Integer.parseInt(get(Dav.COLLECTION_DEPTH_MAX_NUM));
     }
 
+    /**
+     * 分割アップロード中のファイルの有効期間を取得.
+     * @return 有効期間(秒)
+     */
+    public static long getDavUploadExpire() {
+        return Long.parseLong(get(Dav.UPLOAD_EXPIRE));
+    }
+
     /**
      * ファイル書き込み時にfsyncが有効であるか否かを返す.
      * @return 有効である場合はtrue
@@ -896,6 +1017,41 @@ public class PersoniumUnitConfig {
         return get(Event.EVENT_LOG_CURRENT_DIR);
     }
 
+    /**
+     * @return イベントログの書き込み間隔(ms).
+     */
+    public static long getEventLogFlushInterval() {
+        return Long.parseLong(get(Event.EVENT_LOG_FLUSH_INTERVAL));
+    }
+
+    /**
+     * @return 開いたままにするイベントログファイルの最大数.
+     */
+    public static int getEventLogMaxOpenFiles() {
+        return Integer.parseInt(get(Event.EVENT_LOG_MAX_OPEN_FILES));
+    }
+
+    /**
+     * @return イベントログをローテートするサイズ(byte).
+     */
+    public static long getEventLogMaxFileSize() {
+        return Long.parseLong(get(Event.EVENT_LOG_MAX_FILE_SIZE));
+    }
+
+    /**
+     * @return 保持するイベントログのアーカイブの世代数.
+     */
+    public static int getEventLogMaxArchives() {
+        return Integer.parseInt(get(Event.EVENT_LOG_MAX_ARCHIVES));
+    }
+
+    /**
+     * @return 書き込み待ちのイベントログの最大サイズ(byte).
+     */
+    public static long getEventLogMaxPendingBytes() {
+        return Long.parseLong(get(Event.EVENT_LOG_MAX_PENDING_BYTES));
+    }
+
     /**
      * Get event hop maximum number.
      * @return event hop maximum number
@@ -904,6 +1060,14 @@ public class PersoniumUnitConfig {
         return Integer.parseInt(get(Event.EVENT_HOP_MAXNUM));
     }
 
+    /**
+     * データストアの種別の設定値を取得します.
+     * @return 設定値(es/memory)
+     */
+    public static String getEsStore() {
+        return get(ES.STORE);
+    }
+
     /**
      * ElasticSearchのホスト名の設定値を取得します.
      * @return 設定値
@@ -942,6 +1106,20 @@ public class PersoniumUnitConfig {
         return get(BlobStore.ROOT);
     }
 
+    /**
+     * @return WebDAVファイルの内容をハッシュ値で重複排除して格納するか否か.
+     */
+    public static boolean isContentAddressedStoreEnabled() {
+        return Boolean.parseBoolean(get(BlobStore.CONTENT_ADDRESSED_ENABLED));
+    }
+
+    /**
+     * @return 参照されなくなった内容を削除する間隔(秒).
+     */
+    public static long getContentAddressedStoreGcInterval() {
+        return Long.parseLong(get(BlobStore.CONTENT_ADDRESSED_GC_INTERVAL));
+    }
+
     /**
      * Get root directory path to store cell snapshot file.
      * @return root directory path to store cell snapshot file
@@ -950,6 +1128,78 @@ public class PersoniumUnitConfig {
         return get(CellSnapshot.ROOT);
     }
 
+    /**
+     * Get number of threads that send bulk requests of OData at cell import.
+     * @return number of threads. 1 means sequential import
+     */
+    public static int getCellSnapshotImportBulkThreadNum() {
+        return Integer.parseInt(get(CellSnapshot.IMPORT_BULK_THREAD_NUM));
+    }
+
+    /**
+     * Get number of threads that extract WebDAV files at cell import.
+     * @return number of threads. 1 means sequential import
+     */
+    public static int getCellSnapshotImportDavThreadNum() {
+        return Integer.parseInt(get(CellSnapshot.IMPORT_DAV_THREAD_NUM));
+    }
+
+    /**
+     * Get root directory path to store the purge job of deleted cells.
+     * @return root directory path
+     */
+    public static String getCellPurgeRoot() {
+        return get(CellPurge.ROOT);
+    }
+
+    /**
+     * Get number of cell purge worker threads.
+     * @return number of threads
+     */
+    public static int getCellPurgeThreadNum() {
+        return Integer.parseInt(get(CellPurge.THREAD_NUM));
+    }
+
+    /**
+     * Get max number of files and entities deleted per second by cell purge.
+     * @return operations per second
+     */
+    public static int getCellPurgeOperationsPerSecond() {
+        return Integer.parseInt(get(CellPurge.OPERATIONS_PER_SECOND));
+    }
+
+    /**
+     * Get number of entities deleted in one bulk request by cell purge.
+     * @return batch size
+     */
+    public static int getCellPurgeEsBatchSize() {
+        return Integer.parseInt(get(CellPurge.ES_BATCH_SIZE));
+    }
+
+    /**
+     * Get interval to look for released and stale cell purge jobs.
+     * @return interval (seconds)
+     */
+    public static int getCellPurgeScanInterval() {
+        return Integer.parseInt(get(CellPurge.SCAN_INTERVAL));
+    }
+
+    /**
+     * Get delay before the first retry of a failed cell purge job.
+     * @return delay (seconds)
+     */
+    public static int getCellPurgeRetryInterval() {
+        return Integer.parseInt(get(CellPurge.RETRY_INTERVAL));
+    }
+
+    /**
+     * Get time after which a running cell purge job without heartbeat is taken over by another node.
+     * @return timeout (seconds)
+     */
+    public static int getCellPurgeStaleTimeout() {
+        return Integer.parseInt(get(CellPurge.STALE_TIMEOUT));
+    }
+
     /**
      * バイナリデータ(Dav/Eventlog)削除時に物理削除するかどうかの設定.
      * @return true: 物理削除, false: 論理削除
@@ -996,6 +1246,14 @@ public class PersoniumUnitConfig {
         return Long.parseLong(get(BAR.BAR_ENTRY_MAX_SIZE));
     }
 
+    /**
+     * Get number of user data bulk requests queued during bar install.
+     * @return queue size
+     */
+    public static int getBarInstallBulkQueueSize() {
+        return Integer.parseInt(get(BAR.BAR_INSTALL_BULK_QUEUE_SIZE));
+    }
+
     /**
      * Get temp dir path for barinstall.
      * @return temp dir path
@@ -1012,6 +1270,14 @@ public class PersoniumUnitConfig {
         return get(BAR.BAR_TMP_DIR) + "/export";
     }
 
+    /**
+     * Get whether bar export writes the zip directly to the response.
+     * @return true:streaming export without a temporary file
+     */
+    public static boolean isBarExportStreamingEnabled() {
+        return Boolean.parseBoolean(get(BAR.BAR_EXPORT_STREAMING_ENABLED));
+    }
+
     /**
      * @return barインストールの非同期処理状況の有効期限(s).
      */
@@ -1171,6 +1437,46 @@ public class PersoniumUnitConfig {
         return get(EventBus.ACTIVEMQ_BROKER_URL);
     }
 
+    /**
+     * Get max number of pooled sessions for activemq.
+     * @return pool size
+     */
+    public static int getEventBusActiveMQSessionPoolSize() {
+        return Integer.parseInt(get(EventBus.ACTIVEMQ_SESSION_POOL_SIZE));
+    }
+
+    /**
+     * Get whether to send event to activemq asynchronously.
+     * @return true if asynchronous
+     */
+    public static boolean isEventBusActiveMQAsyncSend() {
+        return Boolean.parseBoolean(get(EventBus.ACTIVEMQ_ASYNC_SEND));
+    }
+
+    /**
+     * Get whether to send event to activemq as persistent message.
+     * @return true if persistent
+     */
+    public static boolean isEventBusActiveMQPersistent() {
+        return Boolean.parseBoolean(get(EventBus.ACTIVEMQ_PERSISTENT));
+    }
+
+    /**
+     * Get max bytes of asynchronous sends in flight for activemq.
+     * @return window size (bytes)
+     */
+    public static int getEventBusActiveMQProducerWindowSize() {
+        return Integer.parseInt(get(EventBus.ACTIVEMQ_PRODUCER_WINDOW_SIZE));
+    }
+
+    /**
+     * Get whether to send event in the binary format.
+     * @return true: binary format, false: format of older versions
+     */
+    public static boolean isEventBusBinaryFormat() {
+        return Boolean.parseBoolean(get(EventBus.BINARY_FORMAT));
+    }
+
     /**
      * Get servers of setting for kafka.
      * @return comma-separated servers
@@ -1179,6 +1485,38 @@ public class PersoniumUnitConfig {
         return get(EventBus.KAFKA_SERVERS);
     }
 
+    /**
+     * Get max number of events received from Kafka at once.
+     * @return max number of events
+     */
+    public static int getEventBusKafkaMaxPollRecords() {
+        return Integer.parseInt(get(EventBus.KAFKA_MAX_POLL_RECORDS));
+    }
+
+    /**
+     * Get number of events each in-process queue or subscriber can hold.
+     * @return number of events
+     */
+    public static int getEventBusInProcessBufferSize() {
+        return Integer.parseInt(get(EventBus.INPROCESS_BUFFER_SIZE));
+    }
+
+    /**
+     * Get behavior when in-process buffer is full.
+     * @return block, dropNewest or dropOldest
+     */
+    public static String getEventBusInProcessOverflowPolicy() {
+        return get(EventBus.INPROCESS_OVERFLOW_POLICY);
+    }
+
+    /**
+     * Get milliseconds to wait for free space of in-process buffer.
+     * @return milliseconds
+     */
+    public static long getEventBusInProcessBlockTimeout() {
+        return Long.parseLong(get(EventBus.INPROCESS_BLOCK_TIMEOUT));
+    }
+
     /**
      * Get queue name of EventBus.
      * @return queue name
@@ -1219,6 +1557,54 @@ public class PersoniumUnitConfig {
         return Integer.parseInt(get(Rule.TIMEREVENT_THREAD_NUM));
     }
 
+    /**
+     * Get directory of the journal of timers.
+     * @return directory path
+     */
+    public static String getTimerEventJournalDir() {
+        return get(Rule.TIMEREVENT_JOURNAL_DIR);
+    }
+
+    /**
+     * Get behavior for missed fires of timer.oneshot rules.
+     * @return skip, fireOnce or fireAll
+     */
+    public static String getTimerEventOneshotMisfirePolicy() {
+        return get(Rule.TIMEREVENT_MISFIRE_ONESHOT);
+    }
+
+    /**
+     * Get behavior for missed fires of timer.periodic rules.
+     * @return skip, fireOnce or fireAll
+     */
+    public static String getTimerEventPeriodicMisfirePolicy() {
+        return get(Rule.TIMEREVENT_MISFIRE_PERIODIC);
+    }
+
+    /**
+     * Get whether to compress responses.
+     * @return true if enabled
+     */
+    public static boolean isCompressionEnabled() {
+        return Boolean.parseBoolean(get(Compression.ENABLED));
+    }
+
+    /**
+     * Get minimum size of the response body to compress.
+     * @return size (bytes)
+     */
+    public static int getCompressionMinSize() {
+        return Integer.parseInt(get(Compression.MIN_SIZE));
+    }
+
+    /**
+     * Get media types to compress.
+     * @return comma separated media types
+     */
+    public static String getCompressionMediaTypes() {
+        return get(Compression.MEDIA_TYPES);
+    }
+
     /**
      * 設定情報をリロードします.
      */
@@ -1287,6 +1673,22 @@ public class PersoniumUnitConfig {
         return Boolean.parseBoolean(get(Account.ACCOUNT_LAST_AUTHENTICATED_ENABLED));
     }
 
+    /**
+     * 最終ログイン時刻をまとめて書き込む間隔(秒).
+     * @return 書き込み間隔(秒). 0以下の場合は同期で更新する
+     */
+    public static int getAccountLastAuthenticatedFlushInterval() {
+        return Integer.parseInt(get(Account.ACCOUNT_LAST_AUTHENTICATED_FLUSH_INTERVAL));
+    }
+
+    /**
+     * 間隔を待たずに最終ログイン時刻を書き込む、書き込み待ち件数の閾値.
+     * @return 閾値
+     */
+    public static int getAccountLastAuthenticatedFlushThreshold() {
+        return Integer.parseInt(get(Account.ACCOUNT_LAST_AUTHENTICATED_FLUSH_THRESHOLD));
+    }
+
     /**
      * カンマ区切りで指定された数値リスト(文字列)を、int型の配列にして返す。
      * arrayLengthで指定された長さよりも、数値リストの内容が長い場合は、長い部分は捨てられる。<br/>
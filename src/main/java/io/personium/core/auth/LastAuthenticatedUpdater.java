@@ -0,0 +1,233 @@
+/**
+ * personium.io
+ * Copyright 2018 FUJITSU LIMITED
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.personium.core.auth;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReentrantLock;
+
+import org.odata4j.core.OEntityKey;
+import org.odata4j.edm.EdmEntitySet;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+
+import io.personium.core.PersoniumUnitConfig;
+import io.personium.core.model.Cell;
+import io.personium.core.model.ModelFactory;
+import io.personium.core.model.ctl.Account;
+import io.personium.core.odata.PersoniumODataProducer;
+
+/**
+ * Write-behind buffer of Account LastAuthenticated.
+ * <p>
+ * The login time is coalesced per account and written per cell in one bulk request
+ * by a background thread, so that the authentication request does not take the cell lock.
+ * When the flush interval is 0 or less, LastAuthenticated is updated synchronously.
+ */
+public final class LastAuthenticatedUpdater {
+
+    private static Logger log = LoggerFactory.getLogger(LastAuthenticatedUpdater.class);
+
+    /** LastAuthenticated waiting to be written. key: cellId + "/" + accountId. */
+    private static ConcurrentMap<String, Entry> pending = new ConcurrentHashMap<String, Entry>();
+
+    private static volatile ScheduledExecutorService scheduler;
+    /** Held while flushing, so that stop() can wait for the flush in progress. */
+    private static ReentrantLock flushLock = new ReentrantLock();
+    private static int flushThreshold;
+
+    private LastAuthenticatedUpdater() {
+    }
+
+    /**
+     * LastAuthenticated of one account.
+     */
+    static final class Entry {
+        private final Cell cell;
+        private final String accountId;
+        private final long time;
+
+        Entry(Cell cell, String accountId, long time) {
+            this.cell = cell;
+            this.accountId = accountId;
+            this.time = time;
+        }
+    }
+
+    /**
+     * Start background flush.
+     */
+    public static synchronized void start() {
+        int interval = PersoniumUnitConfig.getAccountLastAuthenticatedFlushInterval();
+        if (interval <= 0 || scheduler != null) {
+            return;
+        }
+        flushThreshold = PersoniumUnitConfig.getAccountLastAuthenticatedFlushThreshold();
+        ThreadFactoryBuilder builder = new ThreadFactoryBuilder();
+        builder.setNameFormat("last-authenticated-writer-%d");
+        builder.setDaemon(true);
+        scheduler = Executors.newSingleThreadScheduledExecutor(builder.build());
+        scheduler.scheduleWithFixedDelay(new Runnable() {
+            @Override
+            public void run() {
+                flush();
+            }
+        }, interval, interval, TimeUnit.SECONDS);
+    }
+
+    /**
+     * Stop background flush and write all buffered LastAuthenticated.
+     * A flush in progress is waited for, and entries buffered after it took its snapshot are written.
+     */
+    public static synchronized void stop() {
+        if (scheduler == null) {
+            return;
+        }
+        ScheduledExecutorService s = scheduler;
+        // Subsequent updates are written synchronously.
+        scheduler = null;
+        s.shutdown();
+        try {
+            if (!s.awaitTermination(1, TimeUnit.SECONDS)) {
+                s.shutdownNow();
+            }
+        } catch (InterruptedException e) {
+            s.shutdownNow();
+        }
+        flush();
+    }
+
+    /**
+     * Update LastAuthenticated of the account to the current time.
+     * @param cell cell
+     * @param username account name
+     * @param accountId account id
+     */
+    public static void update(Cell cell, String username, String accountId) {
+        long now = System.currentTimeMillis();
+        ScheduledExecutorService s = scheduler;
+        if (s == null) {
+            PersoniumODataProducer producer = ModelFactory.ODataCtl.cellCtl(cell);
+            EdmEntitySet esetAccount = producer.getMetadata().getEdmEntitySet(Account.EDM_TYPE_NAME);
+            OEntityKey originalKey = OEntityKey.parse("('" + username + "')");
+            // 最終ログイン時刻の変更をProducerに依頼(このメソッド内でロックを取得・解放)
+            producer.updateLastAuthenticated(esetAccount, originalKey, accountId);
+            return;
+        }
+        put(new Entry(cell, accountId, now));
+        if (scheduler == null) {
+            // Stopped while buffering. The final flush of stop() may have missed this entry.
+            flush();
+            return;
+        }
+        if (pending.size() >= flushThreshold && !flushLock.isLocked()) {
+            try {
+                s.execute(new Runnable() {
+                    @Override
+                    public void run() {
+                        flush();
+                    }
+                });
+            } catch (RuntimeException e) {
+                // Already stopped. Buffered entries are written by stop().
+                log.debug("LastAuthenticated writer is stopped.", e);
+            }
+        }
+    }
+
+    /**
+     * Buffer the entry. The newer time is kept when the account is already buffered.
+     * @param entry entry
+     */
+    private static void put(Entry entry) {
+        String key = entry.cell.getId() + "/" + entry.accountId;
+        while (true) {
+            Entry current = pending.putIfAbsent(key, entry);
+            if (current == null || current.time >= entry.time || pending.replace(key, current, entry)) {
+                return;
+            }
+        }
+    }
+
+    /**
+     * Buffer the entries again to retry them on the next flush.
+     * Newer login time buffered in the meantime wins.
+     * @param cell cell
+     * @param times account id and login time that were taken by the flush
+     * @param accountIds ids of the accounts to retry
+     */
+    private static void requeue(Cell cell, Map<String, Long> times, Set<String> accountIds) {
+        for (String accountId : accountIds) {
+            Long time = times.get(accountId);
+            if (time != null) {
+                put(new Entry(cell, accountId, time));
+            }
+        }
+    }
+
+    /**
+     * Write all buffered LastAuthenticated, one bulk request per cell.
+     * When another thread is flushing, waits for it and then writes the entries it did not take.
+     */
+    static void flush() {
+        flushLock.lock();
+        try {
+            Map<String, Cell> cells = new HashMap<String, Cell>();
+            Map<String, Map<String, Long>> timesPerCell = new HashMap<String, Map<String, Long>>();
+            for (String key : pending.keySet()) {
+                Entry entry = pending.remove(key);
+                if (entry == null) {
+                    continue;
+                }
+                String cellId = entry.cell.getId();
+                Map<String, Long> times = timesPerCell.get(cellId);
+                if (times == null) {
+                    times = new HashMap<String, Long>();
+                    timesPerCell.put(cellId, times);
+                    cells.put(cellId, entry.cell);
+                }
+                times.put(entry.accountId, entry.time);
+            }
+            for (Map.Entry<String, Map<String, Long>> times : timesPerCell.entrySet()) {
+                Cell cell = cells.get(times.getKey());
+                try {
+                    PersoniumODataProducer producer = ModelFactory.ODataCtl.cellCtl(cell);
+                    EdmEntitySet esetAccount = producer.getMetadata().getEdmEntitySet(Account.EDM_TYPE_NAME);
+                    Set<String> failed = producer.updateLastAuthenticated(esetAccount, times.getValue());
+                    if (failed != null && !failed.isEmpty()) {
+                        log.info("Failed to update LastAuthenticated of " + failed.size()
+                                + " accounts. cellId:" + cell.getId());
+                        requeue(cell, times.getValue(), failed);
+                    }
+                } catch (RuntimeException e) {
+                    log.info("Failed to update LastAuthenticated. cellId:" + cell.getId(), e);
+                    requeue(cell, times.getValue(), times.getValue().keySet());
+                }
+            }
+        } finally {
+            flushLock.unlock();
+        }
+    }
+}
@@ -43,13 +43,13 @@ import io.personium.core.PersoniumCoreException;
 /**
  * Class for Read/Write interface of bar file.
  */
-public class BarFile implements Closeable {
+public class BarFile implements Closeable, BarFileWriter {
 
     /** Content-Type of bar file. */
     public static final String CONTENT_TYPE = "application/x-personium-bar+zip";
 
     /** Directory name : meta. */
-    private static final String META_DIR = "00_meta";
+    static final String META_DIR = "00_meta";
     /** File name : manifest. */
     public static final String MANIFEST_JSON = "00_manifest.json";
     /** File name : relations. */
@@ -167,6 +167,7 @@ public class BarFile implements Closeable {
      * Write to manifest json.
      * @param data Data to write
      */
+    @Override
     public void writeManifestJson(String data) {
         Path pathInZip = pathMap.get(MANIFEST_JSON);
         try (BufferedWriter writer = Files.newBufferedWriter(pathInZip, Charsets.UTF_8)) {
@@ -180,6 +181,7 @@ public class BarFile implements Closeable {
      * Write to relations json.
      * @param data Data to write
      */
+    @Override
     public void writeRelationsJson(String data) {
         Path pathInZip = pathMap.get(RELATIONS_JSON);
         try (BufferedWriter writer = Files.newBufferedWriter(pathInZip, Charsets.UTF_8)) {
@@ -193,6 +195,7 @@ public class BarFile implements Closeable {
      * Write to roles json.
      * @param data Data to write
      */
+    @Override
     public void writeRolesJson(String data) {
         Path pathInZip = pathMap.get(ROLES_JSON);
         try (BufferedWriter writer = Files.newBufferedWriter(pathInZip, Charsets.UTF_8)) {
@@ -206,6 +209,7 @@ public class BarFile implements Closeable {
      * Write to rules json.
      * @param data Data to write
      */
+    @Override
     public void writeRulesJson(String data) {
         Path pathInZip = pathMap.get(RULES_JSON);
         try (BufferedWriter writer = Files.newBufferedWriter(pathInZip, Charsets.UTF_8)) {
@@ -219,6 +223,7 @@ public class BarFile implements Closeable {
      * Write to rootprops xml.
      * @param multistatus multistatus xml data
      */
+    @Override
     public void writeRootPropsXml(Multistatus multistatus) {
         Path pathInZip = pathMap.get(ROOTPROPS_XML);
         try (BufferedWriter writer = Files.newBufferedWriter(pathInZip, Charsets.UTF_8)) {
@@ -233,6 +238,7 @@ public class BarFile implements Closeable {
      * Create directory in contents dir.
      * @param relativePath Target dir path under the contents dir
      */
+    @Override
     public void createDirectoryInContentsDir(Path relativePath) {
         Path pathInZip = pathMap.get(CONTENTS_DIR).resolve(relativePath.toString());
         try {
@@ -244,10 +250,13 @@ public class BarFile implements Closeable {
 
     /**
      * Create file in contents dir.
+     * The compression of the file is left to the zip file system.
      * @param relativePath Target file path under the contents dir
+     * @param contentType Content-Type of the file
      * @param dataStream Data stream to write to the file
      */
-    public void createFileInContentsDir(Path relativePath, StreamingOutput dataStream) {
+    @Override
+    public void createFileInContentsDir(Path relativePath, String contentType, StreamingOutput dataStream) {
         Path pathInZip = pathMap.get(CONTENTS_DIR).resolve(relativePath.toString());
         try (OutputStream os = Files.newOutputStream(pathInZip)) {
             dataStream.write(os);
@@ -261,6 +270,7 @@ public class BarFile implements Closeable {
      * @param relativePath Target dir path under the contents dir
      * @param data Data to write
      */
+    @Override
     public void writeMetadataXml(Path relativePath, String data) {
         Path pathInZip = pathMap.get(CONTENTS_DIR).resolve(relativePath.toString()).resolve(METADATA_XML);
         try (BufferedWriter writer = Files.newBufferedWriter(pathInZip, Charsets.UTF_8)) {
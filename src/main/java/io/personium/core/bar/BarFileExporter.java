@@ -96,6 +96,9 @@ public class BarFileExporter {
      * @return JAX-RS response
      */
     public Response export() {
+        if (PersoniumUnitConfig.isBarExportStreamingEnabled()) {
+            return exportStreaming();
+        }
         // Start export.
         log.info(String.format("Start export. BoxName:%s", boxRsCmp.getBox().getName()));
         Cell cell = boxRsCmp.getCell();
@@ -144,11 +147,40 @@ public class BarFileExporter {
                 .build();
     }
 
+    /**
+     * Export bar file by writing the zip directly to the response.
+     * The response does not have Content-Length because the size is not decided until the end.
+     * @return JAX-RS response
+     */
+    private Response exportStreaming() {
+        StreamingOutput streaming = new StreamingOutput() {
+            @Override
+            public void write(OutputStream output) throws IOException, WebApplicationException {
+                String boxName = boxRsCmp.getBox().getName();
+                log.info(String.format("Start export. BoxName:%s", boxName));
+                BarFileStreamWriter barFile = new BarFileStreamWriter(output);
+                try {
+                    makeBarFile(barFile);
+                } catch (RuntimeException e) {
+                    // Do not write the central directory so that the client does not receive the incomplete zip
+                    // as a valid one.
+                    log.info(String.format("Failed to export. BoxName:%s", boxName), e);
+                    throw e;
+                }
+                barFile.close();
+                log.info(String.format("End export. BoxName:%s", boxName));
+            }
+        };
+        return Response.ok(streaming)
+                .header(HttpHeaders.CONTENT_TYPE, BarFile.CONTENT_TYPE)
+                .build();
+    }
+
     /**
      * Make the contents of the zip file.
      * @param barFile bar file
      */
-    private void makeBarFile(BarFile barFile) {
+    private void makeBarFile(BarFileWriter barFile) {
         addManifestToZip(barFile);
         log.info(String.format("Added manifest json."));
         addRelationsToZip(barFile);
@@ -167,7 +199,7 @@ public class BarFileExporter {
      * Generate manifest and add it to the zip file.
      * @param barFile bar file
      */
-    private void addManifestToZip(BarFile barFile) {
+    private void addManifestToZip(BarFileWriter barFile) {
         String defaultPath = boxRsCmp.getBox().getName();
         String schema = boxRsCmp.getBox().getSchema();
         JSONManifest manifest = new JSONManifest(BAR_VERSION, BOX_VERSION, defaultPath, schema);
@@ -183,7 +215,7 @@ public class BarFileExporter {
      * Get relations data and add it to the zip file.
      * @param barFile bar file
      */
-    private void addRelationsToZip(BarFile barFile) {
+    private void addRelationsToZip(BarFileWriter barFile) {
         List<OrderByExpression> orderBy = QueryParser.parseOderByQuery(Relation.P_NAME.getName());
         JSONRelations relations = searchCellCtlObjectsLinkedToBox(Relation.EDM_TYPE_NAME, orderBy, JSONRelations.class);
 
@@ -203,7 +235,7 @@ public class BarFileExporter {
      * Get roles data and add it to the zip file.
      * @param barFile bar file
      */
-    private void addRolesToZip(BarFile barFile) {
+    private void addRolesToZip(BarFileWriter barFile) {
         List<OrderByExpression> orderBy = QueryParser.parseOderByQuery(Common.P_NAME.getName());
         JSONRoles roles = searchCellCtlObjectsLinkedToBox(Role.EDM_TYPE_NAME, orderBy, JSONRoles.class);
 
@@ -223,7 +255,7 @@ public class BarFileExporter {
      * Get rules data and add it to the zip file.
      * @param barFile bar file
      */
-    private void addRulesToZip(BarFile barFile) {
+    private void addRulesToZip(BarFileWriter barFile) {
         List<OrderByExpression> orderBy = QueryParser.parseOderByQuery(Rule.P_NAME.getName());
         JSONRules rules = searchCellCtlObjectsLinkedToBox(Rule.EDM_TYPE_NAME, orderBy, JSONRules.class);
 
@@ -284,7 +316,7 @@ public class BarFileExporter {
      * Get rootprops data and add it to the zip file.
      * @param barFile bar file
      */
-    private void addRootPropsToZip(BarFile barFile) {
+    private void addRootPropsToZip(BarFileWriter barFile) {
         Multistatus multistatus = boxRsCmp.getRootProps();
         barFile.writeRootPropsXml(multistatus);
     }
@@ -293,7 +325,7 @@ public class BarFileExporter {
      * Create contents file and add it to zip file.
      * @param barFile bar file
      */
-    private void addContents(BarFile barFile) {
+    private void addContents(BarFileWriter barFile) {
         Map<String, DavCmp> childrenMap = boxRsCmp.getDavCmp().getChildren();
         for (String childName : childrenMap.keySet()) {
             Path path = Paths.get(childName);
@@ -309,7 +341,7 @@ public class BarFileExporter {
      * @param path Relative path under the contents dir
      * @param davCmp Target contents
      */
-    private void addContentsRecurcive(BarFile barFile, Path path, DavCmp davCmp) {
+    private void addContentsRecurcive(BarFileWriter barFile, Path path, DavCmp davCmp) {
         String type = davCmp.getType();
         if (DavCmp.TYPE_COL_WEBDAV.equals(type)
                 || DavCmp.TYPE_COL_SVC.equals(type)) {
@@ -336,7 +368,7 @@ public class BarFileExporter {
             Response response = davCmp.get(null).build();
             StreamingOutput stream = (StreamingOutput) response.getEntity();
             // Create file in zip.
-            barFile.createFileInContentsDir(path, stream);
+            barFile.createFileInContentsDir(path, davCmp.getContentType(), stream);
         }
     }
 }
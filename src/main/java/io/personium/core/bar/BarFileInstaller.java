@@ -25,8 +25,6 @@ import java.io.InputStream;
 import java.io.OutputStream;
 import java.io.SyncFailedException;
 import java.io.UnsupportedEncodingException;
-import java.nio.file.Files;
-import java.nio.file.Path;
 import java.util.Enumeration;
 import java.util.LinkedHashMap;
 import java.util.Map;
@@ -211,17 +209,7 @@ public class BarFileInstaller {
             barFile.checkStructure();
             // BoxおよびスキーマURLの重複チェック
             checkDuplicateBoxAndSchema(manifest.getSchema());
-            // Use FileVisitor to check process recursively.
-            BarFileCheckVisitor visitor = new BarFileCheckVisitor();
-            try {
-                Path path = barFile.getRootDirPath();
-                Files.walkFileTree(path, visitor);
-            } catch (IOException e) {
-                removeBarFile(file);
-                throw PersoniumCoreException.BarInstall.BAR_FILE_CANNOT_READ.params(e.getMessage());
-            }
-
-            entryCount = visitor.getEntryCount();
+            entryCount = checkVer2BarFileEntries(file);
             schema = manifest.getSchema();
         } catch (IOException e) {
             throw PersoniumCoreException.BarInstall.BAR_FILE_CANNOT_OPEN.params(e.getMessage());
@@ -232,6 +220,36 @@ public class BarFileInstaller {
         return true;
     }
 
+    /**
+     * Check the entries of bar_version 2 file with the zip central directory.
+     * Counts the files and checks the size of each entry without decompressing them.
+     * @param file bar file
+     * @return number of files in bar
+     */
+    private long checkVer2BarFileEntries(File file) {
+        long maxBarEntryFileSize = getMaxBarEntryFileSize();
+        long entryCount = 0L;
+        ZipFile zipFile = null;
+        try {
+            zipFile = new ZipFile(file, "UTF-8");
+            Enumeration<ZipArchiveEntry> entries = zipFile.getEntries();
+            while (entries.hasMoreElements()) {
+                ZipArchiveEntry zae = entries.nextElement();
+                if (zae.isDirectory()) {
+                    continue;
+                }
+                entryCount++;
+                checkBarFileEntrySize(zae, zae.getName(), maxBarEntryFileSize);
+            }
+        } catch (IOException e) {
+            removeBarFile(file);
+            throw PersoniumCoreException.BarInstall.BAR_FILE_CANNOT_READ.params(e.getMessage());
+        } finally {
+            ZipFile.closeQuietly(zipFile);
+        }
+        return entryCount;
+    }
+
     private void removeBarFile(File barFile) {
         if (barFile.exists() && !barFile.delete()) {
             log.warn("Failed to remove bar file. [" + barFile.getAbsolutePath() + "].");
@@ -358,8 +376,9 @@ public class BarFileInstaller {
      * <ul>
      * <li>barファイル内のエントリ数（ファイルのみ）をカウントする。</li>
      * <li>barファイル内の各エントリのファイルサイズの上限値をチェックする。</li>
-     * <li>TODO barファイル内の各エントリの順序をチェックする。</li>
-     * </ul>.
+     * </ul>
+     * zipの中央ディレクトリのみを参照し、解凍するのはマニフェストファイルのみとする.
+     * 各エントリの順序はインストール時にチェックする.
      * @param barFile 一時領域に保存したbarファイルのFileオブジェクト
      * @returns barファイル内のエントリ（ファイル）数
      */
@@ -382,7 +401,7 @@ public class BarFileInstaller {
                 while (entries.hasMoreElements()) {
                     zae = entries.nextElement();
                     entryName = zae.getName();
-                    log.info("read: " + entryName);
+                    log.debug("read: " + entryName);
                     if (!zae.isDirectory()) {
                         // インストール進捗率算出用の母数としてbarファイル内のファイル数をカウント
                         entryCount++;
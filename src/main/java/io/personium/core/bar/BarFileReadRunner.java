@@ -34,6 +34,7 @@ import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
 import java.util.Set;
+import java.util.concurrent.Callable;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
@@ -155,6 +156,9 @@ public class BarFileReadRunner implements Runnable {
     private static final int TYPE_SVC_FILE = 4;
     private static final int TYPE_MISMATCH = -1;
 
+    /** メタデータファイル名の順序を表すプレフィックス("00_"など)を取得するためのパターン. */
+    private static final Pattern ENTRY_INDEX_PATTERN = Pattern.compile(".*/+([0-9][0-9])_.*");
+
     private Map<String, Boolean> barFileOrder;
     private File barFile;
     private ZipArchiveInputStream zipArchiveInputStream;
@@ -503,6 +507,9 @@ public class BarFileReadRunner implements Runnable {
 
         DavCmp davCmp = null;
         List<String> doneKeys = new ArrayList<String>();
+        // ユーザデータの一括登録は、barファイルの読み込みと並行して実行する.
+        // WebDAVファイルはBox単位のロックを取得して書き込むため、並行させずにこのスレッドで順に登録する
+        BarInstallPipeline pipeline = new BarInstallPipeline(PersoniumUnitConfig.getBarInstallBulkQueueSize());
         try {
             ZipArchiveEntry zae = null;
             String currentPath = null;
@@ -513,6 +520,9 @@ public class BarFileReadRunner implements Runnable {
             PersoniumODataProducer producer = null;
 
             while ((zae = this.zipArchiveInputStream.getNextZipEntry()) != null) {
+                if (pipeline.isFailed()) {
+                    return false;
+                }
                 String entryName = zae.getName();
                 log.debug("Entry Name: " + entryName);
                 log.debug("Entry Size: " + zae.getSize());
@@ -525,7 +535,9 @@ public class BarFileReadRunner implements Runnable {
                 // ODataCollectionからDav/ServiceCollection/別ODataCollectionのリソースに対する処理に変わった際に
                 // ユーザデータの登録やリンクの登録をする必要があれば、処理を実行する
                 if (currentPath != null && !entryName.startsWith(currentPath)) {
-                    if (!execBulkRequest(davCmp.getCell().getId(), bulkRequests, fileNameMap, producer)) {
+                    // リンクは登録済みのユーザデータに対して作成するため、一括登録の完了を待つ
+                    if (!submitBulkRequest(pipeline, davCmp.getCell().getId(), bulkRequests, fileNameMap, producer)
+                            || !pipeline.awaitBulk()) {
                         return false;
                     }
                     if (!createUserdataLinks(producer, userDataLinks)) {
@@ -579,7 +591,7 @@ public class BarFileReadRunner implements Runnable {
                             doneKeys.add(entryName);
 
                             if ((userDataCount % bulkSize) == 0
-                                    && !execBulkRequest(davCmp.getCell().getId(),
+                                    && !submitBulkRequest(pipeline, davCmp.getCell().getId(),
                                             bulkRequests, fileNameMap, producer)) {
                                 return false;
                             }
@@ -624,7 +636,8 @@ public class BarFileReadRunner implements Runnable {
             }
             // ODataCollectionのリソースに対する処理に終わった際に、ユーザデータの登録やリンクの登録をする必要があれば実行する
             if (currentPath != null) {
-                if (!execBulkRequest(davCmp.getCell().getId(), bulkRequests, fileNameMap, producer)) {
+                if (!submitBulkRequest(pipeline, davCmp.getCell().getId(), bulkRequests, fileNameMap, producer)
+                        || !pipeline.awaitBulk()) {
                     return false;
                 }
                 if (!createUserdataLinks(producer, userDataLinks)) {
@@ -632,11 +645,16 @@ public class BarFileReadRunner implements Runnable {
                 }
                 userDataLinks = null;
             }
+            if (!pipeline.awaitAll()) {
+                return false;
+            }
         } catch (IOException ex) {
             isSuccess = false;
             log.info("IOException: " + ex.getMessage(), ex.fillInStackTrace());
             String message = PersoniumCoreMessageUtils.getMessage("PL-BI-2000");
             writeOutputStream(true, CODE_BAR_INSTALL_FAILED, "", message);
+        } finally {
+            pipeline.shutdown();
         }
         // 必須データ（bar/90_contents/{odatacol_name}/00_$metadata.xml)の確認
         isSuccess = checkNecessaryFile(isSuccess, odataCols, doneKeys);
@@ -744,6 +762,29 @@ public class BarFileReadRunner implements Runnable {
         return entityTypeName;
     }
 
+    /**
+     * ユーザデータの一括登録をパイプラインに投入する.
+     * 投入したリクエストは引数のMapから取り除かれる.
+     */
+    private boolean submitBulkRequest(BarInstallPipeline pipeline, final String cellId,
+            LinkedHashMap<String, BulkRequest> bulkRequests,
+            Map<String, String> fileNameMap,
+            final PersoniumODataProducer producer) {
+        if (bulkRequests.isEmpty()) {
+            return !pipeline.isFailed();
+        }
+        final LinkedHashMap<String, BulkRequest> requests = new LinkedHashMap<String, BulkRequest>(bulkRequests);
+        final Map<String, String> fileNames = new HashMap<String, String>(fileNameMap);
+        bulkRequests.clear();
+        fileNameMap.clear();
+        return pipeline.submitBulk(new Callable<Boolean>() {
+            @Override
+            public Boolean call() {
+                return execBulkRequest(cellId, requests, fileNames, producer);
+            }
+        });
+    }
+
     private boolean execBulkRequest(String cellId, LinkedHashMap<String, BulkRequest> bulkRequests,
             Map<String, String> fileNameMap,
             PersoniumODataProducer producer) {
@@ -1323,8 +1364,7 @@ public class BarFileReadRunner implements Runnable {
         }
 
         // 順番が正しいかチェック
-        Pattern formatPattern = Pattern.compile(".*/+([0-9][0-9])_.*");
-        Matcher formatMatcher = formatPattern.matcher(entryName);
+        Matcher formatMatcher = ENTRY_INDEX_PATTERN.matcher(entryName);
         String entryIndex = formatMatcher.replaceAll("$1");
         if (doneKeys.isEmpty()) {
             // 最初のエントリの場合は"00"であることが必須
@@ -1336,7 +1376,7 @@ public class BarFileReadRunner implements Runnable {
             }
         } else {
             String lastEntryName = doneKeys.get(doneKeys.size() - 1);
-            formatMatcher = formatPattern.matcher(lastEntryName);
+            formatMatcher = ENTRY_INDEX_PATTERN.matcher(lastEntryName);
             String lastEntryIndex = formatMatcher.replaceAll("$1");
 
             // 前回処理したエントリのプレフィックスと比較
@@ -1691,7 +1731,7 @@ public class BarFileReadRunner implements Runnable {
      * @param detail
      *        処理失敗時の詳細情報(PL-BI-2xxx)
      */
-    private void writeOutputStream(boolean isError, String code, String path, String detail) {
+    private synchronized void writeOutputStream(boolean isError, String code, String path, String detail) {
         String message = PersoniumCoreMessageUtils.getMessage(code);
         if (detail == null) {
             message = message.replace("{0}", "");
@@ -0,0 +1,214 @@
+/**
+ * personium.io
+ * Copyright 2018 FUJITSU LIMITED
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.personium.core.bar;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Locale;
+import java.util.Set;
+import java.util.zip.Deflater;
+
+import javax.ws.rs.WebApplicationException;
+import javax.ws.rs.core.StreamingOutput;
+
+import org.apache.wink.webdav.model.Multistatus;
+
+import io.personium.core.PersoniumCoreException;
+import io.personium.core.utils.ZipEntryWriter;
+
+/**
+ * Write interface of bar file that writes the zip directly to an output stream.
+ * <p>
+ * Entries are written in the order they are added, so the bar file can be sent to the client
+ * without creating a temporary file. Files whose Content-Type is already compressed are written
+ * without compression.
+ */
+public class BarFileStreamWriter implements Closeable, BarFileWriter {
+
+    /** Content-Type prefixes of data that is already compressed. */
+    private static final String[] COMPRESSED_TYPE_PREFIXES = {"audio/", "video/"};
+    /** Content-Types of data that is already compressed. */
+    private static final Set<String> COMPRESSED_TYPES = new HashSet<>(Arrays.asList(
+            "application/zip",
+            "application/gzip",
+            "application/x-gzip",
+            "application/x-bzip2",
+            "application/x-xz",
+            "application/x-7z-compressed",
+            "application/x-rar-compressed",
+            "application/java-archive",
+            BarFile.CONTENT_TYPE,
+            "image/jpeg",
+            "image/png",
+            "image/gif",
+            "image/webp"));
+
+    /** Writer of the zip entries. */
+    private final ZipEntryWriter zipWriter;
+
+    /**
+     * Constructor.
+     * Creates the meta directory and the contents directory.
+     * @param output Output stream to write the bar file to
+     */
+    public BarFileStreamWriter(OutputStream output) {
+        zipWriter = new ZipEntryWriter(output);
+        putDirectory(BarFile.META_DIR);
+        putDirectory(BarFile.CONTENTS_DIR);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void writeManifestJson(String data) {
+        putFile(BarFile.META_DIR + "/" + BarFile.MANIFEST_JSON, data, "add manifest json to bar file");
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void writeRelationsJson(String data) {
+        putFile(BarFile.META_DIR + "/" + BarFile.RELATIONS_JSON, data, "add relations json to bar file");
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void writeRolesJson(String data) {
+        putFile(BarFile.META_DIR + "/" + BarFile.ROLES_JSON, data, "add roles json to bar file");
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void writeRulesJson(String data) {
+        putFile(BarFile.META_DIR + "/" + BarFile.RULES_JSON, data, "add rules json to bar file");
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void writeRootPropsXml(Multistatus multistatus) {
+        try {
+            OutputStream output = zipWriter.putEntry(BarFile.META_DIR + "/" + BarFile.ROOTPROPS_XML,
+                    Deflater.DEFAULT_COMPRESSION);
+            Writer writer = new OutputStreamWriter(output, StandardCharsets.UTF_8);
+            Multistatus.marshal(multistatus, writer);
+            writer.flush();
+            zipWriter.closeEntry();
+        } catch (WebApplicationException | IOException e) {
+            throw PersoniumCoreException.Common.FILE_IO_ERROR.params("add rootprops xml to bar file").reason(e);
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void createDirectoryInContentsDir(Path relativePath) {
+        putDirectory(toContentsEntryName(relativePath));
+    }
+
+    /**
+     * {@inheritDoc}
+     * Files whose Content-Type is already compressed are stored without compression.
+     */
+    @Override
+    public void createFileInContentsDir(Path relativePath, String contentType, StreamingOutput dataStream) {
+        int level = isCompressed(contentType) ? Deflater.NO_COMPRESSION : Deflater.DEFAULT_COMPRESSION;
+        try {
+            dataStream.write(zipWriter.putEntry(toContentsEntryName(relativePath), level));
+            zipWriter.closeEntry();
+        } catch (IOException e) {
+            throw PersoniumCoreException.Common.FILE_IO_ERROR.params("add file to bar file").reason(e);
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void writeMetadataXml(Path relativePath, String data) {
+        putFile(toContentsEntryName(relativePath) + "/" + BarFile.METADATA_XML, data,
+                "add metadata xml to bar file");
+    }
+
+    /**
+     * Write the central directory of the zip.
+     * Call only when all entries have been written, otherwise the client receives an incomplete zip as valid one.
+     * The underlying output stream is not closed.
+     * @throws IOException File I/O error
+     */
+    @Override
+    public void close() throws IOException {
+        zipWriter.finish();
+    }
+
+    /**
+     * Check if the data of the Content-Type is already compressed.
+     * @param contentType Content-Type
+     * @return true:already compressed
+     */
+    static boolean isCompressed(String contentType) {
+        if (contentType == null) {
+            return false;
+        }
+        String mediaType = contentType.split(";")[0].trim().toLowerCase(Locale.ENGLISH);
+        for (String prefix : COMPRESSED_TYPE_PREFIXES) {
+            if (mediaType.startsWith(prefix)) {
+                return true;
+            }
+        }
+        return COMPRESSED_TYPES.contains(mediaType);
+    }
+
+    private String toContentsEntryName(Path relativePath) {
+        StringBuilder builder = new StringBuilder(BarFile.CONTENTS_DIR);
+        for (Path name : relativePath) {
+            builder.append("/").append(name.toString());
+        }
+        return builder.toString();
+    }
+
+    private void putFile(String entryName, String data, String operation) {
+        try {
+            zipWriter.writeEntry(entryName, data);
+        } catch (IOException e) {
+            throw PersoniumCoreException.Common.FILE_IO_ERROR.params(operation).reason(e);
+        }
+    }
+
+    private void putDirectory(String dirName) {
+        try {
+            zipWriter.putDirectory(dirName);
+        } catch (IOException e) {
+            throw PersoniumCoreException.Common.FILE_IO_ERROR.params("add dir to bar file").reason(e);
+        }
+    }
+}
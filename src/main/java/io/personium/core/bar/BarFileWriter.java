@@ -0,0 +1,80 @@
+/**
+ * personium.io
+ * Copyright 2018 FUJITSU LIMITED
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.personium.core.bar;
+
+import java.nio.file.Path;
+
+import javax.ws.rs.core.StreamingOutput;
+
+import org.apache.wink.webdav.model.Multistatus;
+
+/**
+ * Write interface of bar file used by bar export.
+ */
+public interface BarFileWriter {
+
+    /**
+     * Write to manifest json.
+     * @param data Data to write
+     */
+    void writeManifestJson(String data);
+
+    /**
+     * Write to relations json.
+     * @param data Data to write
+     */
+    void writeRelationsJson(String data);
+
+    /**
+     * Write to roles json.
+     * @param data Data to write
+     */
+    void writeRolesJson(String data);
+
+    /**
+     * Write to rules json.
+     * @param data Data to write
+     */
+    void writeRulesJson(String data);
+
+    /**
+     * Write to rootprops xml.
+     * @param multistatus multistatus xml data
+     */
+    void writeRootPropsXml(Multistatus multistatus);
+
+    /**
+     * Create directory in contents dir.
+     * @param relativePath Target dir path under the contents dir
+     */
+    void createDirectoryInContentsDir(Path relativePath);
+
+    /**
+     * Create file in contents dir.
+     * @param relativePath Target file path under the contents dir
+     * @param contentType Content-Type of the file
+     * @param dataStream Data stream to write to the file
+     */
+    void createFileInContentsDir(Path relativePath, String contentType, StreamingOutput dataStream);
+
+    /**
+     * Write to metadata xml.
+     * @param relativePath Target dir path under the contents dir
+     * @param data Data to write
+     */
+    void writeMetadataXml(Path relativePath, String data);
+}
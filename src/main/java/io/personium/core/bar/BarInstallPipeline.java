@@ -0,0 +1,166 @@
+/**
+ * personium.io
+ * Copyright 2018 FUJITSU LIMITED
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.personium.core.bar;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+
+/**
+ * barファイルのコンテンツ登録を並行して実行するためのパイプライン.
+ * <p>
+ * barファイルの読み込み・解析はインストールスレッドで行い、ユーザデータの一括登録は専用の1スレッドで実行する.
+ * 投入できるタスク数には上限があり、上限に達した場合は投入元のスレッドを待たせる.
+ * いずれかのタスクが失敗した場合は{@link #isFailed()}がtrueとなる.
+ * <p>
+ * WebDAVファイルの書き込みはBox単位のロックで直列化されるため、並行させても速くならない.
+ * ロック待ちのタイムアウトで失敗するだけなので、パイプラインには投入せずインストールスレッドで書き込む.
+ */
+class BarInstallPipeline {
+
+    private static Logger log = LoggerFactory.getLogger(BarInstallPipeline.class);
+
+    private final ExecutorService bulkExecutor;
+    private final Semaphore bulkPermits;
+    private final List<Future<Boolean>> bulkFutures = new ArrayList<Future<Boolean>>();
+    private final AtomicBoolean failed = new AtomicBoolean(false);
+
+    /**
+     * constructor.
+     * @param bulkQueueSize 一括登録の待ち数の上限
+     */
+    BarInstallPipeline(int bulkQueueSize) {
+        this.bulkExecutor = Executors.newSingleThreadExecutor(
+                new ThreadFactoryBuilder().setNameFormat("bar-install-bulk-%d").setDaemon(true).build());
+        this.bulkPermits = new Semaphore(Math.max(1, bulkQueueSize));
+    }
+
+    /**
+     * ユーザデータの一括登録を投入する. 一括登録は投入した順に1件ずつ実行される.
+     * @param task 一括登録処理. 失敗した場合はfalseを返却すること
+     * @return false: 既に失敗したタスクがあるため投入しなかった
+     */
+    boolean submitBulk(Callable<Boolean> task) {
+        return submit(bulkExecutor, bulkPermits, bulkFutures, task);
+    }
+
+    private boolean submit(ExecutorService executor, final Semaphore permits, List<Future<Boolean>> futures,
+            final Callable<Boolean> task) {
+        if (failed.get()) {
+            return false;
+        }
+        try {
+            permits.acquire();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            failed.set(true);
+            return false;
+        }
+        futures.add(executor.submit(new Callable<Boolean>() {
+            @Override
+            public Boolean call() throws Exception {
+                try {
+                    if (failed.get()) {
+                        return false;
+                    }
+                    boolean result = task.call();
+                    if (!result) {
+                        failed.set(true);
+                    }
+                    return result;
+                } catch (Exception e) {
+                    failed.set(true);
+                    throw e;
+                } finally {
+                    permits.release();
+                }
+            }
+        }));
+        return true;
+    }
+
+    /**
+     * 投入済みの一括登録の完了を待つ.
+     * @return true: すべて成功した
+     */
+    boolean awaitBulk() {
+        return await(bulkFutures);
+    }
+
+    /**
+     * 投入済みのすべてのタスクの完了を待つ.
+     * @return true: すべて成功した
+     */
+    boolean awaitAll() {
+        return await(bulkFutures);
+    }
+
+    private boolean await(List<Future<Boolean>> futures) {
+        for (Future<Boolean> future : futures) {
+            try {
+                if (!future.get()) {
+                    failed.set(true);
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                failed.set(true);
+            } catch (ExecutionException e) {
+                log.info("bar install task failed: " + e.getCause().getMessage(), e.getCause());
+                failed.set(true);
+            }
+        }
+        futures.clear();
+        return !failed.get();
+    }
+
+    /**
+     * いずれかのタスクが失敗したかどうかを返却する.
+     * @return true: 失敗したタスクがある
+     */
+    boolean isFailed() {
+        return failed.get();
+    }
+
+    /**
+     * 実行中のタスクの完了を待ってスレッドを停止する.
+     * 未実行のタスクは失敗扱いとして実行しない.
+     */
+    void shutdown() {
+        if (!bulkFutures.isEmpty()) {
+            failed.set(true);
+        }
+        bulkExecutor.shutdown();
+        try {
+            bulkExecutor.awaitTermination(Long.MAX_VALUE, TimeUnit.MILLISECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            bulkExecutor.shutdownNow();
+        }
+    }
+}
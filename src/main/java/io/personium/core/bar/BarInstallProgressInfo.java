@@ -26,6 +26,9 @@ import io.personium.core.model.progress.ProgressInfo;
 
 /**
  * barインストール用非同期処理状況オブジェクト.
+ * <p>
+ * barファイルの読み込みスレッドとインストールパイプラインのスレッドから並行して更新されるため、
+ * 進捗・状態を参照・更新するメソッドは同期化している.
  */
 public class BarInstallProgressInfo implements ProgressInfo {
 
@@ -66,7 +69,7 @@ public class BarInstallProgressInfo implements ProgressInfo {
      * 進捗率を更新する.
      * @param delta 処理済みのファイル数（増分）
      */
-    public void addDelta(long delta) {
+    public synchronized void addDelta(long delta) {
         this.progressCount += delta;
         this.progressInPercent = (int) (((double) progressCount  * PERCENTAGE) / entryCount);
     }
@@ -79,7 +82,7 @@ public class BarInstallProgressInfo implements ProgressInfo {
      * </ul>.
      * @return 出力可能な場合はtrueを、それ以外はfalseを返す。
      */
-    public boolean isOutputEventBus() {
+    public synchronized boolean isOutputEventBus() {
        // TODO 10%単位での更新だと長時間更新されない場合があるため、一定時間経過でも更新するように修正
        if (this.progressInPercent - this.lastPercent > THRESHHOLD) {
            this.lastPercent = (this.progressInPercent / THRESHHOLD) * THRESHHOLD;
@@ -132,13 +135,13 @@ public class BarInstallProgressInfo implements ProgressInfo {
     /**
      * @return the endTime
      */
-    public String getEndTime() {
+    public synchronized String getEndTime() {
         return endTime;
     }
     /**
      * the endTime to set.
      */
-    public void setEndTime() {
+    public synchronized void setEndTime() {
         SimpleDateFormat sdfIso8601ExtendedFormatUtc = new SimpleDateFormat("yyyy-MM-dd'T'HH:mm:ss.SSS'Z'");
         sdfIso8601ExtendedFormatUtc.setTimeZone(TimeZone.getTimeZone("UTC"));
         this.endTime = sdfIso8601ExtendedFormatUtc.format(new Date());
@@ -146,31 +149,31 @@ public class BarInstallProgressInfo implements ProgressInfo {
     /**
      * @return status
      */
-    public STATUS getStatus() {
+    public synchronized STATUS getStatus() {
         return status;
     }
     /**
      * @param status STATUS
      */
-    public void setStatus(STATUS status) {
+    public synchronized void setStatus(STATUS status) {
         this.status = status;
     }
     /**
      * @return the progress
      */
-    public String getProgress() {
+    public synchronized String getProgress() {
         return progressInPercent + "%";
     }
     /**
      * @return the message
      */
-    public JSONObject getMessage() {
+    public synchronized JSONObject getMessage() {
         return message;
     }
     /**
      * @param message String
      */
-    public void setMessage(JSONObject message) {
+    public synchronized void setMessage(JSONObject message) {
         this.message = message;
     }
 
@@ -179,7 +182,7 @@ public class BarInstallProgressInfo implements ProgressInfo {
      * @return JSONオブジェクト.
      */
     @SuppressWarnings("unchecked")
-    public JSONObject getJsonObject() {
+    public synchronized JSONObject getJsonObject() {
         JSONObject barInfoJson = null;
         if (this.jsonObject == null) {
             this.jsonObject = new JSONObject();
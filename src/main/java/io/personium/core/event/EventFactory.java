@@ -21,6 +21,10 @@ import io.personium.core.event.impl.activemq.ActiveMQEventReceiver;
 import io.personium.core.event.impl.activemq.ActiveMQEventPublisher;
 import io.personium.core.event.impl.activemq.ActiveMQEventSender;
 import io.personium.core.event.impl.activemq.ActiveMQEventSubscriber;
+import io.personium.core.event.impl.inprocess.InProcessEventPublisher;
+import io.personium.core.event.impl.inprocess.InProcessEventReceiver;
+import io.personium.core.event.impl.inprocess.InProcessEventSender;
+import io.personium.core.event.impl.inprocess.InProcessEventSubscriber;
 import io.personium.core.event.impl.kafka.KafkaEventReceiver;
 import io.personium.core.event.impl.kafka.KafkaEventSender;
 import io.personium.core.event.impl.kafka.KafkaEventSubscriber;
@@ -31,6 +35,7 @@ import io.personium.core.event.impl.kafka.KafkaEventSubscriber;
 public class EventFactory {
     private static final String ACTIVEMQ = "activemq";
     private static final String KAFKA = "kafka";
+    private static final String INPROCESS = "inprocess";
 
     private static String mq = PersoniumUnitConfig.getEventBusMQ();
     private static String queueName = PersoniumUnitConfig.getEventBusQueueName();
@@ -54,6 +59,8 @@ public class EventFactory {
             eventReceiver = new ActiveMQEventReceiver();
         } else if (KAFKA.equals(mq)) {
             eventReceiver = new KafkaEventReceiver();
+        } else if (INPROCESS.equals(mq)) {
+            eventReceiver = new InProcessEventReceiver();
         } else {
             eventReceiver = new ActiveMQEventReceiver();
         }
@@ -73,6 +80,8 @@ public class EventFactory {
             eventSubscriber = new ActiveMQEventSubscriber();
         } else if (KAFKA.equals(mq)) {
             eventSubscriber = new KafkaEventSubscriber();
+        } else if (INPROCESS.equals(mq)) {
+            eventSubscriber = new InProcessEventSubscriber();
         } else {
             eventSubscriber = new ActiveMQEventSubscriber();
         }
@@ -93,6 +102,8 @@ public class EventFactory {
             eventSubscriber = new ActiveMQEventSubscriber();
         } else if (KAFKA.equals(mq)) {
             eventSubscriber = new KafkaEventSubscriber();
+        } else if (INPROCESS.equals(mq)) {
+            eventSubscriber = new InProcessEventSubscriber();
         } else {
             eventSubscriber = new ActiveMQEventSubscriber();
         }
@@ -109,6 +120,8 @@ public class EventFactory {
             eventSender = new ActiveMQEventSender();
         } else if (KAFKA.equals(mq)) {
             eventSender = new KafkaEventSender();
+        } else if (INPROCESS.equals(mq)) {
+            eventSender = new InProcessEventSender();
         } else {
             eventSender = new ActiveMQEventSender();
         }
@@ -139,6 +152,8 @@ public class EventFactory {
             eventPublisher = new ActiveMQEventPublisher();
         } else if (KAFKA.equals(mq)) {
             eventPublisher = new KafkaEventSender();
+        } else if (INPROCESS.equals(mq)) {
+            eventPublisher = new InProcessEventPublisher();
         } else {
             eventPublisher = new ActiveMQEventPublisher();
         }
@@ -172,6 +187,8 @@ public class EventFactory {
             publisher = new ActiveMQEventPublisher();
         } else if (KAFKA.equals(mq)) {
             publisher = new KafkaEventSender();
+        } else if (INPROCESS.equals(mq)) {
+            publisher = new InProcessEventPublisher();
         } else {
             publisher = new ActiveMQEventPublisher();
         }
@@ -47,28 +47,11 @@ class EventReceiveRunner implements Runnable {
                     }
                     for (PersoniumEvent event : list) {
                         if (event != null) {
-                            log.debug("Received Message with '" + event.getType() + " '.");
-                            log.debug("    External: " + event.getExternal());
-                            log.debug("    Schema: " + event.getSchema());
-                            log.debug("    Subject: " + event.getSubject());
-                            log.debug("    Type: " + event.getType());
-                            log.debug("    Object: " + event.getObject());
-                            log.debug("    Info: " + event.getInfo());
-                            log.debug("    RequestKey: " + event.getRequestKey());
-                            log.debug("    EventId: " + event.getEventId());
-                            log.debug("    RuleChain: " + event.getRuleChain());
-                            log.debug("    Via: " + event.getVia());
-                            log.debug("    Roles: " + event.getRoles());
-                            log.debug("    CellId: " + event.getCellId());
-                            log.debug("    Time: " + event.getTime());
-
-                            // If the event matches with a rule, execute action of the rule.
-                            rman.judge(event);
-
-                            // publish event
-                            EventFactory.getEventPublisher().send(event);
+                            process(rman, event);
                         }
                     }
+                    // commit after all the received events are processed.
+                    receiver.commit();
                 } catch (Exception e) {
                     log.error("Exception occurred: " + e.getMessage(), e);
                 }
@@ -79,5 +62,38 @@ class EventReceiveRunner implements Runnable {
         }
     }
 
+    /**
+     * Process received event.
+     * @param rman RuleManager
+     * @param event received event
+     */
+    private void process(RuleManager rman, PersoniumEvent event) {
+        try {
+            log.debug("Received Message with '" + event.getType() + " '.");
+            log.debug("    External: " + event.getExternal());
+            log.debug("    Schema: " + event.getSchema());
+            log.debug("    Subject: " + event.getSubject());
+            log.debug("    Type: " + event.getType());
+            log.debug("    Object: " + event.getObject());
+            log.debug("    Info: " + event.getInfo());
+            log.debug("    RequestKey: " + event.getRequestKey());
+            log.debug("    EventId: " + event.getEventId());
+            log.debug("    RuleChain: " + event.getRuleChain());
+            log.debug("    Via: " + event.getVia());
+            log.debug("    Roles: " + event.getRoles());
+            log.debug("    CellId: " + event.getCellId());
+            log.debug("    Time: " + event.getTime());
+
+            // If the event matches with a rule, execute action of the rule.
+            rman.judge(event);
+
+            // publish event
+            EventFactory.getEventPublisher().send(event);
+        } catch (Exception e) {
+            // an event failed is not received again, so that it does not block the following events.
+            log.error("Exception occurred: " + e.getMessage(), e);
+        }
+    }
+
 }
 
@@ -35,6 +35,13 @@ public interface EventReceiver {
      */
     List<PersoniumEvent> receive();
 
+    /**
+     * Commit.
+     * Mark the events returned by the last receive() as processed.
+     * Events not committed may be delivered again.
+     */
+    void commit();
+
     /**
      * Unsubscribe.
      */
@@ -0,0 +1,250 @@
+/**
+ * personium.io
+ * Copyright 2018 FUJITSU LIMITED
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.personium.core.event;
+
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/**
+ * Binary codec of PersoniumEvent shared by the transports of EventBus.
+ * <p>
+ * Format (version 1):
+ * <pre>
+ * magic(1 byte) version(1 byte) time(8 bytes, big endian)
+ * { tag(1 byte) length(varint) value(length bytes) } ...
+ * </pre>
+ * Only non-null fields are written. String values are UTF-8 and the external flag is one byte (0 or 1).
+ * Tags are never reused, and decoders skip tags they do not know, so fields can be added without changing
+ * the version. The version is raised only for changes that old decoders cannot skip.
+ */
+public final class PersoniumEventCodec {
+
+    /** First byte of encoded event. Neither JSON nor Java serialization starts with it. */
+    public static final byte MAGIC = (byte) 0xE7;
+    /** Current format version. */
+    public static final byte VERSION = 1;
+
+    static final int TAG_EXTERNAL = 1;
+    static final int TAG_SCHEMA = 2;
+    static final int TAG_SUBJECT = 3;
+    static final int TAG_TYPE = 4;
+    static final int TAG_OBJECT = 5;
+    static final int TAG_INFO = 6;
+    static final int TAG_REQUEST_KEY = 7;
+    static final int TAG_EVENT_ID = 8;
+    static final int TAG_RULE_CHAIN = 9;
+    static final int TAG_VIA = 10;
+    static final int TAG_ROLES = 11;
+    static final int TAG_CELL_ID = 12;
+
+    private static final int HEADER_LENGTH = 10;
+    private static final int INITIAL_CAPACITY = 256;
+    private static final int VARINT_MASK = 0x7f;
+    private static final int VARINT_CONTINUE = 0x80;
+    private static final int VARINT_SHIFT = 7;
+    private static final int VARINT_MAX_SHIFT = 28;
+
+    /** Constructor. */
+    private PersoniumEventCodec() {
+    }
+
+    /**
+     * Check whether the bytes are encoded by this codec.
+     * @param bytes bytes
+     * @return true if encoded by this codec
+     */
+    public static boolean isEncoded(byte[] bytes) {
+        return bytes != null && bytes.length >= HEADER_LENGTH && bytes[0] == MAGIC;
+    }
+
+    /**
+     * Encode event.
+     * @param event event
+     * @return encoded bytes
+     */
+    public static byte[] encode(PersoniumEvent event) {
+        Writer writer = new Writer();
+        writer.writeByte(MAGIC);
+        writer.writeByte(VERSION);
+        writer.writeLong(event.time);
+        if (event.external != null) {
+            writer.writeTag(TAG_EXTERNAL, 1);
+            writer.writeByte(event.external ? 1 : 0);
+        }
+        writer.writeString(TAG_SCHEMA, event.schema);
+        writer.writeString(TAG_SUBJECT, event.subject);
+        writer.writeString(TAG_TYPE, event.type);
+        writer.writeString(TAG_OBJECT, event.object);
+        writer.writeString(TAG_INFO, event.info);
+        writer.writeString(TAG_REQUEST_KEY, event.requestKey);
+        writer.writeString(TAG_EVENT_ID, event.eventId);
+        writer.writeString(TAG_RULE_CHAIN, event.ruleChain);
+        writer.writeString(TAG_VIA, event.via);
+        writer.writeString(TAG_ROLES, event.roles);
+        writer.writeString(TAG_CELL_ID, event.cellId);
+        return writer.toByteArray();
+    }
+
+    /**
+     * Decode event.
+     * @param bytes encoded bytes
+     * @return event
+     * @throws IllegalArgumentException bytes are not encoded by this codec or broken
+     */
+    public static PersoniumEvent decode(byte[] bytes) {
+        if (!isEncoded(bytes)) {
+            throw new IllegalArgumentException("Not an encoded PersoniumEvent.");
+        }
+        ByteBuffer buffer = ByteBuffer.wrap(bytes);
+        buffer.get();
+        byte version = buffer.get();
+        if (version < 1 || version > VERSION) {
+            throw new IllegalArgumentException("Unsupported PersoniumEvent format version: " + version);
+        }
+        PersoniumEvent event = new PersoniumEvent();
+        try {
+            event.time = buffer.getLong();
+            while (buffer.hasRemaining()) {
+                int tag = buffer.get() & 0xff;
+                int length = readVarInt(buffer);
+                if (length < 0 || length > buffer.remaining()) {
+                    throw new IllegalArgumentException("Broken PersoniumEvent: invalid length of tag " + tag);
+                }
+                if (tag == TAG_EXTERNAL) {
+                    event.external = length > 0 && buffer.get(buffer.position()) != 0;
+                    buffer.position(buffer.position() + length);
+                    continue;
+                }
+                String value = null;
+                if (tag <= TAG_CELL_ID) {
+                    value = new String(bytes, buffer.position(), length, StandardCharsets.UTF_8);
+                }
+                buffer.position(buffer.position() + length);
+                setString(event, tag, value);
+            }
+        } catch (BufferUnderflowException e) {
+            throw new IllegalArgumentException("Broken PersoniumEvent: unexpected end of data", e);
+        }
+        return event;
+    }
+
+    private static void setString(PersoniumEvent event, int tag, String value) {
+        switch (tag) {
+        case TAG_SCHEMA:
+            event.schema = value;
+            break;
+        case TAG_SUBJECT:
+            event.subject = value;
+            break;
+        case TAG_TYPE:
+            event.type = value;
+            break;
+        case TAG_OBJECT:
+            event.object = value;
+            break;
+        case TAG_INFO:
+            event.info = value;
+            break;
+        case TAG_REQUEST_KEY:
+            event.requestKey = value;
+            break;
+        case TAG_EVENT_ID:
+            event.eventId = value;
+            break;
+        case TAG_RULE_CHAIN:
+            event.ruleChain = value;
+            break;
+        case TAG_VIA:
+            event.via = value;
+            break;
+        case TAG_ROLES:
+            event.roles = value;
+            break;
+        case TAG_CELL_ID:
+            event.cellId = value;
+            break;
+        default:
+            // Unknown tag written by newer version.
+            break;
+        }
+    }
+
+    private static int readVarInt(ByteBuffer buffer) {
+        int value = 0;
+        for (int shift = 0; shift <= VARINT_MAX_SHIFT; shift += VARINT_SHIFT) {
+            int b = buffer.get() & 0xff;
+            value |= (b & VARINT_MASK) << shift;
+            if ((b & VARINT_CONTINUE) == 0) {
+                return value;
+            }
+        }
+        throw new IllegalArgumentException("Broken PersoniumEvent: invalid varint");
+    }
+
+    /**
+     * Growable byte array to write encoded event.
+     */
+    private static final class Writer {
+        private byte[] buf = new byte[INITIAL_CAPACITY];
+        private int count = 0;
+
+        void writeByte(int b) {
+            ensureCapacity(1);
+            buf[count++] = (byte) b;
+        }
+
+        void writeLong(long v) {
+            ensureCapacity(Long.BYTES);
+            for (int i = Long.BYTES - 1; i >= 0; i--) {
+                buf[count++] = (byte) (v >>> (i * Byte.SIZE));
+            }
+        }
+
+        void writeTag(int tag, int length) {
+            writeByte(tag);
+            int v = length;
+            while ((v & ~VARINT_MASK) != 0) {
+                writeByte((v & VARINT_MASK) | VARINT_CONTINUE);
+                v >>>= VARINT_SHIFT;
+            }
+            writeByte(v);
+        }
+
+        void writeString(int tag, String value) {
+            if (value == null) {
+                return;
+            }
+            byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+            writeTag(tag, bytes.length);
+            ensureCapacity(bytes.length);
+            System.arraycopy(bytes, 0, buf, count, bytes.length);
+            count += bytes.length;
+        }
+
+        byte[] toByteArray() {
+            return Arrays.copyOf(buf, count);
+        }
+
+        private void ensureCapacity(int length) {
+            if (count + length > buf.length) {
+                buf = Arrays.copyOf(buf, Math.max(buf.length * 2, count + length));
+            }
+        }
+    }
+}
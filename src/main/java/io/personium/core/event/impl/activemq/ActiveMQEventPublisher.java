@@ -16,15 +16,11 @@
  */
 package io.personium.core.event.impl.activemq;
 
-import javax.jms.JMSException;
 import javax.jms.Connection;
-import javax.jms.ConnectionFactory;
-import javax.jms.Destination;
-import javax.jms.MessageProducer;
-import javax.jms.Session;
-import javax.jms.ObjectMessage;
+import javax.jms.JMSException;
 
-import org.apache.activemq.ActiveMQConnectionFactory;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
 import io.personium.core.PersoniumUnitConfig;
 import io.personium.core.event.EventPublisher;
@@ -32,12 +28,13 @@ import io.personium.core.event.PersoniumEvent;
 
 /**
  * Send event to topic.
+ * Sessions and producers are pooled and shared by the threads that send events.
  */
 public class ActiveMQEventPublisher implements EventPublisher {
+    private static Logger log = LoggerFactory.getLogger(ActiveMQEventPublisher.class);
 
-    private ConnectionFactory factory;
     private Connection connection;
-    private String topicName;
+    private ActiveMQProducerPool pool;
 
     /** Constructor. */
     public ActiveMQEventPublisher() {
@@ -50,14 +47,14 @@ public class ActiveMQEventPublisher implements EventPublisher {
     @Override
     public void open(final String topic) {
         try {
-            factory = new ActiveMQConnectionFactory(PersoniumUnitConfig.getEventBusActiveMQBrokerUrl());
-            connection = factory.createConnection();
+            connection = ActiveMQProducerPool.createConnectionFactory().createConnection();
             connection.start();
+            pool = new ActiveMQProducerPool(connection, topic, true,
+                    PersoniumUnitConfig.getEventBusActiveMQSessionPoolSize());
         } catch (Exception e) {
+            log.error("JMS failed: " + e.getMessage(), e);
             connection = null;
-            e.printStackTrace();
         }
-        this.topicName = topic;
     }
 
     /**
@@ -66,30 +63,14 @@ public class ActiveMQEventPublisher implements EventPublisher {
      */
     @Override
     public void send(final PersoniumEvent event) {
-        Session session = null;
-        MessageProducer producer = null;
+        if (pool == null) {
+            log.info("Event is not sent because JMS connection is not opened.");
+            return;
+        }
         try {
-            session = connection.createSession(false, Session.AUTO_ACKNOWLEDGE);
-            Destination dest = session.createTopic(topicName);
-            producer = session.createProducer(dest);
-
-            ObjectMessage msg = session.createObjectMessage();
-            msg.setObject(event);
-
-            producer.send(msg);
+            pool.send(event);
         } catch (JMSException e) {
-            e.printStackTrace();
-        } finally {
-            try {
-                if (producer != null) {
-                    producer.close();
-                }
-                if (session != null) {
-                    session.close();
-                }
-            } catch (JMSException e) {
-                e.printStackTrace();
-            }
+            log.info("Failed to send event: " + e.getMessage(), e);
         }
     }
 
@@ -98,12 +79,15 @@ public class ActiveMQEventPublisher implements EventPublisher {
      */
     @Override
     public void close() {
+        if (pool != null) {
+            pool.close();
+        }
         try {
             if (connection != null) {
                 connection.close();
             }
         } catch (JMSException e) {
-            e.printStackTrace();
+            log.info("Failed to close JMS connection: " + e.getMessage(), e);
         }
     }
 
@@ -26,7 +26,6 @@ import javax.jms.Destination;
 import javax.jms.JMSException;
 import javax.jms.Message;
 import javax.jms.MessageConsumer;
-import javax.jms.ObjectMessage;
 import javax.jms.Session;
 
 import org.apache.activemq.ActiveMQConnectionFactory;
@@ -78,12 +77,9 @@ public class ActiveMQEventReceiver implements EventReceiver {
 
         try {
             Message m = receiver.receive();
-            if (m instanceof ObjectMessage) {
-                ObjectMessage om = (ObjectMessage) m;
-                PersoniumEvent event = (PersoniumEvent) om.getObject();
-                if (event != null) {
-                    list.add(event);
-                }
+            PersoniumEvent event = ActiveMQMessageConverter.toEvent(m);
+            if (event != null) {
+                list.add(event);
             }
         } catch (JMSException e) {
             Exception exp = e.getLinkedException();
@@ -100,6 +96,11 @@ public class ActiveMQEventReceiver implements EventReceiver {
         return list;
     }
 
+    @Override
+    public void commit() {
+        // messages are acknowledged automatically when received.
+    }
+
     @Override
     public void unsubscribe() {
         try {
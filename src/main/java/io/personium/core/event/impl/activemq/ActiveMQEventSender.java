@@ -16,15 +16,11 @@
  */
 package io.personium.core.event.impl.activemq;
 
-import javax.jms.JMSException;
 import javax.jms.Connection;
-import javax.jms.ConnectionFactory;
-import javax.jms.Destination;
-import javax.jms.MessageProducer;
-import javax.jms.ObjectMessage;
-import javax.jms.Session;
+import javax.jms.JMSException;
 
-import org.apache.activemq.ActiveMQConnectionFactory;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
 import io.personium.core.PersoniumUnitConfig;
 import io.personium.core.event.EventSender;
@@ -32,12 +28,13 @@ import io.personium.core.event.PersoniumEvent;
 
 /**
  * Send event to queue.
+ * Sessions and producers are pooled and shared by the threads that send events.
  */
 public class ActiveMQEventSender implements EventSender {
+    private static Logger log = LoggerFactory.getLogger(ActiveMQEventSender.class);
 
-    private ConnectionFactory factory;
     private Connection connection;
-    private String queueName;
+    private ActiveMQProducerPool pool;
 
     /** Constructor. */
     public ActiveMQEventSender() {
@@ -50,14 +47,14 @@ public class ActiveMQEventSender implements EventSender {
     @Override
     public void open(final String queue) {
         try {
-            factory =
-                    new ActiveMQConnectionFactory(PersoniumUnitConfig.getEventBusActiveMQBrokerUrl());
-            connection = factory.createConnection();
+            connection = ActiveMQProducerPool.createConnectionFactory().createConnection();
             connection.start();
+            pool = new ActiveMQProducerPool(connection, queue, false,
+                    PersoniumUnitConfig.getEventBusActiveMQSessionPoolSize());
         } catch (Exception e) {
+            log.error("JMS failed: " + e.getMessage(), e);
             connection = null;
         }
-        this.queueName = queue;
     }
 
     /**
@@ -66,43 +63,31 @@ public class ActiveMQEventSender implements EventSender {
      */
     @Override
     public void send(final PersoniumEvent event) {
-        Session session = null;
-        MessageProducer sender = null;
+        if (pool == null) {
+            log.info("Event is not sent because JMS connection is not opened.");
+            return;
+        }
         try {
-            session = connection.createSession(false, Session.AUTO_ACKNOWLEDGE);
-            Destination queue = session.createQueue(queueName);
-            sender = session.createProducer(queue);
-
-            ObjectMessage msg = session.createObjectMessage();
-            msg.setObject(event);
-
-            sender.send(msg);
+            pool.send(event);
         } catch (JMSException e) {
-            e.printStackTrace();
-        } finally {
-            try {
-                if (sender != null) {
-                    sender.close();
-                }
-                if (session != null) {
-                    session.close();
-                }
-            } catch (JMSException e) {
-                e.printStackTrace();
-            }
+            log.info("Failed to send event: " + e.getMessage(), e);
         }
     }
 
     /**
      * Close connection.
      */
+    @Override
     public void close() {
+        if (pool != null) {
+            pool.close();
+        }
         try {
             if (connection != null) {
                 connection.close();
             }
         } catch (JMSException e) {
-            e.printStackTrace();
+            log.info("Failed to close JMS connection: " + e.getMessage(), e);
         }
     }
 
@@ -26,7 +26,6 @@ import javax.jms.Destination;
 import javax.jms.JMSException;
 import javax.jms.Message;
 import javax.jms.MessageConsumer;
-import javax.jms.ObjectMessage;
 import javax.jms.Session;
 
 import org.apache.activemq.ActiveMQConnectionFactory;
@@ -77,13 +76,10 @@ public class ActiveMQEventSubscriber implements EventSubscriber {
 
         try {
             Message m = subscriber.receive();
-            if (m instanceof ObjectMessage) {
-                ObjectMessage om = (ObjectMessage) m;
-                PersoniumEvent event = (PersoniumEvent) om.getObject();
-                if (event != null) {
-                    // add event to list
-                    list.add(event);
-                }
+            PersoniumEvent event = ActiveMQMessageConverter.toEvent(m);
+            if (event != null) {
+                // add event to list
+                list.add(event);
             }
         } catch (JMSException e) {
             Exception exp = e.getLinkedException();
@@ -0,0 +1,76 @@
+/**
+ * personium.io
+ * Copyright 2018 FUJITSU LIMITED
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.personium.core.event.impl.activemq;
+
+import javax.jms.BytesMessage;
+import javax.jms.JMSException;
+import javax.jms.Message;
+import javax.jms.ObjectMessage;
+import javax.jms.Session;
+
+import io.personium.core.PersoniumUnitConfig;
+import io.personium.core.event.PersoniumEvent;
+import io.personium.core.event.PersoniumEventCodec;
+
+/**
+ * Convert PersoniumEvent to and from JMS message.
+ * <p>
+ * Both ObjectMessage, which older versions send and read, and BytesMessage encoded by {@link PersoniumEventCodec}
+ * are accepted. Events are sent as ObjectMessage unless io.personium.core.eventbus.binaryFormat is true.
+ * On rolling upgrade, enable it only after all nodes run a version that reads BytesMessage,
+ * since older versions ignore it and the event is lost.
+ */
+final class ActiveMQMessageConverter {
+
+    /** Constructor. */
+    private ActiveMQMessageConverter() {
+    }
+
+    /**
+     * Create message from event.
+     * @param session session
+     * @param event event
+     * @return message
+     * @throws JMSException failed to create message
+     */
+    static Message toMessage(Session session, PersoniumEvent event) throws JMSException {
+        if (!PersoniumUnitConfig.isEventBusBinaryFormat()) {
+            return session.createObjectMessage(event);
+        }
+        BytesMessage msg = session.createBytesMessage();
+        msg.writeBytes(PersoniumEventCodec.encode(event));
+        return msg;
+    }
+
+    /**
+     * Get event from message.
+     * @param message received message
+     * @return event. null if the message does not contain event
+     * @throws JMSException failed to read message
+     */
+    static PersoniumEvent toEvent(Message message) throws JMSException {
+        if (message instanceof BytesMessage) {
+            BytesMessage bm = (BytesMessage) message;
+            byte[] bytes = new byte[(int) bm.getBodyLength()];
+            bm.readBytes(bytes);
+            return PersoniumEventCodec.decode(bytes);
+        } else if (message instanceof ObjectMessage) {
+            return (PersoniumEvent) ((ObjectMessage) message).getObject();
+        }
+        return null;
+    }
+}
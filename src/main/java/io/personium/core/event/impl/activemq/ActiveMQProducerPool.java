@@ -0,0 +1,188 @@
+/**
+ * personium.io
+ * Copyright 2018 FUJITSU LIMITED
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.personium.core.event.impl.activemq;
+
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.Semaphore;
+
+import javax.jms.Connection;
+import javax.jms.DeliveryMode;
+import javax.jms.Destination;
+import javax.jms.JMSException;
+import javax.jms.MessageProducer;
+import javax.jms.Session;
+
+import org.apache.activemq.ActiveMQConnectionFactory;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import io.personium.core.PersoniumUnitConfig;
+import io.personium.core.event.PersoniumEvent;
+
+/**
+ * Thread-safe pool of JMS sessions and producers for one destination.
+ * <p>
+ * JMS sessions must not be used by several threads at once, so each send borrows a session and its producer
+ * from the pool and returns them afterwards. At most {@code size} sessions are created; further senders wait
+ * until one is returned. Whether sends are asynchronous, and how many bytes may be in flight before an
+ * asynchronous send blocks, is configured on the connection factory created by {@link #createConnectionFactory()}.
+ */
+class ActiveMQProducerPool {
+    private static Logger log = LoggerFactory.getLogger(ActiveMQProducerPool.class);
+
+    private final Connection connection;
+    private final String destinationName;
+    private final boolean topic;
+    private final int deliveryMode;
+    private final Semaphore permits;
+    private final BlockingQueue<PooledProducer> idle = new LinkedBlockingQueue<PooledProducer>();
+    private volatile boolean closed = false;
+
+    /**
+     * Session and producer borrowed together.
+     */
+    private static final class PooledProducer {
+        private final Session session;
+        private final MessageProducer producer;
+
+        PooledProducer(Session session, MessageProducer producer) {
+            this.session = session;
+            this.producer = producer;
+        }
+
+        void close() {
+            try {
+                session.close();
+            } catch (JMSException e) {
+                log.debug("Failed to close JMS session: " + e.getMessage());
+            }
+        }
+    }
+
+    /**
+     * Constructor.
+     * @param connection started connection
+     * @param destinationName queue or topic name
+     * @param topic true: destination is topic, false: destination is queue
+     * @param size max number of sessions
+     */
+    ActiveMQProducerPool(Connection connection, String destinationName, boolean topic, int size) {
+        this.connection = connection;
+        this.destinationName = destinationName;
+        this.topic = topic;
+        this.permits = new Semaphore(Math.max(1, size));
+        if (PersoniumUnitConfig.isEventBusActiveMQPersistent()) {
+            this.deliveryMode = DeliveryMode.PERSISTENT;
+        } else {
+            this.deliveryMode = DeliveryMode.NON_PERSISTENT;
+        }
+    }
+
+    /**
+     * Create connection factory for sending event.
+     * @return connection factory
+     */
+    static ActiveMQConnectionFactory createConnectionFactory() {
+        ActiveMQConnectionFactory factory =
+                new ActiveMQConnectionFactory(PersoniumUnitConfig.getEventBusActiveMQBrokerUrl());
+        factory.setUseAsyncSend(PersoniumUnitConfig.isEventBusActiveMQAsyncSend());
+        // Bound the bytes of asynchronous sends that are not yet acknowledged by the broker.
+        factory.setProducerWindowSize(PersoniumUnitConfig.getEventBusActiveMQProducerWindowSize());
+        return factory;
+    }
+
+    /**
+     * Send event.
+     * @param event event to send
+     * @throws JMSException failed to send
+     */
+    void send(PersoniumEvent event) throws JMSException {
+        PooledProducer pooled = borrow();
+        boolean broken = true;
+        try {
+            pooled.producer.send(ActiveMQMessageConverter.toMessage(pooled.session, event));
+            broken = false;
+        } finally {
+            release(pooled, broken);
+        }
+    }
+
+    /**
+     * Close all sessions. Sessions in use are closed when they are returned.
+     */
+    void close() {
+        closed = true;
+        PooledProducer pooled;
+        while ((pooled = idle.poll()) != null) {
+            pooled.close();
+        }
+    }
+
+    /**
+     * Get number of idle sessions.
+     * @return number of idle sessions
+     */
+    int getIdleCount() {
+        return idle.size();
+    }
+
+    private PooledProducer borrow() throws JMSException {
+        if (closed) {
+            throw new JMSException("Producer pool is closed: " + destinationName);
+        }
+        try {
+            permits.acquire();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new JMSException("Interrupted while waiting for a JMS session: " + destinationName);
+        }
+        PooledProducer pooled = idle.poll();
+        if (pooled != null) {
+            return pooled;
+        }
+        try {
+            Session session = connection.createSession(false, Session.AUTO_ACKNOWLEDGE);
+            Destination dest;
+            if (topic) {
+                dest = session.createTopic(destinationName);
+            } else {
+                dest = session.createQueue(destinationName);
+            }
+            MessageProducer producer = session.createProducer(dest);
+            producer.setDeliveryMode(deliveryMode);
+            return new PooledProducer(session, producer);
+        } catch (JMSException | RuntimeException e) {
+            permits.release();
+            throw e;
+        }
+    }
+
+    private void release(PooledProducer pooled, boolean broken) {
+        if (broken || closed) {
+            // A session that failed to send may be unusable.
+            pooled.close();
+        } else {
+            idle.offer(pooled);
+            // close() may have drained the idle sessions between the check above and the offer.
+            if (closed && idle.remove(pooled)) {
+                pooled.close();
+            }
+        }
+        permits.release();
+    }
+}
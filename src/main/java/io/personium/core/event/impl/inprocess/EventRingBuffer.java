@@ -0,0 +1,276 @@
+/**
+ * personium.io
+ * Copyright 2018 FUJITSU LIMITED
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.personium.core.event.impl.inprocess;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.locks.LockSupport;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import io.personium.core.event.PersoniumEvent;
+
+/**
+ * Bounded lock-free ring buffer of PersoniumEvent.
+ * <p>
+ * Any number of threads can put and take events concurrently. Each slot has a sequence number which tells
+ * whether the slot is ready to be written or read at the current position, so that producers and consumers
+ * only contend on the position counters. When the buffer is full, put() behaves according to the overflow policy.
+ */
+final class EventRingBuffer {
+    private static Logger log = LoggerFactory.getLogger(EventRingBuffer.class);
+
+    /**
+     * Behavior when the buffer is full.
+     */
+    enum OverflowPolicy {
+        /** Wait until a slot is freed. The event is dropped if the wait times out. */
+        BLOCK,
+        /** Drop the event to put. */
+        DROP_NEWEST,
+        /** Drop the oldest event in the buffer. */
+        DROP_OLDEST;
+
+        /**
+         * Get policy from configuration value.
+         * @param value block, dropNewest or dropOldest
+         * @return policy
+         */
+        static OverflowPolicy fromValue(String value) {
+            if ("dropNewest".equals(value)) {
+                return DROP_NEWEST;
+            } else if ("dropOldest".equals(value)) {
+                return DROP_OLDEST;
+            }
+            return BLOCK;
+        }
+    }
+
+    private static final int SPIN_TRIES = 100;
+    private static final long MIN_PARK_NANOS = TimeUnit.MICROSECONDS.toNanos(10);
+    private static final long MAX_PARK_NANOS = TimeUnit.MILLISECONDS.toNanos(1);
+
+    private final int mask;
+    private final AtomicReferenceArray<PersoniumEvent> events;
+    private final AtomicLongArray sequences;
+    /** position to put next. */
+    private final AtomicLong tail = new AtomicLong();
+    /** position to take next. */
+    private final AtomicLong head = new AtomicLong();
+
+    private final OverflowPolicy policy;
+    private final long blockTimeout;
+    private final AtomicLong dropped = new AtomicLong();
+
+    /**
+     * Constructor.
+     * @param capacity capacity. rounded up to a power of two
+     * @param policy behavior when the buffer is full
+     * @param blockTimeout milliseconds to wait for a free slot with BLOCK policy
+     */
+    EventRingBuffer(int capacity, OverflowPolicy policy, long blockTimeout) {
+        int size = Integer.highestOneBit(Math.max(2, capacity) - 1) << 1;
+        this.mask = size - 1;
+        this.events = new AtomicReferenceArray<>(size);
+        this.sequences = new AtomicLongArray(size);
+        for (int i = 0; i < size; i++) {
+            sequences.set(i, i);
+        }
+        this.policy = policy;
+        this.blockTimeout = blockTimeout;
+    }
+
+    /**
+     * Put event without waiting.
+     * @param event event
+     * @return false if the buffer is full
+     */
+    boolean offer(PersoniumEvent event) {
+        long pos = tail.get();
+        while (true) {
+            int index = (int) pos & mask;
+            long diff = sequences.get(index) - pos;
+            if (diff == 0) {
+                if (tail.compareAndSet(pos, pos + 1)) {
+                    events.lazySet(index, event);
+                    // publish the slot to consumers
+                    sequences.lazySet(index, pos + 1);
+                    return true;
+                }
+            } else if (diff < 0) {
+                return false;
+            }
+            pos = tail.get();
+        }
+    }
+
+    /**
+     * Take event without waiting.
+     * @return event. null if the buffer is empty
+     */
+    PersoniumEvent poll() {
+        long pos = head.get();
+        while (true) {
+            int index = (int) pos & mask;
+            long diff = sequences.get(index) - (pos + 1);
+            if (diff == 0) {
+                if (head.compareAndSet(pos, pos + 1)) {
+                    PersoniumEvent event = events.get(index);
+                    events.lazySet(index, null);
+                    // release the slot to producers of the next round
+                    sequences.lazySet(index, pos + mask + 1);
+                    return event;
+                }
+            } else if (diff < 0) {
+                return null;
+            }
+            pos = head.get();
+        }
+    }
+
+    /**
+     * Take event, waiting until an event is put.
+     * @param timeout milliseconds to wait
+     * @return event. null if timed out
+     * @throws InterruptedException interrupted while waiting
+     */
+    PersoniumEvent poll(long timeout) throws InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(timeout);
+        int tries = 0;
+        while (true) {
+            PersoniumEvent event = poll();
+            if (event != null) {
+                return event;
+            }
+            if (!backoff(tries++, deadline)) {
+                return null;
+            }
+        }
+    }
+
+    /**
+     * Take events without waiting.
+     * @param list list to add events
+     * @param max max number of events to take
+     * @return number of events taken
+     */
+    int drainTo(List<PersoniumEvent> list, int max) {
+        int count = 0;
+        PersoniumEvent event;
+        while (count < max && (event = poll()) != null) {
+            list.add(event);
+            count++;
+        }
+        return count;
+    }
+
+    /**
+     * Put event according to the overflow policy.
+     * @param event event
+     * @return false if the event or the oldest event is dropped
+     */
+    boolean put(PersoniumEvent event) {
+        if (offer(event)) {
+            return true;
+        }
+        switch (policy) {
+        case DROP_OLDEST:
+            while (!offer(event)) {
+                if (poll() != null) {
+                    drop();
+                }
+            }
+            return false;
+        case DROP_NEWEST:
+            drop();
+            return false;
+        default:
+            try {
+                long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(blockTimeout);
+                int tries = 0;
+                while (backoff(tries++, deadline)) {
+                    if (offer(event)) {
+                        return true;
+                    }
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            drop();
+            return false;
+        }
+    }
+
+    private void drop() {
+        if (dropped.incrementAndGet() == 1) {
+            log.warn("Event ring buffer is full. events are dropped.");
+        }
+    }
+
+    /**
+     * Wait a moment, spinning at first and parking longer as the tries increase.
+     * @param tries number of tries so far
+     * @param deadline System.nanoTime() to give up
+     * @return false if the deadline has passed
+     * @throws InterruptedException interrupted while waiting
+     */
+    private static boolean backoff(int tries, long deadline) throws InterruptedException {
+        if (Thread.interrupted()) {
+            throw new InterruptedException();
+        }
+        long remaining = deadline - System.nanoTime();
+        if (remaining <= 0) {
+            return false;
+        }
+        if (tries < SPIN_TRIES) {
+            Thread.yield();
+        } else {
+            int shift = Math.min(tries - SPIN_TRIES, 7);
+            LockSupport.parkNanos(Math.min(remaining, Math.min(MIN_PARK_NANOS << shift, MAX_PARK_NANOS)));
+        }
+        return true;
+    }
+
+    /**
+     * Get number of events in the buffer.
+     * @return number of events
+     */
+    int size() {
+        long size = tail.get() - head.get();
+        return (int) Math.max(0, Math.min(size, capacity()));
+    }
+
+    /**
+     * Get capacity.
+     * @return capacity
+     */
+    int capacity() {
+        return mask + 1;
+    }
+
+    /**
+     * Get number of events dropped by overflow.
+     * @return number of events
+     */
+    long getDroppedCount() {
+        return dropped.get();
+    }
+}
@@ -0,0 +1,113 @@
+/**
+ * personium.io
+ * Copyright 2018 FUJITSU LIMITED
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.personium.core.event.impl.inprocess;
+
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import io.personium.core.PersoniumUnitConfig;
+import io.personium.core.event.PersoniumEvent;
+
+/**
+ * Queues and topics shared in the JVM.
+ * <p>
+ * A queue is a ring buffer shared by the senders and the receivers, and each event is taken by one receiver.
+ * A topic keeps a ring buffer for each subscriber and an event published is put into all of them.
+ * Events are passed by reference without serialization, so they must not be modified after being sent.
+ */
+final class InProcessBroker {
+
+    private static ConcurrentMap<String, EventRingBuffer> queues = new ConcurrentHashMap<>();
+    private static ConcurrentMap<String, List<EventRingBuffer>> topics = new ConcurrentHashMap<>();
+
+    /** Constructor. */
+    private InProcessBroker() {
+    }
+
+    /**
+     * Create ring buffer from configuration.
+     * @return created ring buffer
+     */
+    static EventRingBuffer createBuffer() {
+        return new EventRingBuffer(PersoniumUnitConfig.getEventBusInProcessBufferSize(),
+                EventRingBuffer.OverflowPolicy.fromValue(PersoniumUnitConfig.getEventBusInProcessOverflowPolicy()),
+                PersoniumUnitConfig.getEventBusInProcessBlockTimeout());
+    }
+
+    /**
+     * Get queue. The queue is created if not exists.
+     * @param queueName queue name
+     * @return ring buffer of the queue
+     */
+    static EventRingBuffer getQueue(String queueName) {
+        EventRingBuffer queue = queues.get(queueName);
+        if (queue == null) {
+            EventRingBuffer created = createBuffer();
+            queue = queues.putIfAbsent(queueName, created);
+            if (queue == null) {
+                queue = created;
+            }
+        }
+        return queue;
+    }
+
+    private static List<EventRingBuffer> getSubscribers(String topicName) {
+        List<EventRingBuffer> subscribers = topics.get(topicName);
+        if (subscribers == null) {
+            List<EventRingBuffer> created = new CopyOnWriteArrayList<>();
+            subscribers = topics.putIfAbsent(topicName, created);
+            if (subscribers == null) {
+                subscribers = created;
+            }
+        }
+        return subscribers;
+    }
+
+    /**
+     * Add subscriber to topic.
+     * @param topicName topic name
+     * @return ring buffer for the subscriber
+     */
+    static EventRingBuffer subscribe(String topicName) {
+        EventRingBuffer buffer = createBuffer();
+        getSubscribers(topicName).add(buffer);
+        return buffer;
+    }
+
+    /**
+     * Remove subscriber from topic.
+     * @param topicName topic name
+     * @param buffer ring buffer for the subscriber
+     */
+    static void unsubscribe(String topicName, EventRingBuffer buffer) {
+        getSubscribers(topicName).remove(buffer);
+    }
+
+    /**
+     * Publish event to all the subscribers of topic.
+     * Events published while no one subscribes are discarded.
+     * @param topicName topic name
+     * @param event event
+     */
+    static void publish(String topicName, PersoniumEvent event) {
+        for (EventRingBuffer buffer : getSubscribers(topicName)) {
+            buffer.put(event);
+        }
+    }
+}
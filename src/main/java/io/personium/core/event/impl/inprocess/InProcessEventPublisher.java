@@ -0,0 +1,52 @@
+/**
+ * personium.io
+ * Copyright 2018 FUJITSU LIMITED
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.personium.core.event.impl.inprocess;
+
+import io.personium.core.event.EventPublisher;
+import io.personium.core.event.PersoniumEvent;
+
+/**
+ * EventPublisher for in-process topic.
+ */
+public class InProcessEventPublisher implements EventPublisher {
+
+    private String topicName;
+
+    /** Constructor. */
+    public InProcessEventPublisher() {
+    }
+
+    @Override
+    public void open(final String topic) {
+        this.topicName = topic;
+    }
+
+    /**
+     * Send event to all the subscribers.
+     * If a subscriber's buffer is full, the event is handled according to the overflow policy.
+     * @param event event to send
+     */
+    @Override
+    public void send(final PersoniumEvent event) {
+        InProcessBroker.publish(topicName, event);
+    }
+
+    @Override
+    public void close() {
+    }
+
+}
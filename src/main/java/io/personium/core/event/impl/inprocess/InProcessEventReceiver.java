@@ -0,0 +1,91 @@
+/**
+ * personium.io
+ * Copyright 2018 FUJITSU LIMITED
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.personium.core.event.impl.inprocess;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import io.personium.core.event.EventReceiver;
+import io.personium.core.event.PersoniumEvent;
+
+/**
+ * EventReceiver for in-process queue.
+ */
+public class InProcessEventReceiver implements EventReceiver {
+    private static Logger log = LoggerFactory.getLogger(InProcessEventReceiver.class);
+
+    /** milliseconds to wait for event. */
+    static final long POLL_TIMEOUT = 1000L;
+    /** max number of events received at once. */
+    static final int MAX_EVENTS = 100;
+
+    private EventRingBuffer queue;
+
+    /**
+     * Constructor.
+     */
+    public InProcessEventReceiver() {
+    }
+
+    @Override
+    public void subscribe(final String queueName) {
+        queue = InProcessBroker.getQueue(queueName);
+    }
+
+    /**
+     * Receive.
+     * @return list of PersoniumEvent received. empty if no event is sent in a while
+     */
+    @Override
+    public List<PersoniumEvent> receive() {
+        return receive(queue);
+    }
+
+    /**
+     * Receive events from ring buffer.
+     * @param buffer ring buffer
+     * @return list of PersoniumEvent received. null if interrupted
+     */
+    static List<PersoniumEvent> receive(EventRingBuffer buffer) {
+        List<PersoniumEvent> list = new ArrayList<>();
+        try {
+            PersoniumEvent event = buffer.poll(POLL_TIMEOUT);
+            if (event != null) {
+                list.add(event);
+                buffer.drainTo(list, MAX_EVENTS - 1);
+            }
+        } catch (InterruptedException e) {
+            log.debug("Interrupted");
+            Thread.currentThread().interrupt();
+            return null;
+        }
+        return list;
+    }
+
+    @Override
+    public void commit() {
+        // events are taken from the queue when received.
+    }
+
+    @Override
+    public void unsubscribe() {
+    }
+
+}
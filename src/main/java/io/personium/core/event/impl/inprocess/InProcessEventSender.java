@@ -0,0 +1,53 @@
+/**
+ * personium.io
+ * Copyright 2018 FUJITSU LIMITED
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.personium.core.event.impl.inprocess;
+
+import io.personium.core.event.EventSender;
+import io.personium.core.event.PersoniumEvent;
+
+/**
+ * EventSender for in-process queue.
+ */
+public class InProcessEventSender implements EventSender {
+
+    private EventRingBuffer queue;
+
+    /** Constructor. */
+    public InProcessEventSender() {
+    }
+
+    @Override
+    public void open(final String queueName) {
+        queue = InProcessBroker.getQueue(queueName);
+    }
+
+    /**
+     * Send event.
+     * If the queue is full, the event is handled according to the overflow policy.
+     * @param event event to send
+     */
+    @Override
+    public void send(final PersoniumEvent event) {
+        queue.put(event);
+    }
+
+    @Override
+    public void close() {
+        // events in the queue are kept for the receivers.
+    }
+
+}
@@ -0,0 +1,58 @@
+/**
+ * personium.io
+ * Copyright 2018 FUJITSU LIMITED
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.personium.core.event.impl.inprocess;
+
+import java.util.List;
+
+import io.personium.core.event.EventSubscriber;
+import io.personium.core.event.PersoniumEvent;
+
+/**
+ * EventSubscriber for in-process topic.
+ */
+public class InProcessEventSubscriber implements EventSubscriber {
+
+    private String topicName;
+    private EventRingBuffer buffer;
+
+    /**
+     * Constructor.
+     */
+    public InProcessEventSubscriber() {
+    }
+
+    @Override
+    public void subscribe(final String topic) {
+        this.topicName = topic;
+        this.buffer = InProcessBroker.subscribe(topic);
+    }
+
+    /**
+     * Receive.
+     * @return list of PersoniumEvent received. empty if no event is published in a while
+     */
+    @Override
+    public List<PersoniumEvent> receive() {
+        return InProcessEventReceiver.receive(buffer);
+    }
+
+    @Override
+    public void unsubscribe() {
+        InProcessBroker.unsubscribe(topicName, buffer);
+    }
+
+}
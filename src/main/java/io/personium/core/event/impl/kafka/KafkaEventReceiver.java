@@ -18,13 +18,18 @@ package io.personium.core.event.impl.kafka;
 
 import java.util.Arrays;
 import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Properties;
 
+import org.apache.kafka.clients.consumer.CommitFailedException;
 import org.apache.kafka.clients.consumer.KafkaConsumer;
 import org.apache.kafka.clients.consumer.ConsumerRecord;
 import org.apache.kafka.clients.consumer.ConsumerRecords;
+import org.apache.kafka.clients.consumer.OffsetAndMetadata;
 import org.apache.kafka.common.KafkaException;
+import org.apache.kafka.common.TopicPartition;
 import org.apache.kafka.common.errors.InterruptException;
 import org.apache.kafka.common.serialization.StringDeserializer;
 
@@ -37,12 +42,19 @@ import io.personium.core.event.PersoniumEvent;
 
 /**
  * EventReceiver for Kafka.
+ * <p>
+ * Each receiver joins the consumer group and is assigned some partitions of the topic, so that
+ * receivers running in parallel share the events while the events of a cell are kept in order.
+ * Offsets are committed only by commit(), that is after the received events are processed.
  */
 public class KafkaEventReceiver implements EventReceiver {
     private static Logger log = LoggerFactory.getLogger(KafkaEventReceiver.class);
 
     private KafkaConsumer<String, PersoniumEvent> consumer;
 
+    /** offsets to commit for the events received last. */
+    private Map<TopicPartition, OffsetAndMetadata> uncommitted = new HashMap<>();
+
     private static final long POLL_TIMEOUT = 1000L;
 
     /**
@@ -62,8 +74,10 @@ public class KafkaEventReceiver implements EventReceiver {
         Properties props = new Properties();
         props.put("bootstrap.servers", servers);
         props.put("group.id", "event_receiver");
-        props.put("enable.auto.commit", "true");
-        props.put("auto.commit.intervals.ms", "1000");
+        props.put("enable.auto.commit", "false");
+        // receive events sent before the first receiver joins the group.
+        props.put("auto.offset.reset", "earliest");
+        props.put("max.poll.records", PersoniumUnitConfig.getEventBusKafkaMaxPollRecords());
         props.put("key.deserializer", StringDeserializer.class);
         props.put("value.deserializer", PersoniumEventDeserializer.class);
 
@@ -83,6 +97,8 @@ public class KafkaEventReceiver implements EventReceiver {
             ConsumerRecords<String, PersoniumEvent> records = consumer.poll(POLL_TIMEOUT);
             for (ConsumerRecord<String, PersoniumEvent> record : records) {
                 list.add(record.value());
+                uncommitted.put(new TopicPartition(record.topic(), record.partition()),
+                        new OffsetAndMetadata(record.offset() + 1));
             }
         } catch (InterruptException e) {
             log.debug("Interrupted");
@@ -95,6 +111,28 @@ public class KafkaEventReceiver implements EventReceiver {
         return list;
     }
 
+    /**
+     * Commit offsets of the events received last.
+     */
+    @Override
+    public void commit() {
+        if (uncommitted.isEmpty()) {
+            return;
+        }
+        try {
+            consumer.commitSync(uncommitted);
+        } catch (CommitFailedException e) {
+            // partitions have been reassigned. the events will be received again by other receiver.
+            log.info("Failed to commit offsets: " + e.getMessage());
+        } catch (InterruptException e) {
+            log.debug("Interrupted");
+        } catch (KafkaException e) {
+            log.error("KafkaException occurred: " + e.getMessage(), e);
+        } finally {
+            uncommitted.clear();
+        }
+    }
+
     /**
      * Unsubscribe.
      */
@@ -51,6 +51,8 @@ public class KafkaEventSender implements EventSender, EventPublisher {
         Properties props = new Properties();
         props.put("bootstrap.servers", servers);
         props.put("acks", "all");
+        // keep the order of events in a partition even if sending is retried.
+        props.put("enable.idempotence", "true");
         props.put("key.serializer", StringSerializer.class);
         props.put("value.serializer", PersoniumEventSerializer.class);
 
@@ -61,11 +63,12 @@ public class KafkaEventSender implements EventSender, EventPublisher {
 
     /**
      * Send event.
+     * Events are keyed by cell id, so that events of the same cell are received in order.
      * @param event event to send
      */
     @Override
     public void send(final PersoniumEvent event) {
-        producer.send(new ProducerRecord<>(topicName, event));
+        producer.send(new ProducerRecord<>(topicName, event.getCellId(), event));
     }
 
     /**
@@ -24,6 +24,7 @@ import org.apache.kafka.common.errors.SerializationException;
 import org.apache.kafka.common.serialization.Deserializer;
 
 import io.personium.core.event.PersoniumEvent;
+import io.personium.core.event.PersoniumEventCodec;
 
 /**
  * Deserializer for PersoniumEvent.
@@ -49,7 +50,12 @@ public class PersoniumEventDeserializer implements Deserializer<PersoniumEvent>
 
         PersoniumEvent event;
         try {
-            event = objectMapper.readValue(bytes, PersoniumEvent.class);
+            if (PersoniumEventCodec.isEncoded(bytes)) {
+                event = PersoniumEventCodec.decode(bytes);
+            } else {
+                // JSON sent by older versions.
+                event = objectMapper.readValue(bytes, PersoniumEvent.class);
+            }
         } catch (Exception e) {
             throw new SerializationException("Error deserializing to PersoniumEvent message", e);
         }
@@ -23,10 +23,15 @@ import com.fasterxml.jackson.databind.ObjectMapper;
 import org.apache.kafka.common.errors.SerializationException;
 import org.apache.kafka.common.serialization.Serializer;
 
+import io.personium.core.PersoniumUnitConfig;
 import io.personium.core.event.PersoniumEvent;
+import io.personium.core.event.PersoniumEventCodec;
 
 /**
- * Event.
+ * Serializer for PersoniumEvent.
+ * Events are written in JSON, which older versions read, unless io.personium.core.eventbus.binaryFormat is true.
+ * Then they are encoded by PersoniumEventCodec, which only {@link PersoniumEventDeserializer} of this version
+ * or later can read.
  */
 public class PersoniumEventSerializer implements Serializer<PersoniumEvent> {
     private final ObjectMapper objectMapper = new ObjectMapper();
@@ -48,6 +53,9 @@ public class PersoniumEventSerializer implements Serializer<PersoniumEvent> {
         }
 
         try {
+            if (PersoniumUnitConfig.isEventBusBinaryFormat()) {
+                return PersoniumEventCodec.encode(event);
+            }
             return objectMapper.writeValueAsBytes(event);
         } catch (Exception e) {
             throw new SerializationException("Error serializing PersoniumEvent message", e);
@@ -46,6 +46,8 @@ public class ArchiveLogCollection {
 
     static Logger log = LoggerFactory.getLogger(ArchiveLogCollection.class);
 
+    private static final String ZIP_EXTENSION = ".zip";
+
     private long created;
     private long updated;
     private String url;
@@ -84,56 +86,82 @@ public class ArchiveLogCollection {
         if (!archiveDir.exists()) {
             return;
         }
+        ArchiveLogIndex index = new ArchiveLogIndex(archiveDir);
         File[] fileList = archiveDir.listFiles();
         for (File file : fileList) {
-            // ファイルの更新日を取得
-            long fileUpdated = file.lastModified();
-
-            // アーカイブログコレクションの更新日はアーカイブファイルの最新の更新日とする
-            if (this.updated < fileUpdated) {
-                this.updated = fileUpdated;
+            String fileName = file.getName();
+            // インデックスファイル等、アーカイブファイル以外は対象外とする
+            if (!fileName.endsWith(ZIP_EXTENSION)) {
+                continue;
             }
 
+            // ファイルの作成日・更新日・サイズを取得
             BasicFileAttributes attr = null;
-            ZipFile zipFile = null;
-            long fileCreated = 0L;
-            long size = 0L;
             try {
-                // ファイルの作成日を取得
                 attr = Files.readAttributes(file.toPath(), BasicFileAttributes.class);
-                fileCreated = attr.creationTime().toMillis();
-
-                // 現状、過去ログ取得APIでは解凍後の状態しか取得できないためファイルの解凍後のサイズを取得する
-                zipFile = new ZipFile(file);
-                Enumeration<? extends ZipEntry> emu = zipFile.entries();
-                while (emu.hasMoreElements()) {
-                    ZipEntry entry = (ZipEntry) emu.nextElement();
-                    if (null == entry) {
-                        log.info("Zip file entry is null.");
-                        throw PersoniumCoreException.Event.ARCHIVE_FILE_CANNOT_OPEN;
-                    }
-                    size += entry.getSize();
-                }
-            } catch (ZipException e) {
-                log.info("ZipException", e);
-                throw PersoniumCoreException.Event.ARCHIVE_FILE_CANNOT_OPEN;
             } catch (IOException e) {
                 log.info("IOException", e);
                 throw PersoniumCoreException.Event.ARCHIVE_FILE_CANNOT_OPEN;
-            } finally {
-                IOUtils.closeQuietly(zipFile);
             }
+            long fileUpdated = attr.lastModifiedTime().toMillis();
+
+            // アーカイブログコレクションの更新日はアーカイブファイルの最新の更新日とする
+            if (this.updated < fileUpdated) {
+                this.updated = fileUpdated;
+            }
+
+            // 更新されていないアーカイブファイルはインデックスに記録された値を使用し、zipを開かない
+            ArchiveLogIndex.Entry entry = index.get(fileName, fileUpdated, attr.size());
+            if (entry == null) {
+                entry = new ArchiveLogIndex.Entry(fileUpdated, attr.size(), attr.creationTime().toMillis(),
+                        getUncompressedSize(file));
+                index.put(fileName, entry);
+            }
+            long fileCreated = entry.getCreated();
+            long size = entry.getSize();
 
             // こちらも現状、過去ログ取得APIでは解凍後の状態しか取得できないため拡張子(.zip)を外したファイル名を取得する
-            String fileName = file.getName();
-            String fileNameWithoutZip = fileName.substring(0, fileName.length() - ".zip".length());
+            String fileNameWithoutZip = fileName.substring(0, fileName.length() - ZIP_EXTENSION.length());
             String fileUrl = this.url + "/" + fileNameWithoutZip;
             ArchiveLogFile archiveFile = new ArchiveLogFile(fileCreated, fileUpdated, size, fileUrl);
 
             this.archivefileList.add(archiveFile);
-            log.info(String.format("filename:%s created:%d updated:%d size:%d", file.getName(), fileCreated,
+            log.debug(String.format("filename:%s created:%d updated:%d size:%d", fileName, fileCreated,
                     fileUpdated, size));
         }
+        index.save();
+    }
+
+    /**
+     * アーカイブファイルの解凍後のサイズを取得する.
+     * 現状、過去ログ取得APIでは解凍後の状態しか取得できないため解凍後のサイズを返却する.
+     * @param file アーカイブファイル
+     * @return 解凍後のサイズ
+     */
+    private long getUncompressedSize(File file) {
+        ZipFile zipFile = null;
+        long size = 0L;
+        try {
+            zipFile = new ZipFile(file);
+            Enumeration<? extends ZipEntry> emu = zipFile.entries();
+            while (emu.hasMoreElements()) {
+                ZipEntry entry = (ZipEntry) emu.nextElement();
+                if (null == entry) {
+                    log.info("Zip file entry is null.");
+                    throw PersoniumCoreException.Event.ARCHIVE_FILE_CANNOT_OPEN;
+                }
+                size += entry.getSize();
+            }
+        } catch (ZipException e) {
+            log.info("ZipException", e);
+            throw PersoniumCoreException.Event.ARCHIVE_FILE_CANNOT_OPEN;
+        } catch (IOException e) {
+            log.info("IOException", e);
+            throw PersoniumCoreException.Event.ARCHIVE_FILE_CANNOT_OPEN;
+        } finally {
+            IOUtils.closeQuietly(zipFile);
+        }
+        return size;
     }
 
     /**
@@ -0,0 +1,227 @@
+/**
+ * personium.io
+ * Copyright 2018 FUJITSU LIMITED
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.personium.core.eventlog;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * アーカイブログファイルのメタデータを保持するサイドカーインデックス.
+ * <p>
+ * アーカイブディレクトリ内の ".index" ファイルに、アーカイブファイルごとの作成日時・解凍後サイズ・
+ * 格納されたレコードの時刻範囲を、更新日時・ファイルサイズとともに記録する.
+ * 更新日時とファイルサイズが一致する場合のみ記録された値を使用し、一致しないファイルはzipを開いて再計算する.
+ */
+class ArchiveLogIndex {
+
+    static Logger log = LoggerFactory.getLogger(ArchiveLogIndex.class);
+
+    /** インデックスファイル名. */
+    static final String INDEX_FILE_NAME = ".index";
+
+    private static final String SEPARATOR = "\t";
+    private static final int COLUMN_COUNT = 7;
+    private static final int COLUMN_UPDATED = 1;
+    private static final int COLUMN_LENGTH = 2;
+    private static final int COLUMN_CREATED = 3;
+    private static final int COLUMN_SIZE = 4;
+    private static final int COLUMN_MIN_TIME = 5;
+    private static final int COLUMN_MAX_TIME = 6;
+
+    private final File indexFile;
+    private final Map<String, Entry> entries = new HashMap<String, Entry>();
+    private final Map<String, Entry> used = new HashMap<String, Entry>();
+    private boolean modified = false;
+
+    /**
+     * アーカイブファイル1件分のメタデータ.
+     */
+    static final class Entry {
+        private final long updated;
+        private final long length;
+        private final long created;
+        private final long size;
+        private final long minTime;
+        private final long maxTime;
+
+        /**
+         * constructor.
+         * レコードの時刻範囲は未取得として扱う.
+         * @param updated 更新日時
+         * @param length ファイルサイズ
+         * @param created 作成日時
+         * @param size 解凍後サイズ
+         */
+        Entry(long updated, long length, long created, long size) {
+            this(updated, length, created, size, -1L, -1L);
+        }
+
+        /**
+         * constructor.
+         * @param updated 更新日時
+         * @param length ファイルサイズ
+         * @param created 作成日時
+         * @param size 解凍後サイズ
+         * @param minTime レコードの最小時刻. 未取得の場合は-1
+         * @param maxTime レコードの最大時刻. 未取得の場合は-1
+         */
+        Entry(long updated, long length, long created, long size, long minTime, long maxTime) {
+            this.updated = updated;
+            this.length = length;
+            this.created = created;
+            this.size = size;
+            this.minTime = minTime;
+            this.maxTime = maxTime;
+        }
+
+        /**
+         * 作成日時を返却.
+         * @return 作成日時
+         */
+        long getCreated() {
+            return created;
+        }
+
+        /**
+         * 解凍後サイズを返却.
+         * @return 解凍後サイズ
+         */
+        long getSize() {
+            return size;
+        }
+
+        /**
+         * レコードの時刻範囲が取得済みかどうかを返却.
+         * @return true: 取得済み
+         */
+        boolean hasTimeRange() {
+            return minTime >= 0 && maxTime >= 0;
+        }
+
+        /**
+         * レコードの最小時刻を返却.
+         * @return 最小時刻
+         */
+        long getMinTime() {
+            return minTime;
+        }
+
+        /**
+         * レコードの最大時刻を返却.
+         * @return 最大時刻
+         */
+        long getMaxTime() {
+            return maxTime;
+        }
+    }
+
+    /**
+     * constructor.
+     * インデックスファイルが存在しない、または読み込めない場合は空のインデックスとして扱う.
+     * @param archiveDir アーカイブディレクトリ
+     */
+    ArchiveLogIndex(File archiveDir) {
+        this.indexFile = new File(archiveDir, INDEX_FILE_NAME);
+        if (!indexFile.exists()) {
+            return;
+        }
+        try (BufferedReader reader = Files.newBufferedReader(indexFile.toPath(), StandardCharsets.UTF_8)) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                String[] columns = line.split(SEPARATOR);
+                if (columns.length != COLUMN_COUNT) {
+                    continue;
+                }
+                entries.put(columns[0], new Entry(Long.parseLong(columns[COLUMN_UPDATED]),
+                        Long.parseLong(columns[COLUMN_LENGTH]), Long.parseLong(columns[COLUMN_CREATED]),
+                        Long.parseLong(columns[COLUMN_SIZE]), Long.parseLong(columns[COLUMN_MIN_TIME]),
+                        Long.parseLong(columns[COLUMN_MAX_TIME])));
+            }
+        } catch (IOException | NumberFormatException e) {
+            // インデックスはキャッシュのため、読み込めない場合は全ファイルを再計算する
+            log.info("Failed to read archive log index. " + indexFile, e);
+            entries.clear();
+        }
+    }
+
+    /**
+     * 更新日時とファイルサイズが一致するメタデータを取得する.
+     * @param fileName アーカイブファイル名
+     * @param updated 更新日時
+     * @param length ファイルサイズ
+     * @return メタデータ. 記録されていない、または一致しない場合はnull
+     */
+    Entry get(String fileName, long updated, long length) {
+        Entry entry = entries.get(fileName);
+        if (entry == null || entry.updated != updated || entry.length != length) {
+            modified = true;
+            return null;
+        }
+        used.put(fileName, entry);
+        return entry;
+    }
+
+    /**
+     * メタデータを記録する.
+     * @param fileName アーカイブファイル名
+     * @param entry メタデータ
+     */
+    void put(String fileName, Entry entry) {
+        used.put(fileName, entry);
+        modified = true;
+    }
+
+    /**
+     * 今回参照したアーカイブファイルのメタデータをインデックスファイルに書き込む.
+     * 削除されたアーカイブファイルのメタデータはインデックスから取り除かれる.
+     */
+    void save() {
+        if (!modified && used.size() == entries.size()) {
+            return;
+        }
+        // 同時に一覧取得された場合に備え、一時ファイルに書き込んでから置き換える
+        File tmpFile = new File(indexFile.getParentFile(),
+                INDEX_FILE_NAME + "." + Thread.currentThread().getId() + ".tmp");
+        try {
+            try (BufferedWriter writer = Files.newBufferedWriter(tmpFile.toPath(), StandardCharsets.UTF_8)) {
+                for (Map.Entry<String, Entry> e : used.entrySet()) {
+                    Entry entry = e.getValue();
+                    writer.write(e.getKey() + SEPARATOR + entry.updated + SEPARATOR + entry.length
+                            + SEPARATOR + entry.created + SEPARATOR + entry.size
+                            + SEPARATOR + entry.minTime + SEPARATOR + entry.maxTime);
+                    writer.newLine();
+                }
+            }
+            Files.move(tmpFile.toPath(), indexFile.toPath(), StandardCopyOption.REPLACE_EXISTING,
+                    StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            // 書き込めない場合は次回の一覧取得時に再計算する
+            log.info("Failed to write archive log index. " + indexFile, e);
+            tmpFile.delete();
+        }
+    }
+}
@@ -0,0 +1,252 @@
+/**
+ * personium.io
+ * Copyright 2018 FUJITSU LIMITED
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.personium.core.eventlog;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.Enumeration;
+import java.util.List;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import io.personium.core.PersoniumCoreException;
+import io.personium.core.event.EventUtils;
+import io.personium.core.model.Cell;
+import io.personium.core.rs.cell.LogResource;
+
+/**
+ * イベントログの検索条件と検索処理.
+ * <p>
+ * アーカイブログ(古い順)、カレントログの順に検索し、時刻範囲・Type/Subject/Objectの前方一致・RequestKeyに
+ * 一致するレコードを返却する. アーカイブログは{@link ArchiveLogIndex}に記録したレコードの時刻範囲で
+ * 対象外のファイルを解凍せずに読み飛ばし、カレントログは{@link EventLogTimeIndex}で開始位置までシークする.
+ */
+public class EventLogQuery {
+
+    static Logger log = LoggerFactory.getLogger(EventLogQuery.class);
+
+    private static final String ZIP_EXTENSION = ".zip";
+
+    private final long from;
+    private final long to;
+    private final String type;
+    private final String subject;
+    private final String object;
+    private final String requestKey;
+    private final int skip;
+    private final int top;
+
+    private int skipped = 0;
+    private List<String> results = new ArrayList<String>();
+
+    /**
+     * constructor.
+     * @param from 開始時刻(エポックミリ秒). 指定なしの場合はnull
+     * @param to 終了時刻(エポックミリ秒). 指定なしの場合はnull
+     * @param type Typeの前方一致条件. 指定なしの場合はnull
+     * @param subject Subjectの前方一致条件. 指定なしの場合はnull
+     * @param object Objectの前方一致条件. 指定なしの場合はnull
+     * @param requestKey RequestKeyの完全一致条件. 指定なしの場合はnull
+     * @param skip 読み飛ばす件数
+     * @param top 取得する最大件数
+     */
+    public EventLogQuery(Long from, Long to, String type, String subject, String object, String requestKey,
+            int skip, int top) {
+        this.from = from == null ? 0L : from;
+        this.to = to == null ? Long.MAX_VALUE : to;
+        this.type = type;
+        this.subject = subject;
+        this.object = object;
+        this.requestKey = requestKey;
+        this.skip = skip;
+        this.top = top;
+    }
+
+    /**
+     * Cellのイベントログを検索する.
+     * @param cell Cell
+     * @return 条件に一致したレコード文字列のリスト
+     */
+    public List<String> execute(Cell cell) {
+        return execute(new File(EventUtils.getEventLogDir(cell.getId(), cell.getOwner()).toString()));
+    }
+
+    /**
+     * イベントログディレクトリ配下のイベントログを検索する.
+     * @param eventLogDir Cellのイベントログディレクトリ
+     * @return 条件に一致したレコード文字列のリスト
+     */
+    List<String> execute(File eventLogDir) {
+        try {
+            searchArchive(new File(eventLogDir, LogResource.ARCHIVE_COLLECTION));
+            searchCurrent(new File(new File(eventLogDir, LogResource.CURRENT_COLLECTION), LogResource.DEFAULT_LOG));
+        } catch (IOException e) {
+            log.info("Failed to read event log : " + e.getMessage());
+            throw PersoniumCoreException.Event.ARCHIVE_FILE_CANNOT_OPEN;
+        }
+        return results;
+    }
+
+    /**
+     * レコードが検索条件に一致するかどうかを判定する.
+     * @param record レコード
+     * @return true: 一致する
+     */
+    boolean matches(EventLogRecord record) {
+        return record.getTime() >= from && record.getTime() <= to
+                && startsWith(record.getType(), type)
+                && startsWith(record.getSubject(), subject)
+                && startsWith(record.getObject(), object)
+                && (requestKey == null || requestKey.equals(record.getRequestKey()));
+    }
+
+    private static boolean startsWith(String value, String prefix) {
+        return prefix == null || (value != null && value.startsWith(prefix));
+    }
+
+    private boolean isFilled() {
+        return results.size() >= top;
+    }
+
+    /**
+     * レコードを検索結果に追加する.
+     * @param raw レコード文字列
+     * @param time レコードの時刻. 取得できない場合は-1
+     */
+    private void accept(String raw, long time) {
+        if (time < from || time > to) {
+            return;
+        }
+        EventLogRecord record = EventLogRecord.parse(raw);
+        if (record == null || !matches(record)) {
+            return;
+        }
+        if (skipped < skip) {
+            skipped++;
+        } else {
+            results.add(raw);
+        }
+    }
+
+    private void searchArchive(File archiveDir) throws IOException {
+        File[] files = archiveDir.listFiles();
+        if (files == null) {
+            return;
+        }
+        // ローテート番号が大きいほど古いため、降順に検索する
+        Arrays.sort(files, new Comparator<File>() {
+            @Override
+            public int compare(File f1, File f2) {
+                return Integer.compare(getRotationNumber(f2), getRotationNumber(f1));
+            }
+        });
+
+        ArchiveLogIndex index = new ArchiveLogIndex(archiveDir);
+        for (File file : files) {
+            String fileName = file.getName();
+            if (!fileName.endsWith(ZIP_EXTENSION)) {
+                continue;
+            }
+            BasicFileAttributes attr = Files.readAttributes(file.toPath(), BasicFileAttributes.class);
+            long updated = attr.lastModifiedTime().toMillis();
+            ArchiveLogIndex.Entry entry = index.get(fileName, updated, attr.size());
+            boolean hasTimeRange = entry != null && entry.hasTimeRange();
+            if (isFilled() || (hasTimeRange && (entry.getMaxTime() < from || entry.getMinTime() > to))) {
+                // 取得済み、または時刻範囲外のアーカイブは解凍しない
+                continue;
+            }
+
+            try (ZipFile zipFile = new ZipFile(file)) {
+                // 圧縮ログファイル内には1ファイルのみ格納されていることを前提としている
+                Enumeration<? extends ZipEntry> zipEntries = zipFile.entries();
+                if (!zipEntries.hasMoreElements()) {
+                    throw PersoniumCoreException.Event.ARCHIVE_FILE_CANNOT_OPEN;
+                }
+                ZipEntry zipEntry = zipEntries.nextElement();
+                long minTime = Long.MAX_VALUE;
+                long maxTime = -1L;
+                try (EventLogReader reader = new EventLogReader(zipFile.getInputStream(zipEntry), 0L)) {
+                    String raw;
+                    while ((raw = reader.readRecord()) != null) {
+                        long time = EventLogRecord.parseTime(raw);
+                        if (time >= 0) {
+                            minTime = Math.min(minTime, time);
+                            maxTime = Math.max(maxTime, time);
+                        }
+                        if (!isFilled()) {
+                            accept(raw, time);
+                        } else if (hasTimeRange) {
+                            break;
+                        }
+                    }
+                }
+                if (!hasTimeRange && maxTime >= 0) {
+                    // 全レコードを読み込んだ場合のみ時刻範囲を記録する
+                    long created = entry != null ? entry.getCreated() : attr.creationTime().toMillis();
+                    index.put(fileName, new ArchiveLogIndex.Entry(updated, attr.size(), created,
+                            zipEntry.getSize(), minTime, maxTime));
+                }
+            }
+        }
+        index.save();
+    }
+
+    private void searchCurrent(File logFile) throws IOException {
+        if (isFilled() || !logFile.isFile()) {
+            return;
+        }
+        EventLogTimeIndex timeIndex = new EventLogTimeIndex(logFile);
+        timeIndex.update();
+        long start = timeIndex.seek(from);
+        long end = timeIndex.end(to);
+        try (FileInputStream fis = new FileInputStream(logFile)) {
+            fis.getChannel().position(start);
+            EventLogReader reader = new EventLogReader(fis, start);
+            String raw;
+            while (!isFilled() && reader.getOffset() < end && (raw = reader.readRecord()) != null) {
+                accept(raw, EventLogRecord.parseTime(raw));
+            }
+        }
+    }
+
+    /**
+     * アーカイブファイル名(default.log.N.zip)からローテート番号を取得する.
+     * @param file アーカイブファイル
+     * @return ローテート番号. 取得できない場合は0
+     */
+    static int getRotationNumber(File file) {
+        String name = file.getName();
+        String prefix = LogResource.DEFAULT_LOG + ".";
+        if (!name.startsWith(prefix) || !name.endsWith(ZIP_EXTENSION)) {
+            return 0;
+        }
+        try {
+            return Integer.parseInt(name.substring(prefix.length(), name.length() - ZIP_EXTENSION.length()));
+        } catch (NumberFormatException e) {
+            return 0;
+        }
+    }
+}
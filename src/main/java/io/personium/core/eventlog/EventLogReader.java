@@ -0,0 +1,86 @@
+/**
+ * personium.io
+ * Copyright 2018 FUJITSU LIMITED
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.personium.core.eventlog;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * イベントログをレコード単位で読み込むクラス.
+ * <p>
+ * 引用符で囲まれた項目内の改行はレコードの区切りとしない. 読み込んだバイト位置を保持するため、
+ * 時刻インデックスのオフセットとして使用できる. 改行で終わっていない末尾のレコードは書き込み途中とみなし、返却しない.
+ */
+class EventLogReader implements Closeable {
+
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    private final InputStream in;
+    private final ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+    private long offset;
+
+    /**
+     * constructor.
+     * @param in 入力ストリーム
+     * @param startOffset 入力ストリームの先頭のバイト位置
+     */
+    EventLogReader(InputStream in, long startOffset) {
+        this.in = new BufferedInputStream(in, BUFFER_SIZE);
+        this.offset = startOffset;
+    }
+
+    /**
+     * 次のレコードを読み込む.
+     * @return レコード文字列(末尾の改行を含まない). 終端に達した場合はnull
+     * @throws IOException 読み込みエラー
+     */
+    String readRecord() throws IOException {
+        buffer.reset();
+        boolean inQuote = false;
+        int c;
+        while ((c = in.read()) != -1) {
+            if (c == '"') {
+                inQuote = !inQuote;
+            } else if (c == '\n' && !inQuote) {
+                offset += buffer.size() + 1;
+                return new String(buffer.toByteArray(), StandardCharsets.UTF_8);
+            }
+            buffer.write(c);
+        }
+        return null;
+    }
+
+    /**
+     * 次に読み込むレコードのバイト位置を返却.
+     * @return バイト位置
+     */
+    long getOffset() {
+        return offset;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void close() throws IOException {
+        in.close();
+    }
+}
@@ -0,0 +1,179 @@
+/**
+ * personium.io
+ * Copyright 2018 FUJITSU LIMITED
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.personium.core.eventlog;
+
+import java.time.Instant;
+import java.time.format.DateTimeParseException;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * イベントログ1レコード分のクラス.
+ * <p>
+ * LogActionが出力するCSV (time,level,requestKey,external,schema,subject,type,object,info) を解析する.
+ */
+public class EventLogRecord {
+
+    private static final int COLUMN_COUNT = 9;
+    private static final int COLUMN_TIME = 0;
+    private static final int COLUMN_REQUEST_KEY = 2;
+    private static final int COLUMN_SUBJECT = 5;
+    private static final int COLUMN_TYPE = 6;
+    private static final int COLUMN_OBJECT = 7;
+
+    private final String raw;
+    private final long time;
+    private final List<String> columns;
+
+    private EventLogRecord(String raw, long time, List<String> columns) {
+        this.raw = raw;
+        this.time = time;
+        this.columns = columns;
+    }
+
+    /**
+     * ログの1レコードを解析する.
+     * @param raw レコード文字列(末尾の改行を含まない)
+     * @return 解析結果. 解析できない場合はnull
+     */
+    public static EventLogRecord parse(String raw) {
+        List<String> columns = splitCsv(raw);
+        if (columns == null || columns.size() != COLUMN_COUNT) {
+            return null;
+        }
+        long time;
+        try {
+            time = Instant.parse(columns.get(COLUMN_TIME)).toEpochMilli();
+        } catch (DateTimeParseException e) {
+            return null;
+        }
+        return new EventLogRecord(raw, time, columns);
+    }
+
+    /**
+     * ログの1レコードから時刻のみを取得する.
+     * @param raw レコード文字列
+     * @return 時刻(エポックミリ秒). 解析できない場合は-1
+     */
+    static long parseTime(String raw) {
+        int idx = raw.indexOf(',');
+        if (idx < 0) {
+            return -1L;
+        }
+        try {
+            return Instant.parse(raw.substring(0, idx)).toEpochMilli();
+        } catch (DateTimeParseException e) {
+            return -1L;
+        }
+    }
+
+    /**
+     * CSVの1行を項目に分割する. 値がnullの項目(引用符なしのnull)はnullとする.
+     * @param line CSV文字列
+     * @return 項目のリスト. 引用符が閉じていない場合はnull
+     */
+    static List<String> splitCsv(String line) {
+        List<String> columns = new ArrayList<String>();
+        StringBuilder sb = new StringBuilder();
+        boolean quoted = false;
+        boolean inQuote = false;
+        int len = line.length();
+        for (int i = 0; i < len; i++) {
+            char c = line.charAt(i);
+            if (inQuote) {
+                if (c != '"') {
+                    sb.append(c);
+                } else if (i + 1 < len && line.charAt(i + 1) == '"') {
+                    sb.append('"');
+                    i++;
+                } else {
+                    inQuote = false;
+                }
+            } else if (c == '"') {
+                inQuote = true;
+                quoted = true;
+            } else if (c == ',') {
+                columns.add(toColumn(sb, quoted));
+                sb.setLength(0);
+                quoted = false;
+            } else {
+                sb.append(c);
+            }
+        }
+        if (inQuote) {
+            return null;
+        }
+        columns.add(toColumn(sb, quoted));
+        return columns;
+    }
+
+    private static String toColumn(StringBuilder sb, boolean quoted) {
+        String value = sb.toString();
+        if (!quoted && "null".equals(value)) {
+            return null;
+        }
+        return value;
+    }
+
+    /**
+     * レコード文字列を返却.
+     * @return レコード文字列
+     */
+    public String getRaw() {
+        return raw;
+    }
+
+    /**
+     * 時刻を返却.
+     * @return 時刻(エポックミリ秒)
+     */
+    public long getTime() {
+        return time;
+    }
+
+    /**
+     * RequestKeyを返却.
+     * @return RequestKey
+     */
+    public String getRequestKey() {
+        return columns.get(COLUMN_REQUEST_KEY);
+    }
+
+    /**
+     * Subjectを返却.
+     * @return Subject
+     */
+    public String getSubject() {
+        return columns.get(COLUMN_SUBJECT);
+    }
+
+    /**
+     * Typeを返却.
+     * @return Type
+     */
+    public String getType() {
+        return columns.get(COLUMN_TYPE);
+    }
+
+    /**
+     * Objectを返却.
+     * @return Object
+     */
+    public String getObject() {
+        return columns.get(COLUMN_OBJECT);
+    }
+}
@@ -0,0 +1,224 @@
+/**
+ * personium.io
+ * Copyright 2018 FUJITSU LIMITED
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.personium.core.eventlog;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * カレントのイベントログの疎な時刻インデックス.
+ * <p>
+ * ログファイルを{@link #BLOCK_SIZE}レコードごとのブロックに区切り、ブロックの先頭バイト位置と
+ * ブロック内の最小・最大時刻をログファイルと同じディレクトリの ".default.log.idx" に記録する.
+ * ログは追記のみのため、インデックスは前回の末尾から差分のみ更新する. ローテートによりファイルが
+ * 置き換わった場合は作り直す.
+ */
+class EventLogTimeIndex {
+
+    static Logger log = LoggerFactory.getLogger(EventLogTimeIndex.class);
+
+    /** 1ブロックあたりのレコード数. */
+    static final int BLOCK_SIZE = 1000;
+
+    private static final String SEPARATOR = "\t";
+    private static final int BLOCK_COLUMN_COUNT = 3;
+    private static final int COLUMN_MIN_TIME = 1;
+    private static final int COLUMN_MAX_TIME = 2;
+
+    private final File logFile;
+    private final File indexFile;
+    private String fileKey;
+    private long indexedLength = 0L;
+    private List<Block> blocks = new ArrayList<Block>();
+
+    /**
+     * Nレコード分のブロック.
+     */
+    static final class Block {
+        private final long offset;
+        private final long minTime;
+        private final long maxTime;
+
+        /**
+         * constructor.
+         * @param offset ブロックの先頭バイト位置
+         * @param minTime ブロック内の最小時刻
+         * @param maxTime ブロック内の最大時刻
+         */
+        Block(long offset, long minTime, long maxTime) {
+            this.offset = offset;
+            this.minTime = minTime;
+            this.maxTime = maxTime;
+        }
+    }
+
+    /**
+     * constructor.
+     * @param logFile カレントのログファイル
+     */
+    EventLogTimeIndex(File logFile) {
+        this.logFile = logFile;
+        this.indexFile = new File(logFile.getParentFile(), "." + logFile.getName() + ".idx");
+    }
+
+    /**
+     * インデックスを読み込み、前回以降に追記されたレコード分を更新する.
+     * インデックスはキャッシュのため、読み書きに失敗した場合はログのみ出力して継続する.
+     */
+    void update() {
+        BasicFileAttributes attr;
+        try {
+            attr = Files.readAttributes(logFile.toPath(), BasicFileAttributes.class);
+        } catch (IOException e) {
+            return;
+        }
+        String currentKey = String.valueOf(attr.fileKey()) + "/" + attr.creationTime().toMillis();
+        load();
+        if (!currentKey.equals(fileKey) || attr.size() < indexedLength) {
+            // ローテートされた
+            fileKey = currentKey;
+            indexedLength = 0L;
+            blocks = new ArrayList<Block>();
+        }
+        // 1レコードは1バイト以上のため、追記分がBLOCK_SIZEバイト未満であれば新たなブロックはない
+        if (attr.size() - indexedLength < BLOCK_SIZE) {
+            return;
+        }
+
+        boolean modified = false;
+        try (FileInputStream fis = new FileInputStream(logFile)) {
+            fis.getChannel().position(indexedLength);
+            EventLogReader reader = new EventLogReader(fis, indexedLength);
+            long blockOffset = indexedLength;
+            long minTime = Long.MAX_VALUE;
+            long maxTime = Long.MIN_VALUE;
+            int count = 0;
+            String raw;
+            while ((raw = reader.readRecord()) != null) {
+                long time = EventLogRecord.parseTime(raw);
+                if (time >= 0) {
+                    minTime = Math.min(minTime, time);
+                    maxTime = Math.max(maxTime, time);
+                }
+                count++;
+                if (count == BLOCK_SIZE) {
+                    blocks.add(new Block(blockOffset, minTime, maxTime));
+                    blockOffset = reader.getOffset();
+                    indexedLength = blockOffset;
+                    minTime = Long.MAX_VALUE;
+                    maxTime = Long.MIN_VALUE;
+                    count = 0;
+                    modified = true;
+                }
+            }
+        } catch (IOException e) {
+            log.info("Failed to read event log. " + logFile, e);
+        }
+        if (modified) {
+            save();
+        }
+    }
+
+    /**
+     * 指定時刻以降のレコードを含む可能性がある最初のバイト位置を返却する.
+     * @param from 開始時刻(エポックミリ秒)
+     * @return バイト位置
+     */
+    long seek(long from) {
+        for (Block block : blocks) {
+            if (block.maxTime >= from) {
+                return block.offset;
+            }
+        }
+        return indexedLength;
+    }
+
+    /**
+     * 指定時刻以前のレコードを含まない最初のバイト位置を返却する.
+     * このバイト位置以降は読み込む必要がない.
+     * @param to 終了時刻(エポックミリ秒)
+     * @return バイト位置. 該当するブロックがない場合はLong.MAX_VALUE
+     */
+    long end(long to) {
+        for (Block block : blocks) {
+            if (block.minTime > to && block.minTime != Long.MAX_VALUE) {
+                return block.offset;
+            }
+        }
+        return Long.MAX_VALUE;
+    }
+
+    private void load() {
+        if (!indexFile.exists()) {
+            return;
+        }
+        try (BufferedReader reader = Files.newBufferedReader(indexFile.toPath(), StandardCharsets.UTF_8)) {
+            String header = reader.readLine();
+            String[] headerColumns = header == null ? new String[0] : header.split(SEPARATOR);
+            if (headerColumns.length != 2) {
+                return;
+            }
+            List<Block> loaded = new ArrayList<Block>();
+            String line;
+            while ((line = reader.readLine()) != null) {
+                String[] columns = line.split(SEPARATOR);
+                if (columns.length != BLOCK_COLUMN_COUNT) {
+                    return;
+                }
+                loaded.add(new Block(Long.parseLong(columns[0]), Long.parseLong(columns[COLUMN_MIN_TIME]),
+                        Long.parseLong(columns[COLUMN_MAX_TIME])));
+            }
+            fileKey = headerColumns[0];
+            indexedLength = Long.parseLong(headerColumns[1]);
+            blocks = loaded;
+        } catch (IOException | NumberFormatException e) {
+            log.info("Failed to read event log index. " + indexFile, e);
+        }
+    }
+
+    private void save() {
+        // 同時に検索された場合に備え、一時ファイルに書き込んでから置き換える
+        File tmpFile = new File(indexFile.getPath() + "." + Thread.currentThread().getId() + ".tmp");
+        try {
+            try (BufferedWriter writer = Files.newBufferedWriter(tmpFile.toPath(), StandardCharsets.UTF_8)) {
+                writer.write(fileKey + SEPARATOR + indexedLength);
+                writer.newLine();
+                for (Block block : blocks) {
+                    writer.write(block.offset + SEPARATOR + block.minTime + SEPARATOR + block.maxTime);
+                    writer.newLine();
+                }
+            }
+            Files.move(tmpFile.toPath(), indexFile.toPath(), StandardCopyOption.REPLACE_EXISTING,
+                    StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            log.info("Failed to write event log index. " + indexFile, e);
+            tmpFile.delete();
+        }
+    }
+}
@@ -0,0 +1,528 @@
+/**
+ * personium.io
+ * Copyright 2018 FUJITSU LIMITED
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.personium.core.eventlog;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.UnknownHostException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+
+import io.personium.core.PersoniumUnitConfig;
+import io.personium.core.event.EventUtils;
+import io.personium.core.rs.cell.LogResource;
+
+/**
+ * イベントログの非同期書き込み.
+ * <p>
+ * イベントログはCellごとのチャネルにバッファし、書き込みスレッドが一定間隔でまとめて書き込む.
+ * 1回の書き込みではCellごとに1回だけwriteを発行し、開いたままにするファイル数はLRUで上限を設ける.
+ * カレントログが上限サイズに達した場合はアーカイブディレクトリの一時ファイルに移動し、
+ * 圧縮とアーカイブの世代のずらしはローテート用スレッドで行う.
+ * 一時ファイルはノードごとに一意な名前とし、アーカイブを終える前に停止したノードの一時ファイルは
+ * そのノードの次回の{@link #start()}でアーカイブする.
+ * バッファ済みのサイズが上限に達した場合は、呼び出し元のスレッドで書き込みを行う.
+ * {@link #start()}が呼ばれていない、または書き込み間隔が0以下の場合は同期的に書き込む.
+ */
+public final class EventLogWriter {
+
+    private static Logger log = LoggerFactory.getLogger(EventLogWriter.class);
+
+    /** ローテート中のカレントログの接頭辞. アーカイブとして一覧に表示されないよう"."で始める. */
+    static final String ROTATING_PREFIX = "." + LogResource.DEFAULT_LOG + ".rotating.";
+
+    private static final String ZIP_EXTENSION = ".zip";
+    private static final String TMP_EXTENSION = ".tmp";
+    private static final byte[] LINE_SEPARATOR = System.lineSeparator().getBytes(StandardCharsets.UTF_8);
+    private static final int BUFFER_SIZE = 8192;
+
+    /** 書き込みを待っているイベントログ. key: イベントログディレクトリ. */
+    private static ConcurrentMap<String, Channel> channels = new ConcurrentHashMap<String, Channel>();
+    private static AtomicLong pendingBytes = new AtomicLong();
+    /** このノードのローテート中のカレントログの接頭辞. 共有ストレージ上で他のノードと衝突しないようホスト名を含める. */
+    private static final String NODE_ROTATING_PREFIX = ROTATING_PREFIX + getNodeName() + ".";
+
+    /** ファイルへの書き込みの排他. openFilesもこのロックで保護する. */
+    private static final Object WRITE_LOCK = new Object();
+    private static OpenFiles openFiles = new OpenFiles(PersoniumUnitConfig.getEventLogMaxOpenFiles());
+
+    private static ScheduledExecutorService scheduler;
+    private static ExecutorService rotator;
+    private static long maxFileSize = PersoniumUnitConfig.getEventLogMaxFileSize();
+    private static int maxArchives = PersoniumUnitConfig.getEventLogMaxArchives();
+    private static long maxPendingBytes = PersoniumUnitConfig.getEventLogMaxPendingBytes();
+
+    private EventLogWriter() {
+    }
+
+    /**
+     * 1Cell分の書き込み待ちのイベントログ.
+     */
+    static final class Channel {
+        private final File dir;
+        private List<byte[]> lines = new ArrayList<byte[]>();
+        private boolean retired = false;
+
+        Channel(File dir) {
+            this.dir = dir;
+        }
+    }
+
+    /**
+     * 開いているカレントログ.
+     */
+    static final class OpenFile {
+        private final File file;
+        private final OutputStream out;
+        private long size;
+
+        OpenFile(File file) throws IOException {
+            this.file = file;
+            this.out = new FileOutputStream(file, true);
+            this.size = file.length();
+        }
+
+        void close() {
+            try {
+                out.close();
+            } catch (IOException e) {
+                log.info("Failed to close event log. " + file, e);
+            }
+        }
+    }
+
+    /**
+     * 開いているカレントログのLRU. 上限を超えた場合は最も長く書き込んでいないファイルを閉じる.
+     */
+    @SuppressWarnings("serial")
+    static final class OpenFiles extends LinkedHashMap<String, OpenFile> {
+        private final int maxOpenFiles;
+
+        OpenFiles(int maxOpenFiles) {
+            super(16, 0.75f, true);
+            this.maxOpenFiles = Math.max(1, maxOpenFiles);
+        }
+
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, OpenFile> eldest) {
+            if (size() > maxOpenFiles) {
+                eldest.getValue().close();
+                return true;
+            }
+            return false;
+        }
+
+        void closeAll() {
+            for (OpenFile openFile : values()) {
+                openFile.close();
+            }
+            clear();
+        }
+    }
+
+    /**
+     * 非同期書き込みを開始する.
+     */
+    public static synchronized void start() {
+        start(PersoniumUnitConfig.getEventLogFlushInterval(), PersoniumUnitConfig.getEventLogMaxOpenFiles(),
+                PersoniumUnitConfig.getEventLogMaxFileSize(), PersoniumUnitConfig.getEventLogMaxArchives(),
+                PersoniumUnitConfig.getEventLogMaxPendingBytes());
+    }
+
+    /**
+     * 非同期書き込みを開始する.
+     * @param interval 書き込み間隔(ms). 0以下の場合は同期的に書き込む
+     * @param maxOpenFiles 開いたままにするカレントログの最大数
+     * @param fileSize カレントログをローテートするサイズ(byte)
+     * @param archives 保持するアーカイブの世代数
+     * @param pendingSize バッファする最大サイズ(byte)
+     */
+    static synchronized void start(long interval, int maxOpenFiles, long fileSize, int archives, long pendingSize) {
+        if (scheduler != null) {
+            return;
+        }
+        synchronized (WRITE_LOCK) {
+            openFiles.closeAll();
+            openFiles = new OpenFiles(maxOpenFiles);
+            maxFileSize = fileSize;
+            maxArchives = archives;
+            maxPendingBytes = pendingSize;
+        }
+        // 前回の停止前にアーカイブを終えていないファイルを、新たにローテートするファイルより先にアーカイブする
+        final File root = new File(PersoniumUnitConfig.getEventLogCurrentDir());
+        Runnable recovery = new Runnable() {
+            @Override
+            public void run() {
+                recover(root, archives);
+            }
+        };
+        if (interval <= 0) {
+            recovery.run();
+            return;
+        }
+        rotator = Executors.newSingleThreadExecutor(
+                new ThreadFactoryBuilder().setNameFormat("event-log-rotator-%d").setDaemon(true).build());
+        rotator.execute(recovery);
+        scheduler = Executors.newSingleThreadScheduledExecutor(
+                new ThreadFactoryBuilder().setNameFormat("event-log-writer-%d").setDaemon(true).build());
+        scheduler.scheduleWithFixedDelay(new Runnable() {
+            @Override
+            public void run() {
+                flush();
+            }
+        }, interval, interval, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * 非同期書き込みを停止し、バッファ済みのイベントログを書き込む.
+     */
+    public static synchronized void stop() {
+        if (scheduler == null) {
+            return;
+        }
+        ScheduledExecutorService s = scheduler;
+        ExecutorService r = rotator;
+        // 以降のイベントログは同期的に書き込む
+        scheduler = null;
+        rotator = null;
+        s.shutdown();
+        try {
+            if (!s.awaitTermination(1, TimeUnit.SECONDS)) {
+                s.shutdownNow();
+            }
+        } catch (InterruptedException e) {
+            s.shutdownNow();
+        }
+        flush();
+        synchronized (WRITE_LOCK) {
+            openFiles.closeAll();
+        }
+        // ローテート中のファイルは圧縮を終えてから停止する
+        r.shutdown();
+        try {
+            if (!r.awaitTermination(1, TimeUnit.MINUTES)) {
+                r.shutdownNow();
+            }
+        } catch (InterruptedException e) {
+            r.shutdownNow();
+        }
+    }
+
+    /**
+     * Cellのイベントログに1レコードを追加する.
+     * @param cellId CellのID
+     * @param owner Cellのオーナー
+     * @param record レコード文字列(改行を含まない)
+     */
+    public static void append(String cellId, String owner, String record) {
+        append(new File(EventUtils.getEventLogDir(cellId, owner).toString()), record);
+    }
+
+    /**
+     * イベントログディレクトリのカレントログに1レコードを追加する.
+     * @param dir イベントログディレクトリ
+     * @param record レコード文字列(改行を含まない)
+     */
+    static void append(File dir, String record) {
+        byte[] bytes = record.getBytes(StandardCharsets.UTF_8);
+        String key = dir.getPath();
+        while (true) {
+            Channel channel = channels.get(key);
+            if (channel == null) {
+                channel = new Channel(dir);
+                Channel current = channels.putIfAbsent(key, channel);
+                if (current != null) {
+                    channel = current;
+                }
+            }
+            synchronized (channel) {
+                // 書き込みスレッドが破棄したチャネルには追加しない
+                if (channel.retired) {
+                    continue;
+                }
+                channel.lines.add(bytes);
+            }
+            break;
+        }
+        long pending = pendingBytes.addAndGet(bytes.length + LINE_SEPARATOR.length);
+        if (scheduler == null || pending >= maxPendingBytes) {
+            flush();
+        }
+    }
+
+    /**
+     * バッファ済みのすべてのイベントログを書き込む.
+     * 書き込むものがなかったチャネルは破棄する.
+     */
+    static void flush() {
+        synchronized (WRITE_LOCK) {
+            Iterator<Map.Entry<String, Channel>> it = channels.entrySet().iterator();
+            while (it.hasNext()) {
+                Map.Entry<String, Channel> entry = it.next();
+                Channel channel = entry.getValue();
+                List<byte[]> lines;
+                synchronized (channel) {
+                    lines = channel.lines;
+                    if (lines.isEmpty()) {
+                        channel.retired = true;
+                        it.remove();
+                        continue;
+                    }
+                    channel.lines = new ArrayList<byte[]>();
+                }
+                write(entry.getKey(), channel.dir, lines);
+            }
+        }
+    }
+
+    /**
+     * 1Cell分のイベントログをカレントログに書き込み、上限サイズに達した場合はローテートする.
+     * @param key イベントログディレクトリのパス
+     * @param dir イベントログディレクトリ
+     * @param lines レコード
+     */
+    private static void write(String key, File dir, List<byte[]> lines) {
+        ByteArrayOutputStream buffer = new ByteArrayOutputStream(BUFFER_SIZE);
+        for (byte[] line : lines) {
+            buffer.write(line, 0, line.length);
+            buffer.write(LINE_SEPARATOR, 0, LINE_SEPARATOR.length);
+        }
+        pendingBytes.addAndGet(-buffer.size());
+        OpenFile openFile = openFiles.get(key);
+        try {
+            if (openFile == null) {
+                File currentDir = new File(dir, LogResource.CURRENT_COLLECTION);
+                if (!currentDir.isDirectory() && !currentDir.mkdirs() && !currentDir.isDirectory()) {
+                    throw new IOException("Failed to create directory. " + currentDir);
+                }
+                openFile = new OpenFile(new File(currentDir, LogResource.DEFAULT_LOG));
+                openFiles.put(key, openFile);
+            }
+            buffer.writeTo(openFile.out);
+            openFile.size += buffer.size();
+        } catch (IOException e) {
+            log.warn("Failed to write event log. " + dir + " " + lines.size() + " records are lost.", e);
+            if (openFile != null) {
+                openFiles.remove(key);
+                openFile.close();
+            }
+            return;
+        }
+        if (openFile.size >= maxFileSize) {
+            openFiles.remove(key);
+            openFile.close();
+            rotate(dir, openFile.file);
+        }
+    }
+
+    /**
+     * カレントログをアーカイブディレクトリの一時ファイルに移動し、圧縮を依頼する.
+     * @param dir イベントログディレクトリ
+     * @param file カレントログ
+     */
+    private static void rotate(File dir, File file) {
+        final File archiveDir = new File(dir, LogResource.ARCHIVE_COLLECTION);
+        Path rotatingPath = null;
+        try {
+            if (!archiveDir.isDirectory() && !archiveDir.mkdirs() && !archiveDir.isDirectory()) {
+                throw new IOException("Failed to create directory. " + archiveDir);
+            }
+            // 再起動前に残した一時ファイルとも衝突しないよう、一意な名前のファイルを作成してから置き換える
+            rotatingPath = Files.createTempFile(archiveDir.toPath(), NODE_ROTATING_PREFIX, "");
+            Files.move(file.toPath(), rotatingPath, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            // 次回の書き込みで再度ローテートする
+            log.warn("Failed to rotate event log. " + file, e);
+            if (rotatingPath != null && !rotatingPath.toFile().delete()) {
+                log.info("Failed to delete rotating file. " + rotatingPath);
+            }
+            return;
+        }
+        final File rotating = rotatingPath.toFile();
+        final int archives = maxArchives;
+        Runnable task = new Runnable() {
+            @Override
+            public void run() {
+                archive(archiveDir, rotating, archives);
+            }
+        };
+        ExecutorService r = rotator;
+        if (r != null) {
+            try {
+                r.execute(task);
+                return;
+            } catch (RuntimeException e) {
+                log.debug("Event log rotator is stopped.", e);
+            }
+        }
+        task.run();
+    }
+
+    /**
+     * ローテートしたカレントログを圧縮し、アーカイブの世代をずらす.
+     * 圧縮したファイルは"default.log.1.zip"となり、保持する世代数を超えたアーカイブは削除する.
+     * @param archiveDir アーカイブディレクトリ
+     * @param rotating ローテートしたカレントログ
+     * @param archives 保持するアーカイブの世代数
+     */
+    static void archive(File archiveDir, File rotating, int archives) {
+        File zipping = new File(archiveDir, rotating.getName() + ZIP_EXTENSION + TMP_EXTENSION);
+        try {
+            try (InputStream in = new FileInputStream(rotating);
+                    ZipOutputStream out = new ZipOutputStream(new FileOutputStream(zipping))) {
+                out.putNextEntry(new ZipEntry(LogResource.DEFAULT_LOG));
+                byte[] buf = new byte[BUFFER_SIZE];
+                int len;
+                while ((len = in.read(buf)) >= 0) {
+                    out.write(buf, 0, len);
+                }
+                out.closeEntry();
+            }
+            Files.deleteIfExists(getArchiveFile(archiveDir, archives).toPath());
+            for (int i = archives - 1; i >= 1; i--) {
+                File from = getArchiveFile(archiveDir, i);
+                if (from.exists()) {
+                    Files.move(from.toPath(), getArchiveFile(archiveDir, i + 1).toPath(),
+                            StandardCopyOption.REPLACE_EXISTING);
+                }
+            }
+            Files.move(zipping.toPath(), getArchiveFile(archiveDir, 1).toPath(),
+                    StandardCopyOption.REPLACE_EXISTING);
+            Files.delete(rotating.toPath());
+        } catch (IOException e) {
+            // ローテートしたファイルはCell削除時に削除される
+            log.warn("Failed to archive event log. " + rotating, e);
+            zipping.delete();
+        }
+    }
+
+    /**
+     * このノードが前回の停止前にアーカイブを終えていないローテート中のファイルをアーカイブする.
+     * 圧縮途中のファイルは削除し、ローテート中のファイルは古いものから順にアーカイブする.
+     * @param root イベントログのルートディレクトリ
+     * @param archives 保持するアーカイブの世代数
+     */
+    static void recover(File root, final int archives) {
+        if (!root.isDirectory()) {
+            return;
+        }
+        try {
+            Files.walkFileTree(root.toPath(), new SimpleFileVisitor<Path>() {
+                @Override
+                public FileVisitResult preVisitDirectory(Path dir, BasicFileAttributes attrs) {
+                    if (LogResource.CURRENT_COLLECTION.equals(dir.getFileName().toString())) {
+                        return FileVisitResult.SKIP_SUBTREE;
+                    }
+                    if (LogResource.ARCHIVE_COLLECTION.equals(dir.getFileName().toString())) {
+                        recoverArchiveDir(dir.toFile(), archives);
+                        return FileVisitResult.SKIP_SUBTREE;
+                    }
+                    return FileVisitResult.CONTINUE;
+                }
+
+                @Override
+                public FileVisitResult visitFileFailed(Path file, IOException e) {
+                    log.info("Failed to read event log directory. " + file, e);
+                    return FileVisitResult.CONTINUE;
+                }
+            });
+        } catch (IOException e) {
+            log.warn("Failed to recover rotating event logs. " + root, e);
+        }
+    }
+
+    private static void recoverArchiveDir(File archiveDir, int archives) {
+        File[] files = archiveDir.listFiles();
+        if (files == null) {
+            return;
+        }
+        List<File> rotatings = new ArrayList<File>();
+        for (File file : files) {
+            if (!file.getName().startsWith(NODE_ROTATING_PREFIX)) {
+                continue;
+            }
+            if (file.getName().endsWith(ZIP_EXTENSION + TMP_EXTENSION)) {
+                if (!file.delete()) {
+                    log.info("Failed to delete event log being archived. " + file);
+                }
+            } else {
+                rotatings.add(file);
+            }
+        }
+        Collections.sort(rotatings, new Comparator<File>() {
+            @Override
+            public int compare(File f1, File f2) {
+                return Long.compare(f1.lastModified(), f2.lastModified());
+            }
+        });
+        for (File rotating : rotatings) {
+            log.info("Archive event log left by the previous run. " + rotating);
+            archive(archiveDir, rotating, archives);
+        }
+    }
+
+    private static String getNodeName() {
+        try {
+            return InetAddress.getLocalHost().getHostName();
+        } catch (UnknownHostException e) {
+            log.warn("Failed to get host name. Use localhost as the node name of event log rotation.", e);
+            return "localhost";
+        }
+    }
+
+    /**
+     * アーカイブファイルを取得する.
+     * @param archiveDir アーカイブディレクトリ
+     * @param number ローテート番号
+     * @return アーカイブファイル
+     */
+    static File getArchiveFile(File archiveDir, int number) {
+        return new File(archiveDir, LogResource.DEFAULT_LOG + "." + number + ZIP_EXTENSION);
+    }
+}
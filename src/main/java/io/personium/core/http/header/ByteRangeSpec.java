@@ -133,6 +133,25 @@ public class ByteRangeSpec {
         return this.getLastBytePos() + 1 - this.getFirstBytePos();
     }
 
+    /**
+     * 指定されたbyte-range-specと範囲が重なる、または隣接しているかどうかを返す.
+     * @param other byte-range-spec
+     * @return true 重なる、または隣接している
+     */
+    boolean isMergeable(final ByteRangeSpec other) {
+        return this.firstBytePos <= other.lastBytePos + 1 && other.firstBytePos <= this.lastBytePos + 1;
+    }
+
+    /**
+     * 指定されたbyte-range-specと結合した範囲を返す.
+     * @param other 重なる、または隣接しているbyte-range-spec
+     * @return 結合したbyte-range-spec
+     */
+    ByteRangeSpec merge(final ByteRangeSpec other) {
+        return new ByteRangeSpec(Math.min(this.firstBytePos, other.firstBytePos),
+                Math.max(this.lastBytePos, other.lastBytePos), this.entitySize);
+    }
+
     /**
      * Rangeの値をContent-Rangeヘッダの値に整形.
      * @return Content-Rangeヘッダの値
@@ -17,6 +17,8 @@
 package io.personium.core.http.header;
 
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
 import java.util.List;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
@@ -150,4 +152,29 @@ public class RangeHeaderHandler {
     public List<ByteRangeSpec> getByteRangeSpecList() {
         return this.byteRangeSpecList;
     }
+
+    /**
+     * 範囲が重なる、または隣接しているbyte-range-specを結合したリストを返却.
+     * ファイルを先頭から1回読むだけで返却できるよう、開始位置の昇順に並べる.
+     * @return 結合したByteRangeSpecのリスト
+     */
+    public List<ByteRangeSpec> getCoalescedByteRangeSpecList() {
+        List<ByteRangeSpec> sorted = new ArrayList<ByteRangeSpec>(this.byteRangeSpecList);
+        Collections.sort(sorted, new Comparator<ByteRangeSpec>() {
+            @Override
+            public int compare(ByteRangeSpec brs1, ByteRangeSpec brs2) {
+                return Long.compare(brs1.getFirstBytePos(), brs2.getFirstBytePos());
+            }
+        });
+        List<ByteRangeSpec> coalesced = new ArrayList<ByteRangeSpec>();
+        for (ByteRangeSpec brs : sorted) {
+            int lastIndex = coalesced.size() - 1;
+            if (lastIndex >= 0 && coalesced.get(lastIndex).isMergeable(brs)) {
+                coalesced.set(lastIndex, coalesced.get(lastIndex).merge(brs));
+            } else {
+                coalesced.add(brs);
+            }
+        }
+        return coalesced;
+    }
 }
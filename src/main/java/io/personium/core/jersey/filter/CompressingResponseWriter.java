@@ -0,0 +1,281 @@
+/**
+ * personium.io
+ * Copyright 2018 FUJITSU LIMITED
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.personium.core.jersey.filter;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.zip.GZIPOutputStream;
+
+import javax.ws.rs.core.MultivaluedMap;
+
+import org.apache.http.HttpHeaders;
+import org.apache.http.HttpStatus;
+
+import com.sun.jersey.spi.container.ContainerResponse;
+import com.sun.jersey.spi.container.ContainerResponseWriter;
+
+import io.personium.core.PersoniumUnitConfig;
+
+/**
+ * レスポンスボディをgzip圧縮して書き込むContainerResponseWriter.
+ * <p>
+ * 圧縮対象のメディアタイプで、サイズが閾値以上のレスポンスのみ圧縮する. サイズが不明なレスポンスは
+ * 閾値までをメモリ上に保持し、閾値を超えた時点で圧縮を開始する. 閾値に達しないまま書き込みが終わった場合は
+ * 圧縮せずにそのまま書き込む. 既にContent-Encodingが指定されたレスポンスと、Range指定による部分レスポンスは
+ * 圧縮しない.
+ * 圧縮したレスポンスのボディは元の表現とバイト列が異なるため、強いETagは弱いETagに変更する.
+ * If-Match/If-None-Matchは弱いETagも受け付けるため、クライアントは返却されたETagをそのまま使用できる.
+ */
+class CompressingResponseWriter implements ContainerResponseWriter {
+
+    /** gzip. */
+    static final String GZIP = "gzip";
+
+    private static final String X_GZIP = "x-gzip";
+    private static final String ANY = "*";
+    private static final String QUALITY_PARAM = "q=";
+    private static final String CONTENT_TYPE_SUFFIX_XML = "+xml";
+    private static final String CONTENT_TYPE_SUFFIX_JSON = "+json";
+    private static final String CONTENT_TYPE_WILDCARD = "/*";
+    private static final String WEAK_ETAG_PREFIX = "W/";
+
+    private final ContainerResponseWriter writer;
+    private final int minSize;
+    private ContainerResponse response;
+    private OutputStream out;
+    private ThresholdOutputStream thresholdOut;
+    private GZIPOutputStream gzipOut;
+
+    /**
+     * constructor.
+     * @param writer 書き込み先のContainerResponseWriter
+     * @param minSize 圧縮するレスポンスボディの最小サイズ(byte)
+     */
+    CompressingResponseWriter(ContainerResponseWriter writer, int minSize) {
+        this.writer = writer;
+        this.minSize = minSize;
+    }
+
+    @Override
+    public OutputStream writeStatusAndHeaders(long contentLength, ContainerResponse containerResponse)
+            throws IOException {
+        this.response = containerResponse;
+        MultivaluedMap<String, Object> headers = containerResponse.getHttpHeaders();
+        if (!isCompressible(containerResponse)) {
+            out = writer.writeStatusAndHeaders(contentLength, containerResponse);
+            return out;
+        }
+        headers.add(HttpHeaders.VARY, HttpHeaders.ACCEPT_ENCODING);
+        long length = contentLength;
+        if (length < 0 && headers.containsKey(HttpHeaders.CONTENT_LENGTH)) {
+            length = parseLength(headers.getFirst(HttpHeaders.CONTENT_LENGTH));
+        }
+        if (length >= 0 && length < minSize) {
+            out = writer.writeStatusAndHeaders(contentLength, containerResponse);
+            return out;
+        }
+        if (length >= minSize) {
+            return startCompression();
+        }
+        // サイズが不明なため、閾値を超えるまで保持する
+        thresholdOut = new ThresholdOutputStream();
+        return thresholdOut;
+    }
+
+    @Override
+    public void finish() throws IOException {
+        complete();
+        writer.finish();
+    }
+
+    /**
+     * Accept-Encodingヘッダでgzipが受け入れ可能かどうかを判定する.
+     * @param acceptEncoding Accept-Encodingヘッダの値
+     * @return true: gzipで圧縮してよい
+     */
+    static boolean acceptsGzip(String acceptEncoding) {
+        if (acceptEncoding == null) {
+            return false;
+        }
+        Boolean gzip = null;
+        boolean any = false;
+        for (String coding : acceptEncoding.split(",")) {
+            String[] params = coding.split(";");
+            String name = params[0].trim().toLowerCase(Locale.ENGLISH);
+            boolean accepted = parseQuality(params) > 0;
+            if (GZIP.equals(name) || X_GZIP.equals(name)) {
+                gzip = accepted;
+            } else if (ANY.equals(name)) {
+                any = accepted;
+            }
+        }
+        if (gzip != null) {
+            return gzip;
+        }
+        return any;
+    }
+
+    /**
+     * 圧縮対象のメディアタイプかどうかを判定する.
+     * @param contentType Content-Typeヘッダの値
+     * @param mediaTypes 圧縮対象のメディアタイプ. "text/*"のようなワイルドカードを指定できる
+     * @return true: 圧縮対象
+     */
+    static boolean isCompressibleType(String contentType, List<String> mediaTypes) {
+        if (contentType == null) {
+            return false;
+        }
+        String type = contentType.split(";")[0].trim().toLowerCase(Locale.ENGLISH);
+        if (type.endsWith(CONTENT_TYPE_SUFFIX_XML) || type.endsWith(CONTENT_TYPE_SUFFIX_JSON)) {
+            return true;
+        }
+        for (String mediaType : mediaTypes) {
+            if (mediaType.endsWith(CONTENT_TYPE_WILDCARD)) {
+                String prefix = mediaType.substring(0, mediaType.length() - 1);
+                if (type.startsWith(prefix)) {
+                    return true;
+                }
+            } else if (type.equals(mediaType)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private boolean isCompressible(ContainerResponse containerResponse) {
+        int status = containerResponse.getStatus();
+        if (status == HttpStatus.SC_NO_CONTENT || status == HttpStatus.SC_NOT_MODIFIED
+                || status == HttpStatus.SC_PARTIAL_CONTENT) {
+            return false;
+        }
+        MultivaluedMap<String, Object> headers = containerResponse.getHttpHeaders();
+        if (headers.containsKey(HttpHeaders.CONTENT_ENCODING) || headers.containsKey(HttpHeaders.CONTENT_RANGE)) {
+            return false;
+        }
+        Object contentType = headers.getFirst(HttpHeaders.CONTENT_TYPE);
+        return contentType != null && isCompressibleType(contentType.toString(), getMediaTypes());
+    }
+
+    private static List<String> getMediaTypes() {
+        List<String> mediaTypes = new ArrayList<String>();
+        for (String mediaType : PersoniumUnitConfig.getCompressionMediaTypes().split(",")) {
+            if (!mediaType.trim().isEmpty()) {
+                mediaTypes.add(mediaType.trim().toLowerCase(Locale.ENGLISH));
+            }
+        }
+        return mediaTypes;
+    }
+
+    private OutputStream startCompression() throws IOException {
+        MultivaluedMap<String, Object> headers = response.getHttpHeaders();
+        headers.putSingle(HttpHeaders.CONTENT_ENCODING, GZIP);
+        headers.remove(HttpHeaders.CONTENT_LENGTH);
+        Object etag = headers.getFirst(HttpHeaders.ETAG);
+        if (etag != null && !etag.toString().startsWith(WEAK_ETAG_PREFIX)) {
+            headers.putSingle(HttpHeaders.ETAG, WEAK_ETAG_PREFIX + etag);
+        }
+        out = writer.writeStatusAndHeaders(-1, response);
+        gzipOut = new GZIPOutputStream(out);
+        return gzipOut;
+    }
+
+    /**
+     * 書き込みを完了する. 閾値に達していない場合は保持した内容を圧縮せずに書き込む.
+     * @throws IOException 書き込みエラー
+     */
+    private void complete() throws IOException {
+        if (thresholdOut != null && !thresholdOut.overflowed) {
+            ByteArrayOutputStream buffer = thresholdOut.buffer;
+            thresholdOut = null;
+            out = writer.writeStatusAndHeaders(buffer.size(), response);
+            buffer.writeTo(out);
+        } else if (gzipOut != null) {
+            GZIPOutputStream gzip = gzipOut;
+            gzipOut = null;
+            gzip.finish();
+        }
+    }
+
+    private static double parseQuality(String[] params) {
+        for (int i = 1; i < params.length; i++) {
+            String param = params[i].trim();
+            if (param.startsWith(QUALITY_PARAM)) {
+                try {
+                    return Double.parseDouble(param.substring(QUALITY_PARAM.length()).trim());
+                } catch (NumberFormatException e) {
+                    return 0;
+                }
+            }
+        }
+        return 1;
+    }
+
+    private static long parseLength(Object value) {
+        try {
+            return Long.parseLong(value.toString());
+        } catch (NumberFormatException e) {
+            return -1;
+        }
+    }
+
+    /**
+     * 閾値までを保持し、閾値を超えた時点で圧縮を開始するOutputStream.
+     */
+    private class ThresholdOutputStream extends OutputStream {
+        private final ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+        private OutputStream target;
+        private boolean overflowed = false;
+
+        @Override
+        public void write(int b) throws IOException {
+            write(new byte[] {(byte) b }, 0, 1);
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            if (overflowed) {
+                target.write(b, off, len);
+                return;
+            }
+            if (buffer.size() + len < minSize) {
+                buffer.write(b, off, len);
+                return;
+            }
+            overflowed = true;
+            target = startCompression();
+            buffer.writeTo(target);
+            target.write(b, off, len);
+        }
+
+        @Override
+        public void flush() throws IOException {
+            if (overflowed) {
+                target.flush();
+            }
+        }
+
+        @Override
+        public void close() throws IOException {
+            // 書き込みの完了はfinish()で行う
+            flush();
+        }
+    }
+}
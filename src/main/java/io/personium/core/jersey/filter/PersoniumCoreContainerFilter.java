@@ -114,6 +114,8 @@ public final class PersoniumCoreContainerFilter implements ContainerRequestFilte
 
         // 全てのレスポンスに共通するヘッダを追加する
         addResponseHeaders(request, response);
+        // クライアントが受け入れ可能であればレスポンスボディを圧縮する
+        compressResponse(request, response);
         // レスポンスログを出力
         responseLog(response);
         return response;
@@ -242,6 +244,23 @@ public final class PersoniumCoreContainerFilter implements ContainerRequestFilte
         }
     }
 
+    /**
+     * レスポンスボディを圧縮して書き込むようにする.
+     * 圧縮するかどうかはメディアタイプとサイズが確定した時点で判定する.
+     * @param request リクエスト
+     * @param response レスポンス
+     */
+    private void compressResponse(final ContainerRequest request, final ContainerResponse response) {
+        if (!PersoniumUnitConfig.isCompressionEnabled() || response.getEntity() == null
+                || HttpMethod.HEAD.equals(request.getMethod())
+                || !CompressingResponseWriter.acceptsGzip(
+                        request.getHeaderValue(org.apache.http.HttpHeaders.ACCEPT_ENCODING))) {
+            return;
+        }
+        response.setContainerResponseWriter(new CompressingResponseWriter(response.getContainerResponseWriter(),
+                PersoniumUnitConfig.getCompressionMinSize()));
+    }
+
     /**
      * リクエストログ出力.
      * @param request
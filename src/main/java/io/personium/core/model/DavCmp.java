@@ -239,6 +239,17 @@ public interface DavCmp {
      */
     ResponseBuilder putForCreate(String contentType, InputStream inputStream);
 
+    /**
+     * Content-Rangeヘッダを指定したPUTメソッドによるファイルの分割アップロード処理.
+     * 最後の分割データを受信した時点でファイルを作成または更新する.
+     * @param contentType Content-Typeヘッダ
+     * @param contentRange Content-Rangeヘッダ
+     * @param inputStream リクエストボディ
+     * @param etag Etag
+     * @return JAX-RS ResponseBuilder. 未受信の分割データがある場合は202
+     */
+    ResponseBuilder putChunk(String contentType, String contentRange, InputStream inputStream, String etag);
+
     /**
      * 子リソースとの紐づける.
      * @param name 子リソースのパスコンポーネント名
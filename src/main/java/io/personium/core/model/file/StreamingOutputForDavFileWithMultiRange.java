@@ -0,0 +1,168 @@
+/**
+ * personium.io
+ * Copyright 2018 FUJITSU LIMITED
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.personium.core.model.file;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.List;
+import java.util.UUID;
+
+import javax.ws.rs.WebApplicationException;
+
+import org.apache.commons.io.IOUtils;
+
+import io.personium.core.PersoniumCoreException;
+import io.personium.core.PersoniumCoreLog;
+import io.personium.core.http.header.ByteRangeSpec;
+import io.personium.core.http.header.RangeHeaderHandler;
+
+/**
+ * 複数のbyte-range-specが指定された場合に、Davファイルの内容をmultipart/byteranges形式で返却するStreamingOutputクラス.
+ * <p>
+ * 範囲が重なる、または隣接しているbyte-range-specは結合し、開始位置の昇順に返却する.
+ * これにより、暗号化されたファイルも含め、1つの入力ストリームを先頭から読み飛ばしながら1回読むだけで全ての範囲を返却できる.
+ */
+public class StreamingOutputForDavFileWithMultiRange extends StreamingOutputForDavFile {
+
+    /** multipart/byteranges. */
+    public static final String MULTIPART_BYTERANGES = "multipart/byteranges";
+
+    private static final String CRLF = "\r\n";
+    private static final String BOUNDARY_DELIMITER = "--";
+    private static final int BUFFER_SIZE = 8192;
+
+    private final RangeHeaderHandler range;
+    private final List<ByteRangeSpec> byteRangeSpecList;
+    private final long fileSize;
+    private final String contentType;
+    private final String boundary;
+
+    /**
+     * コンストラクタ.
+     * @param fileFullPath 読み込むファイルのフルパス
+     * @param fileSize 読み込むファイルのサイズ
+     * @param range RangeHeader
+     * @param cellId Cell ID
+     * @param encryptionType encryption type
+     * @param contentType 各パートのContent-Type
+     * @throws BinaryDataNotFoundException ファイルが存在しない場合.
+     */
+    public StreamingOutputForDavFileWithMultiRange(final String fileFullPath,
+            final long fileSize,
+            final RangeHeaderHandler range,
+            String cellId,
+            String encryptionType,
+            String contentType) throws BinaryDataNotFoundException {
+        super(fileFullPath, cellId, encryptionType);
+        this.range = range;
+        this.byteRangeSpecList = range.getCoalescedByteRangeSpecList();
+        this.fileSize = fileSize;
+        this.contentType = contentType;
+        this.boundary = UUID.randomUUID().toString().replace("-", "");
+    }
+
+    /**
+     * レスポンスのContent-Typeヘッダの値を返却.
+     * @return multipart/byteranges; boundary=...
+     */
+    public String getContentType() {
+        return MULTIPART_BYTERANGES + "; boundary=" + boundary;
+    }
+
+    /**
+     * レスポンスボディのサイズを返却.
+     * @return Content-Lengthヘッダの値
+     */
+    public long getContentLength() {
+        long length = 0;
+        for (ByteRangeSpec brs : byteRangeSpecList) {
+            length += partHeader(brs).length + brs.getContentLength();
+        }
+        return length + closeDelimiter().length;
+    }
+
+    @Override
+    public void write(OutputStream output) throws IOException, WebApplicationException {
+        try {
+            byte[] buffer = new byte[BUFFER_SIZE];
+            long pos = 0;
+            for (ByteRangeSpec brs : byteRangeSpecList) {
+                output.write(partHeader(brs));
+                // 前の範囲の終端からRangeの先頭まで読み飛ばし
+                skipFully(hardLinkInput, brs.getFirstBytePos() - pos);
+                // Rangeの終端まで返却
+                long remaining = brs.getContentLength();
+                while (remaining > 0) {
+                    int read = hardLinkInput.read(buffer, 0, (int) Math.min(buffer.length, remaining));
+                    if (read == -1) {
+                        PersoniumCoreLog.Dav.FILE_TOO_SHORT
+                                .params("too short.size", fileSize, range.getRangeHeaderField()).writeLog();
+                        throw PersoniumCoreException.Dav.FS_INCONSISTENCY_FOUND;
+                    }
+                    output.write(buffer, 0, read);
+                    remaining -= read;
+                }
+                pos = brs.getLastBytePos() + 1;
+            }
+            output.write(closeDelimiter());
+        } finally {
+            IOUtils.closeQuietly(hardLinkInput);
+            Files.delete(hardLinkPath);
+        }
+    }
+
+    /**
+     * 指定バイト数を読み飛ばす.
+     * 復号中のストリームはskipで指定バイト数を読み飛ばせない場合があるため、読み飛ばせるまで繰り返す.
+     * @param input 入力ストリーム
+     * @param length 読み飛ばすバイト数
+     * @throws IOException 読み込みエラー
+     */
+    private void skipFully(InputStream input, long length) throws IOException {
+        long remaining = length;
+        while (remaining > 0) {
+            long skipped = input.skip(remaining);
+            if (skipped <= 0) {
+                if (input.read() == -1) {
+                    PersoniumCoreLog.Dav.FILE_TOO_SHORT
+                            .params("skip failed", fileSize, range.getRangeHeaderField()).writeLog();
+                    throw PersoniumCoreException.Dav.FS_INCONSISTENCY_FOUND;
+                }
+                skipped = 1;
+            }
+            remaining -= skipped;
+        }
+    }
+
+    private byte[] partHeader(ByteRangeSpec brs) {
+        StringBuilder sb = new StringBuilder();
+        sb.append(CRLF).append(BOUNDARY_DELIMITER).append(boundary).append(CRLF);
+        if (contentType != null) {
+            sb.append("Content-Type: ").append(contentType).append(CRLF);
+        }
+        sb.append("Content-Range: ").append(brs.makeContentRangeHeaderField()).append(CRLF);
+        sb.append(CRLF);
+        return sb.toString().getBytes(StandardCharsets.ISO_8859_1);
+    }
+
+    private byte[] closeDelimiter() {
+        return (CRLF + BOUNDARY_DELIMITER + boundary + BOUNDARY_DELIMITER + CRLF).getBytes(StandardCharsets.ISO_8859_1);
+    }
+}
@@ -60,9 +60,9 @@ public class StreamingOutputForDavFileWithRange extends StreamingOutputForDavFil
     @Override
     public void write(OutputStream output) throws IOException, WebApplicationException {
         try {
-            // MultiPartには対応しないため1個目のbyte-renge-setだけ処理する。
+            // 結合後のbyte-renge-setが1個の場合のみ使用される。
             int rangeIndex = 0;
-            List<ByteRangeSpec> brss = range.getByteRangeSpecList();
+            List<ByteRangeSpec> brss = range.getCoalescedByteRangeSpecList();
             final ByteRangeSpec brs = brss.get(rangeIndex);
 
             int chr;
@@ -56,12 +56,9 @@ import io.personium.core.PersoniumUnitConfig;
 import io.personium.core.auth.AccessContext;
 import io.personium.core.auth.AuthUtils;
 import io.personium.core.event.EventBus;
-import io.personium.core.event.EventUtils;
 import io.personium.core.model.Box;
 import io.personium.core.model.BoxCmp;
 import io.personium.core.model.Cell;
-import io.personium.core.model.CellCmp;
-import io.personium.core.model.CellSnapshotCellCmp;
 import io.personium.core.model.ModelFactory;
 import io.personium.core.model.ctl.Account;
 import io.personium.core.model.ctl.Common;
@@ -71,9 +68,7 @@ import io.personium.core.model.ctl.ReceivedMessage;
 import io.personium.core.model.ctl.Relation;
 import io.personium.core.model.ctl.Rule;
 import io.personium.core.model.ctl.SentMessage;
-import io.personium.core.model.file.BinaryDataAccessException;
 import io.personium.core.model.impl.es.accessor.CellAccessor;
-import io.personium.core.model.impl.es.accessor.CellDataAccessor;
 import io.personium.core.model.impl.es.accessor.EntitySetAccessor;
 import io.personium.core.model.impl.es.accessor.ODataLinkAccessor;
 import io.personium.core.model.impl.es.cache.BoxCache;
@@ -946,14 +941,7 @@ public class CellEsImpl implements Cell {
         }
 
         // Make this cell empty asynchronously.
-        Thread thread = new Thread(new Runnable() {
-            @Override
-            public void run() {
-                makeEmpty();
-            }
-        });
-        thread.start();
-
+        makeEmpty();
     }
 
     private void waitCellAccessible(String cellId, int maxLoopCount, long interval) {
@@ -974,50 +962,10 @@ public class CellEsImpl implements Cell {
 
     /**
      * {@inheritDoc}
+     * The data is purged asynchronously through {@link CellPurgeQueue}.
      */
     @Override
     public void makeEmpty() {
-        String unitUserNameWithOutPrefix = this.getDataBundleNameWithOutPrefix();
-        String cellInfoLog = String.format(" CellId:[%s], CellName:[%s], CellUnitUserName:[%s]", this.getId(),
-                this.getName(), this.getDataBundleName());
-        //--------------------
-        // WebDav file.
-        //--------------------
-        // Delete cell snapshot file.
-        CellSnapshotCellCmp snapshotCmp = ModelFactory.cellSnapshotCellCmp(this);
-        try {
-            snapshotCmp.delete(null, true);
-        } catch (PersoniumCoreException e) {
-            // If the deletion fails, output a log and continue processing.
-            log.warn("Delete CellSnapshot Failed." + cellInfoLog, e);
-        }
-        log.info("CellSnapshotFile Deletion End.");
-
-        // Delete event log file.
-        try {
-            EventUtils.deleteEventLog(this.getId(), this.getOwner());
-        } catch (BinaryDataAccessException e) {
-            // If the deletion fails, output a log and continue processing.
-            log.warn("Delete EventLog Failed." + cellInfoLog, e);
-        }
-        log.info("EventLog Deletion End.");
-
-        // Delete dav file.
-        CellCmp cellCmp = ModelFactory.cellCmp(this);
-        try {
-            cellCmp.delete(null, true);
-        } catch (PersoniumCoreException e) {
-            // If the deletion fails, output a log and continue processing.
-            log.warn("Delete DavFile Failed." + cellInfoLog, e);
-        }
-        log.info("DavFile Deletion End.");
-
-        //--------------------
-        // OData.
-        //--------------------
-        // Delete all entities under the cell.
-        CellDataAccessor cellDataAccessor = EsModel.cellData(unitUserNameWithOutPrefix, this.getId());
-        cellDataAccessor.bulkDeleteCell();
-        log.info("Cell Entity Resource Deletion End.");
+        CellPurgeQueue.submit(this);
     }
 }
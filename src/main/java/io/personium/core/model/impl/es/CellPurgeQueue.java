@@ -0,0 +1,787 @@
+/**
+ * personium.io
+ * Copyright 2018 FUJITSU LIMITED
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.personium.core.model.impl.es;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.Reader;
+import java.io.Writer;
+import java.net.InetAddress;
+import java.net.UnknownHostException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.Map;
+import java.util.TimeZone;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import org.json.simple.JSONObject;
+import org.json.simple.parser.JSONParser;
+import org.json.simple.parser.ParseException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.common.util.concurrent.RateLimiter;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+
+import io.personium.common.es.EsBulkRequest;
+import io.personium.common.es.response.EsClientException;
+import io.personium.common.es.response.PersoniumBulkItemResponse;
+import io.personium.common.es.response.PersoniumBulkResponse;
+import io.personium.common.es.response.PersoniumSearchHit;
+import io.personium.common.es.response.PersoniumSearchResponse;
+import io.personium.core.PersoniumCoreException;
+import io.personium.core.PersoniumUnitConfig;
+import io.personium.core.event.EventUtils;
+import io.personium.core.model.Cell;
+import io.personium.core.model.file.BinaryDataAccessException;
+import io.personium.core.model.impl.es.accessor.CellDataAccessor;
+import io.personium.core.model.impl.es.doc.OEntityDocHandler;
+import io.personium.core.model.progress.Progress;
+import io.personium.core.model.progress.ProgressManager;
+import io.personium.core.rs.odata.MapBulkRequest;
+
+/**
+ * Queue of the data purge of deleted cells.
+ * <p>
+ * A purge job is persisted as a JSON file under the purge root directory, and executed by a bounded worker pool.
+ * The job deletes the snapshot files, the event logs, the dav files and the OData entities of the cell in this order,
+ * recording the current phase as a checkpoint. Every step is idempotent, so that the job left by a restart is
+ * resumed from the recorded phase when the queue starts.
+ * File and entity deletion is throttled by a rate limiter shared by all workers.
+ * <p>
+ * The purge root directory is shared by all nodes. A node claims a job by renaming its file into the running
+ * directory of the node ({@code running/<host name>}), and only the node whose rename succeeded executes it.
+ * A job interrupted by shutdown or by an error is released to the root directory again. A job that failed is
+ * retried after a delay that doubles on every failure.
+ * <p>
+ * Every node looks for released jobs periodically. It also touches the files of its own jobs as a heartbeat, and
+ * takes over the jobs in the running directory of another node whose files have not been touched for the stale
+ * timeout, so that the jobs of a node that never comes back are still executed. A node whose job was taken over
+ * notices it at the next heartbeat or checkpoint and stops the job. Until then both nodes may purge the same cell,
+ * which is harmless because every step is idempotent.
+ */
+public final class CellPurgeQueue {
+
+    private static Logger log = LoggerFactory.getLogger(CellPurgeQueue.class);
+
+    /** Suffix of the job file. */
+    private static final String JOB_FILE_SUFFIX = ".json";
+    /** Directory of the jobs claimed by the nodes. */
+    private static final String RUNNING_DIR = "running";
+    /** Cache key prefix of the progress. */
+    private static final String CACHE_KEY_CATEGORY = "cell-purge-";
+    /** Number of deleted files between checkpoints. */
+    private static final int CHECKPOINT_INTERVAL = 1000;
+    /** The retry delay stops doubling after this number of failures. */
+    private static final int MAX_BACKOFF_SHIFT = 6;
+
+    /** Jobs claimed by this node and not finished yet. key: cell id. */
+    private static final ConcurrentMap<String, Job> ACTIVE_JOBS = new ConcurrentHashMap<String, Job>();
+
+    private static ExecutorService executor;
+    private static ScheduledExecutorService scanner;
+    private static RateLimiter rateLimiter;
+    private static volatile boolean stopped = false;
+
+    private CellPurgeQueue() {
+    }
+
+    /**
+     * Phase of the purge job.
+     */
+    enum Phase {
+        /** Delete cell snapshot files. */
+        SNAPSHOT,
+        /** Delete event log files. */
+        EVENTLOG,
+        /** Delete dav files. */
+        DAV,
+        /** Delete OData entities. */
+        ES,
+        /** Completed. */
+        DONE
+    }
+
+    /**
+     * Start the worker pool, resume the jobs left in the purge root directory, and start looking for
+     * released and stale jobs periodically.
+     */
+    public static synchronized void start() {
+        if (executor != null) {
+            return;
+        }
+        ThreadFactoryBuilder builder = new ThreadFactoryBuilder();
+        builder.setNameFormat("cell-purge-%d");
+        builder.setDaemon(true);
+        executor = Executors.newFixedThreadPool(PersoniumUnitConfig.getCellPurgeThreadNum(), builder.build());
+        rateLimiter = RateLimiter.create(PersoniumUnitConfig.getCellPurgeOperationsPerSecond());
+        stopped = false;
+
+        // Jobs claimed by this node before a crash.
+        for (File jobFile : listJobFiles(getRunningDir())) {
+            resume(jobFile);
+        }
+        scan();
+
+        ThreadFactoryBuilder scannerBuilder = new ThreadFactoryBuilder();
+        scannerBuilder.setNameFormat("cell-purge-scanner-%d");
+        scannerBuilder.setDaemon(true);
+        scanner = Executors.newSingleThreadScheduledExecutor(scannerBuilder.build());
+        int interval = PersoniumUnitConfig.getCellPurgeScanInterval();
+        scanner.scheduleWithFixedDelay(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    scan();
+                } catch (RuntimeException e) {
+                    log.warn("Failed to scan cell purge jobs.", e);
+                }
+            }
+        }, interval, interval, TimeUnit.SECONDS);
+    }
+
+    /**
+     * Send the heartbeat of the jobs of this node, and resume the released jobs whose retry time has come and
+     * the stale jobs of other nodes.
+     */
+    static void scan() {
+        long now = System.currentTimeMillis();
+        heartbeat(now);
+        for (File jobFile : claimReleasedJobs(now)) {
+            resume(jobFile);
+        }
+        for (File jobFile : takeOverStaleJobs(now)) {
+            resume(jobFile);
+        }
+    }
+
+    /**
+     * Touch the files of the jobs of this node, so that other nodes do not take them over.
+     * @param now current time
+     */
+    static void heartbeat(long now) {
+        for (Job job : ACTIVE_JOBS.values()) {
+            job.heartbeat(now);
+        }
+    }
+
+    /**
+     * Claim the released jobs in the root directory whose retry time has come.
+     * @param now current time
+     * @return job files moved to the running directory of this node
+     */
+    static List<File> claimReleasedJobs(long now) {
+        File runningDir = getRunningDir();
+        List<File> claimedFiles = new ArrayList<File>();
+        for (File jobFile : listJobFiles(getRootDir())) {
+            try {
+                if (Job.load(jobFile).retryAfter > now) {
+                    continue;
+                }
+            } catch (NoSuchFileException e) {
+                // Claimed by another node.
+                continue;
+            } catch (IOException | ParseException e) {
+                log.warn("Failed to load cell purge job. File:[" + jobFile + "]", e);
+                continue;
+            }
+            File claimed = claim(jobFile, runningDir);
+            if (claimed != null) {
+                claimedFiles.add(claimed);
+            }
+        }
+        return claimedFiles;
+    }
+
+    /**
+     * Take over the jobs in the running directories of other nodes that have no heartbeat for the stale timeout.
+     * @param now current time
+     * @return job files moved to the running directory of this node
+     */
+    static List<File> takeOverStaleJobs(long now) {
+        File runningDir = getRunningDir();
+        long staleBefore = now - TimeUnit.SECONDS.toMillis(PersoniumUnitConfig.getCellPurgeStaleTimeout());
+        List<File> claimedFiles = new ArrayList<File>();
+        File[] nodeDirs = runningDir.getParentFile().listFiles();
+        if (nodeDirs == null) {
+            return claimedFiles;
+        }
+        for (File nodeDir : nodeDirs) {
+            if (!nodeDir.isDirectory() || nodeDir.equals(runningDir)) {
+                continue;
+            }
+            for (File jobFile : listJobFiles(nodeDir)) {
+                if (jobFile.lastModified() >= staleBefore) {
+                    continue;
+                }
+                File claimed = claim(jobFile, runningDir);
+                if (claimed != null) {
+                    // Touch at once, so that a third node does not take it over again.
+                    claimed.setLastModified(now);
+                    log.info("Take over cell purge job of node " + nodeDir.getName() + ". File:[" + claimed + "]");
+                    claimedFiles.add(claimed);
+                }
+            }
+        }
+        return claimedFiles;
+    }
+
+    /**
+     * Move the job file into the running directory of this node.
+     * @param jobFile job file
+     * @param runningDir running directory of this node
+     * @return moved job file, or null when another node moved it first
+     */
+    private static File claim(File jobFile, File runningDir) {
+        File claimed = new File(runningDir, jobFile.getName());
+        try {
+            Files.move(jobFile.toPath(), claimed.toPath(), StandardCopyOption.ATOMIC_MOVE);
+            return claimed;
+        } catch (NoSuchFileException e) {
+            // Claimed by another node.
+            return null;
+        } catch (IOException e) {
+            log.warn("Failed to claim cell purge job. File:[" + jobFile + "]", e);
+            return null;
+        }
+    }
+
+    private static void resume(File jobFile) {
+        Job job;
+        try {
+            job = Job.load(jobFile);
+        } catch (IOException | ParseException e) {
+            log.warn("Failed to load cell purge job. File:[" + jobFile + "]", e);
+            return;
+        }
+        log.info("Resume cell purge. CellId:[" + job.cellId + "], Phase:[" + job.phase + "]");
+        execute(executor, job);
+    }
+
+    /**
+     * Execute the job on the worker pool. The job is released when the pool is already stopped.
+     * @param ex worker pool
+     * @param job job
+     */
+    private static void execute(ExecutorService ex, Job job) {
+        ACTIVE_JOBS.put(job.cellId, job);
+        try {
+            ex.execute(job);
+        } catch (RejectedExecutionException e) {
+            log.info("Cell purge queue is stopped. The job is executed on the next start." + job.cellInfoLog());
+            ACTIVE_JOBS.remove(job.cellId, job);
+            job.release(false);
+        }
+    }
+
+    private static List<File> listJobFiles(File dir) {
+        List<File> jobFiles = new ArrayList<File>();
+        File[] files = dir.listFiles();
+        if (files == null) {
+            return jobFiles;
+        }
+        for (File file : files) {
+            if (file.isFile() && file.getName().endsWith(JOB_FILE_SUFFIX)) {
+                jobFiles.add(file);
+            }
+        }
+        return jobFiles;
+    }
+
+    /**
+     * Stop the worker pool.
+     * Running jobs are interrupted at the next checkpoint and resumed on the next start.
+     */
+    public static synchronized void stop() {
+        if (executor == null) {
+            return;
+        }
+        stopped = true;
+        if (scanner != null) {
+            scanner.shutdownNow();
+            scanner = null;
+        }
+        executor.shutdown();
+        try {
+            if (!executor.awaitTermination(1, TimeUnit.SECONDS)) {
+                executor.shutdownNow();
+            }
+        } catch (InterruptedException e) {
+            executor.shutdownNow();
+        }
+        executor = null;
+    }
+
+    /**
+     * Register the purge of the deleted cell.
+     * The purge is never executed in the calling thread. When the queue of this node is not started,
+     * the job is left unclaimed and executed by the node that starts its queue next.
+     * @param cell deleted cell
+     */
+    public static void submit(Cell cell) {
+        ExecutorService ex = executor;
+        File dir = ex != null ? getRunningDir() : getRootDir();
+        Job job = new Job(new File(dir, cell.getId() + JOB_FILE_SUFFIX), cell.getId(), cell.getName(),
+                cell.getOwner(), cell.getDataBundleName(), cell.getDataBundleNameWithOutPrefix());
+        boolean saved = true;
+        try {
+            job.save();
+        } catch (IOException e) {
+            saved = false;
+            log.warn("Failed to save cell purge job." + job.cellInfoLog(), e);
+        }
+        job.writeProgress();
+        if (ex == null) {
+            if (saved) {
+                log.info("Cell purge queue is not started. The job is executed on the next start." + job.cellInfoLog());
+            } else {
+                log.warn("Cell purge queue is not started. The purge is not executed." + job.cellInfoLog());
+            }
+            return;
+        }
+        // Executed even if the job file could not be saved, but then not resumed after restart.
+        execute(ex, job);
+    }
+
+    /**
+     * Get processing cache key.
+     * @param cellId Target cell id
+     * @return Cache key
+     */
+    public static String getKey(String cellId) {
+        return CACHE_KEY_CATEGORY + cellId;
+    }
+
+    private static File getRootDir() {
+        File dir = new File(PersoniumUnitConfig.getCellPurgeRoot());
+        if (!dir.exists()) {
+            dir.mkdirs();
+        }
+        return dir;
+    }
+
+    /**
+     * Get the directory of the jobs claimed by this node.
+     * @return running directory
+     */
+    static File getRunningDir() {
+        File dir = new File(new File(getRootDir(), RUNNING_DIR), getNodeName());
+        if (!dir.exists()) {
+            dir.mkdirs();
+        }
+        return dir;
+    }
+
+    private static String getNodeName() {
+        try {
+            return InetAddress.getLocalHost().getHostName();
+        } catch (UnknownHostException e) {
+            log.warn("Failed to get host name. Use localhost as the node name of cell purge.", e);
+            return "localhost";
+        }
+    }
+
+    /**
+     * Get the delay before the next retry of a failed job.
+     * @param retries number of failures of the job
+     * @return delay (milliseconds)
+     */
+    static long getRetryDelay(int retries) {
+        long base = TimeUnit.SECONDS.toMillis(PersoniumUnitConfig.getCellPurgeRetryInterval());
+        return base << Math.min(Math.max(retries - 1, 0), MAX_BACKOFF_SHIFT);
+    }
+
+    private static void acquire(int permits) {
+        RateLimiter limiter = rateLimiter;
+        if (limiter != null && permits > 0) {
+            limiter.acquire(permits);
+        }
+    }
+
+    /**
+     * Purge job of one cell.
+     */
+    static final class Job implements Runnable {
+        private File jobFile;
+        private final String cellId;
+        private final String cellName;
+        private final String owner;
+        private final String dataBundleName;
+        private final String dataBundleNameWithOutPrefix;
+        private Phase phase = Phase.SNAPSHOT;
+        private long deletedFiles = 0L;
+        private long deletedEntities = 0L;
+        private String startTime;
+        /** Number of failures. */
+        private long retries = 0L;
+        /** Time before which the released job is not claimed again. */
+        private long retryAfter = 0L;
+        /** Whether the job file has been written. */
+        private volatile boolean persisted = false;
+        /** Whether another node has taken over the job. */
+        private volatile boolean takenOver = false;
+
+        Job(File jobFile, String cellId, String cellName, String owner, String dataBundleName,
+                String dataBundleNameWithOutPrefix) {
+            this.jobFile = jobFile;
+            this.cellId = cellId;
+            this.cellName = cellName;
+            this.owner = owner;
+            this.dataBundleName = dataBundleName;
+            this.dataBundleNameWithOutPrefix = dataBundleNameWithOutPrefix;
+            SimpleDateFormat sdfIso8601ExtendedFormatUtc = new SimpleDateFormat("yyyy-MM-dd'T'HH:mm:ss.SSS'Z'");
+            sdfIso8601ExtendedFormatUtc.setTimeZone(TimeZone.getTimeZone("UTC"));
+            this.startTime = sdfIso8601ExtendedFormatUtc.format(new Date());
+        }
+
+        /**
+         * Load the job from the job file.
+         * @param jobFile job file
+         * @return job
+         * @throws IOException failed to read
+         * @throws ParseException broken job file
+         */
+        static Job load(File jobFile) throws IOException, ParseException {
+            JSONObject json;
+            try (Reader reader = Files.newBufferedReader(jobFile.toPath(), StandardCharsets.UTF_8)) {
+                json = (JSONObject) new JSONParser().parse(reader);
+            }
+            Job job = new Job(jobFile, (String) json.get("CellId"), (String) json.get("CellName"),
+                    (String) json.get("Owner"), (String) json.get("DataBundleName"),
+                    (String) json.get("DataBundleNameWithOutPrefix"));
+            job.phase = Phase.valueOf((String) json.get("Phase"));
+            job.deletedFiles = (Long) json.get("DeletedFiles");
+            job.deletedEntities = (Long) json.get("DeletedEntities");
+            job.startTime = (String) json.get("StartedAt");
+            // Not recorded by the job files of older versions.
+            if (json.get("Retries") != null) {
+                job.retries = (Long) json.get("Retries");
+                job.retryAfter = (Long) json.get("RetryAfter");
+            }
+            job.persisted = true;
+            return job;
+        }
+
+        /**
+         * Save the job to the job file as a checkpoint.
+         * @throws IOException failed to write
+         */
+        @SuppressWarnings("unchecked")
+        void save() throws IOException {
+            JSONObject json = new JSONObject();
+            json.put("CellId", cellId);
+            json.put("CellName", cellName);
+            json.put("Owner", owner);
+            json.put("DataBundleName", dataBundleName);
+            json.put("DataBundleNameWithOutPrefix", dataBundleNameWithOutPrefix);
+            json.put("Phase", phase.name());
+            json.put("DeletedFiles", deletedFiles);
+            json.put("DeletedEntities", deletedEntities);
+            json.put("StartedAt", startTime);
+            json.put("Retries", retries);
+            json.put("RetryAfter", retryAfter);
+
+            // Write to a temporary file and rename, so that a crash does not leave a broken job file.
+            File tmpFile = new File(jobFile.getPath() + ".tmp");
+            try (Writer writer = Files.newBufferedWriter(tmpFile.toPath(), StandardCharsets.UTF_8)) {
+                writer.write(json.toJSONString());
+            }
+            Files.move(tmpFile.toPath(), jobFile.toPath(), StandardCopyOption.REPLACE_EXISTING,
+                    StandardCopyOption.ATOMIC_MOVE);
+            persisted = true;
+        }
+
+        /**
+         * {@inheritDoc}
+         */
+        @Override
+        public void run() {
+            try {
+                while (phase != Phase.DONE) {
+                    if (stopped || takenOver || !execPhase()) {
+                        break;
+                    }
+                    phase = Phase.values()[phase.ordinal() + 1];
+                    checkpoint();
+                }
+                if (takenOver) {
+                    log.info("Cell purge job was taken over by another node." + cellInfoLog());
+                } else if (phase != Phase.DONE) {
+                    // Interrupted by shutdown. Resumed by the node that looks for released jobs next.
+                    release(false);
+                } else {
+                    deleteJobFile();
+                    ProgressManager.deleteProgress(getKey(cellId));
+                    log.info("Cell Purge End." + cellInfoLog());
+                }
+            } catch (RuntimeException e) {
+                // Retried after the backoff.
+                log.warn("Cell Purge Failed." + cellInfoLog(), e);
+                if (!takenOver) {
+                    release(true);
+                }
+            } finally {
+                ACTIVE_JOBS.remove(cellId, this);
+            }
+        }
+
+        /**
+         * Touch the job file. The job is stopped when the file has been moved by another node.
+         * @param now current time
+         */
+        void heartbeat(long now) {
+            if (persisted && !jobFile.setLastModified(now) && !jobFile.exists()) {
+                takenOver = true;
+            }
+        }
+
+        /**
+         * Move the job file back to the root directory, so that a node that looks for released jobs resumes it.
+         * @param failed true when the job failed. The retry is then delayed with exponential backoff.
+         */
+        void release(boolean failed) {
+            if (failed) {
+                retries++;
+                retryAfter = System.currentTimeMillis() + getRetryDelay((int) retries);
+                if (persisted) {
+                    try {
+                        save();
+                    } catch (IOException e) {
+                        log.warn("Failed to save cell purge job." + cellInfoLog(), e);
+                    }
+                }
+            }
+            File released = new File(getRootDir(), jobFile.getName());
+            try {
+                Files.move(jobFile.toPath(), released.toPath(), StandardCopyOption.ATOMIC_MOVE);
+                jobFile = released;
+            } catch (NoSuchFileException e) {
+                // The job file could not be saved. Nothing to release.
+                log.info("Cell purge job file does not exist." + cellInfoLog());
+            } catch (IOException e) {
+                // Resumed when this node starts again.
+                log.warn("Failed to release cell purge job." + cellInfoLog(), e);
+            }
+        }
+
+        /**
+         * Execute the current phase.
+         * @return false when interrupted by shutdown
+         */
+        private boolean execPhase() {
+            switch (phase) {
+            case SNAPSHOT:
+                // Delete cell snapshot file.
+                boolean snapshotCompleted = deleteTree(new File(PersoniumUnitConfig.getCellSnapshotRoot(), cellId));
+                log.info("CellSnapshotFile Deletion End.");
+                return snapshotCompleted;
+            case EVENTLOG:
+                // Delete event log file.
+                try {
+                    EventUtils.deleteEventLog(cellId, owner);
+                } catch (BinaryDataAccessException e) {
+                    // If the deletion fails, output a log and continue processing.
+                    log.warn("Delete EventLog Failed." + cellInfoLog(), e);
+                }
+                log.info("EventLog Deletion End.");
+                return true;
+            case DAV:
+                // Delete dav file.
+                File davDir = new File(new File(PersoniumUnitConfig.getBlobStoreRoot(), dataBundleName), cellId);
+                boolean davCompleted = deleteTree(davDir);
+                log.info("DavFile Deletion End.");
+                return davCompleted;
+            case ES:
+                // Delete all entities under the cell.
+                boolean esCompleted = deleteEntities();
+                log.info("Cell Entity Resource Deletion End.");
+                return esCompleted;
+            default:
+                return true;
+            }
+        }
+
+        /**
+         * Delete the directory tree bottom up.
+         * @param root root directory
+         * @return false when interrupted by shutdown
+         */
+        private boolean deleteTree(File root) {
+            if (!root.exists()) {
+                return true;
+            }
+            try {
+                FileVisitResult result = walk(root.toPath());
+                return result != FileVisitResult.TERMINATE;
+            } catch (IOException e) {
+                // If the deletion fails, output a log and continue processing.
+                log.warn("Delete File Failed. Path:[" + root + "]" + cellInfoLog(), e);
+                return true;
+            }
+        }
+
+        private FileVisitResult walk(Path root) throws IOException {
+            final FileVisitResult[] result = {FileVisitResult.CONTINUE};
+            Files.walkFileTree(root, new SimpleFileVisitor<Path>() {
+                @Override
+                public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) throws IOException {
+                    return delete(file);
+                }
+
+                @Override
+                public FileVisitResult visitFileFailed(Path file, IOException exc) throws IOException {
+                    if (exc instanceof NoSuchFileException) {
+                        return FileVisitResult.CONTINUE;
+                    }
+                    throw exc;
+                }
+
+                @Override
+                public FileVisitResult postVisitDirectory(Path dir, IOException exc) throws IOException {
+                    if (exc != null) {
+                        throw exc;
+                    }
+                    return delete(dir);
+                }
+
+                private FileVisitResult delete(Path path) throws IOException {
+                    if (stopped || takenOver) {
+                        result[0] = FileVisitResult.TERMINATE;
+                        return FileVisitResult.TERMINATE;
+                    }
+                    acquire(1);
+                    Files.deleteIfExists(path);
+                    deletedFiles++;
+                    if (deletedFiles % CHECKPOINT_INTERVAL == 0) {
+                        checkpoint();
+                    }
+                    return FileVisitResult.CONTINUE;
+                }
+            });
+            return result[0];
+        }
+
+        /**
+         * Delete the entities of the cell chunk by chunk, then sweep the rest by delete by query.
+         * @return false when interrupted by shutdown
+         */
+        private boolean deleteEntities() {
+            CellDataAccessor accessor = EsModel.cellData(dataBundleNameWithOutPrefix, cellId);
+            int batchSize = PersoniumUnitConfig.getCellPurgeEsBatchSize();
+            try {
+                while (!stopped && !takenOver) {
+                    Map<String, Object> query = QueryMapFactory.query(QueryMapFactory.filteredQuery(null,
+                            QueryMapFactory.termQuery(OEntityDocHandler.KEY_CELL_ID, cellId)));
+                    query.put("size", batchSize);
+                    PersoniumSearchResponse response = accessor.searchForIndex(cellId, query);
+                    PersoniumSearchHit[] hits = response.getHits().getHits();
+                    if (hits.length == 0) {
+                        break;
+                    }
+                    acquire(hits.length);
+                    List<EsBulkRequest> requests = new ArrayList<EsBulkRequest>();
+                    for (PersoniumSearchHit hit : hits) {
+                        requests.add(new MapBulkRequest(EsBulkRequest.BulkRequestType.DELETE,
+                                hit.getType(), hit.getId(), null));
+                    }
+                    PersoniumBulkResponse bulkResponse = accessor.bulkUpdate(requests, cellId);
+                    int deleted = 0;
+                    for (PersoniumBulkItemResponse item : bulkResponse.items()) {
+                        if (!item.isFailed()) {
+                            deleted++;
+                        }
+                    }
+                    deletedEntities += deleted;
+                    checkpoint();
+                    if (deleted == 0) {
+                        // No progress. Leave the rest to delete by query.
+                        break;
+                    }
+                }
+            } catch (PersoniumCoreException | EsClientException e) {
+                // If the deletion fails, output a log and continue processing.
+                log.warn("Delete CellResource From KVS Failed." + cellInfoLog(), e);
+            }
+            if (stopped || takenOver) {
+                return false;
+            }
+            accessor.bulkDeleteCell();
+            return true;
+        }
+
+        /**
+         * Record the current state to the job file and the progress.
+         */
+        private void checkpoint() {
+            if (persisted && !jobFile.exists()) {
+                // Moved by another node. Do not write the job file again.
+                takenOver = true;
+                return;
+            }
+            try {
+                save();
+            } catch (IOException e) {
+                log.warn("Failed to save cell purge job." + cellInfoLog(), e);
+            }
+            writeProgress();
+        }
+
+        /**
+         * Write progress into the cache.
+         */
+        @SuppressWarnings("unchecked")
+        void writeProgress() {
+            JSONObject jsonObject = new JSONObject();
+            jsonObject.put("status", "purge in progress");
+            jsonObject.put("started_at", startTime);
+            jsonObject.put("phase", phase.name().toLowerCase());
+            jsonObject.put("deleted_files", deletedFiles);
+            jsonObject.put("deleted_entities", deletedEntities);
+            String key = getKey(cellId);
+            ProgressManager.putProgress(key, new Progress(key, jsonObject.toJSONString()));
+        }
+
+        private void deleteJobFile() {
+            try {
+                Files.deleteIfExists(jobFile.toPath());
+            } catch (IOException e) {
+                log.warn("Failed to delete cell purge job file." + cellInfoLog(), e);
+            }
+        }
+
+        String cellInfoLog() {
+            return String.format(" CellId:[%s], CellName:[%s], CellUnitUserName:[%s]", cellId, cellName,
+                    dataBundleName);
+        }
+    }
+}
@@ -23,6 +23,7 @@ import io.personium.common.es.EsClient.Event;
 import io.personium.common.es.EsIndex;
 import io.personium.common.es.EsRequestLogInfo;
 import io.personium.common.es.EsType;
+import io.personium.common.es.util.IndexNameEncoder;
 import io.personium.core.PersoniumCoreLog;
 import io.personium.core.PersoniumUnitConfig;
 import io.personium.core.model.Box;
@@ -33,6 +34,7 @@ import io.personium.core.model.impl.es.accessor.DataSourceAccessor;
 import io.personium.core.model.impl.es.accessor.EntitySetAccessor;
 import io.personium.core.model.impl.es.accessor.ODataEntityAccessor;
 import io.personium.core.model.impl.es.accessor.ODataLinkAccessor;
+import io.personium.core.model.impl.es.memory.MemoryDataStore;
 import io.personium.core.model.impl.es.odata.UserDataODataProducer;
 
 /**
@@ -110,6 +112,10 @@ public class EsModel {
      * @return Indexオブジェクト
      */
     public static EsIndex idxAdmin() {
+        if (MemoryDataStore.isEnabled()) {
+            return MemoryDataStore.index(PersoniumUnitConfig.getEsUnitPrefix() + "_" + EsIndex.CATEGORY_AD,
+                    EsIndex.CATEGORY_AD);
+        }
         return esClient.idxAdmin(PersoniumUnitConfig.getEsUnitPrefix(),
                 Integer.valueOf(PersoniumUnitConfig.getESRetryTimes()),
                 Integer.valueOf(PersoniumUnitConfig.getESRetryInterval()));
@@ -121,6 +127,11 @@ public class EsModel {
      * @return Indexオブジェクト
      */
     public static EsIndex idxUser(String userUri) {
+        if (MemoryDataStore.isEnabled()) {
+            String userName = userUri == null ? "anon" : IndexNameEncoder.encodeEsIndexName(userUri);
+            return MemoryDataStore.index(PersoniumUnitConfig.getEsUnitPrefix() + "_" + userName,
+                    EsIndex.CATEGORY_USR);
+        }
         return esClient.idxUser(PersoniumUnitConfig.getEsUnitPrefix(),
                 userUri,
                 Integer.valueOf(PersoniumUnitConfig.getESRetryTimes()),
@@ -133,6 +144,9 @@ public class EsModel {
      * @return Indexオブジェクト
      */
     public static EsIndex idxUserWithUnitPrefix(String indexName) {
+        if (MemoryDataStore.isEnabled()) {
+            return MemoryDataStore.index(indexName, EsIndex.CATEGORY_USR);
+        }
         return esClient.idxUser(indexName,
                 Integer.valueOf(PersoniumUnitConfig.getESRetryTimes()),
                 Integer.valueOf(PersoniumUnitConfig.getESRetryInterval()));
@@ -148,6 +162,9 @@ public class EsModel {
      * @return EsTypeオブジェクト
      */
     public static EsType type(String indexName, String typeName, String routingId, int times, int interval) {
+        if (MemoryDataStore.isEnabled()) {
+            return MemoryDataStore.type(indexName, typeName);
+        }
         return esClient.type(indexName, typeName, routingId, times, interval);
     }
 
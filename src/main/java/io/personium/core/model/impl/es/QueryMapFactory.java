@@ -127,6 +127,24 @@ public final class QueryMapFactory {
         return missing;
     }
 
+    /**
+     * rangeフィルターの情報を格納したMapのインスタンスを生成して返却する.
+     * @param key 検索キー
+     * @param operator 比較演算子(gt, gte, lt, lte)
+     * @param value 比較する値
+     * @return 入力値を格納したMap
+     */
+    public static Map<String, Object> rangeFilter(String key, String operator, Object value) {
+        Map<String, Object> query = new HashMap<String, Object>();
+        Map<String, Object> range = new HashMap<String, Object>();
+        Map<String, Object> condition = new HashMap<String, Object>();
+
+        condition.put(operator, value);
+        range.put(key, condition);
+        query.put("range", range);
+        return query;
+    }
+
     /**
      * termフィルターの情報を格納したMapのインスタンスを生成して返却する.
      * @param key 検索キー
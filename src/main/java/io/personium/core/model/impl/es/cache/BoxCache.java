@@ -34,7 +34,7 @@ import io.personium.core.utils.MemcachedClient.MemcachedClientException;
  */
 public class BoxCache {
     static Logger log = LoggerFactory.getLogger(BoxCache.class);
-    private static MemcachedClient mcdClient = MemcachedClient.getCacheClient();
+    static CacheClient mcdClient = MemcachedClient.getCacheClient();
 
     static CacheClient getMcdClient() {
         return mcdClient;
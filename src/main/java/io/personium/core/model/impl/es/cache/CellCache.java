@@ -32,7 +32,7 @@ import io.personium.core.utils.MemcachedClient.MemcachedClientException;
 public class CellCache {
     static Logger log = LoggerFactory.getLogger(CellCache.class);
 
-    static MemcachedClient mcdClient = MemcachedClient.getCacheClient();
+    static CacheClient mcdClient = MemcachedClient.getCacheClient();
 
     private CellCache() {
     }
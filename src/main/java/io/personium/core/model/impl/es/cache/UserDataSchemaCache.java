@@ -32,7 +32,7 @@ import io.personium.core.utils.MemcachedClient.MemcachedClientException;
  */
 public class UserDataSchemaCache {
     static Logger log = LoggerFactory.getLogger(UserDataSchemaCache.class);
-    static MemcachedClient mcdClient = MemcachedClient.getCacheClient();
+    static CacheClient mcdClient = MemcachedClient.getCacheClient();
 
     static CacheClient getMcdClient() {
         return mcdClient;
@@ -0,0 +1,274 @@
+/**
+ * personium.io
+ * Copyright 2018 FUJITSU LIMITED
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.personium.core.model.impl.es.memory;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import io.personium.common.es.EsBulkRequest;
+import io.personium.common.es.EsIndex;
+import io.personium.common.es.EsType;
+import io.personium.common.es.response.PersoniumBulkResponse;
+import io.personium.common.es.response.PersoniumDeleteResponse;
+import io.personium.common.es.response.PersoniumGetResponse;
+import io.personium.common.es.response.PersoniumIndexResponse;
+import io.personium.common.es.response.PersoniumMultiSearchResponse;
+import io.personium.common.es.response.PersoniumSearchResponse;
+import io.personium.common.es.util.PersoniumUUID;
+import io.personium.core.PersoniumUnitConfig;
+
+/**
+ * ElasticSearchの代わりにプロセス内のメモリにドキュメントを保持するデータストア.
+ * <p>
+ * {@link PersoniumUnitConfig.ES#STORE}に"memory"を指定した場合に{@link io.personium.core.model.impl.es.EsModel}
+ * から使用され、{@link EsIndex}/{@link EsType}と同じインタフェースで登録・取得・検索・一括処理を提供する.
+ * 検索は{@link MemoryQuery}が対応するクエリのみ評価でき、ルーティングIDは検索条件として扱わない.
+ * データは永続化されないため、性能測定と単体テストでの使用を想定している.
+ */
+public final class MemoryDataStore {
+
+    /** データストア種別: ElasticSearch. */
+    public static final String STORE_ES = "es";
+
+    /** データストア種別: メモリ. */
+    public static final String STORE_MEMORY = "memory";
+
+    private static final ConcurrentMap<String, MemoryIndex> INDICES = new ConcurrentHashMap<String, MemoryIndex>();
+
+    private MemoryDataStore() {
+    }
+
+    /**
+     * メモリのデータストアを使用する設定かどうかを返却する.
+     * @return true: メモリのデータストアを使用する
+     */
+    public static boolean isEnabled() {
+        return STORE_MEMORY.equals(PersoniumUnitConfig.getEsStore());
+    }
+
+    /**
+     * Index操作オブジェクトを返却する.
+     * @param name インデックス名
+     * @param category インデックスの種別({@link EsIndex#CATEGORY_AD}/{@link EsIndex#CATEGORY_USR})
+     * @return Indexオブジェクト
+     */
+    public static EsIndex index(String name, String category) {
+        return new MemoryEsIndex(name, category);
+    }
+
+    /**
+     * Type操作オブジェクトを返却する.
+     * @param indexName インデックス名
+     * @param typeName タイプ名
+     * @return Typeオブジェクト
+     */
+    public static EsType type(String indexName, String typeName) {
+        return new MemoryEsType(indexName, typeName);
+    }
+
+    /**
+     * すべてのインデックスを削除する.
+     */
+    public static void clear() {
+        INDICES.clear();
+    }
+
+    private static MemoryIndex getIndex(String name) {
+        MemoryIndex index = INDICES.get(name);
+        if (index == null) {
+            MemoryIndex created = new MemoryIndex(name);
+            index = INDICES.putIfAbsent(name, created);
+            if (index == null) {
+                index = created;
+            }
+        }
+        return index;
+    }
+
+    private static List<MemoryDocument> search(String indexName, String type, Map<String, Object> request) {
+        return getIndex(indexName).search(type, request);
+    }
+
+    private static PersoniumMultiSearchResponse multiSearch(String indexName, String type,
+            List<Map<String, Object>> requests) {
+        List<List<MemoryDocument>> results = new ArrayList<List<MemoryDocument>>();
+        for (Map<String, Object> request : requests) {
+            results.add(search(indexName, type, request));
+        }
+        return MemoryResponses.multiSearch(indexName, results, requests);
+    }
+
+    /**
+     * メモリ上のインデックスに対する{@link EsIndex}の実装.
+     * ルーティングIDは検索条件として扱わない.
+     */
+    private static final class MemoryEsIndex implements EsIndex {
+        private final String name;
+        private final String category;
+
+        MemoryEsIndex(String name, String category) {
+            this.name = name;
+            this.category = category;
+        }
+
+        @Override
+        public String getName() {
+            return name;
+        }
+
+        @Override
+        public String getCategory() {
+            return category;
+        }
+
+        @Override
+        public void create() {
+            // インデックス・マッピングの定義は不要
+        }
+
+        @Override
+        public void delete() {
+            INDICES.remove(name);
+        }
+
+        @Override
+        public PersoniumSearchResponse search(String routingId, Map<String, Object> query) {
+            return MemoryResponses.search(name, MemoryDataStore.search(name, null, query), query);
+        }
+
+        @Override
+        public PersoniumMultiSearchResponse multiSearch(String routingId, List<Map<String, Object>> queryList) {
+            return MemoryDataStore.multiSearch(name, null, queryList);
+        }
+
+        @Override
+        public PersoniumBulkResponse bulkRequest(String routingId, List<EsBulkRequest> datas, boolean isWriteLog) {
+            MemoryIndex index = getIndex(name);
+            List<MemoryDocument> documents = new ArrayList<MemoryDocument>();
+            List<String> operations = new ArrayList<String>();
+            for (EsBulkRequest request : datas) {
+                if (EsBulkRequest.BulkRequestType.DELETE.equals(request.getRequestType())) {
+                    MemoryDocument removed = index.remove(request.getType(), request.getId(), -1L);
+                    documents.add(removed != null ? removed
+                            : new MemoryDocument(request.getType(), request.getId(), -1L, null));
+                    operations.add("delete");
+                } else {
+                    documents.add(index.put(request.getType(), request.getId(), request.getSource(), -1L));
+                    operations.add("index");
+                }
+            }
+            return MemoryResponses.bulk(name, documents, operations);
+        }
+
+        @Override
+        public void deleteByQuery(String routingId, Map<String, Object> deleteQuery) {
+            getIndex(name).deleteByQuery(deleteQuery);
+        }
+
+        @Override
+        public String toString() {
+            return "MemoryEsIndex[" + name + "]";
+        }
+    }
+
+    /**
+     * メモリ上のインデックスに対する{@link EsType}の実装.
+     */
+    private static final class MemoryEsType implements EsType {
+        private final String indexName;
+        private final String typeName;
+
+        MemoryEsType(String indexName, String typeName) {
+            this.indexName = indexName;
+            this.typeName = typeName;
+        }
+
+        @Override
+        public String getType() {
+            return typeName;
+        }
+
+        @Override
+        public PersoniumGetResponse get(String id) {
+            return MemoryResponses.get(indexName, typeName, id, getIndex(indexName).get(typeName, id));
+        }
+
+        @Override
+        public PersoniumGetResponse get(String id, boolean realtime) {
+            // メモリ上のドキュメントは常に最新
+            return get(id);
+        }
+
+        @SuppressWarnings("rawtypes")
+        @Override
+        public PersoniumIndexResponse create(Map data) {
+            return put(PersoniumUUID.randomUUID(), data, -1L);
+        }
+
+        @SuppressWarnings("rawtypes")
+        @Override
+        public PersoniumIndexResponse create(String id, Map data) {
+            return put(id, data, -1L);
+        }
+
+        @SuppressWarnings("rawtypes")
+        @Override
+        public PersoniumIndexResponse update(String id, Map data, long version) {
+            return put(id, data, version);
+        }
+
+        @SuppressWarnings("rawtypes")
+        @Override
+        public PersoniumIndexResponse update(String id, Map data) {
+            return put(id, data, -1L);
+        }
+
+        @Override
+        public PersoniumSearchResponse search(Map<String, Object> query) {
+            return MemoryResponses.search(indexName, MemoryDataStore.search(indexName, typeName, query), query);
+        }
+
+        @Override
+        public PersoniumMultiSearchResponse multiSearch(List<Map<String, Object>> queryList) {
+            return MemoryDataStore.multiSearch(indexName, typeName, queryList);
+        }
+
+        @Override
+        public PersoniumDeleteResponse delete(String docId) {
+            return delete(docId, -1L);
+        }
+
+        @Override
+        public PersoniumDeleteResponse delete(String docId, long version) {
+            return MemoryResponses.delete(indexName, typeName, docId,
+                    getIndex(indexName).remove(typeName, docId, version));
+        }
+
+        @SuppressWarnings({"rawtypes", "unchecked" })
+        private PersoniumIndexResponse put(String id, Map data, long version) {
+            return MemoryResponses.index(indexName, getIndex(indexName).put(typeName, id, data, version));
+        }
+
+        @Override
+        public String toString() {
+            return "MemoryEsType[" + indexName + "/" + typeName + "]";
+        }
+    }
+}
@@ -0,0 +1,109 @@
+/**
+ * personium.io
+ * Copyright 2018 FUJITSU LIMITED
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.personium.core.model.impl.es.memory;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * メモリ上に保持する1件のドキュメント.
+ * 保持するsourceは登録時に複製したもので、外部から変更されない.
+ */
+final class MemoryDocument {
+    private final String type;
+    private final String id;
+    private final long version;
+    private final Map<String, Object> source;
+
+    /**
+     * constructor.
+     * @param type タイプ名
+     * @param id ID
+     * @param version バージョン
+     * @param source ドキュメント
+     */
+    MemoryDocument(String type, String id, long version, Map<String, Object> source) {
+        this.type = type;
+        this.id = id;
+        this.version = version;
+        this.source = source;
+    }
+
+    String getType() {
+        return type;
+    }
+
+    String getId() {
+        return id;
+    }
+
+    long getVersion() {
+        return version;
+    }
+
+    /**
+     * ドキュメントを返却する. 返却したMapは変更しないこと.
+     * @return ドキュメント
+     */
+    Map<String, Object> getSource() {
+        return source;
+    }
+
+    /**
+     * Map/Listを再帰的に複製する.
+     * @param value 複製元
+     * @return 複製した値
+     */
+    @SuppressWarnings("unchecked")
+    static Object copy(Object value) {
+        if (value instanceof Map) {
+            Map<String, Object> copied = new LinkedHashMap<String, Object>();
+            for (Map.Entry<String, Object> entry : ((Map<String, Object>) value).entrySet()) {
+                copied.put(entry.getKey(), copy(entry.getValue()));
+            }
+            return copied;
+        } else if (value instanceof List) {
+            List<Object> copied = new ArrayList<Object>();
+            for (Object element : (List<Object>) value) {
+                copied.add(copy(element));
+            }
+            return copied;
+        } else if (value instanceof Object[]) {
+            List<Object> copied = new ArrayList<Object>();
+            for (Object element : (Object[]) value) {
+                copied.add(copy(element));
+            }
+            return copied;
+        }
+        return value;
+    }
+
+    /**
+     * Mapを再帰的に複製する.
+     * @param source 複製元. nullの場合は空のMapとする
+     * @return 複製したMap
+     */
+    @SuppressWarnings("unchecked")
+    static Map<String, Object> copySource(Map<String, Object> source) {
+        if (source == null) {
+            return new LinkedHashMap<String, Object>();
+        }
+        return (Map<String, Object>) copy(source);
+    }
+}
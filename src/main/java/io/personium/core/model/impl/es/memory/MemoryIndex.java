@@ -0,0 +1,189 @@
+/**
+ * personium.io
+ * Copyright 2018 FUJITSU LIMITED
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.personium.core.model.impl.es.memory;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+import io.personium.core.PersoniumCoreException;
+
+/**
+ * メモリ上の1インデックス分のドキュメントを保持する.
+ * <p>
+ * タイプごとにIDをキーとしてドキュメントを保持し、読み込みと書き込みを{@link ReadWriteLock}で排他する.
+ * バージョンはドキュメントごとに1から始まり、更新のたびに1加算する.
+ */
+final class MemoryIndex {
+
+    private final String name;
+    private final Map<String, Map<String, MemoryDocument>> types =
+            new LinkedHashMap<String, Map<String, MemoryDocument>>();
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+
+    /**
+     * constructor.
+     * @param name インデックス名
+     */
+    MemoryIndex(String name) {
+        this.name = name;
+    }
+
+    /**
+     * インデックス名を返却する.
+     * @return インデックス名
+     */
+    String getName() {
+        return name;
+    }
+
+    /**
+     * ドキュメントを取得する.
+     * @param type タイプ名
+     * @param id ID
+     * @return ドキュメント. 存在しない場合はnull
+     */
+    MemoryDocument get(String type, String id) {
+        lock.readLock().lock();
+        try {
+            Map<String, MemoryDocument> documents = types.get(type);
+            return documents == null ? null : documents.get(id);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * ドキュメントを登録または更新する.
+     * @param type タイプ名
+     * @param id ID
+     * @param source ドキュメント
+     * @param version 更新対象のバージョン. 負の値の場合はバージョンを確認しない
+     * @return 登録したドキュメント
+     */
+    MemoryDocument put(String type, String id, Map<String, Object> source, long version) {
+        Map<String, Object> copied = MemoryDocument.copySource(source);
+        lock.writeLock().lock();
+        try {
+            Map<String, MemoryDocument> documents = types.get(type);
+            if (documents == null) {
+                documents = new LinkedHashMap<String, MemoryDocument>();
+                types.put(type, documents);
+            }
+            MemoryDocument current = documents.get(id);
+            checkVersion(current, version);
+            MemoryDocument document = new MemoryDocument(type, id, current == null ? 1L : current.getVersion() + 1,
+                    copied);
+            documents.put(id, document);
+            return document;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * ドキュメントを削除する.
+     * @param type タイプ名
+     * @param id ID
+     * @param version 削除対象のバージョン. 負の値の場合はバージョンを確認しない
+     * @return 削除したドキュメント. 存在しない場合はnull
+     */
+    MemoryDocument remove(String type, String id, long version) {
+        lock.writeLock().lock();
+        try {
+            Map<String, MemoryDocument> documents = types.get(type);
+            if (documents == null) {
+                return null;
+            }
+            MemoryDocument current = documents.get(id);
+            if (current == null) {
+                return null;
+            }
+            checkVersion(current, version);
+            return documents.remove(id);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    private static void checkVersion(MemoryDocument current, long version) {
+        if (version >= 0 && (current == null || current.getVersion() != version)) {
+            throw PersoniumCoreException.OData.ETAG_NOT_MATCH;
+        }
+    }
+
+    /**
+     * 検索条件に一致するドキュメントを取得する.
+     * @param type タイプ名. nullの場合はすべてのタイプを対象とする
+     * @param request 検索リクエスト
+     * @return 一致したドキュメント(ソート済み)
+     */
+    List<MemoryDocument> search(String type, Map<String, Object> request) {
+        lock.readLock().lock();
+        try {
+            return MemoryQuery.select(snapshot(type), request);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * 検索条件に一致するドキュメントを削除する.
+     * @param request 検索リクエスト
+     * @return 削除した件数
+     */
+    int deleteByQuery(Map<String, Object> request) {
+        lock.writeLock().lock();
+        try {
+            List<MemoryDocument> matched = MemoryQuery.select(snapshot(null), request);
+            for (MemoryDocument document : matched) {
+                types.get(document.getType()).remove(document.getId());
+            }
+            return matched.size();
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * すべてのドキュメントを削除する.
+     */
+    void clear() {
+        lock.writeLock().lock();
+        try {
+            types.clear();
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    private Collection<MemoryDocument> snapshot(String type) {
+        if (type != null) {
+            Map<String, MemoryDocument> documents = types.get(type);
+            return documents == null ? new ArrayList<MemoryDocument>() : documents.values();
+        }
+        List<MemoryDocument> all = new ArrayList<MemoryDocument>();
+        for (Map<String, MemoryDocument> documents : types.values()) {
+            all.addAll(documents.values());
+        }
+        return all;
+    }
+}
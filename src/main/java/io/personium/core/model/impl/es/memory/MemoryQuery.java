@@ -0,0 +1,557 @@
+/**
+ * personium.io
+ * Copyright 2018 FUJITSU LIMITED
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.personium.core.model.impl.es.memory;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * ElasticSearchの検索クエリ(Map形式)をメモリ上のドキュメントに対して評価する.
+ * <p>
+ * {@link io.personium.core.model.impl.es.odata.EsQueryHandler}と{@link io.personium.core.model.impl.es.QueryMapFactory}
+ * が生成するクエリを対象とし、filtered/bool/and/or/not/term/terms/ids/range/missing/exists/prefix/match/match_all
+ * に対応する. matchは形態素解析を行わず、大文字小文字を区別しない部分一致として扱う.
+ * フィールド名の末尾の".untouched"/".double"/".long"はマルチフィールドの指定として無視する.
+ */
+final class MemoryQuery {
+
+    /** ElasticSearchの既定の取得件数. */
+    static final int DEFAULT_SIZE = 10;
+
+    private static final String[] MULTI_FIELD_SUFFIXES = {".untouched", ".double", ".long" };
+
+    private MemoryQuery() {
+    }
+
+    /**
+     * 検索リクエストの条件に一致するドキュメントをソートして返却する.
+     * @param documents 検索対象
+     * @param request 検索リクエスト
+     * @return 一致したドキュメント
+     */
+    @SuppressWarnings("unchecked")
+    static List<MemoryDocument> select(Collection<MemoryDocument> documents, Map<String, Object> request) {
+        Map<String, Object> query = (Map<String, Object>) request.get("query");
+        Map<String, Object> filter = (Map<String, Object>) request.get("filter");
+        if (filter == null) {
+            filter = (Map<String, Object>) request.get("post_filter");
+        }
+        List<MemoryDocument> matched = new ArrayList<MemoryDocument>();
+        for (MemoryDocument document : documents) {
+            if ((query == null || matches(document, query)) && (filter == null || matches(document, filter))) {
+                matched.add(document);
+            }
+        }
+        Object sort = request.get("sort");
+        if (sort != null) {
+            Collections.sort(matched, comparator(sort));
+        }
+        return matched;
+    }
+
+    /**
+     * 検索リクエストの取得件数を返却する.
+     * @param request 検索リクエスト
+     * @param key "size" または "from"
+     * @param defaultValue 指定がない場合の値
+     * @return 件数
+     */
+    static int getInt(Map<String, Object> request, String key, int defaultValue) {
+        Object value = request.get(key);
+        if (value instanceof Number) {
+            return (int) Math.min(Integer.MAX_VALUE, ((Number) value).longValue());
+        } else if (value != null) {
+            return Integer.parseInt(value.toString());
+        }
+        return defaultValue;
+    }
+
+    /**
+     * ドキュメントがクエリ/フィルタに一致するかを判定する. 複数のキーを持つ場合はすべてに一致する必要がある.
+     * @param document ドキュメント
+     * @param clause クエリ/フィルタ
+     * @return true: 一致する
+     */
+    @SuppressWarnings("unchecked")
+    static boolean matches(MemoryDocument document, Map<String, Object> clause) {
+        for (Map.Entry<String, Object> entry : clause.entrySet()) {
+            String key = entry.getKey();
+            Object value = entry.getValue();
+            if (key.startsWith("_")) {
+                // _cache, _name などの評価に影響しないオプション
+                continue;
+            }
+            if (!matches(document, key, value)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    @SuppressWarnings("unchecked")
+    private static boolean matches(MemoryDocument document, String key, Object value) {
+        if ("match_all".equals(key)) {
+            return true;
+        } else if ("query".equals(key) || "filter".equals(key)) {
+            return matches(document, (Map<String, Object>) value);
+        } else if ("filtered".equals(key) || "constant_score".equals(key)) {
+            Map<String, Object> filtered = (Map<String, Object>) value;
+            Map<String, Object> query = (Map<String, Object>) filtered.get("query");
+            Map<String, Object> filter = (Map<String, Object>) filtered.get("filter");
+            return (query == null || matches(document, query)) && (filter == null || matches(document, filter));
+        } else if ("and".equals(key)) {
+            for (Map<String, Object> filter : getClauses(value)) {
+                if (!matches(document, filter)) {
+                    return false;
+                }
+            }
+            return true;
+        } else if ("or".equals(key)) {
+            for (Map<String, Object> filter : getClauses(value)) {
+                if (matches(document, filter)) {
+                    return true;
+                }
+            }
+            return false;
+        } else if ("not".equals(key)) {
+            Map<String, Object> not = (Map<String, Object>) value;
+            Object filter = not.containsKey("filter") ? not.get("filter") : not.get("query");
+            return !matches(document, filter == null ? not : (Map<String, Object>) filter);
+        } else if ("bool".equals(key)) {
+            return matchesBool(document, (Map<String, Object>) value);
+        } else if ("term".equals(key)) {
+            return matchesTerm(document, (Map<String, Object>) value);
+        } else if ("terms".equals(key)) {
+            return matchesTerms(document, (Map<String, Object>) value);
+        } else if ("ids".equals(key)) {
+            Object ids = ((Map<String, Object>) value).get("values");
+            return ids instanceof Collection && ((Collection<Object>) ids).contains(document.getId());
+        } else if ("range".equals(key)) {
+            return matchesRange(document, (Map<String, Object>) value);
+        } else if ("missing".equals(key)) {
+            return getValues(document, (String) ((Map<String, Object>) value).get("field")).isEmpty();
+        } else if ("exists".equals(key)) {
+            return !getValues(document, (String) ((Map<String, Object>) value).get("field")).isEmpty();
+        } else if ("prefix".equals(key)) {
+            return matchesPrefix(document, (Map<String, Object>) value);
+        } else if ("match".equals(key)) {
+            return matchesText(document, (Map<String, Object>) value);
+        }
+        throw new UnsupportedOperationException("Unsupported query for memory store: " + key);
+    }
+
+    @SuppressWarnings("unchecked")
+    private static List<Map<String, Object>> getClauses(Object value) {
+        if (value instanceof Map) {
+            Map<String, Object> map = (Map<String, Object>) value;
+            Object filters = map.containsKey("filters") ? map.get("filters") : map.get("queries");
+            if (filters == null) {
+                return Collections.singletonList(map);
+            }
+            value = filters;
+        }
+        if (value instanceof List) {
+            return (List<Map<String, Object>>) value;
+        }
+        return Collections.emptyList();
+    }
+
+    private static boolean matchesBool(MemoryDocument document, Map<String, Object> bool) {
+        for (Map<String, Object> must : getClauses(bool.get("must"))) {
+            if (!matches(document, must)) {
+                return false;
+            }
+        }
+        for (Map<String, Object> mustNot : getClauses(bool.get("must_not"))) {
+            if (matches(document, mustNot)) {
+                return false;
+            }
+        }
+        List<Map<String, Object>> shoulds = getClauses(bool.get("should"));
+        int minimum = 0;
+        if (bool.containsKey("minimum_should_match")) {
+            minimum = Integer.parseInt(bool.get("minimum_should_match").toString());
+        } else if (!shoulds.isEmpty() && !bool.containsKey("must")) {
+            // mustがない場合はshouldのいずれかに一致する必要がある
+            minimum = 1;
+        }
+        int matched = 0;
+        for (Map<String, Object> should : shoulds) {
+            if (matched >= minimum) {
+                break;
+            }
+            if (matches(document, should)) {
+                matched++;
+            }
+        }
+        return matched >= minimum;
+    }
+
+    @SuppressWarnings("unchecked")
+    private static boolean matchesTerm(MemoryDocument document, Map<String, Object> term) {
+        for (Map.Entry<String, Object> entry : term.entrySet()) {
+            if (entry.getKey().startsWith("_") && !isMetaField(entry.getKey())) {
+                continue;
+            }
+            Object expected = entry.getValue();
+            if (expected instanceof Map) {
+                expected = ((Map<String, Object>) expected).get("value");
+            }
+            if (!containsValue(getValues(document, entry.getKey()), expected)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    @SuppressWarnings("unchecked")
+    private static boolean matchesTerms(MemoryDocument document, Map<String, Object> terms) {
+        for (Map.Entry<String, Object> entry : terms.entrySet()) {
+            if (!(entry.getValue() instanceof Collection)) {
+                // execution などのオプション
+                continue;
+            }
+            List<Object> values = getValues(document, entry.getKey());
+            boolean found = false;
+            for (Object expected : (Collection<Object>) entry.getValue()) {
+                if (containsValue(values, expected)) {
+                    found = true;
+                    break;
+                }
+            }
+            if (!found) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    @SuppressWarnings("unchecked")
+    private static boolean matchesRange(MemoryDocument document, Map<String, Object> range) {
+        for (Map.Entry<String, Object> entry : range.entrySet()) {
+            Map<String, Object> conditions = (Map<String, Object>) entry.getValue();
+            boolean found = false;
+            for (Object value : getValues(document, entry.getKey())) {
+                if (inRange(value, conditions)) {
+                    found = true;
+                    break;
+                }
+            }
+            if (!found) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static boolean inRange(Object value, Map<String, Object> conditions) {
+        for (Map.Entry<String, Object> condition : conditions.entrySet()) {
+            Object bound = condition.getValue();
+            String operator = condition.getKey();
+            if (bound == null) {
+                continue;
+            }
+            int compared = compareValues(value, bound);
+            if ("gt".equals(operator) && compared <= 0
+                    || "gte".equals(operator) && compared < 0
+                    || "lt".equals(operator) && compared >= 0
+                    || "lte".equals(operator) && compared > 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static boolean matchesPrefix(MemoryDocument document, Map<String, Object> prefix) {
+        for (Map.Entry<String, Object> entry : prefix.entrySet()) {
+            String expected = String.valueOf(entry.getValue());
+            boolean found = false;
+            for (Object value : getValues(document, entry.getKey())) {
+                if (String.valueOf(value).startsWith(expected)) {
+                    found = true;
+                    break;
+                }
+            }
+            if (!found) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    @SuppressWarnings("unchecked")
+    private static boolean matchesText(MemoryDocument document, Map<String, Object> match) {
+        for (Map.Entry<String, Object> entry : match.entrySet()) {
+            Object query = entry.getValue();
+            if (query instanceof Map) {
+                query = ((Map<String, Object>) query).get("query");
+            }
+            String expected = String.valueOf(query).toLowerCase(Locale.ENGLISH);
+            List<Object> values;
+            if ("_all".equals(entry.getKey())) {
+                values = new ArrayList<Object>();
+                collectLeaves(document.getSource(), values);
+            } else {
+                values = getValues(document, entry.getKey());
+            }
+            boolean found = false;
+            for (Object value : values) {
+                if (String.valueOf(value).toLowerCase(Locale.ENGLISH).contains(expected)) {
+                    found = true;
+                    break;
+                }
+            }
+            if (!found) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    @SuppressWarnings("unchecked")
+    private static void collectLeaves(Object value, List<Object> leaves) {
+        if (value instanceof Map) {
+            for (Object child : ((Map<String, Object>) value).values()) {
+                collectLeaves(child, leaves);
+            }
+        } else if (value instanceof Collection) {
+            for (Object child : (Collection<Object>) value) {
+                collectLeaves(child, leaves);
+            }
+        } else if (value != null) {
+            leaves.add(value);
+        }
+    }
+
+    private static boolean isMetaField(String field) {
+        return "_id".equals(field) || "_type".equals(field) || "_version".equals(field);
+    }
+
+    /**
+     * フィールドの値を取得する. 配列の場合は各要素を値とする.
+     * @param document ドキュメント
+     * @param field フィールド名(ドット区切り)
+     * @return 値. 存在しない場合は空のリスト
+     */
+    static List<Object> getValues(MemoryDocument document, String field) {
+        List<Object> values = new ArrayList<Object>();
+        if ("_id".equals(field)) {
+            values.add(document.getId());
+        } else if ("_type".equals(field)) {
+            values.add(document.getType());
+        } else if ("_version".equals(field)) {
+            values.add(document.getVersion());
+        } else {
+            collectValues(document.getSource(), field, values);
+            if (values.isEmpty()) {
+                for (String suffix : MULTI_FIELD_SUFFIXES) {
+                    if (field.endsWith(suffix)) {
+                        collectValues(document.getSource(), field.substring(0, field.length() - suffix.length()),
+                                values);
+                        break;
+                    }
+                }
+            }
+        }
+        return values;
+    }
+
+    @SuppressWarnings("unchecked")
+    private static void collectValues(Object current, String path, List<Object> values) {
+        if (current instanceof Collection) {
+            for (Object element : (Collection<Object>) current) {
+                collectValues(element, path, values);
+            }
+            return;
+        }
+        if (!(current instanceof Map)) {
+            return;
+        }
+        Map<String, Object> map = (Map<String, Object>) current;
+        if (map.containsKey(path)) {
+            addValue(map.get(path), values);
+            return;
+        }
+        // フィールド名自体がドットを含む場合に備え、長い名前から順に照合する
+        int dot = path.lastIndexOf('.');
+        while (dot > 0) {
+            String head = path.substring(0, dot);
+            if (map.containsKey(head)) {
+                collectValues(map.get(head), path.substring(dot + 1), values);
+                return;
+            }
+            dot = path.lastIndexOf('.', dot - 1);
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private static void addValue(Object value, List<Object> values) {
+        if (value instanceof Collection) {
+            for (Object element : (Collection<Object>) value) {
+                addValue(element, values);
+            }
+        } else if (value != null) {
+            values.add(value);
+        }
+    }
+
+    private static boolean containsValue(List<Object> values, Object expected) {
+        for (Object value : values) {
+            if (equalsValue(value, expected)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static boolean equalsValue(Object value, Object expected) {
+        if (value instanceof Number && expected instanceof Number) {
+            return compareNumbers((Number) value, (Number) expected) == 0;
+        }
+        return expected != null && String.valueOf(value).equals(String.valueOf(expected));
+    }
+
+    /**
+     * 値を比較する. 数値同士は数値として、それ以外は文字列として比較する.
+     * @param value 値
+     * @param other 比較対象
+     * @return 比較結果
+     */
+    static int compareValues(Object value, Object other) {
+        if (value instanceof Number && other instanceof Number) {
+            return compareNumbers((Number) value, (Number) other);
+        }
+        if (value instanceof Number && other instanceof String || value instanceof String && other instanceof Number) {
+            try {
+                return Double.compare(Double.parseDouble(value.toString()), Double.parseDouble(other.toString()));
+            } catch (NumberFormatException e) {
+                return String.valueOf(value).compareTo(String.valueOf(other));
+            }
+        }
+        return String.valueOf(value).compareTo(String.valueOf(other));
+    }
+
+    private static int compareNumbers(Number value, Number other) {
+        if (isIntegral(value) && isIntegral(other)) {
+            return Long.compare(value.longValue(), other.longValue());
+        }
+        return Double.compare(value.doubleValue(), other.doubleValue());
+    }
+
+    private static boolean isIntegral(Number value) {
+        return value instanceof Long || value instanceof Integer || value instanceof Short || value instanceof Byte;
+    }
+
+    @SuppressWarnings("unchecked")
+    private static Comparator<MemoryDocument> comparator(Object sort) {
+        final Map<String, Boolean> orders = new LinkedHashMap<String, Boolean>();
+        List<Object> specs = sort instanceof List ? (List<Object>) sort : Collections.singletonList(sort);
+        for (Object spec : specs) {
+            if (spec instanceof String) {
+                orders.put((String) spec, true);
+            } else if (spec instanceof Map) {
+                for (Map.Entry<String, Object> entry : ((Map<String, Object>) spec).entrySet()) {
+                    Object option = entry.getValue();
+                    if (option instanceof Map) {
+                        option = ((Map<String, Object>) option).get("order");
+                    }
+                    orders.put(entry.getKey(), !"desc".equalsIgnoreCase(String.valueOf(option)));
+                }
+            }
+        }
+        return new Comparator<MemoryDocument>() {
+            @Override
+            public int compare(MemoryDocument d1, MemoryDocument d2) {
+                for (Map.Entry<String, Boolean> order : orders.entrySet()) {
+                    if ("_score".equals(order.getKey())) {
+                        continue;
+                    }
+                    List<Object> v1 = getValues(d1, order.getKey());
+                    List<Object> v2 = getValues(d2, order.getKey());
+                    int compared;
+                    if (v1.isEmpty() || v2.isEmpty()) {
+                        // 値のないドキュメントは昇順・降順ともに末尾とする
+                        compared = Boolean.compare(v1.isEmpty(), v2.isEmpty());
+                    } else if (order.getValue()) {
+                        compared = compareValues(v1.get(0), v2.get(0));
+                    } else {
+                        compared = compareValues(v2.get(0), v1.get(0));
+                    }
+                    if (compared != 0) {
+                        return compared;
+                    }
+                }
+                return 0;
+            }
+        };
+    }
+
+    /**
+     * "_source"の指定に従ってドキュメントを絞り込んで複製する.
+     * @param source ドキュメント
+     * @param spec "_source"の指定. nullの場合はすべてのフィールドを返却する
+     * @return 返却するドキュメント. falseが指定された場合はnull
+     */
+    @SuppressWarnings("unchecked")
+    static Map<String, Object> filterSource(Map<String, Object> source, Object spec) {
+        if (spec == null || Boolean.TRUE.equals(spec)) {
+            return MemoryDocument.copySource(source);
+        } else if (Boolean.FALSE.equals(spec)) {
+            return null;
+        }
+        Object includes = spec;
+        if (spec instanceof Map) {
+            Map<String, Object> map = (Map<String, Object>) spec;
+            includes = map.containsKey("includes") ? map.get("includes") : map.get("include");
+            if (includes == null) {
+                return MemoryDocument.copySource(source);
+            }
+        }
+        List<Object> fields = includes instanceof List ? (List<Object>) includes
+                : Collections.singletonList(includes);
+        Map<String, Object> filtered = new LinkedHashMap<String, Object>();
+        for (Object field : fields) {
+            copyField(source, filtered, String.valueOf(field).split("\\."), 0);
+        }
+        return filtered;
+    }
+
+    @SuppressWarnings("unchecked")
+    private static void copyField(Map<String, Object> from, Map<String, Object> to, String[] path, int depth) {
+        String key = path[depth];
+        if (!from.containsKey(key)) {
+            return;
+        }
+        Object value = from.get(key);
+        if (depth == path.length - 1 || !(value instanceof Map)) {
+            to.put(key, MemoryDocument.copy(value));
+            return;
+        }
+        Object child = to.get(key);
+        if (!(child instanceof Map)) {
+            child = new LinkedHashMap<String, Object>();
+            to.put(key, child);
+        }
+        copyField((Map<String, Object>) value, (Map<String, Object>) child, path, depth + 1);
+    }
+}
@@ -0,0 +1,692 @@
+/**
+ * personium.io
+ * Copyright 2018 FUJITSU LIMITED
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.personium.core.model.impl.es.memory;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+
+import org.json.simple.JSONObject;
+
+import io.personium.common.es.response.PersoniumBulkItemResponse;
+import io.personium.common.es.response.PersoniumBulkResponse;
+import io.personium.common.es.response.PersoniumDeleteResponse;
+import io.personium.common.es.response.PersoniumGetResponse;
+import io.personium.common.es.response.PersoniumIndexResponse;
+import io.personium.common.es.response.PersoniumItem;
+import io.personium.common.es.response.PersoniumMultiSearchResponse;
+import io.personium.common.es.response.PersoniumSearchHit;
+import io.personium.common.es.response.PersoniumSearchHitField;
+import io.personium.common.es.response.PersoniumSearchHits;
+import io.personium.common.es.response.PersoniumSearchResponse;
+
+/**
+ * メモリ上の処理結果をElasticSearchアダプタの応答インタフェースとして返却する.
+ * <p>
+ * 各応答はアダプタの応答インタフェースが宣言するメソッドのみを実装する.
+ */
+final class MemoryResponses {
+
+    private static final float SCORE = 1.0f;
+
+    private MemoryResponses() {
+    }
+
+    /**
+     * ドキュメント取得の応答を生成する.
+     * @param index インデックス名
+     * @param type タイプ名
+     * @param id ID
+     * @param document ドキュメント. 存在しない場合はnull
+     * @return 応答
+     */
+    static PersoniumGetResponse get(String index, String type, String id, MemoryDocument document) {
+        return new GetResponse(index, type, id, document);
+    }
+
+    /**
+     * ドキュメント登録の応答を生成する.
+     * @param index インデックス名
+     * @param document 登録したドキュメント
+     * @return 応答
+     */
+    static PersoniumIndexResponse index(String index, MemoryDocument document) {
+        return new IndexResponse(index, document);
+    }
+
+    /**
+     * ドキュメント削除の応答を生成する.
+     * @param index インデックス名
+     * @param type タイプ名
+     * @param id ID
+     * @param document 削除したドキュメント. 存在しなかった場合はnull
+     * @return 応答
+     */
+    static PersoniumDeleteResponse delete(String index, String type, String id, MemoryDocument document) {
+        return new DeleteResponse(index, type, id, document);
+    }
+
+    /**
+     * 検索の応答を生成する.
+     * @param index インデックス名
+     * @param matched 条件に一致したドキュメント(ソート済み)
+     * @param request 検索リクエスト
+     * @return 応答
+     */
+    static PersoniumSearchResponse search(String index, List<MemoryDocument> matched, Map<String, Object> request) {
+        return new SearchResponse(hits(index, matched, request));
+    }
+
+    /**
+     * マルチ検索の応答を生成する.
+     * @param index インデックス名
+     * @param results 検索リクエストごとの一致したドキュメント
+     * @param requests 検索リクエスト
+     * @return 応答
+     */
+    static PersoniumMultiSearchResponse multiSearch(String index, List<List<MemoryDocument>> results,
+            List<Map<String, Object>> requests) {
+        PersoniumItem[] items = new PersoniumItem[results.size()];
+        for (int i = 0; i < items.length; i++) {
+            items[i] = new Item(search(index, results.get(i), requests.get(i)));
+        }
+        return new MultiSearchResponse(items);
+    }
+
+    /**
+     * 一括処理の応答を生成する.
+     * @param index インデックス名
+     * @param documents 処理したドキュメント. 削除の場合はsourceを持たない
+     * @param operations 処理種別("index"/"delete")
+     * @return 応答
+     */
+    static PersoniumBulkResponse bulk(String index, List<MemoryDocument> documents, List<String> operations) {
+        PersoniumBulkItemResponse[] items = new PersoniumBulkItemResponse[documents.size()];
+        for (int i = 0; i < items.length; i++) {
+            items[i] = new BulkItemResponse(i, operations.get(i), index, documents.get(i));
+        }
+        return new BulkResponse(items);
+    }
+
+    private static SearchHits hits(String index, List<MemoryDocument> matched, Map<String, Object> request) {
+        int from = Math.max(0, MemoryQuery.getInt(request, "from", 0));
+        int size = Math.max(0, MemoryQuery.getInt(request, "size", MemoryQuery.DEFAULT_SIZE));
+        int end = (int) Math.min(matched.size(), (long) from + size);
+        Object sourceSpec = request.get("_source");
+        PersoniumSearchHit[] hits = new PersoniumSearchHit[Math.max(0, end - from)];
+        for (int i = 0; i < hits.length; i++) {
+            MemoryDocument document = matched.get(from + i);
+            hits[i] = new SearchHit(index, document, MemoryQuery.filterSource(document.getSource(), sourceSpec));
+        }
+        return new SearchHits(hits, matched.size());
+    }
+
+    private static String toJson(Map<String, Object> source) {
+        return source == null ? null : JSONObject.toJSONString(source);
+    }
+
+    /**
+     * ドキュメント取得の応答.
+     */
+    private static final class GetResponse implements PersoniumGetResponse {
+        private final String index;
+        private final String type;
+        private final String id;
+        private final MemoryDocument document;
+        private final Map<String, Object> source;
+
+        GetResponse(String index, String type, String id, MemoryDocument document) {
+            this.index = index;
+            this.type = type;
+            this.id = id;
+            this.document = document;
+            this.source = document == null ? null : MemoryDocument.copySource(document.getSource());
+        }
+
+        @Override
+        public String getIndex() {
+            return index;
+        }
+
+        @Override
+        public String getType() {
+            return type;
+        }
+
+        @Override
+        public String type() {
+            return type;
+        }
+
+        @Override
+        public String getId() {
+            return id;
+        }
+
+        @Override
+        public String id() {
+            return id;
+        }
+
+        @Override
+        public long getVersion() {
+            return document == null ? -1L : document.getVersion();
+        }
+
+        @Override
+        public long version() {
+            return getVersion();
+        }
+
+        @Override
+        public boolean isExists() {
+            return document != null;
+        }
+
+        @Override
+        public boolean exists() {
+            return isExists();
+        }
+
+        @Override
+        public Map<String, Object> getSource() {
+            return source;
+        }
+
+        @Override
+        public Map<String, Object> sourceAsMap() {
+            return source;
+        }
+
+        @Override
+        public String sourceAsString() {
+            return toJson(source);
+        }
+
+        @Override
+        public String toString() {
+            return "GetResponse[" + index + "/" + type + "/" + id + ", exists=" + isExists() + "]";
+        }
+    }
+
+    /**
+     * ドキュメント登録の応答.
+     */
+    private static final class IndexResponse implements PersoniumIndexResponse {
+        private final String index;
+        private final MemoryDocument document;
+
+        IndexResponse(String index, MemoryDocument document) {
+            this.index = index;
+            this.document = document;
+        }
+
+        @Override
+        public String getType() {
+            return document.getType();
+        }
+
+        @Override
+        public String type() {
+            return getType();
+        }
+
+        @Override
+        public String getId() {
+            return document.getId();
+        }
+
+        @Override
+        public String id() {
+            return getId();
+        }
+
+        @Override
+        public long getVersion() {
+            return document.getVersion();
+        }
+
+        @Override
+        public long version() {
+            return getVersion();
+        }
+
+        @Override
+        public boolean isCreated() {
+            return document.getVersion() == 1L;
+        }
+
+        @Override
+        public String toString() {
+            return "IndexResponse[" + index + "/" + getType() + "/" + getId() + ", version=" + getVersion() + "]";
+        }
+    }
+
+    /**
+     * ドキュメント削除の応答.
+     */
+    private static final class DeleteResponse implements PersoniumDeleteResponse {
+        private final String index;
+        private final String type;
+        private final String id;
+        private final MemoryDocument document;
+
+        DeleteResponse(String index, String type, String id, MemoryDocument document) {
+            this.index = index;
+            this.type = type;
+            this.id = id;
+            this.document = document;
+        }
+
+        @Override
+        public String getType() {
+            return type;
+        }
+
+        @Override
+        public String type() {
+            return type;
+        }
+
+        @Override
+        public String getId() {
+            return id;
+        }
+
+        @Override
+        public String id() {
+            return id;
+        }
+
+        @Override
+        public boolean isNotFound() {
+            return document == null;
+        }
+
+        @Override
+        public String toString() {
+            return "DeleteResponse[" + index + "/" + type + "/" + id + ", notFound=" + isNotFound() + "]";
+        }
+    }
+
+    /**
+     * 検索結果の1件.
+     */
+    private static final class SearchHit implements PersoniumSearchHit {
+        private final String index;
+        private final MemoryDocument document;
+        private final Map<String, Object> source;
+
+        SearchHit(String index, MemoryDocument document, Map<String, Object> source) {
+            this.index = index;
+            this.document = document;
+            this.source = source;
+        }
+
+        @Override
+        public float score() {
+            return SCORE;
+        }
+
+        @Override
+        public float getScore() {
+            return SCORE;
+        }
+
+        @Override
+        public String getIndex() {
+            return index;
+        }
+
+        @Override
+        public String getId() {
+            return document.getId();
+        }
+
+        @Override
+        public String id() {
+            return getId();
+        }
+
+        @Override
+        public String getType() {
+            return document.getType();
+        }
+
+        @Override
+        public String type() {
+            return getType();
+        }
+
+        @Override
+        public long version() {
+            return document.getVersion();
+        }
+
+        @Override
+        public long getVersion() {
+            return document.getVersion();
+        }
+
+        @Override
+        public Map<String, Object> getSource() {
+            return source;
+        }
+
+        @Override
+        public Map<String, Object> sourceAsMap() {
+            return source;
+        }
+
+        @Override
+        public String sourceAsString() {
+            return toJson(source);
+        }
+
+        @Override
+        public Map<String, PersoniumSearchHitField> getFields() {
+            // fieldsの指定には対応しない
+            return Collections.emptyMap();
+        }
+
+        @Override
+        public Map<String, PersoniumSearchHitField> fields() {
+            return getFields();
+        }
+
+        @Override
+        public String toString() {
+            return "SearchHit[" + index + "/" + getType() + "/" + getId() + "]";
+        }
+    }
+
+    /**
+     * 検索結果の一覧.
+     */
+    private static final class SearchHits implements PersoniumSearchHits {
+        private final PersoniumSearchHit[] hits;
+        private final long allPages;
+
+        SearchHits(PersoniumSearchHit[] hits, long allPages) {
+            this.hits = hits;
+            this.allPages = allPages;
+        }
+
+        @Override
+        public long getAllPages() {
+            return allPages;
+        }
+
+        @Override
+        public long allPages() {
+            return allPages;
+        }
+
+        @Override
+        public long getCount() {
+            return hits.length;
+        }
+
+        @Override
+        public float getMaxScore() {
+            return SCORE;
+        }
+
+        @Override
+        public float maxScore() {
+            return SCORE;
+        }
+
+        @Override
+        public PersoniumSearchHit[] getHits() {
+            return hits;
+        }
+
+        @Override
+        public PersoniumSearchHit[] hits() {
+            return hits;
+        }
+
+        @Override
+        public PersoniumSearchHit getAt(int position) {
+            return hits[position];
+        }
+
+        @Override
+        public Iterator<PersoniumSearchHit> iterator() {
+            return Arrays.asList(hits).iterator();
+        }
+
+        @Override
+        public String toString() {
+            return "SearchHits[count=" + hits.length + ", allPages=" + allPages + "]";
+        }
+    }
+
+    /**
+     * 検索の応答.
+     */
+    private static final class SearchResponse implements PersoniumSearchResponse {
+        private final SearchHits hits;
+
+        SearchResponse(SearchHits hits) {
+            this.hits = hits;
+        }
+
+        @Override
+        public PersoniumSearchHits getHits() {
+            return hits;
+        }
+
+        @Override
+        public PersoniumSearchHits hits() {
+            return hits;
+        }
+
+        @Override
+        public boolean isNullResponse() {
+            return false;
+        }
+
+        @Override
+        public long getTookInMillis() {
+            return 0L;
+        }
+
+        @Override
+        public String toString() {
+            return "SearchResponse[" + hits + "]";
+        }
+    }
+
+    /**
+     * マルチ検索の検索リクエストごとの応答.
+     */
+    private static final class Item implements PersoniumItem {
+        private final PersoniumSearchResponse response;
+
+        Item(PersoniumSearchResponse response) {
+            this.response = response;
+        }
+
+        @Override
+        public boolean isFailed() {
+            return false;
+        }
+
+        @Override
+        public PersoniumSearchResponse getResponse() {
+            return response;
+        }
+
+        @Override
+        public PersoniumSearchHit[] getSearchHits() {
+            return response.getHits().getHits();
+        }
+
+        @Override
+        public String toString() {
+            return "Item[" + response + "]";
+        }
+    }
+
+    /**
+     * マルチ検索の応答.
+     */
+    private static final class MultiSearchResponse implements PersoniumMultiSearchResponse {
+        private final PersoniumItem[] items;
+
+        MultiSearchResponse(PersoniumItem[] items) {
+            this.items = items;
+        }
+
+        @Override
+        public PersoniumItem[] getResponses() {
+            return items;
+        }
+
+        @Override
+        public PersoniumItem[] responses() {
+            return items;
+        }
+
+        @Override
+        public Iterator<PersoniumItem> iterator() {
+            return Arrays.asList(items).iterator();
+        }
+
+        @Override
+        public String toString() {
+            return "MultiSearchResponse" + Arrays.toString(items);
+        }
+    }
+
+    /**
+     * 一括処理の1件ごとの応答.
+     */
+    private static final class BulkItemResponse implements PersoniumBulkItemResponse {
+        private final int itemId;
+        private final String opType;
+        private final String index;
+        private final MemoryDocument document;
+
+        BulkItemResponse(int itemId, String opType, String index, MemoryDocument document) {
+            this.itemId = itemId;
+            this.opType = opType;
+            this.index = index;
+            this.document = document;
+        }
+
+        @Override
+        public int getItemId() {
+            return itemId;
+        }
+
+        @Override
+        public String getOpType() {
+            return opType;
+        }
+
+        @Override
+        public String opType() {
+            return opType;
+        }
+
+        @Override
+        public String getType() {
+            return document.getType();
+        }
+
+        @Override
+        public String type() {
+            return getType();
+        }
+
+        @Override
+        public String getId() {
+            return document.getId();
+        }
+
+        @Override
+        public String id() {
+            return getId();
+        }
+
+        @Override
+        public long version() {
+            return document.getVersion();
+        }
+
+        @Override
+        public boolean isFailed() {
+            return false;
+        }
+
+        @Override
+        public String getFailureMessage() {
+            return null;
+        }
+
+        @Override
+        public String toString() {
+            return "BulkItemResponse[" + opType + " " + index + "/" + getType() + "/" + getId() + "]";
+        }
+    }
+
+    /**
+     * 一括処理の応答.
+     */
+    private static final class BulkResponse implements PersoniumBulkResponse {
+        private final PersoniumBulkItemResponse[] items;
+
+        BulkResponse(PersoniumBulkItemResponse[] items) {
+            this.items = items;
+        }
+
+        @Override
+        public PersoniumBulkItemResponse[] items() {
+            return items;
+        }
+
+        @Override
+        public PersoniumBulkItemResponse[] getItems() {
+            return items;
+        }
+
+        @Override
+        public boolean hasFailures() {
+            return false;
+        }
+
+        @Override
+        public long getTookInMillis() {
+            return 0L;
+        }
+
+        @Override
+        public Iterator<PersoniumBulkItemResponse> iterator() {
+            return Arrays.asList(items).iterator();
+        }
+
+        @Override
+        public String toString() {
+            return "BulkResponse" + Arrays.toString(items);
+        }
+    }
+}
@@ -96,6 +96,7 @@ import io.personium.core.odata.OEntityWrapper;
 import io.personium.core.odata.PersoniumODataProducer;
 import io.personium.core.rs.odata.AbstractODataResource;
 import io.personium.core.rs.odata.BulkRequest;
+import io.personium.core.rs.odata.MapBulkRequest;
 import io.personium.core.rs.odata.ODataBatchResource.NavigationPropertyBulkContext;
 import io.personium.core.rs.odata.ODataBatchResource.NavigationPropertyLinkType;
 import io.personium.core.utils.ODataUtils;
@@ -108,6 +109,9 @@ public abstract class EsODataProducer implements PersoniumODataProducer {
 
     static Logger log = LoggerFactory.getLogger(EsODataProducer.class);
 
+    /** 最終ログイン時刻を1回の検索・バルク書き込みで更新するAccountの件数. */
+    static final int LAST_AUTHENTICATED_CHUNK_SIZE = 1000;
+
     private Map<String, String> entityTypeMap = new HashMap<String, String>();
     private Map<String, PropertyAlias> propertyAliasMap = new HashMap<String, PropertyAlias>();
 
@@ -1018,6 +1022,36 @@ public abstract class EsODataProducer implements PersoniumODataProducer {
     /** Delete Entity. */
     private void deleteEntity(String entitySetName, OEntityKey entityKey, String etag,
             EdmEntitySet eSet, EntitySetAccessor esType) {
+        EntitySetDocHandler hit = prepareDeleteDocHandler(entitySetName, entityKey, etag, eSet);
+
+        PersoniumDeleteResponse res = null;
+        // Delete
+        res = esType.delete(hit);
+
+        if (res == null) {
+            throw PersoniumCoreException.Server.DATA_STORE_UNKNOWN_ERROR.reason(new RuntimeException("not found"));
+        }
+        // If retry processing is done within TransportClient, NotFound is returned as a response.
+        // Therefore, even if NotFound is returned, it is regarded as normal termination.
+        if (res.isNotFound()) {
+            log.info("Request data is already deleted. Then, return success response.");
+        }
+
+        // After delete
+        this.afterDelete();
+    }
+
+    /**
+     * Check the entity to delete and remove its links.
+     * The entity itself is not deleted. Caller must hold the lock.
+     * @param entitySetName the entity-set name of the entity
+     * @param entityKey the entity-key of the entity
+     * @param etag etag
+     * @param eSet EdmEntitySet
+     * @return document of the entity to delete
+     */
+    private EntitySetDocHandler prepareDeleteDocHandler(String entitySetName, OEntityKey entityKey, String etag,
+            EdmEntitySet eSet) {
         EdmEntityType srcType = eSet.getType();
 
         // レコードの存在確認＆削除のためのES id取得
@@ -1063,21 +1097,7 @@ public abstract class EsODataProducer implements PersoniumODataProducer {
 
         // Befor delete
         this.beforeDelete(entitySetName, entityKey, hit);
-        PersoniumDeleteResponse res = null;
-        // Delete
-        res = esType.delete(hit);
-
-        if (res == null) {
-            throw PersoniumCoreException.Server.DATA_STORE_UNKNOWN_ERROR.reason(new RuntimeException("not found"));
-        }
-        // If retry processing is done within TransportClient, NotFound is returned as a response.
-        // Therefore, even if NotFound is returned, it is regarded as normal termination.
-        if (res.isNotFound()) {
-            log.info("Request data is already deleted. Then, return success response.");
-        }
-
-        // After delete
-        this.afterDelete();
+        return hit;
     }
 
     /**
@@ -2712,6 +2732,41 @@ public abstract class EsODataProducer implements PersoniumODataProducer {
             final OEntityKey originalKey,
             final OEntityWrapper oEntityWrapper,
             boolean isMergeMode) {
+        EntitySetAccessor esType = this.getAccessorForEntitySet(entitySetName);
+        EntitySetDocHandler oedhNew = prepareUpdateDocHandler(entitySetName, originalKey, oEntityWrapper, isMergeMode);
+
+        // esJsonをESに保存する
+        PersoniumIndexResponse idxRes = null;
+        // リクエストのEtag指定から検査用versionを取り出す（Etag指定が無い場合はNull）
+        Long version = oedhNew.getVersion();
+        if (version == null || version < 0) {
+            idxRes = esType.update(oedhNew.getId(), oedhNew);
+        } else {
+            idxRes = esType.update(oedhNew.getId(), oedhNew, version);
+        }
+
+        // 更新後の処理
+        this.afterUpdate();
+
+        // Resource層でETag返還ができるよう、レスポンスから得たVersion情報を、引数のOEntityWrapperに破壊的に設定
+        oedhNew.setVersion(idxRes.version());
+        oEntityWrapper.setEtag(oedhNew.createEtag());
+    }
+
+    /**
+     * 更新/マージ後のドキュメントを組み立てる.
+     * 存在確認、ETagチェック、一意性チェック、更新前処理までを行い、ESへの書き込みは行わない.
+     * このメソッドはロックを取得しないため、必ず呼び出しもとでロックを取得・解放すること.
+     * @param entitySetName EntitySet名
+     * @param originalKey 更新対象キー
+     * @param oEntityWrapper 更新内容
+     * @param isMergeMode マージモードか否か
+     * @return 更新後のドキュメント
+     */
+    private EntitySetDocHandler prepareUpdateDocHandler(final String entitySetName,
+            final OEntityKey originalKey,
+            final OEntityWrapper oEntityWrapper,
+            boolean isMergeMode) {
         // まずは存在確認をする。存在しないときはNullが返ってくる。
         EntitySetDocHandler oedhExisting = this.retrieveWithKey(oEntityWrapper.getEntitySet(), originalKey);
         if (oedhExisting == null) {
@@ -2799,23 +2854,7 @@ public abstract class EsODataProducer implements PersoniumODataProducer {
         if (oedhExisting.getAclFields() != null) {
             oedhNew.getAclFields().putAll(oedhExisting.getAclFields());
         }
-
-        // esJsonをESに保存する
-        PersoniumIndexResponse idxRes = null;
-        // リクエストのEtag指定から検査用versionを取り出す（Etag指定が無い場合はNull）
-        Long version = oedhNew.getVersion();
-        if (version == null || version < 0) {
-            idxRes = esType.update(oedhNew.getId(), oedhNew);
-        } else {
-            idxRes = esType.update(oedhNew.getId(), oedhNew, version);
-        }
-
-        // 更新後の処理
-        this.afterUpdate();
-
-        // Resource層でETag返還ができるよう、レスポンスから得たVersion情報を、引数のOEntityWrapperに破壊的に設定
-        oedhNew.setVersion(idxRes.version());
-        oEntityWrapper.setEtag(oedhNew.createEtag());
+        return oedhNew;
     }
 
     /**
@@ -2886,6 +2925,84 @@ public abstract class EsODataProducer implements PersoniumODataProducer {
         }
     }
 
+    /**
+     * 複数Accountの最終ログイン時刻をまとめて更新する.
+     * 検索の件数上限(max_result_window)を超えないよう、{@link #LAST_AUTHENTICATED_CHUNK_SIZE}件ずつ
+     * ロックを取得して検索・バルク書き込みを行う.
+     * @param entitySet Accountのエンティティセット
+     * @param lastAuthenticated AccountのIDと最終ログイン時刻のMap
+     * @return 書き込みに失敗したAccountのID
+     */
+    @Override
+    public Set<String> updateLastAuthenticated(final EdmEntitySet entitySet,
+            final Map<String, Long> lastAuthenticated) {
+        Set<String> failed = new HashSet<String>();
+        List<String> ids = new ArrayList<String>(lastAuthenticated.keySet());
+        for (int from = 0; from < ids.size(); from += LAST_AUTHENTICATED_CHUNK_SIZE) {
+            List<String> chunk = ids.subList(from, Math.min(from + LAST_AUTHENTICATED_CHUNK_SIZE, ids.size()));
+            Lock lock = lock();
+            try {
+                failed.addAll(updateLastAuthenticated(entitySet, chunk, lastAuthenticated));
+            } finally {
+                log.debug("unlock");
+                lock.release();
+            }
+        }
+        return failed;
+    }
+
+    /**
+     * 指定IDのAccountの最終ログイン時刻をバルク書き込みする.
+     * このメソッドはロックを取得しないため、必ず呼び出しもとでロックを取得・解放すること.
+     * @param entitySet Accountのエンティティセット
+     * @param ids 更新するAccountのID
+     * @param lastAuthenticated AccountのIDと最終ログイン時刻のMap
+     * @return 書き込みに失敗したAccountのID
+     */
+    private Set<String> updateLastAuthenticated(EdmEntitySet entitySet, List<String> ids,
+            Map<String, Long> lastAuthenticated) {
+        Set<String> failed = new HashSet<String>();
+        EntitySetAccessor esType = this.getAccessorForEntitySet(entitySet.getName());
+
+        // 対象のAccountをID指定でまとめて取得する
+        // { "query" : { "ids" : { "values" : ["AccountのID", ...] } }, "size" : 件数 }
+        Map<String, Object> idsQuery = new HashMap<String, Object>();
+        idsQuery.put("values", new ArrayList<String>(ids));
+        Map<String, Object> query = new HashMap<String, Object>();
+        query.put("ids", idsQuery);
+        Map<String, Object> searchQuery = QueryMapFactory.query(query);
+        searchQuery.put("size", ids.size());
+        PersoniumSearchResponse searchResponse = esType.search(searchQuery);
+
+        List<EsBulkRequest> esBulkRequest = new ArrayList<EsBulkRequest>();
+        for (PersoniumSearchHit hit : searchResponse.getHits().getHits()) {
+            EntitySetDocHandler oedhNew = new OEntityDocHandler(hit);
+            // 取得したAccountの最終ログイン日時を上書きする
+            // Accountの更新ではないため、__updatedは上書きしない
+            Map<String, Object> staticFields = oedhNew.getStaticFields();
+            staticFields.put("LastAuthenticated", lastAuthenticated.get(hit.getId()));
+            oedhNew.setStaticFields(staticFields);
+            esBulkRequest.add(new MapBulkRequest(EsBulkRequest.BulkRequestType.INDEX,
+                    esType.getType(), oedhNew.getId(), oedhNew.getSource()));
+        }
+        if (esBulkRequest.size() < ids.size()) {
+            // 認証から最終ログイン時刻更新までにAccountが削除された場合は、更新対象が存在しないため無視する。
+            log.info((ids.size() - esBulkRequest.size())
+                    + " accounts were already deleted before updating LastAuthenticated.");
+        }
+        if (esBulkRequest.isEmpty()) {
+            return failed;
+        }
+        PersoniumBulkResponse bulkResponse = getAccessorForBatch().bulkUpdate(esBulkRequest, getCellId());
+        for (PersoniumBulkItemResponse itemResponse : bulkResponse.items()) {
+            if (itemResponse.isFailed()) {
+                log.info("Failed to update LastAuthenticated. accountId:" + itemResponse.getId());
+                failed.add(itemResponse.getId());
+            }
+        }
+        return failed;
+    }
+
 
     /**
      * Replaces an existing link between two entities.
@@ -3225,6 +3342,169 @@ public abstract class EsODataProducer implements PersoniumODataProducer {
         return response;
     }
 
+    /**
+     * バルク更新を実行する.
+     * 各リクエストの存在確認・ETagチェック・一意性チェックは個別に行い、エラーはリクエスト毎に設定する.
+     * チェックを通過したリクエストはまとめて1回のバルクリクエストでESに書き込む.
+     * @param bulkRequests 更新するBulkRequestのリスト
+     */
+    @Override
+    public void bulkUpdateEntity(List<BulkRequest> bulkRequests) {
+        // ロック取得
+        Lock lock = this.lock();
+        log.debug("lock");
+        try {
+            List<BulkRequest> pending = new ArrayList<BulkRequest>();
+            Set<String> touchedKeys = new HashSet<String>();
+            for (BulkRequest request : bulkRequests) {
+                if (request.getError() != null) {
+                    continue;
+                }
+                String entitySetName = request.getEntitySetName();
+                OEntityWrapper oew = request.getOEntityWrapper();
+                String originalKey = entitySetName + request.getOriginalKey().toKeyString();
+                String newKey = entitySetName + oew.getEntityKey().toKeyString();
+                // 同一エンティティ(または変更後キー)を扱うリクエストは、先行分をESに反映してから処理する
+                if (touchedKeys.contains(originalKey) || touchedKeys.contains(newKey)) {
+                    execBulkWrite(pending);
+                    touchedKeys.clear();
+                }
+                try {
+                    hasRelatedEntities(entitySetName, request.getOriginalKey());
+                    request.setDocHandler(prepareUpdateDocHandler(entitySetName, request.getOriginalKey(), oew, false));
+                    request.setRequestType(EsBulkRequest.BulkRequestType.INDEX);
+                    pending.add(request);
+                    touchedKeys.add(originalKey);
+                    touchedKeys.add(newKey);
+                } catch (Exception e) {
+                    request.setError(e);
+                }
+            }
+            execBulkWrite(pending);
+        } finally {
+            log.debug("unlock");
+            lock.release();
+        }
+    }
+
+    /**
+     * バルク削除を実行する.
+     * 各リクエストの存在確認・ETagチェック・関連データのチェックは個別に行い、エラーはリクエスト毎に設定する.
+     * チェックを通過したリクエストはまとめて1回のバルクリクエストでESから削除する.
+     * チェックに失敗した場合は、先行するリクエストの削除をESに反映してから再度チェックするため、
+     * 子データを削除してから親データを削除するリクエストの並びでも逐次実行と同じ結果になる.
+     * @param bulkRequests 削除するBulkRequestのリスト
+     * @param hook 削除前処理
+     */
+    @Override
+    public void bulkDeleteEntity(List<BulkRequest> bulkRequests, BulkDeleteHook hook) {
+        // ロック取得
+        Lock lock = this.lock();
+        log.debug("lock");
+        try {
+            List<BulkRequest> pending = new ArrayList<BulkRequest>();
+            Set<String> touchedKeys = new HashSet<String>();
+            for (BulkRequest request : bulkRequests) {
+                if (request.getError() != null) {
+                    continue;
+                }
+                String key = request.getEntitySetName() + request.getOriginalKey().toKeyString();
+                if (touchedKeys.contains(key)) {
+                    execBulkWrite(pending);
+                    touchedKeys.clear();
+                }
+                EntitySetDocHandler hit;
+                try {
+                    hit = prepareBulkDelete(request, hook);
+                } catch (Exception e) {
+                    if (pending.isEmpty()) {
+                        request.setError(e);
+                        continue;
+                    }
+                    // 未反映の先行リクエストで削除されるデータが関連データとして残っている可能性があるため、
+                    // 反映してから再度チェックする
+                    execBulkWrite(pending);
+                    touchedKeys.clear();
+                    try {
+                        hit = prepareBulkDelete(request, hook);
+                    } catch (Exception retryError) {
+                        request.setError(retryError);
+                        continue;
+                    }
+                }
+                request.setDocHandler(hit);
+                request.setRequestType(EsBulkRequest.BulkRequestType.DELETE);
+                pending.add(request);
+                touchedKeys.add(key);
+            }
+            execBulkWrite(pending);
+        } finally {
+            log.debug("unlock");
+            lock.release();
+        }
+    }
+
+    /**
+     * バルク削除の1リクエスト分の削除前処理と関連データのチェックを行う.
+     * このメソッドはロックを取得しないため、必ず呼び出しもとでロックを取得・解放すること.
+     * @param request 削除リクエスト
+     * @param hook 削除前処理
+     * @return 削除対象のドキュメント
+     */
+    EntitySetDocHandler prepareBulkDelete(BulkRequest request, BulkDeleteHook hook) {
+        String entitySetName = request.getEntitySetName();
+        hook.beforeDelete(entitySetName, request.getOriginalKey());
+        EdmEntitySet eSet = this.getMetadata().findEdmEntitySet(entitySetName);
+        return prepareDeleteDocHandler(entitySetName, request.getOriginalKey(), request.getEtag(), eSet);
+    }
+
+    /**
+     * チェック済みの更新/削除リクエストをまとめてESに反映する.
+     * このメソッドはロックを取得しないため、必ず呼び出しもとでロックを取得・解放すること.
+     * @param pending 反映するBulkRequestのリスト(処理後にクリアされる)
+     */
+    private void execBulkWrite(List<BulkRequest> pending) {
+        if (pending.isEmpty()) {
+            return;
+        }
+        Map<String, BulkRequest> idMap = new HashMap<String, BulkRequest>();
+        List<EsBulkRequest> esBulkRequest = new ArrayList<EsBulkRequest>();
+        for (BulkRequest request : pending) {
+            idMap.put(request.getId(), request);
+            esBulkRequest.add(request);
+        }
+        try {
+            PersoniumBulkResponse bulkResponse = getAccessorForBatch().bulkUpdate(esBulkRequest, getCellId());
+            for (PersoniumBulkItemResponse itemResponse : bulkResponse.items()) {
+                BulkRequest request = idMap.get(itemResponse.getId());
+                if (itemResponse.isFailed()) {
+                    // バルク内でエラーが発生していた場合はエラーをセットする
+                    request.setError(new ServerErrorException("failed to store to es"));
+                } else if (EsBulkRequest.BulkRequestType.DELETE.equals(request.getRequestType())) {
+                    this.afterDelete();
+                } else {
+                    // Resource層でETag返還ができるよう、レスポンスから得たVersion情報をOEntityWrapperに設定
+                    EntitySetDocHandler docHandler = request.getDocHandler();
+                    docHandler.setVersion(itemResponse.version());
+                    request.getOEntityWrapper().setEtag(docHandler.createEtag());
+                    this.afterUpdate();
+                }
+            }
+        } catch (PersoniumCoreException e) {
+            // バルクリクエストが失敗した場合は、バルクに含めたデータすべてにエラーを設定する
+            PersoniumCoreLog.OData.BULK_INSERT_FAIL.reason(e).writeLog();
+            for (BulkRequest request : pending) {
+                request.setError(e);
+            }
+        } catch (EsClientException e) {
+            PersoniumCoreLog.OData.BULK_INSERT_FAIL.reason(e).writeLog();
+            for (BulkRequest request : pending) {
+                request.setError(new ServerErrorException("failed to store to es"));
+            }
+        }
+        pending.clear();
+    }
+
     /**
      * bulkRequestsに含まれるエンティティの一括検索用のクエリを作成する.
      * @param bulkRequests 一括検索するリクエストのリスト
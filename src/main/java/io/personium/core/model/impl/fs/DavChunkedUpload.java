@@ -0,0 +1,312 @@
+/**
+ * personium.io
+ * Copyright 2018 FUJITSU LIMITED
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.personium.core.model.impl.fs;
+
+import java.io.BufferedInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.channels.OverlappingFileLockException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import org.apache.commons.codec.binary.Hex;
+import org.apache.commons.io.FileUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import io.personium.core.PersoniumCoreException;
+import io.personium.core.PersoniumUnitConfig;
+import io.personium.core.model.file.DataCryptor;
+
+/**
+ * Resumable upload of a WebDAV file by PUT with Content-Range header.
+ * <p>
+ * Each chunk is appended to the staging file without the box lock. The staging file is identified by
+ * the path of the target resource and the total length, so the client can resume the upload from the offset
+ * returned in the Range header of the response. A chunk that does not start at the current length of the staging
+ * file is rejected, except for the first chunk, which restarts the upload.
+ * When the last chunk is appended, the content is prepared for the content file (encrypted if necessary),
+ * and the caller moves it to the content file under the box lock.
+ */
+class DavChunkedUpload {
+
+    private static Logger log = LoggerFactory.getLogger(DavChunkedUpload.class);
+
+    /** Name of the staging directory under the blob store root. */
+    static final String UPLOAD_DIR_NAME = "__upload";
+    /** Response header to return the received range. */
+    static final String RANGE_HEADER = "Range";
+
+    private static final String CONTENT_RANGE_HEADER = "Content-Range";
+    /** bytes {first}-{last}/{total}. */
+    private static final Pattern CONTENT_RANGE_PATTERN = Pattern.compile("^bytes (\\d+)-(\\d+)/(\\d+)$");
+    /** bytes * /{total}. Query of the received range. */
+    private static final Pattern CONTENT_RANGE_QUERY_PATTERN = Pattern.compile("^bytes \\*/(\\d+)$");
+    private static final String STAGING_FILE_EXTENSION = ".part";
+    private static final String PREPARED_FILE_EXTENSION = ".ready";
+    /** Max number of retries to open the staging file when its directory is deleted by the cleanup. */
+    private static final int MAX_OPEN_RETRY = 3;
+    /** Time of the last cleanup of expired staging files. */
+    private static final AtomicLong LAST_CLEANUP = new AtomicLong();
+
+    private final String contentRange;
+    private final long first;
+    private final long last;
+    private final long total;
+    private final Path stagingFile;
+    private final Path preparedFile;
+    private long received;
+
+    /**
+     * Constructor.
+     * @param cellId cell id
+     * @param fsPath path of the target resource
+     * @param contentRange value of Content-Range header
+     */
+    DavChunkedUpload(String cellId, String fsPath, String contentRange) {
+        this.contentRange = contentRange;
+        Matcher matcher = CONTENT_RANGE_PATTERN.matcher(contentRange);
+        Matcher queryMatcher = CONTENT_RANGE_QUERY_PATTERN.matcher(contentRange);
+        try {
+            if (matcher.matches()) {
+                this.first = Long.parseLong(matcher.group(1));
+                this.last = Long.parseLong(matcher.group(2));
+                this.total = Long.parseLong(matcher.group(3));
+                if (first > last || last >= total) {
+                    throw invalidContentRange();
+                }
+            } else if (queryMatcher.matches()) {
+                this.first = -1L;
+                this.last = -1L;
+                this.total = Long.parseLong(queryMatcher.group(1));
+            } else {
+                throw invalidContentRange();
+            }
+        } catch (NumberFormatException e) {
+            throw invalidContentRange();
+        }
+        String key = hash(fsPath + File.separator + total);
+        Path uploadDir = Paths.get(PersoniumUnitConfig.getBlobStoreRoot(), UPLOAD_DIR_NAME, cellId);
+        this.stagingFile = uploadDir.resolve(key + STAGING_FILE_EXTENSION);
+        this.preparedFile = uploadDir.resolve(key + PREPARED_FILE_EXTENSION);
+    }
+
+    /**
+     * Append the chunk to the staging file.
+     * If the upload is completed, prepare the content and pass it to the finalizer while the staging file is locked.
+     * @param inputStream chunk
+     * @param cellId cell id
+     * @param finalizer moves the prepared content to the content file
+     * @return true: the upload is completed
+     */
+    boolean append(InputStream inputStream, String cellId, Finalizer finalizer) {
+        if (isFirstChunk()) {
+            cleanupExpired();
+        }
+        try {
+            try (FileChannel channel = openStagingFile()) {
+                FileLock fileLock = tryLock(channel);
+                try {
+                    received = channel.size();
+                    if (first < 0L) {
+                        // Query of the received range.
+                        return false;
+                    }
+                    if (first == 0L) {
+                        // Restart the upload.
+                        channel.truncate(0L);
+                        received = 0L;
+                    } else if (first != received) {
+                        throw PersoniumCoreException.Dav.UPLOAD_OFFSET_NOT_MATCH.params(received);
+                    }
+                    long length = last - first + 1;
+                    long written = channel.transferFrom(Channels.newChannel(inputStream), first, length);
+                    received = first + written;
+                    if (written < length) {
+                        // The client will resume from the received offset.
+                        return false;
+                    }
+                    if (inputStream.read() >= 0) {
+                        channel.truncate(first);
+                        received = first;
+                        throw invalidContentRange();
+                    }
+                    if (received < total) {
+                        return false;
+                    }
+                    prepare(cellId);
+                    finalizer.commit(preparedFile, total);
+                    Files.deleteIfExists(stagingFile);
+                    return true;
+                } finally {
+                    fileLock.release();
+                }
+            } finally {
+                Files.deleteIfExists(preparedFile);
+            }
+        } catch (IOException e) {
+            throw PersoniumCoreException.Dav.FS_INCONSISTENCY_FOUND.reason(e);
+        }
+    }
+
+    /**
+     * Whether this request is the first chunk, which starts or restarts the upload.
+     * @return true: first chunk
+     */
+    boolean isFirstChunk() {
+        return first == 0L;
+    }
+
+    /**
+     * Get the value of Range header that represents the received range.
+     * @return value of Range header. null if nothing is received
+     */
+    String getRangeHeaderValue() {
+        if (received <= 0L) {
+            return null;
+        }
+        return "bytes=0-" + (received - 1);
+    }
+
+    /**
+     * Move the prepared content to the content file.
+     */
+    interface Finalizer {
+        /**
+         * Move the prepared content to the content file.
+         * @param preparedFile prepared content. It is encrypted if necessary
+         * @param contentLength length of the content before encryption
+         * @throws IOException file I/O error
+         */
+        void commit(Path preparedFile, long contentLength) throws IOException;
+    }
+
+    /**
+     * Prepare the content for the content file from the staging file.
+     * @param cellId cell id
+     * @throws IOException file I/O error
+     */
+    private void prepare(String cellId) throws IOException {
+        Files.deleteIfExists(preparedFile);
+        boolean encrypt = PersoniumUnitConfig.isDavEncryptEnabled();
+        if (!encrypt && DavContentStore.getInstance() == null) {
+            // The staging file can be used as is.
+            Files.move(stagingFile, preparedFile);
+            return;
+        }
+        DataCryptor cryptor = new DataCryptor(cellId);
+        try (InputStream input = new BufferedInputStream(
+                cryptor.encode(Files.newInputStream(stagingFile), encrypt))) {
+            DavContentStore.write(input, preparedFile);
+        }
+    }
+
+    /**
+     * Open the staging file. It is created with its directory if it does not exist.
+     * @return channel of the staging file
+     * @throws IOException file I/O error
+     */
+    private FileChannel openStagingFile() throws IOException {
+        for (int retry = 0;; retry++) {
+            Files.createDirectories(stagingFile.getParent());
+            try {
+                return FileChannel.open(stagingFile, StandardOpenOption.CREATE, StandardOpenOption.WRITE);
+            } catch (NoSuchFileException e) {
+                // The empty directory was deleted by cleanupExpired of another request after it was created.
+                if (retry >= MAX_OPEN_RETRY) {
+                    throw e;
+                }
+                log.debug("Upload directory was deleted. Retry to create it. " + stagingFile.getParent());
+            }
+        }
+    }
+
+    private FileLock tryLock(FileChannel channel) throws IOException {
+        FileLock fileLock;
+        try {
+            fileLock = channel.tryLock();
+        } catch (OverlappingFileLockException e) {
+            fileLock = null;
+        }
+        if (fileLock == null) {
+            throw PersoniumCoreException.Dav.UPLOAD_IN_PROGRESS;
+        }
+        return fileLock;
+    }
+
+    private PersoniumCoreException invalidContentRange() {
+        return PersoniumCoreException.Dav.INVALID_REQUEST_HEADER.params(CONTENT_RANGE_HEADER, contentRange);
+    }
+
+    /**
+     * Delete staging files that are not updated for the expiration time.
+     * It runs at most once in the expiration time.
+     * An empty directory of each cell is also deleted. A request that is creating its staging file in the directory
+     * at the same time creates the directory again.
+     */
+    static void cleanupExpired() {
+        long expire = TimeUnit.SECONDS.toMillis(PersoniumUnitConfig.getDavUploadExpire());
+        long now = System.currentTimeMillis();
+        long lastCleanup = LAST_CLEANUP.get();
+        if (now - lastCleanup < expire || !LAST_CLEANUP.compareAndSet(lastCleanup, now)) {
+            return;
+        }
+        File[] cellDirs = new File(PersoniumUnitConfig.getBlobStoreRoot(), UPLOAD_DIR_NAME).listFiles();
+        if (cellDirs == null) {
+            return;
+        }
+        for (File cellDir : cellDirs) {
+            File[] files = cellDir.listFiles();
+            if (files == null) {
+                continue;
+            }
+            for (File file : files) {
+                if (file.lastModified() < now - expire) {
+                    FileUtils.deleteQuietly(file);
+                }
+            }
+            // Deleted only if it is empty.
+            if (!cellDir.delete()) {
+                log.debug("Upload directory is in use. " + cellDir.getName());
+            }
+        }
+    }
+
+    private static String hash(String value) {
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            return Hex.encodeHexString(digest.digest(value.getBytes(StandardCharsets.UTF_8)));
+        } catch (NoSuchAlgorithmException e) {
+            // SHA-256 is always supported.
+            throw new IllegalStateException(e);
+        }
+    }
+}
@@ -26,6 +26,7 @@ import java.io.Reader;
 import java.net.MalformedURLException;
 import java.net.URL;
 import java.nio.file.Files;
+import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.nio.file.StandardCopyOption;
 import java.util.ArrayList;
@@ -83,6 +84,7 @@ import io.personium.core.model.file.BinaryDataNotFoundException;
 import io.personium.core.model.file.CipherInputStream;
 import io.personium.core.model.file.DataCryptor;
 import io.personium.core.model.file.StreamingOutputForDavFile;
+import io.personium.core.model.file.StreamingOutputForDavFileWithMultiRange;
 import io.personium.core.model.file.StreamingOutputForDavFileWithRange;
 import io.personium.core.model.impl.es.EsModel;
 import io.personium.core.model.impl.es.accessor.CellDataAccessor;
@@ -559,6 +561,127 @@ public class DavCmpFsImpl implements DavCmp {
         }
     }
 
+    @Override
+    public ResponseBuilder putChunk(final String contentType, String contentRange, InputStream inputStream,
+            final String etag) {
+        // The chunk is appended without the box lock. The lock is acquired only to replace the content.
+        DavChunkedUpload upload = new DavChunkedUpload(getCellId(), this.fsPath, contentRange);
+        if (upload.isFirstChunk() && etag != null) {
+            // Reject the upload before the content is received. It is checked again when the content is replaced.
+            this.load();
+            if (this.exists()) {
+                checkETag(etag);
+            }
+        }
+        final List<ResponseBuilder> result = new ArrayList<ResponseBuilder>();
+        boolean completed = upload.append(inputStream, getCellId(), new DavChunkedUpload.Finalizer() {
+            @Override
+            public void commit(Path preparedFile, long contentLength) throws IOException {
+                result.add(commitChunkedUpload(contentType, preparedFile, contentLength, etag));
+            }
+        });
+        if (completed) {
+            return result.get(0);
+        }
+        ResponseBuilder res = javax.ws.rs.core.Response.status(HttpStatus.SC_ACCEPTED);
+        String range = upload.getRangeHeaderValue();
+        if (range != null) {
+            res.header(DavChunkedUpload.RANGE_HEADER, range);
+        }
+        return res;
+    }
+
+    /**
+     * Replace the content with the uploaded file.
+     * @param contentType ContentType of the file
+     * @param preparedFile uploaded file. It is encrypted if necessary
+     * @param contentLength length of the content before encryption
+     * @param etag Etag
+     * @return ResponseBuilder
+     * @throws IOException file I/O error
+     */
+    private ResponseBuilder commitChunkedUpload(String contentType, Path preparedFile, long contentLength,
+            String etag) throws IOException {
+        String encryptionType = getEncryptionTypeToWrite();
+        Lock lock = this.lock();
+        try {
+            this.parent.load();
+            if (!this.parent.exists()) {
+                throw PersoniumCoreException.Dav.HAS_NOT_PARENT.params(this.parent.getUrl());
+            }
+            this.load();
+            if (this.exists()) {
+                checkETag(etag);
+                Files.move(preparedFile, Paths.get(getContentFilePath()), StandardCopyOption.REPLACE_EXISTING,
+                        StandardCopyOption.ATOMIC_MOVE);
+                return saveUpdatedFileMetadata(new Date().getTime(), contentType, contentLength, encryptionType);
+            }
+            checkChildResourceCount();
+            Files.createDirectories(Paths.get(this.fsPath));
+            Files.move(preparedFile, Paths.get(getContentFilePath()), StandardCopyOption.ATOMIC_MOVE);
+            return saveNewFileMetadata(contentType, contentLength, encryptionType);
+        } finally {
+            lock.release();
+        }
+    }
+
+    /**
+     * Check the ETag specified by If-Match header.
+     * @param etag Etag. null if not specified
+     */
+    private void checkETag(String etag) {
+        // 指定etagがあり、かつそれが*ではなく内部データから導出されるものと異なるときはエラー
+        if (etag != null && !"*".equals(etag) && !matchesETag(etag)) {
+            throw PersoniumCoreException.Dav.ETAG_NOT_MATCH;
+        }
+    }
+
+    /**
+     * Get the encryption type of the content to write.
+     * @return encryption type
+     */
+    private static String getEncryptionTypeToWrite() {
+        if (PersoniumUnitConfig.isDavEncryptEnabled()) {
+            return DataCryptor.ENCRYPTION_TYPE_AES;
+        }
+        return DataCryptor.ENCRYPTION_TYPE_NONE;
+    }
+
+    /**
+     * Create the metadata of the file whose content file is newly written.
+     * @param contentType ContentType of the file
+     * @param contentLength length of the content before encryption
+     * @param encryptionType encryption type of the content file
+     * @return ResponseBuilder
+     */
+    private ResponseBuilder saveNewFileMetadata(String contentType, long contentLength, String encryptionType) {
+        this.metaFile = DavMetadataFile.prepareNewFile(this, DavCmp.TYPE_DAV_FILE);
+        this.metaFile.setContentType(contentType);
+        this.metaFile.setContentLength(contentLength);
+        this.metaFile.setEncryptionType(encryptionType);
+        this.metaFile.save();
+        this.isPhantom = false;
+        return javax.ws.rs.core.Response.ok().status(HttpStatus.SC_CREATED).header(HttpHeaders.ETAG, getEtag());
+    }
+
+    /**
+     * Update the metadata of the file whose content file is replaced.
+     * @param updated updated time
+     * @param contentType ContentType of the file
+     * @param contentLength length of the content before encryption
+     * @param encryptionType encryption type of the content file
+     * @return ResponseBuilder
+     */
+    private ResponseBuilder saveUpdatedFileMetadata(long updated, String contentType, long contentLength,
+            String encryptionType) {
+        this.metaFile.setUpdated(updated);
+        this.metaFile.setContentType(contentType);
+        this.metaFile.setContentLength(contentLength);
+        this.metaFile.setEncryptionType(encryptionType);
+        this.metaFile.save();
+        return javax.ws.rs.core.Response.ok().status(HttpStatus.SC_NO_CONTENT).header(HttpHeaders.ETAG, getEtag());
+    }
+
     /**
      * Newly create the resource.
      * @param contentType ContentType of the generated file
@@ -580,24 +703,16 @@ public class DavCmpFsImpl implements DavCmp {
             Files.createDirectories(Paths.get(this.fsPath));
             // store the file content.
             File newFile = new File(getContentFilePath());
-            Files.copy(bufferedInput, newFile.toPath());
+            DavContentStore.write(bufferedInput, newFile.toPath());
             long writtenBytes = newFile.length();
-            String encryptionType = DataCryptor.ENCRYPTION_TYPE_NONE;
             if (PersoniumUnitConfig.isDavEncryptEnabled()) {
                 writtenBytes = ((CipherInputStream) input).getReadLengthBeforEncryption();
-                encryptionType = DataCryptor.ENCRYPTION_TYPE_AES;
             }
             // create new metadata file.
-            this.metaFile = DavMetadataFile.prepareNewFile(this, DavCmp.TYPE_DAV_FILE);
-            this.metaFile.setContentType(contentType);
-            this.metaFile.setContentLength(writtenBytes);
-            this.metaFile.setEncryptionType(encryptionType);
-            this.metaFile.save();
+            return saveNewFileMetadata(contentType, writtenBytes, getEncryptionTypeToWrite());
         } catch (IOException ex) {
             throw PersoniumCoreException.Dav.FS_INCONSISTENCY_FOUND.reason(ex);
         }
-        this.isPhantom = false;
-        return javax.ws.rs.core.Response.ok().status(HttpStatus.SC_CREATED).header(HttpHeaders.ETAG, getEtag());
     }
 
     /**
@@ -620,10 +735,7 @@ public class DavCmpFsImpl implements DavCmp {
             throw getNotFoundException().params(getUrl());
         }
 
-        // 指定etagがあり、かつそれが*ではなく内部データから導出されるものと異なるときはエラー
-        if (etag != null && !"*".equals(etag) && !matchesETag(etag)) {
-            throw PersoniumCoreException.Dav.ETAG_NOT_MATCH;
-        }
+        checkETag(etag);
 
         try {
             // Update Content
@@ -634,29 +746,20 @@ public class DavCmpFsImpl implements DavCmp {
             BufferedInputStream bufferedInput = new BufferedInputStream(input);
             File tmpFile = new File(getTempContentFilePath());
             File contentFile = new File(getContentFilePath());
-            Files.copy(bufferedInput, tmpFile.toPath());
+            DavContentStore.write(bufferedInput, tmpFile.toPath());
             Files.delete(contentFile.toPath());
             Files.move(tmpFile.toPath(), contentFile.toPath());
 
             long writtenBytes = contentFile.length();
-            String encryptionType = DataCryptor.ENCRYPTION_TYPE_NONE;
             if (PersoniumUnitConfig.isDavEncryptEnabled()) {
                 writtenBytes = ((CipherInputStream) input).getReadLengthBeforEncryption();
-                encryptionType = DataCryptor.ENCRYPTION_TYPE_AES;
             }
 
             // Update Metadata
-            this.metaFile.setUpdated(now);
-            this.metaFile.setContentType(contentType);
-            this.metaFile.setContentLength(writtenBytes);
-            this.metaFile.setEncryptionType(encryptionType);
-            this.metaFile.save();
+            return saveUpdatedFileMetadata(now, contentType, writtenBytes, getEncryptionTypeToWrite());
         } catch (IOException ex) {
             throw PersoniumCoreException.Dav.FS_INCONSISTENCY_FOUND.reason(ex);
         }
-
-        // response
-        return javax.ws.rs.core.Response.ok().status(HttpStatus.SC_NO_CONTENT).header(HttpHeaders.ETAG, getEtag());
     }
 
     /**
@@ -691,9 +794,11 @@ public class DavCmpFsImpl implements DavCmp {
                     throw PersoniumCoreException.Dav.REQUESTED_RANGE_NOT_SATISFIABLE;
                 }
 
-                if (range.getByteRangeSpecCount() > 1) {
-                    // MultiPartレスポンスには未対応
-                    throw PersoniumCoreException.Misc.NOT_IMPLEMENTED.params("Range-MultiPart");
+                if (range.getCoalescedByteRangeSpecList().size() > 1) {
+                    // MultiPartレスポンス
+                    StreamingOutputForDavFileWithMultiRange sout = new StreamingOutputForDavFileWithMultiRange(
+                            fileFullPath, fileSize, range, getCellId(), encryptionType, contentType);
+                    res = davFileResponseForMultiRange(sout);
                 } else {
                     StreamingOutput sout = new StreamingOutputForDavFileWithRange(
                             fileFullPath, fileSize, range, getCellId(), encryptionType);
@@ -739,9 +844,9 @@ public class DavCmpFsImpl implements DavCmp {
      */
     private ResponseBuilder davFileResponseForRange(final StreamingOutput sout, String contentType,
             final RangeHeaderHandler range) {
-        // MultiPartには対応しないため1個目のbyte-renge-setだけ処理する。
+        // 結合後のbyte-renge-setが1個の場合のみ呼び出される。
         int rangeIndex = 0;
-        List<ByteRangeSpec> brss = range.getByteRangeSpecList();
+        List<ByteRangeSpec> brss = range.getCoalescedByteRangeSpecList();
         final ByteRangeSpec brs = brss.get(rangeIndex);
 
         // iPadのsafariにおいてChunkedのRangeレスポンスを処理できなかったので明にContent-Lengthを返却している。
@@ -751,6 +856,18 @@ public class DavCmpFsImpl implements DavCmp {
                 .header(HttpHeaders.CONTENT_TYPE, contentType);
     }
 
+    /**
+     * multipart/byteranges形式のファイルレスポンス処理.
+     * @param sout
+     *            StreamingOuputオブジェクト
+     * @return レスポンス
+     */
+    private ResponseBuilder davFileResponseForMultiRange(final StreamingOutputForDavFileWithMultiRange sout) {
+        return javax.ws.rs.core.Response.status(HttpStatus.SC_PARTIAL_CONTENT).entity(sout)
+                .header(HttpHeaders.CONTENT_LENGTH, sout.getContentLength())
+                .header(HttpHeaders.CONTENT_TYPE, sout.getContentType());
+    }
+
     @Override
     public final String getName() {
         return this.name;
@@ -0,0 +1,372 @@
+/**
+ * personium.io
+ * Copyright 2018 FUJITSU LIMITED
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.personium.core.model.impl.fs;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.FileAlreadyExistsException;
+import java.nio.file.FileSystemException;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.security.DigestOutputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.UUID;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.commons.codec.binary.Hex;
+import org.apache.commons.io.IOUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+
+import io.personium.core.PersoniumUnitConfig;
+
+/**
+ * Content-addressed store of WebDAV file contents.
+ * <p>
+ * The content is hashed with SHA-256 while it is written, and stored once under the store directory
+ * with the hash as its name. The content file of each resource is a hard link to the stored blob,
+ * so that reading, MOVE and deletion of resources work on the content file as before.
+ * The hash is taken from the bytes actually stored, i.e. after encryption,
+ * so blobs are shared only between resources whose stored bytes are identical.
+ * <p>
+ * The link count of the blob is its reference count. Blobs that are linked only from the store
+ * are no longer referenced from any resource, and are deleted by {@link #gc()}.
+ * When the file system does not support hard links, the content is stored as a normal file.
+ * <p>
+ * The store directory is shared by all the nodes of the unit, so gc takes a lock file and runs on one node at a time.
+ * Only if the lock expires while gc is still running, two nodes can run gc over the same blobs.
+ * It is harmless, since a blob is deleted only when it has no link,
+ * and a link created at the same time keeps the content.
+ */
+public class DavContentStore {
+
+    private static Logger log = LoggerFactory.getLogger(DavContentStore.class);
+
+    /** Name of the store directory under the blob store root. */
+    static final String STORE_DIR_NAME = "__content_store";
+    /** Name of the directory of files being written. */
+    static final String TEMP_DIR_NAME = "tmp";
+    /** Name of the lock file of gc. */
+    static final String GC_LOCK_FILE_NAME = "gc.lock";
+    /** Temporary files older than this are left by abnormal termination, and deleted by gc. */
+    private static final long TEMP_FILE_EXPIRE_MILLIS = TimeUnit.DAYS.toMillis(1);
+    /** Lock file of gc older than this is left by abnormal termination, and taken over. */
+    private static final long GC_LOCK_EXPIRE_MILLIS = TimeUnit.DAYS.toMillis(1);
+    private static final String HASH_ALGORITHM = "SHA-256";
+    /** Number of characters of the hash used for the name of the sub directory. */
+    private static final int SUB_DIR_LENGTH = 2;
+    /** Number of retries when the blob is created and deleted by other requests at the same time. */
+    private static final int MAX_LINK_RETRY = 3;
+
+    private static DavContentStore instance;
+    private static ScheduledExecutorService scheduler;
+
+    /** Store directory. */
+    private final Path storeDir;
+
+    /**
+     * Constructor.
+     * @param storeDir Store directory. It must be on the same file system as the WebDAV files.
+     */
+    DavContentStore(Path storeDir) {
+        this.storeDir = storeDir;
+    }
+
+    /**
+     * Get the store of this unit.
+     * @return store. null if the content-addressed store is disabled
+     */
+    public static synchronized DavContentStore getInstance() {
+        if (!PersoniumUnitConfig.isContentAddressedStoreEnabled()) {
+            return null;
+        }
+        if (instance == null) {
+            instance = new DavContentStore(Paths.get(PersoniumUnitConfig.getBlobStoreRoot(), STORE_DIR_NAME));
+        }
+        return instance;
+    }
+
+    /**
+     * Write the content to the content file.
+     * When the content-addressed store is enabled, the content is stored in the store and linked.
+     * @param input content
+     * @param contentFile content file. It must not exist
+     * @throws IOException file I/O error
+     */
+    public static void write(InputStream input, Path contentFile) throws IOException {
+        DavContentStore store = getInstance();
+        if (store == null) {
+            Files.copy(input, contentFile);
+            return;
+        }
+        store.store(input, contentFile);
+    }
+
+    /**
+     * Start periodic gc.
+     */
+    public static synchronized void start() {
+        long interval = PersoniumUnitConfig.getContentAddressedStoreGcInterval();
+        if (getInstance() == null || interval <= 0 || scheduler != null) {
+            return;
+        }
+        ThreadFactoryBuilder builder = new ThreadFactoryBuilder();
+        builder.setNameFormat("dav-content-store-gc-%d");
+        builder.setDaemon(true);
+        scheduler = Executors.newSingleThreadScheduledExecutor(builder.build());
+        scheduler.scheduleWithFixedDelay(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    getInstance().gc();
+                } catch (Exception e) {
+                    log.warn("Failed to gc content store.", e);
+                }
+            }
+        }, interval, interval, TimeUnit.SECONDS);
+    }
+
+    /**
+     * Stop periodic gc.
+     */
+    public static synchronized void stop() {
+        if (scheduler == null) {
+            return;
+        }
+        scheduler.shutdownNow();
+        scheduler = null;
+    }
+
+    /**
+     * Store the content and link the content file to it.
+     * If the same content is already stored, only the link is created.
+     * @param input content
+     * @param contentFile content file. It must not exist
+     * @throws IOException file I/O error
+     */
+    void store(InputStream input, Path contentFile) throws IOException {
+        Path tempDir = storeDir.resolve(TEMP_DIR_NAME);
+        Files.createDirectories(tempDir);
+        Path tempFile = tempDir.resolve(UUID.randomUUID().toString());
+        try {
+            MessageDigest digest = newDigest();
+            try (OutputStream output = new DigestOutputStream(Files.newOutputStream(tempFile), digest)) {
+                IOUtils.copyLarge(input, output);
+            }
+            String hash = Hex.encodeHexString(digest.digest());
+            Path blob = getBlobPath(hash);
+            try {
+                if (link(tempFile, blob, contentFile)) {
+                    return;
+                }
+            } catch (UnsupportedOperationException e) {
+                // The file system does not support hard links.
+                log.warn("Failed to link content. It is stored without deduplication. " + e.getMessage());
+            } catch (FileSystemException e) {
+                // Other errors such as no space or permission denied are not hidden.
+                if (canLink(Files.exists(blob) ? blob : tempFile)) {
+                    throw e;
+                }
+                log.warn("Failed to link content. It is stored without deduplication. " + e.getMessage());
+            }
+            Files.move(tempFile, contentFile);
+        } finally {
+            Files.deleteIfExists(tempFile);
+        }
+    }
+
+    /**
+     * Link the content file to the blob. If the blob does not exist, the written file becomes the blob.
+     * @param tempFile written file
+     * @param blob blob
+     * @param contentFile content file
+     * @return false: the blob is created and deleted by other requests repeatedly
+     * @throws IOException file I/O error
+     */
+    private boolean link(Path tempFile, Path blob, Path contentFile) throws IOException {
+        for (int retry = 0; retry < MAX_LINK_RETRY; retry++) {
+            try {
+                // Already stored. The written file is discarded.
+                Files.createLink(contentFile, blob);
+                return true;
+            } catch (NoSuchFileException e) {
+                log.debug("New content. " + blob.getFileName());
+            }
+            Files.createDirectories(blob.getParent());
+            try {
+                Files.createLink(blob, tempFile);
+            } catch (FileAlreadyExistsException e) {
+                // Stored by another request at the same time.
+                continue;
+            }
+            // Since the blob and the written file are the same file, moving it links the content file to the blob.
+            // Even if gc deletes the blob before this, only the deduplication is lost.
+            Files.move(tempFile, contentFile);
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * Check whether a hard link to the file can be created.
+     * It fails when the file system does not support hard links or the file has too many links.
+     * @param file file to link
+     * @return true: link can be created
+     * @throws IOException file I/O error
+     */
+    private boolean canLink(Path file) throws IOException {
+        Path probe = storeDir.resolve(TEMP_DIR_NAME).resolve(UUID.randomUUID().toString());
+        try {
+            Files.createLink(probe, file);
+            return true;
+        } catch (UnsupportedOperationException | FileSystemException e) {
+            return false;
+        } finally {
+            Files.deleteIfExists(probe);
+        }
+    }
+
+    /**
+     * Delete blobs that are not referenced from any resource, and temporary files left by abnormal termination.
+     * Nothing is done while gc is running on another node.
+     * @return number of deleted blobs
+     * @throws IOException file I/O error
+     */
+    long gc() throws IOException {
+        if (!Files.isDirectory(storeDir)) {
+            return 0L;
+        }
+        final Path lockFile = storeDir.resolve(GC_LOCK_FILE_NAME);
+        if (!lockGc(lockFile)) {
+            log.info("Skipped gc of content store. It is running on another node.");
+            return 0L;
+        }
+        try {
+            return deleteUnreferenced(lockFile);
+        } finally {
+            Files.deleteIfExists(lockFile);
+        }
+    }
+
+    /**
+     * Take the lock file of gc.
+     * @param lockFile lock file
+     * @return false: gc is running on another node
+     * @throws IOException file I/O error
+     */
+    private boolean lockGc(Path lockFile) throws IOException {
+        try {
+            Files.createFile(lockFile);
+            return true;
+        } catch (FileAlreadyExistsException e) {
+            log.debug("Lock file of gc exists. " + lockFile);
+        }
+        try {
+            if (Files.getLastModifiedTime(lockFile).toMillis() >= System.currentTimeMillis() - GC_LOCK_EXPIRE_MILLIS) {
+                return false;
+            }
+        } catch (NoSuchFileException e) {
+            // Released just now. It is taken next time.
+            return false;
+        }
+        // Left by abnormal termination.
+        Files.deleteIfExists(lockFile);
+        try {
+            Files.createFile(lockFile);
+            return true;
+        } catch (FileAlreadyExistsException e) {
+            return false;
+        }
+    }
+
+    /**
+     * Delete blobs that are not referenced from any resource, and temporary files left by abnormal termination.
+     * @param lockFile lock file of gc, which is not a blob
+     * @return number of deleted blobs
+     * @throws IOException file I/O error
+     */
+    private long deleteUnreferenced(final Path lockFile) throws IOException {
+        final Path tempDir = storeDir.resolve(TEMP_DIR_NAME);
+        final long expire = System.currentTimeMillis() - TEMP_FILE_EXPIRE_MILLIS;
+        final long[] deleted = new long[1];
+        Files.walkFileTree(storeDir, new SimpleFileVisitor<Path>() {
+            @Override
+            public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) throws IOException {
+                if (file.equals(lockFile)) {
+                    return FileVisitResult.CONTINUE;
+                } else if (file.startsWith(tempDir)) {
+                    if (attrs.lastModifiedTime().toMillis() < expire) {
+                        Files.deleteIfExists(file);
+                    }
+                } else if (getLinkCount(file) <= 1) {
+                    // A link created at the same time keeps the content, since it is the same file.
+                    Files.deleteIfExists(file);
+                    deleted[0]++;
+                }
+                return FileVisitResult.CONTINUE;
+            }
+        });
+        if (deleted[0] > 0) {
+            log.info(String.format("Deleted unreferenced content. Count:%d", deleted[0]));
+        }
+        return deleted[0];
+    }
+
+    /**
+     * Get the number of hard links of the file.
+     * @param file file
+     * @return number of links. Integer.MAX_VALUE if it can not be got
+     * @throws IOException file I/O error
+     */
+    static int getLinkCount(Path file) throws IOException {
+        try {
+            return (Integer) Files.getAttribute(file, "unix:nlink");
+        } catch (UnsupportedOperationException | IllegalArgumentException e) {
+            // Never delete blobs if the reference count is unknown.
+            return Integer.MAX_VALUE;
+        }
+    }
+
+    /**
+     * Get the path of the blob.
+     * @param hash hash of the content
+     * @return path of the blob
+     */
+    Path getBlobPath(String hash) {
+        return storeDir.resolve(hash.substring(0, SUB_DIR_LENGTH)).resolve(hash);
+    }
+
+    private static MessageDigest newDigest() {
+        try {
+            return MessageDigest.getInstance(HASH_ALGORITHM);
+        } catch (NoSuchAlgorithmException e) {
+            // SHA-256 is always supported.
+            throw new IllegalStateException(e);
+        }
+    }
+}
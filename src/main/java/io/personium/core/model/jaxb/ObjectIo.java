@@ -16,22 +16,27 @@
  */
 package io.personium.core.model.jaxb;
 
-import java.io.BufferedReader;
 import java.io.IOException;
 import java.io.InputStream;
-import java.io.InputStreamReader;
 import java.io.OutputStream;
 import java.io.Reader;
 import java.io.Writer;
 import java.util.HashMap;
 import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
 
 import javax.xml.bind.JAXBContext;
 import javax.xml.bind.JAXBElement;
 import javax.xml.bind.JAXBException;
 import javax.xml.bind.Marshaller;
 import javax.xml.bind.Unmarshaller;
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
 
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 import org.w3c.dom.Document;
 import org.w3c.dom.Node;
 
@@ -42,11 +47,83 @@ import com.sun.jersey.api.json.JSONUnmarshaller;
 
 /**
  * JAXBを簡単に使うためのユーティリティクラス.
+ * <p>
+ * Marshaller/Unmarshallerはスレッドセーフではないが再利用できるため、プールから1スレッドずつ貸し出す.
+ * XMLの読み込みはStAXで行い、文書全体をメモリ上に展開しない.
  */
 public final class ObjectIo {
+    private static Logger log = LoggerFactory.getLogger(ObjectIo.class);
+
     private static JAXBContext context = null;
     private static JSONJAXBContext jsonContext = null;
 
+    /** プールに保持するMarshaller/Unmarshallerの最大数(種類ごと). */
+    private static final int POOL_SIZE = Runtime.getRuntime().availableProcessors() * 2;
+
+    private static final XMLInputFactory INPUT_FACTORY = XMLInputFactory.newInstance();
+
+    private static final Pool<Marshaller> MARSHALLERS = new Pool<Marshaller>() {
+        @Override
+        Marshaller create() throws JAXBException {
+            return context.createMarshaller();
+        }
+    };
+    private static final Pool<Unmarshaller> UNMARSHALLERS = new Pool<Unmarshaller>() {
+        @Override
+        Unmarshaller create() throws JAXBException {
+            return context.createUnmarshaller();
+        }
+    };
+    private static final Pool<JSONMarshaller> JSON_MARSHALLERS = new Pool<JSONMarshaller>() {
+        @Override
+        JSONMarshaller create() throws JAXBException {
+            return jsonContext.createJSONMarshaller();
+        }
+    };
+    private static final Pool<JSONUnmarshaller> JSON_UNMARSHALLERS = new Pool<JSONUnmarshaller>() {
+        @Override
+        JSONUnmarshaller create() throws JAXBException {
+            return jsonContext.createJSONUnmarshaller();
+        }
+    };
+
+    /**
+     * Marshaller/Unmarshallerのプール.
+     * 貸し出し中のインスタンスは借りたスレッドだけが使用する. 空の場合は新たに作成し、満杯の場合は返却されたものを破棄する.
+     * @param <T> プールするクラス
+     */
+    abstract static class Pool<T> {
+        private final BlockingQueue<T> idle = new ArrayBlockingQueue<T>(POOL_SIZE);
+
+        /**
+         * インスタンスを作成する.
+         * @return インスタンス
+         * @throws JAXBException JAXB上の問題があったとき投げられる例外
+         */
+        abstract T create() throws JAXBException;
+
+        /**
+         * インスタンスを借りる.
+         * @return インスタンス
+         * @throws JAXBException JAXB上の問題があったとき投げられる例外
+         */
+        T acquire() throws JAXBException {
+            T instance = idle.poll();
+            if (instance == null) {
+                instance = create();
+            }
+            return instance;
+        }
+
+        /**
+         * インスタンスを返却する. 処理に失敗したインスタンスは状態が不定のため返却しないこと.
+         * @param instance インスタンス
+         */
+        void release(T instance) {
+            idle.offer(instance);
+        }
+    }
+
     /**
      * コンストラクタ.
      */
@@ -55,6 +132,9 @@ public final class ObjectIo {
     }
 
     static {
+        // 外部エンティティ(XXE)を読み込まない
+        INPUT_FACTORY.setProperty(XMLInputFactory.SUPPORT_DTD, false);
+        INPUT_FACTORY.setProperty(XMLInputFactory.IS_SUPPORTING_EXTERNAL_ENTITIES, false);
         try {
             // io.personium.core.model.jaxb パッケージのcontextを作成
             context = JAXBContext.newInstance(ObjectIo.class.getPackage().getName());
@@ -77,7 +157,12 @@ public final class ObjectIo {
      * @throws JAXBException JAXB上の問題があったとき投げられる例外
      */
     public static <T> T unmarshal(final InputStream is, final Class<T> elementClass) throws IOException, JAXBException {
-        return unmarshal(new BufferedReader(new InputStreamReader(is)), elementClass);
+        try {
+            // 文字コードはXML宣言に従う
+            return unmarshal(INPUT_FACTORY.createXMLStreamReader(is), elementClass);
+        } catch (XMLStreamException e) {
+            throw new JAXBException(e);
+        }
     }
     /**
      * @param <T> 戻り値としてほしいクラス
@@ -100,8 +185,9 @@ public final class ObjectIo {
      */
     @SuppressWarnings("unchecked")
     public static <T> T unmarshalNode(final Node node, final Class<T> elementClass) throws IOException, JAXBException {
-        Unmarshaller u = context.createUnmarshaller();
+        Unmarshaller u = UNMARSHALLERS.acquire();
         Object object = u.unmarshal(node);
+        UNMARSHALLERS.release(u);
         if (object instanceof JAXBElement) {
             object = ((JAXBElement<?>) object).getValue();
         }
@@ -115,10 +201,29 @@ public final class ObjectIo {
      * @throws IOException IO上の問題があったとき投げられる例外
      * @throws JAXBException JAXB上の問題があったとき投げられる例外
      */
-    @SuppressWarnings("unchecked")
     public static <T> T unmarshal(final Reader reader, final Class<T> elementClass) throws IOException, JAXBException {
-        Unmarshaller u = context.createUnmarshaller();
-        Object object = u.unmarshal(reader);
+        try {
+            return unmarshal(INPUT_FACTORY.createXMLStreamReader(reader), elementClass);
+        } catch (XMLStreamException e) {
+            throw new JAXBException(e);
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private static <T> T unmarshal(final XMLStreamReader reader, final Class<T> elementClass) throws JAXBException {
+        Unmarshaller u = UNMARSHALLERS.acquire();
+        Object object;
+        try {
+            object = u.unmarshal(reader);
+        } finally {
+            try {
+                reader.close();
+            } catch (XMLStreamException e) {
+                // 入力元のストリームは閉じないため、解放に失敗しても影響はない
+                log.debug("Failed to close XMLStreamReader.", e);
+            }
+        }
+        UNMARSHALLERS.release(u);
         if (object instanceof JAXBElement) {
             object = ((JAXBElement<?>) object).getValue();
         }
@@ -133,8 +238,9 @@ public final class ObjectIo {
      */
     public static void marshal(
             final Object instance, final Writer writer) throws IOException, JAXBException {
-        Marshaller m = context.createMarshaller();
+        Marshaller m = MARSHALLERS.acquire();
         m.marshal(instance, writer);
+        MARSHALLERS.release(m);
     }
 
     /**
@@ -146,8 +252,9 @@ public final class ObjectIo {
     public static void marshal(
             final Object instance,
             final OutputStream outputStream) throws IOException, JAXBException {
-        Marshaller m = context.createMarshaller();
+        Marshaller m = MARSHALLERS.acquire();
         m.marshal(instance, outputStream);
+        MARSHALLERS.release(m);
     }
     /**
      * @param instance オブジェクト
@@ -157,8 +264,9 @@ public final class ObjectIo {
      */
     public static void marshal(
             final Object instance, final Document doc) throws IOException, JAXBException {
-        Marshaller m = context.createMarshaller();
+        Marshaller m = MARSHALLERS.acquire();
         m.marshal(instance, doc);
+        MARSHALLERS.release(m);
     }
     /**
      * @param instance オブジェクト
@@ -168,8 +276,9 @@ public final class ObjectIo {
      */
     public static void toJson(
             final Object instance, final Writer writer) throws IOException, JAXBException {
-        JSONMarshaller m = jsonContext.createJSONMarshaller();
+        JSONMarshaller m = JSON_MARSHALLERS.acquire();
         m.marshallToJSON(instance, writer);
+        JSON_MARSHALLERS.release(m);
     }
     /**
      * @param <T> 戻り値としてほしいクラス
@@ -180,8 +289,9 @@ public final class ObjectIo {
      * @throws JAXBException JAXB上の問題があったとき投げられる例外
      */
     public static <T> T fromJson(final Reader reader, final Class<T> elementClass) throws IOException, JAXBException {
-        JSONUnmarshaller u = jsonContext.createJSONUnmarshaller();
+        JSONUnmarshaller u = JSON_UNMARSHALLERS.acquire();
         JAXBElement<T> object = u.unmarshalJAXBElementFromJSON(reader, elementClass);
+        JSON_UNMARSHALLERS.release(u);
         return object.getValue();
     }
 }
@@ -38,6 +38,8 @@ package io.personium.core.odata;
 
 import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
 
 import org.odata4j.core.OEntity;
 import org.odata4j.core.OEntityId;
@@ -79,6 +81,15 @@ public interface PersoniumODataProducer extends ODataProducer {
      */
     void updateLastAuthenticated(EdmEntitySet entitySetName, OEntityKey originalKey, String accountId);
 
+    /**
+     * 複数Accountの最終ログイン時刻をまとめて更新する.
+     * 削除済みのAccountは無視する.
+     * @param entitySet Accountのエンティティセット
+     * @param lastAuthenticated AccountのIDと最終ログイン時刻のMap
+     * @return 書き込みに失敗したAccountのID
+     */
+    Set<String> updateLastAuthenticated(EdmEntitySet entitySet, Map<String, Long> lastAuthenticated);
+
     /**
      * ETag・主キー変更対応のEntity MERGE.
      * @param entitySetName entitySetName
@@ -130,6 +141,33 @@ public interface PersoniumODataProducer extends ODataProducer {
     EntityResponse createNp(OEntityId sourceEntity, String targetNavProp,
             OEntity oew, String entity);
 
+    /**
+     * バルク更新を実行する.
+     * エラーが発生したリクエストには個別にエラーを設定する.
+     * @param bulkRequests 更新するBulkRequestのリスト
+     */
+    void bulkUpdateEntity(List<BulkRequest> bulkRequests);
+
+    /**
+     * バルク削除を実行する.
+     * エラーが発生したリクエストには個別にエラーを設定する.
+     * @param bulkRequests 削除するBulkRequestのリスト
+     * @param hook 各リクエストの関連データのチェック前に、ロックを保持した状態で呼び出す削除前処理
+     */
+    void bulkDeleteEntity(List<BulkRequest> bulkRequests, BulkDeleteHook hook);
+
+    /**
+     * バルク削除の各リクエストに対する削除前処理.
+     */
+    interface BulkDeleteHook {
+        /**
+         * 削除前処理.
+         * @param entitySetName エンティティセット名
+         * @param oEntityKey 削除対象のエンティティキー
+         */
+        void beforeDelete(String entitySetName, OEntityKey oEntityKey);
+    }
+
     /**
      * NavigationProperty経由でエンティティを一括登録する.
      * @param npBulkContexts 一括登録のコンテキスト
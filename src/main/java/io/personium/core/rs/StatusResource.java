@@ -31,6 +31,7 @@ import org.slf4j.LoggerFactory;
 import io.personium.common.es.EsClient;
 import io.personium.core.PersoniumUnitConfig;
 import io.personium.core.model.impl.es.EsModel;
+import io.personium.core.model.impl.es.memory.MemoryDataStore;
 
 /**
  * StatusResourceに対応するJAX-RS Resource クラス.
@@ -64,9 +65,14 @@ public class StatusResource {
         //responseJson.put("service", checkServiceStatus());
 
         // ElasticSearch Health
-        EsClient client = EsModel.client();
         JSONObject esJson = new JSONObject();
-        esJson.put("health", client.checkHealth());
+        if (MemoryDataStore.isEnabled()) {
+            // メモリのデータストアはElasticSearchに接続しない
+            esJson.put("health", MemoryDataStore.STORE_MEMORY);
+        } else {
+            EsClient client = EsModel.client();
+            esJson.put("health", client.checkHealth());
+        }
         responseJson.put("ElasticSearch", esJson);
 
         sb.append(responseJson.toJSONString());
@@ -30,6 +30,7 @@ import javax.ws.rs.core.HttpHeaders;
 import javax.ws.rs.core.Response;
 import javax.ws.rs.core.Response.ResponseBuilder;
 
+import org.apache.http.HttpStatus;
 import org.apache.wink.webdav.WebDAVMethod;
 
 import io.personium.common.utils.PersoniumCoreUtils;
@@ -65,6 +66,7 @@ public class DavFileResource {
      * process PUT Method and update the file.
      * @param contentType Content-Type Header
      * @param ifMatch If-Match Header
+     * @param contentRange Content-Range Header. Specified for the chunked upload
      * @param inputStream Request Body
      * @return JAX-RS response object
      */
@@ -72,12 +74,22 @@ public class DavFileResource {
     @PUT
     public Response put(@HeaderParam(HttpHeaders.CONTENT_TYPE) final String contentType,
             @HeaderParam(HttpHeaders.IF_MATCH) final String ifMatch,
+            @HeaderParam("Content-Range") final String contentRange,
             final InputStream inputStream) {
         // Access Control
         this.davRsCmp.checkAccessContext(this.davRsCmp.getAccessContext(), BoxPrivilege.WRITE);
 
-        ResponseBuilder rb = this.davRsCmp.getDavCmp().putForUpdate(contentType, inputStream, ifMatch);
+        ResponseBuilder rb;
+        if (contentRange != null) {
+            rb = this.davRsCmp.getDavCmp().putChunk(contentType, contentRange, inputStream, ifMatch);
+        } else {
+            rb = this.davRsCmp.getDavCmp().putForUpdate(contentType, inputStream, ifMatch);
+        }
         Response res = rb.build();
+        if (res.getStatus() == HttpStatus.SC_ACCEPTED) {
+            // The file is not updated until the last chunk is received.
+            return res;
+        }
 
         // post event to EventBus
         String object = UriUtils.convertSchemeFromHttpToLocalCell(this.davRsCmp.getCell().getUrl(),
@@ -95,6 +95,7 @@ public class NullResource {
     /**
      * このパスに新たなファイルを配置する.
      * @param contentType Content-Typeヘッダ
+     * @param contentRange Content-Rangeヘッダ. 分割アップロード時に指定する
      * @param inputStream リクエストボディ
      * @return Jax-RS Responseオブジェクトト
      */
@@ -102,6 +103,7 @@ public class NullResource {
     @PUT
     public final Response put(
             @HeaderParam(HttpHeaders.CONTENT_TYPE) final String contentType,
+            @HeaderParam("Content-Range") final String contentRange,
             final InputStream inputStream) {
 
         // アクセス制御
@@ -121,6 +123,9 @@ public class NullResource {
             throw PersoniumCoreException.Dav.HAS_NOT_PARENT.params(this.davRsCmp.getParent().getUrl());
         }
 
+        if (contentRange != null) {
+            return this.davRsCmp.getDavCmp().putChunk(contentType, contentRange, inputStream, null).build();
+        }
         return this.davRsCmp.getDavCmp().putForCreate(contentType, inputStream).build();
     }
 
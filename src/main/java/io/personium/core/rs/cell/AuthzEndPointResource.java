@@ -51,8 +51,6 @@ import javax.ws.rs.core.UriInfo;
 
 import org.apache.commons.lang.CharEncoding;
 import org.apache.commons.lang.StringUtils;
-import org.odata4j.core.OEntityKey;
-import org.odata4j.edm.EdmEntitySet;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -79,19 +77,17 @@ import io.personium.core.PersoniumCoreLog;
 import io.personium.core.PersoniumCoreMessageUtils;
 import io.personium.core.PersoniumUnitConfig;
 import io.personium.core.auth.AccessContext;
+import io.personium.core.auth.LastAuthenticatedUpdater;
 import io.personium.core.auth.OAuth2Helper;
 import io.personium.core.auth.OAuth2Helper.Key;
 import io.personium.core.model.Box;
 import io.personium.core.model.Cell;
 import io.personium.core.model.DavRsCmp;
-import io.personium.core.model.ModelFactory;
-import io.personium.core.model.ctl.Account;
 import io.personium.core.model.impl.es.EsModel;
 import io.personium.core.model.impl.es.QueryMapFactory;
 import io.personium.core.model.impl.es.accessor.EntitySetAccessor;
 import io.personium.core.model.impl.es.doc.OEntityDocHandler;
 import io.personium.core.odata.OEntityWrapper;
-import io.personium.core.odata.PersoniumODataProducer;
 import io.personium.core.rs.FacadeResource;
 
 /**
@@ -927,12 +923,8 @@ public class AuthzEndPointResource {
 
             if (PersoniumUnitConfig.getAccountLastAuthenticatedEnable()
                     && isSuccessAuthorization(response)) {
-                // Accountのスキーマ情報を取得する
-                PersoniumODataProducer producer = ModelFactory.ODataCtl.cellCtl(cell);
-                EdmEntitySet esetAccount = producer.getMetadata().getEdmEntitySet(Account.EDM_TYPE_NAME);
-                OEntityKey originalKey = OEntityKey.parse("('" + username + "')");
-                // 最終ログイン時刻の変更をProducerに依頼(このメソッド内でロックを取得・解放)
-                producer.updateLastAuthenticated(esetAccount, originalKey, accountId);
+                // 最終ログイン時刻の変更を依頼(設定により非同期でまとめて書き込まれる)
+                LastAuthenticatedUpdater.update(cell, username, accountId);
             }
             return response;
         } else if (assertion != null && !"".equals(assertion)) {
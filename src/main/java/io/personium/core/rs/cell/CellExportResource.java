@@ -54,6 +54,8 @@ public class CellExportResource {
 
     /** Key of JSON specified by Body : Name. */
     private static final String BODY_JSON_KEY_NAME = "Name";
+    /** Key of JSON specified by Body : Base. Base snapshot name of delta snapshot. */
+    private static final String BODY_JSON_KEY_BASE = "Base";
 
     /** Export target cell information. */
     private CellRsCmp cellRsCmp;
@@ -101,10 +103,12 @@ public class CellExportResource {
 
         // Reading body.
         String name = null;
+        String base = null;
         try {
             if (reader != null && reader.ready()) {
                 JSONObject body = ResourceUtils.parseBodyAsJSON(reader);
                 name = (String) body.get(BODY_JSON_KEY_NAME);
+                base = (String) body.get(BODY_JSON_KEY_BASE);
             }
         } catch (IOException e) {
             throw PersoniumCoreException.Common.REQUEST_BODY_LOAD_FAILED.reason(e);
@@ -120,9 +124,13 @@ public class CellExportResource {
             throw PersoniumCoreException.Common.REQUEST_BODY_FIELD_FORMAT_ERROR.params(
                     BODY_JSON_KEY_NAME, Common.PATTERN_SNAPSHOT_NAME);
         }
+        if (base != null && !ODataUtils.validateRegEx(base, Common.PATTERN_SNAPSHOT_NAME)) {
+            throw PersoniumCoreException.Common.REQUEST_BODY_FIELD_FORMAT_ERROR.params(
+                    BODY_JSON_KEY_BASE, Common.PATTERN_SNAPSHOT_NAME);
+        }
 
         SnapshotFileManager snapshotFileManager = new SnapshotFileManager(cellRsCmp.getCell(), name);
-        snapshotFileManager.exportSnapshot();
+        snapshotFileManager.exportSnapshot(base);
 
         ResponseBuilder res = Response.status(HttpStatus.SC_ACCEPTED);
         res.header(HttpHeaders.LOCATION, cellRsCmp.getCell().getUrl() + "__export");
@@ -24,7 +24,10 @@ import java.io.FileNotFoundException;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
+import java.io.OutputStreamWriter;
 import java.io.Reader;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
 import java.util.Date;
 import java.util.List;
 
@@ -33,6 +36,7 @@ import javax.ws.rs.GET;
 import javax.ws.rs.HeaderParam;
 import javax.ws.rs.Path;
 import javax.ws.rs.PathParam;
+import javax.ws.rs.QueryParam;
 import javax.ws.rs.WebApplicationException;
 import javax.ws.rs.core.Context;
 import javax.ws.rs.core.HttpHeaders;
@@ -60,12 +64,14 @@ import org.slf4j.LoggerFactory;
 
 import io.personium.common.utils.PersoniumCoreUtils;
 import io.personium.core.PersoniumCoreException;
+import io.personium.core.PersoniumUnitConfig;
 import io.personium.core.annotations.WriteAPI;
 import io.personium.core.auth.AccessContext;
 import io.personium.core.auth.CellPrivilege;
 import io.personium.core.event.EventUtils;
 import io.personium.core.eventlog.ArchiveLogCollection;
 import io.personium.core.eventlog.ArchiveLogFile;
+import io.personium.core.eventlog.EventLogQuery;
 import io.personium.core.model.Cell;
 import io.personium.core.model.DavRsCmp;
 import io.personium.core.utils.ResourceUtils;
@@ -79,8 +85,11 @@ public class LogResource {
     public static final String ARCHIVE_COLLECTION = "archive";
     /** currentコレクション名. */
     public static final String CURRENT_COLLECTION = "current";
+    /** イベントログ検索のリソース名. */
+    public static final String QUERY = "query";
 
-    private static final String DEFAULT_LOG = "default.log";
+    /** ログファイル名. */
+    public static final String DEFAULT_LOG = "default.log";
 
     Cell cell;
     AccessContext accessContext;
@@ -249,6 +258,78 @@ public class LogResource {
         return ret;
     }
 
+    /**
+     * イベントログを検索する.
+     * アーカイブ・カレントのイベントログから条件に一致するレコードを古い順にCSV形式で返却する.
+     * @param from 開始時刻(エポックミリ秒)
+     * @param to 終了時刻(エポックミリ秒)
+     * @param type Typeの前方一致条件
+     * @param subject Subjectの前方一致条件
+     * @param object Objectの前方一致条件
+     * @param requestKey RequestKey
+     * @param skip 読み飛ばす件数
+     * @param top 取得する最大件数
+     * @return JAXRS Response
+     */
+    @Path(QUERY)
+    @GET
+    public final Response queryLog(@QueryParam("from") final String from,
+            @QueryParam("to") final String to,
+            @QueryParam("type") final String type,
+            @QueryParam("subject") final String subject,
+            @QueryParam("object") final String object,
+            @QueryParam("requestKey") final String requestKey,
+            @QueryParam("$skip") final String skip,
+            @QueryParam("$top") final String top) {
+
+        // アクセス制御
+        this.davRsCmp.checkAccessContext(this.davRsCmp.getAccessContext(), CellPrivilege.LOG_READ);
+
+        Long fromTime = parseLongQuery("from", from);
+        Long toTime = parseLongQuery("to", to);
+        Long skipCount = parseLongQuery("$skip", skip);
+        Long topCount = parseLongQuery("$top", top);
+        if (skipCount == null) {
+            skipCount = 0L;
+        } else if (skipCount < 0 || skipCount > PersoniumUnitConfig.getSkipQueryMaxSize()) {
+            throw PersoniumCoreException.OData.QUERY_INVALID_ERROR.params("$skip", skip);
+        }
+        if (topCount == null) {
+            topCount = (long) PersoniumUnitConfig.getTopQueryDefaultSize();
+        } else if (topCount < 0 || topCount > PersoniumUnitConfig.getTopQueryMaxSize()) {
+            throw PersoniumCoreException.OData.QUERY_INVALID_ERROR.params("$top", top);
+        }
+
+        EventLogQuery query = new EventLogQuery(fromTime, toTime, type, subject, object, requestKey,
+                skipCount.intValue(), topCount.intValue());
+        final List<String> records = query.execute(this.cell);
+
+        StreamingOutput str = new StreamingOutput() {
+            @Override
+            public void write(final OutputStream os) throws IOException, WebApplicationException {
+                Writer writer = new OutputStreamWriter(os, StandardCharsets.UTF_8);
+                for (String record : records) {
+                    writer.write(record);
+                    writer.write("\n");
+                }
+                writer.flush();
+            }
+        };
+        return Response.status(HttpStatus.SC_OK)
+                .entity(str).header(HttpHeaders.CONTENT_TYPE, EventUtils.TEXT_CSV).build();
+    }
+
+    private Long parseLongQuery(String name, String value) {
+        if (value == null) {
+            return null;
+        }
+        try {
+            return Long.valueOf(value);
+        } catch (NumberFormatException e) {
+            throw PersoniumCoreException.OData.QUERY_INVALID_ERROR.params(name, value);
+        }
+    }
+
     /**
      * イベントログファイルを取得する.
      * @param ifNoneMatch If-None-Matchヘッダ
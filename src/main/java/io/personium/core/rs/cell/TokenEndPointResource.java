@@ -42,8 +42,6 @@ import javax.ws.rs.core.UriInfo;
 
 import org.apache.commons.lang.StringUtils;
 import org.json.simple.JSONObject;
-import org.odata4j.core.OEntityKey;
-import org.odata4j.edm.EdmEntitySet;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -69,15 +67,14 @@ import io.personium.core.PersoniumCoreLog;
 import io.personium.core.PersoniumUnitConfig;
 import io.personium.core.auth.AccessContext;
 import io.personium.core.auth.AuthUtils;
+import io.personium.core.auth.LastAuthenticatedUpdater;
 import io.personium.core.auth.OAuth2Helper;
 import io.personium.core.auth.OAuth2Helper.Key;
 import io.personium.core.model.Box;
 import io.personium.core.model.Cell;
 import io.personium.core.model.DavRsCmp;
-import io.personium.core.model.ModelFactory;
 import io.personium.core.model.ctl.Account;
 import io.personium.core.odata.OEntityWrapper;
-import io.personium.core.odata.PersoniumODataProducer;
 import io.personium.core.plugin.PluginInfo;
 import io.personium.core.plugin.PluginManager;
 import io.personium.core.rs.PersoniumCoreApplication;
@@ -180,16 +177,8 @@ public class TokenEndPointResource {
             // パスワード認証が成功した場合はアカウントの最終ログイン時刻を更新する
             // パスワード認証が成功した場合のみ、ここを通る(handlePassword内でエラーが発生すると、例外がthrowされる)
             if (PersoniumUnitConfig.getAccountLastAuthenticatedEnable()) {
-                // Accountのスキーマ情報を取得する
-                PersoniumODataProducer producer = ModelFactory.ODataCtl
-                        .cellCtl(cell);
-                EdmEntitySet esetAccount = producer.getMetadata()
-                        .getEdmEntitySet(Account.EDM_TYPE_NAME);
-                OEntityKey originalKey = OEntityKey.parse("('" + username
-                        + "')");
-                // 最終ログイン時刻の変更をProducerに依頼(このメソッド内でロックを取得・解放)
-                producer.updateLastAuthenticated(esetAccount, originalKey,
-                        accountId);
+                // 最終ログイン時刻の変更を依頼(設定により非同期でまとめて書き込まれる)
+                LastAuthenticatedUpdater.update(cell, username, accountId);
             }
             return response;
         } else if (OAuth2Helper.GrantType.SAML2_BEARER.equals(grantType)) {
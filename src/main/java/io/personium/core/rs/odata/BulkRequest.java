@@ -18,8 +18,11 @@ package io.personium.core.rs.odata;
 
 import java.util.Map;
 
+import org.odata4j.core.OEntityKey;
+
 import io.personium.common.es.EsBulkRequest;
 import io.personium.core.model.impl.es.doc.EntitySetDocHandler;
+import io.personium.core.odata.OEntityWrapper;
 
 /**
  * BatchCreateRequestクラス.
@@ -30,6 +33,10 @@ public class BulkRequest implements EsBulkRequest {
     private String entitySetName;
     private EntitySetDocHandler docHandler;
     private Exception error;
+    private BulkRequestType requestType = BulkRequestType.INDEX;
+    private OEntityKey originalKey;
+    private OEntityWrapper oEntityWrapper;
+    private String etag;
 
     /**
      * コンストラクタ.
@@ -133,9 +140,65 @@ public class BulkRequest implements EsBulkRequest {
         this.error = error;
     }
 
+    /**
+     * 更新/削除対象のエンティティキーのゲッター.
+     * @return OEntityKey
+     */
+    public OEntityKey getOriginalKey() {
+        return originalKey;
+    }
+
+    /**
+     * 更新/削除対象のエンティティキーのセッター.
+     * @param originalKey OEntityKey
+     */
+    public void setOriginalKey(OEntityKey originalKey) {
+        this.originalKey = originalKey;
+    }
+
+    /**
+     * 更新リクエストのOEntityWrapperのゲッター.
+     * @return OEntityWrapper
+     */
+    public OEntityWrapper getOEntityWrapper() {
+        return oEntityWrapper;
+    }
+
+    /**
+     * 更新リクエストのOEntityWrapperのセッター.
+     * @param oEntityWrapper OEntityWrapper
+     */
+    public void setOEntityWrapper(OEntityWrapper oEntityWrapper) {
+        this.oEntityWrapper = oEntityWrapper;
+    }
+
+    /**
+     * 削除リクエストのIf-Matchで指定されたETagのゲッター.
+     * @return ETag
+     */
+    public String getEtag() {
+        return etag;
+    }
+
+    /**
+     * 削除リクエストのIf-Matchで指定されたETagのセッター.
+     * @param etag ETag
+     */
+    public void setEtag(String etag) {
+        this.etag = etag;
+    }
+
+    /**
+     * リクエスト種別のセッター.
+     * @param requestType BulkRequestType
+     */
+    public void setRequestType(BulkRequestType requestType) {
+        this.requestType = requestType;
+    }
+
     @Override
     public BulkRequestType getRequestType() {
-        return BulkRequestType.INDEX;
+        return this.requestType;
     }
 
 }
@@ -70,6 +70,7 @@ import io.personium.core.model.impl.es.doc.LinkDocHandler;
 import io.personium.core.model.impl.es.odata.UserDataODataProducer;
 import io.personium.core.odata.OEntityWrapper;
 import io.personium.core.odata.PersoniumFormatWriterFactory;
+import io.personium.core.odata.PersoniumODataProducer;
 import io.personium.core.rs.PersoniumCoreExceptionMapper;
 
 /**
@@ -113,6 +114,8 @@ public class ODataBatchResource extends AbstractODataResource {
 
     ODataResource odataResource;
     LinkedHashMap<String, BulkRequest> bulkRequests = new LinkedHashMap<String, BulkRequest>();
+    // 連続する同一EntitySetへのPUT/DELETEリクエスト
+    List<BulkRequest> bulkChangeRequests = new ArrayList<BulkRequest>();
 
     // Batchリクエスト中にToo Many Concurrentが発生後の実行/スキップを制御するクラス
     BatchRequestShutter shutter;
@@ -192,6 +195,8 @@ public class ODataBatchResource extends AbstractODataResource {
 
         // POSTのbulk実行
         checkAndExecBulk(responseBody, uriInfo, boundary, npBulkContexts);
+        // PUT/DELETEのbulk実行
+        checkAndExecBulkChange(responseBody, boundary);
 
         // バウンダリ終端文字列
         responseBody.append("--" + boundary + "--");
@@ -254,6 +259,10 @@ public class ODataBatchResource extends AbstractODataResource {
             String boundary,
             List<NavigationPropertyBulkContext> npBulkContexts,
             BatchBodyPart bodyPart) {
+        // まとめて実行できないリクエストの前に、溜まっているPUT/DELETEを実行してレスポンス順序を保つ
+        if (!isBulkChangeTarget(bodyPart)) {
+            checkAndExecBulkChange(responseBody, boundary);
+        }
         // ReadDeleteOnlyMode中はGETとDELETEメソッド以外は許可しないため、エラーレスポンスを設定する
         if (!PersoniumReadDeleteModeManager.isAllowedMethod(bodyPart.getHttpMethod())) {
             BatchResponse res = new BatchResponse();
@@ -374,28 +383,18 @@ public class ODataBatchResource extends AbstractODataResource {
         } else if (bodyPart.getHttpMethod().equals(HttpMethod.PUT)) {
             // POSTのbulk実行
             checkAndExecBulk(responseBody, uriInfo, boundary, npBulkContexts);
-            if (!isTimedOut(BatchElapsedTimer.Lock.YIELD)) {
-                if (!shutter.isShuttered()) {
-                    BatchResponse res = update(bodyPart);
-                    responseBody.append(getChangesetResponseBody(boundary, bodyPart, res));
-                } else {
-                    setChangesetTooManyConcurrentResponse(responseBody, boundary, bodyPart);
-                }
+            if (!shutter.isShuttered()) {
+                bulkChangeRequests.add(createBulkUpdateRequest(bodyPart));
             } else {
-                setChangesetTimeoutResponse(responseBody, boundary, bodyPart);
+                setChangesetTooManyConcurrentResponse(responseBody, boundary, bodyPart);
             }
         } else if (bodyPart.getHttpMethod().equals(HttpMethod.DELETE)) {
             // POSTのbulk実行
             checkAndExecBulk(responseBody, uriInfo, boundary, npBulkContexts);
-            if (!isTimedOut(BatchElapsedTimer.Lock.YIELD)) {
-                if (!shutter.isShuttered()) {
-                    BatchResponse res = delete(bodyPart);
-                    responseBody.append(getChangesetResponseBody(boundary, bodyPart, res));
-                } else {
-                    setChangesetTooManyConcurrentResponse(responseBody, boundary, bodyPart);
-                }
+            if (!shutter.isShuttered()) {
+                bulkChangeRequests.add(createBulkDeleteRequest(bodyPart));
             } else {
-                setChangesetTimeoutResponse(responseBody, boundary, bodyPart);
+                setChangesetTooManyConcurrentResponse(responseBody, boundary, bodyPart);
             }
         } else {
             BatchResponse res = new BatchResponse();
@@ -1236,11 +1235,32 @@ public class ODataBatchResource extends AbstractODataResource {
     }
 
     /**
-     * バッチリクエストの更新処理.
+     * 溜まっているPUT/DELETEリクエストとまとめて実行できるリクエストか否かを判定する.
      * @param bodyPart BatchBodyPart
+     * @return まとめて実行できる場合はtrue
      */
-    private BatchResponse update(BatchBodyPart bodyPart) {
-        BatchResponse res = new BatchResponse();
+    private boolean isBulkChangeTarget(BatchBodyPart bodyPart) {
+        if (bulkChangeRequests.isEmpty()) {
+            return true;
+        }
+        BatchBodyPart head = bulkChangeRequests.get(0).getBodyPart();
+        String method = bodyPart.getHttpMethod();
+        return method.equals(head.getHttpMethod())
+                && bodyPart.getEntitySetName() != null
+                && bodyPart.getEntitySetName().equals(head.getEntitySetName())
+                && !bodyPart.isLinksRequest()
+                && !bodyPart.hasNavigationProperty()
+                && PersoniumReadDeleteModeManager.isAllowedMethod(method)
+                && shutter.accept(method);
+    }
+
+    /**
+     * バッチリクエストの更新用BulkRequestを作成する.
+     * @param bodyPart BatchBodyPart
+     * @return BulkRequest
+     */
+    private BulkRequest createBulkUpdateRequest(BatchBodyPart bodyPart) {
+        BulkRequest bulkRequest = new BulkRequest(bodyPart);
         try {
             // アクセス制御
             checkWriteAccessContext(bodyPart);
@@ -1248,33 +1268,26 @@ public class ODataBatchResource extends AbstractODataResource {
             ODataEntityResource entityResource = new ODataEntityResource(this.odataResource,
                     bodyPart.getEntitySetName(), bodyPart.getEntityKey());
 
-            // Entityの更新
             Reader reader = new StringReader(bodyPart.getEntity());
             String ifMatch = bodyPart.getHttpHeaders().get(HttpHeaders.IF_MATCH);
-            OEntityWrapper oew = entityResource.updateEntity(reader, ifMatch);
+            OEntityWrapper oew = entityResource.createUpdateEntityWrapper(reader, ifMatch);
 
-            // レスポンス作成
-            // 特に例外があがらなければ、レスポンスを返す。
-            // oewに新たに登録されたETagを返す
-            String etag = oew.getEtag();
-            res.setResponseCode(HttpStatus.SC_NO_CONTENT);
-            res.setHeader(ODataConstants.Headers.DATA_SERVICE_VERSION, "2.0");
-            res.setHeader(HttpHeaders.ETAG, ODataResource.renderEtagHeader(etag));
+            bulkRequest.setEntitySetName(bodyPart.getEntitySetName());
+            bulkRequest.setOriginalKey(entityResource.getOEntityKey());
+            bulkRequest.setOEntityWrapper(oew);
         } catch (Exception e) {
-            res.setErrorResponse(e);
-            shutter.updateStatus(e);
+            bulkRequest.setError(e);
         }
-
-        return res;
+        return bulkRequest;
     }
 
     /**
-     * バッチリクエストの削除処理.
+     * バッチリクエストの削除用BulkRequestを作成する.
      * @param bodyPart BatchBodyPart
-     * @return BatchResponse
+     * @return BulkRequest
      */
-    private BatchResponse delete(BatchBodyPart bodyPart) {
-        BatchResponse res = new BatchResponse();
+    private BulkRequest createBulkDeleteRequest(BatchBodyPart bodyPart) {
+        BulkRequest bulkRequest = new BulkRequest(bodyPart);
         try {
             // アクセス制御
             checkWriteAccessContext(bodyPart);
@@ -1282,19 +1295,94 @@ public class ODataBatchResource extends AbstractODataResource {
             ODataEntityResource entityResource = new ODataEntityResource(this.odataResource,
                     bodyPart.getEntitySetName(), bodyPart.getEntityKey());
 
-            // Entityの削除
             String ifMatch = bodyPart.getHttpHeaders().get(HttpHeaders.IF_MATCH);
-            entityResource.deleteEntity(ifMatch);
 
-            // レスポンス作成
-            res.setResponseCode(HttpStatus.SC_NO_CONTENT);
-            res.setHeader(ODataConstants.Headers.DATA_SERVICE_VERSION, "2.0");
+            bulkRequest.setEntitySetName(bodyPart.getEntitySetName());
+            bulkRequest.setOriginalKey(entityResource.getOEntityKey());
+            bulkRequest.setEtag(ODataResource.parseEtagHeader(ifMatch));
         } catch (Exception e) {
-            res.setErrorResponse(e);
-            shutter.updateStatus(e);
+            bulkRequest.setError(e);
         }
+        return bulkRequest;
+    }
 
-        return res;
+    /**
+     * 溜まっているPUT/DELETEリクエストがあれば実行する.
+     * @param responseBody 結果格納用
+     * @param boundary boundary
+     */
+    private void checkAndExecBulkChange(StringBuilder responseBody, String boundary) {
+        if (bulkChangeRequests.isEmpty()) {
+            return;
+        }
+        if (!isTimedOut(BatchElapsedTimer.Lock.YIELD)) {
+            if (!shutter.isShuttered()) {
+                execBulkChange(responseBody, boundary);
+            } else {
+                // 前のブロックで503エラーが発生している場合
+                for (BulkRequest request : bulkChangeRequests) {
+                    setChangesetTooManyConcurrentResponse(responseBody, boundary, request.getBodyPart());
+                }
+            }
+        } else {
+            for (BulkRequest request : bulkChangeRequests) {
+                setChangesetTimeoutResponse(responseBody, boundary, request.getBodyPart());
+            }
+        }
+        bulkChangeRequests.clear();
+    }
+
+    /**
+     * PUT/DELETEのbulkリクエストの実行処理.
+     * ETagの不一致などのエラーはリクエスト毎にレスポンスを作成する.
+     * @param responseBody 結果格納用
+     * @param boundary boundary
+     */
+    private void execBulkChange(StringBuilder responseBody, String boundary) {
+        boolean isUpdate = HttpMethod.PUT.equals(bulkChangeRequests.get(0).getBodyPart().getHttpMethod());
+        try {
+            if (isUpdate) {
+                this.odataResource.getODataProducer().bulkUpdateEntity(bulkChangeRequests);
+            } else {
+                // 削除前処理は、先行するリクエストの削除後の状態で実行されるようロック内で呼び出す
+                this.odataResource.getODataProducer().bulkDeleteEntity(bulkChangeRequests,
+                        new PersoniumODataProducer.BulkDeleteHook() {
+                            @Override
+                            public void beforeDelete(String entitySetName, OEntityKey oEntityKey) {
+                                odataResource.beforeDelete(entitySetName, oEntityKey);
+                            }
+                        });
+            }
+        } catch (PersoniumCoreException e) {
+            // ロック取得失敗等の場合は、すべてのリクエストをエラーとする
+            for (BulkRequest request : bulkChangeRequests) {
+                if (request.getError() == null) {
+                    request.setError(e);
+                }
+            }
+        }
+
+        // レスポンスを生成する
+        for (BulkRequest request : bulkChangeRequests) {
+            BatchResponse res = new BatchResponse();
+            Exception exception = request.getError();
+            if (exception != null) {
+                res.setErrorResponse(exception);
+                shutter.updateStatus(exception);
+            } else if (isUpdate) {
+                // oewに新たに登録されたETagを返す
+                String etag = request.getOEntityWrapper().getEtag();
+                res.setResponseCode(HttpStatus.SC_NO_CONTENT);
+                res.setHeader(ODataConstants.Headers.DATA_SERVICE_VERSION, "2.0");
+                res.setHeader(HttpHeaders.ETAG, ODataResource.renderEtagHeader(etag));
+            } else {
+                // 削除後処理
+                this.odataResource.afterDelete(request.getEntitySetName(), request.getOriginalKey());
+                res.setResponseCode(HttpStatus.SC_NO_CONTENT);
+                res.setHeader(ODataConstants.Headers.DATA_SERVICE_VERSION, "2.0");
+            }
+            responseBody.append(getChangesetResponseBody(boundary, request.getBodyPart(), res));
+        }
     }
 
     /**
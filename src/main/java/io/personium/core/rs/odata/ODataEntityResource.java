@@ -347,6 +347,21 @@ public class ODataEntityResource extends AbstractODataResource {
      * @return OEntityWrapper
      */
     OEntityWrapper updateEntity(Reader reader, final String ifMatch) {
+        OEntityWrapper oew = createUpdateEntityWrapper(reader, ifMatch);
+
+        // UPDATE処理をODataProducerに依頼。
+        // こちらでリソースの存在確認もしてもらう。
+        getOdataProducer().updateEntity(getEntitySetName(), this.oEntityKey, oew);
+        return oew;
+    }
+
+    /**
+     * リクエストから更新用のOEntityWrapperを作成する.
+     * @param reader リクエストボディ
+     * @param ifMatch ifMatch
+     * @return OEntityWrapper
+     */
+    OEntityWrapper createUpdateEntityWrapper(Reader reader, final String ifMatch) {
         // リクエストからOEntityWrapperを作成する.
         OEntity oe = this.createRequestEntity(reader, this.oEntityKey);
         OEntityWrapper oew = new OEntityWrapper(null, oe, null);
@@ -357,10 +372,6 @@ public class ODataEntityResource extends AbstractODataResource {
         // If-Matchヘッダで入力されたETagをMVCC用での衝突検知用にOEntityWrapperに設定する。
         String etag = ODataResource.parseEtagHeader(ifMatch);
         oew.setEtag(etag);
-
-        // UPDATE処理をODataProducerに依頼。
-        // こちらでリソースの存在確認もしてもらう。
-        getOdataProducer().updateEntity(getEntitySetName(), this.oEntityKey, oew);
         return oew;
     }
 
@@ -16,6 +16,7 @@
  */
 package io.personium.core.rs.unit;
 
+import java.util.HashMap;
 import java.util.Map;
 
 import javax.ws.rs.GET;
@@ -61,8 +62,9 @@ public class UnitCtlResource extends ODataResource {
 
     /**
      * beforeDelete時にCellの検索をした結果をafterDeleteで利用するためのキャッシュ.
+     * $batchでは複数のCellのbeforeDeleteを呼び出してからafterDeleteを呼び出すため、エンティティキー毎に保持する.
      */
-    Cell cell;
+    Map<String, Cell> cells = new HashMap<String, Cell>();
 
     /**
      * コンストラクタ.
@@ -173,26 +175,27 @@ public class UnitCtlResource extends ODataResource {
 
         if (Cell.EDM_TYPE_NAME.equals(entitySetName)) {
             String cellId = oew.getUuid();
-            cell = ModelFactory.cell(cellId, uriInfo);
+            Cell cell = ModelFactory.cell(cellId, uriInfo);
 
             // Cell配下が空っぽじゃなければ409エラー
             if (!cell.isEmpty()) {
                 throw PersoniumCoreException.OData.CONFLICT_HAS_RELATED;
             }
-
+            cells.put(oEntityKey.toKeyString(), cell);
 
         }
     }
 
     @Override
     public void afterDelete(final String entitySetName, final OEntityKey oEntityKey) {
-        if (Cell.EDM_TYPE_NAME.equals(entitySetName)) {
+        Cell cell = cells.remove(oEntityKey.toKeyString());
+        if (Cell.EDM_TYPE_NAME.equals(entitySetName) && cell != null) {
             // Cell配下にイベントログが存在する場合は削除
             String owner = cell.getOwner();
             try {
-                EventUtils.deleteEventLog(this.cell.getId(), owner);
+                EventUtils.deleteEventLog(cell.getId(), owner);
             } catch (BinaryDataAccessException e) {
-                log.warn("Failed to delete eventlog. CellName=[" + this.cell.getName() + "] owner=[" + owner + "] "
+                log.warn("Failed to delete eventlog. CellName=[" + cell.getName() + "] owner=[" + owner + "] "
                         + e.getMessage());
             }
 
@@ -201,12 +204,12 @@ public class UnitCtlResource extends ODataResource {
             snapshotCmp.delete(null, false);
 
             // delete Main Box DavCmp
-            Box box = new Box(this.cell, null);
+            Box box = new Box(cell, null);
             BoxCmp boxCmp = ModelFactory.boxCmp(box);
             boxCmp.delete(null, false);
 
             // delete cell DavCmp
-            CellCmp cellCmp = ModelFactory.cellCmp(this.cell);
+            CellCmp cellCmp = ModelFactory.cellCmp(cell);
             cellCmp.delete(null, false);
         }
     }
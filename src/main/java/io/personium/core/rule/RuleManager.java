@@ -137,8 +137,9 @@ public class RuleManager {
 
     /**
      * Constructor.
+     * Tests and benchmarks create an instance that neither loads rules nor receives events.
      */
-    private RuleManager() {
+    RuleManager() {
         rules = new HashMap<>();
         boxes = new HashMap<>();
         logger = LoggerFactory.getLogger(RuleManager.class);
@@ -158,6 +159,18 @@ public class RuleManager {
         return instance;
     }
 
+    /**
+     * Set rules of a cell without loading them from the data store.
+     * Used by tests and benchmarks.
+     * @param cellId cell id
+     * @param ruleMap rules of the cell keyed by rule key
+     */
+    void setRules(String cellId, Map<String, RuleInfo> ruleMap) {
+        synchronized (lockObj) {
+            rules.put(cellId, ruleMap);
+        }
+    }
+
     /**
      * Initialize RuleManager and execute threads in order to receive event.
      */
@@ -169,6 +182,9 @@ public class RuleManager {
 
         // Load rules from DB.
         load();
+        if (timerRuleManager != null) {
+            timerRuleManager.finishRecovery();
+        }
 
         // Create ThreadPool.
         final ThreadFactoryBuilder builder = new ThreadFactoryBuilder();
@@ -0,0 +1,203 @@
+/**
+ * personium.io
+ * Copyright 2018 FUJITSU LIMITED
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.personium.core.rule;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Append-only journal of timer schedules.
+ * <p>
+ * Records the next fire time of each timer (keyed by the timer key of TimerRuleManager), the registration time
+ * of each rule (keyed by the rule key with a prefix) and their removal, so that the schedules are recovered
+ * after restart. A record is an operation byte, the key and the time.
+ * A record partially written by a crash is ignored on replay. The journal is rewritten with the live timers
+ * when the number of records grows to twice the number of timers.
+ * <p>
+ * This class is not thread safe.
+ */
+class TimerJournal {
+    private static Logger log = LoggerFactory.getLogger(TimerJournal.class);
+
+    /** Journal file name. */
+    static final String FILE_NAME = "timer.journal";
+
+    private static final int MAGIC = 0x50544a31;
+    private static final byte OP_SET = 1;
+    private static final byte OP_REMOVE = 2;
+    private static final int MIN_COMPACT_RECORDS = 1024;
+
+    private final File file;
+    private final Map<String, Long> timers = new HashMap<>();
+    private FileOutputStream fos;
+    private DataOutputStream out;
+    private int records = 0;
+    private boolean dirty = false;
+
+    /**
+     * Constructor.
+     * Replays the journal in the directory and rewrites it with the live timers.
+     * @param dir directory of the journal
+     * @throws IOException failed to read or write the journal
+     */
+    TimerJournal(File dir) throws IOException {
+        if (!dir.isDirectory() && !dir.mkdirs()) {
+            throw new IOException("Failed to create directory: " + dir);
+        }
+        this.file = new File(dir, FILE_NAME);
+        if (file.exists()) {
+            replay();
+        }
+        compact();
+    }
+
+    private void replay() throws IOException {
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)))) {
+            if (in.readInt() != MAGIC) {
+                log.info("Ignored timer journal of unknown format: " + file);
+                return;
+            }
+            while (true) {
+                byte op = in.readByte();
+                String key = in.readUTF();
+                if (op == OP_SET) {
+                    timers.put(key, in.readLong());
+                } else if (op == OP_REMOVE) {
+                    timers.remove(key);
+                } else {
+                    log.info("Broken timer journal record is found. the rest is ignored: " + file);
+                    return;
+                }
+            }
+        } catch (EOFException e) {
+            // end of journal, or a record partially written
+            log.debug("Timer journal is replayed: " + timers.size() + " timers");
+        }
+    }
+
+    /**
+     * Rewrite the journal with the live timers.
+     * @throws IOException failed to write
+     */
+    void compact() throws IOException {
+        close();
+        File tmpFile = new File(file.getParentFile(), FILE_NAME + ".tmp");
+        try (FileOutputStream tmp = new FileOutputStream(tmpFile);
+                DataOutputStream tmpOut = new DataOutputStream(new BufferedOutputStream(tmp))) {
+            tmpOut.writeInt(MAGIC);
+            for (Map.Entry<String, Long> entry : timers.entrySet()) {
+                writeSet(tmpOut, entry.getKey(), entry.getValue());
+            }
+            tmpOut.flush();
+            tmp.getChannel().force(false);
+        }
+        Files.move(tmpFile.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING,
+                StandardCopyOption.ATOMIC_MOVE);
+        records = timers.size();
+        dirty = false;
+        fos = new FileOutputStream(file, true);
+        out = new DataOutputStream(new BufferedOutputStream(fos));
+    }
+
+    private static void writeSet(DataOutputStream dos, String key, long time) throws IOException {
+        dos.writeByte(OP_SET);
+        dos.writeUTF(key);
+        dos.writeLong(time);
+    }
+
+    /**
+     * Get timers recovered or recorded.
+     * @return map of timer key and next fire time
+     */
+    Map<String, Long> getTimers() {
+        return new HashMap<>(timers);
+    }
+
+    /**
+     * Record next fire time of timer.
+     * @param key timer key
+     * @param time next fire time
+     * @throws IOException failed to write
+     */
+    void set(String key, long time) throws IOException {
+        timers.put(key, time);
+        writeSet(out, key, time);
+        written();
+    }
+
+    /**
+     * Record removal of timer.
+     * @param key timer key
+     * @throws IOException failed to write
+     */
+    void remove(String key) throws IOException {
+        if (timers.remove(key) == null) {
+            return;
+        }
+        out.writeByte(OP_REMOVE);
+        out.writeUTF(key);
+        written();
+    }
+
+    private void written() throws IOException {
+        records++;
+        dirty = true;
+        if (records > Math.max(MIN_COMPACT_RECORDS, timers.size() * 2)) {
+            compact();
+        }
+    }
+
+    /**
+     * Write the records to the disk.
+     * @throws IOException failed to write
+     */
+    void sync() throws IOException {
+        if (!dirty) {
+            return;
+        }
+        out.flush();
+        fos.getChannel().force(false);
+        dirty = false;
+    }
+
+    /**
+     * Close the journal.
+     * @throws IOException failed to write
+     */
+    void close() throws IOException {
+        if (out != null) {
+            sync();
+            out.close();
+            out = null;
+            fos = null;
+        }
+    }
+}
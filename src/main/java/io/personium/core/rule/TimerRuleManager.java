@@ -16,6 +16,8 @@
  */
 package io.personium.core.rule;
 
+import java.io.File;
+import java.io.IOException;
 import java.time.Instant;
 import java.time.temporal.ChronoUnit;
 import java.util.ArrayList;
@@ -26,13 +28,14 @@ import java.util.List;
 import java.util.Map;
 import java.util.concurrent.Executors;
 import java.util.concurrent.ScheduledExecutorService;
-import java.util.concurrent.ScheduledFuture;
 import java.util.concurrent.TimeUnit;
 
 import com.google.common.util.concurrent.ThreadFactoryBuilder;
 
 import org.json.simple.JSONArray;
 import org.json.simple.JSONObject;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
 import io.personium.core.PersoniumUnitConfig;
 import io.personium.core.event.EventBus;
@@ -44,8 +47,17 @@ import io.personium.core.model.ctl.Rule;
 
 /**
  * TimerRuleManager.
+ * Timers are kept in a hierarchical timer wheel which is advanced every second,
+ * and the events of the timers expired in a tick are sent in a batch for each cell.
+ * The next fire time of each timer and the registration time of each rule are recorded in TimerJournal.
+ * While the rules are loaded at startup, the timers are resumed from the recorded times and the fires
+ * missed during the downtime are sent according to the misfire policy. Missed fires are sent only for the rules
+ * recorded before restart, and only for the fires after the registration of each rule, so a rule created
+ * while the unit was stopped does not inherit the missed fires of a timer shared with older rules.
  */
 class TimerRuleManager {
+    private static Logger log = LoggerFactory.getLogger(TimerRuleManager.class);
+
     /**
      * Internal class for managing rule.
      */
@@ -57,8 +69,41 @@ class TimerRuleManager {
         String boxId;
         String subject;
         long count;
+        MisfirePolicy misfire;
+    }
+
+    /**
+     * Behavior for the fires missed while the unit is stopped.
+     */
+    enum MisfirePolicy {
+        /** Do not send missed events. */
+        SKIP,
+        /** Send an event once for the missed fires. */
+        FIRE_ONCE,
+        /** Send an event for each missed fire, up to MAX_CATCH_UP. */
+        FIRE_ALL;
+
+        /**
+         * Get policy from configuration value.
+         * @param value skip, fireOnce or fireAll
+         * @return policy
+         */
+        static MisfirePolicy fromValue(String value) {
+            if ("skip".equals(value)) {
+                return SKIP;
+            } else if ("fireAll".equals(value)) {
+                return FIRE_ALL;
+            }
+            return FIRE_ONCE;
+        }
     }
 
+    /** Max number of missed fires sent for a rule with FIRE_ALL policy. */
+    static final int MAX_CATCH_UP = 60;
+
+    /** Prefix of the journal key of the registration time of a rule. Timer keys start with "p" or "o". */
+    static final String RULE_KEY_PREFIX = "r";
+
     /**
      * Internal class for timer list.
      */
@@ -67,13 +112,19 @@ class TimerRuleManager {
         String mapKey;
         long interval;
         long nextTime;
-
-        ScheduledFuture<?> handle;
     }
 
     private static TimerRuleManager instance = null;
     private Map<String, TimerRuleInfo> rules;
     private Map<String, TimerInfo> timerMap;
+    private TimerWheel<TimerInfo> wheel;
+
+    /** journal of the timers. null if disabled. */
+    private TimerJournal journal = null;
+    /** next fire times recorded before restart. cleared when the recovery finishes. */
+    private Map<String, Long> recovered = new HashMap<>();
+    /** rules to send missed events at the next tick, for each cell id. */
+    private Map<String, List<TimerRuleInfo>> catchUp = new HashMap<>();
 
     private Object lockObj;
 
@@ -109,6 +160,26 @@ class TimerRuleManager {
         scheduler = Executors.newScheduledThreadPool(
                 PersoniumUnitConfig.getTimerEventThreadNum(),
                 builder.build());
+        long now = System.currentTimeMillis();
+        wheel = new TimerWheel<>(now);
+        String journalDir = PersoniumUnitConfig.getTimerEventJournalDir();
+        if (journalDir != null && !journalDir.isEmpty()) {
+            try {
+                journal = new TimerJournal(new File(journalDir));
+                recovered = journal.getTimers();
+            } catch (IOException e) {
+                log.error("Failed to open timer journal. timers are not kept over restart: " + e.getMessage(), e);
+            }
+        }
+        scheduler.scheduleAtFixedRate(new Runnable() {
+            public void run() {
+                try {
+                    tick(System.currentTimeMillis());
+                } catch (Exception e) {
+                    log.error("Timer tick failed: " + e.getMessage(), e);
+                }
+            }
+        }, TimerWheel.DEFAULT_TICK - now % TimerWheel.DEFAULT_TICK, TimerWheel.DEFAULT_TICK, TimeUnit.MILLISECONDS);
     }
 
     /**
@@ -123,37 +194,174 @@ class TimerRuleManager {
         } catch (InterruptedException e) {
             scheduler.shutdownNow();
         }
+        synchronized (lockObj) {
+            if (journal != null) {
+                try {
+                    journal.close();
+                } catch (IOException e) {
+                    log.error("Failed to close timer journal: " + e.getMessage(), e);
+                }
+                journal = null;
+            }
+        }
     }
 
     /**
-     * Trigger timer.oneshot event.
-     * @param key key string for HashMap
+     * Finish recovery of the timers.
+     * Called after the rules are loaded at startup. The timers and rules recorded but not registered again
+     * are removed.
      */
-    void triggerOneshot(final String key) {
+    void finishRecovery() {
         synchronized (lockObj) {
-            TimerInfo timer = timerMap.get(key);
-            if (timer != null) {
-                send(timer);
-                timerMap.remove(key);
+            for (String key : recovered.keySet()) {
+                if (key.startsWith(RULE_KEY_PREFIX)) {
+                    if (!rules.containsKey(key.substring(RULE_KEY_PREFIX.length()))) {
+                        journalRemove(key);
+                    }
+                } else if (!timerMap.containsKey(key)) {
+                    journalRemove(key);
+                }
+            }
+            recovered.clear();
+            if (journal != null) {
+                try {
+                    journal.compact();
+                } catch (IOException e) {
+                    disableJournal(e);
+                }
             }
         }
     }
 
     /**
-     * Trigger timer.periodic event.
-     * @param key key string for HashMap
+     * Get number of missed fires to send.
+     * @param policy misfire policy
+     * @param time first fire time missed
+     * @param interval interval of periodic timer. 0 for oneshot timer
+     * @param now current time
+     * @return number of events to send
      */
-    void triggerPeriodic(final String key) {
+    static int countCatchUp(MisfirePolicy policy, long time, long interval, long now) {
+        if (time > now || policy == MisfirePolicy.SKIP) {
+            return 0;
+        }
+        if (policy == MisfirePolicy.FIRE_ONCE || interval <= 0) {
+            return 1;
+        }
+        return (int) Math.min(MAX_CATCH_UP, (now - time) / interval + 1);
+    }
+
+    /**
+     * Get first fire time of the timer missed by a rule.
+     * @param time first fire time of the timer missed
+     * @param registered time when the rule was registered
+     * @param interval interval of periodic timer. 0 for oneshot timer
+     * @return first fire time after the registration. Long.MAX_VALUE if the rule missed no fire
+     */
+    static long firstMissed(long time, long registered, long interval) {
+        if (registered <= time) {
+            return time;
+        }
+        if (interval <= 0) {
+            return Long.MAX_VALUE;
+        }
+        return time + ((registered - time + interval - 1) / interval) * interval;
+    }
+
+    private void journalSet(String key, long time) {
+        if (journal != null) {
+            try {
+                journal.set(key, time);
+            } catch (IOException e) {
+                disableJournal(e);
+            }
+        }
+    }
+
+    private void journalRemove(String key) {
+        if (journal != null) {
+            try {
+                journal.remove(key);
+            } catch (IOException e) {
+                disableJournal(e);
+            }
+        }
+    }
+
+    private void journalSync() {
+        if (journal != null) {
+            try {
+                journal.sync();
+            } catch (IOException e) {
+                disableJournal(e);
+            }
+        }
+    }
+
+    private void disableJournal(IOException e) {
+        log.error("Failed to write timer journal. timers are not kept over restart: " + e.getMessage(), e);
+        try {
+            journal.close();
+        } catch (IOException ce) {
+            log.debug("Failed to close timer journal: " + ce.getMessage());
+        }
+        journal = null;
+    }
+
+    /**
+     * Advance timer wheel and send events of the timers expired.
+     * @param now current time in milliseconds
+     */
+    void tick(long now) {
+        Map<String, List<TimerRuleInfo>> batch = new HashMap<>();
         synchronized (lockObj) {
-            TimerInfo timer = timerMap.get(key);
-            if (timer != null && !send(timer)) {
-                timerMap.remove(key);
-                timer.handle.cancel(true);
+            long delay = now - wheel.getCurrentTime() - TimerWheel.DEFAULT_TICK;
+            if (delay > TimerWheel.DEFAULT_TICK) {
+                log.info("Timer tick delayed: " + delay + "ms");
+            }
+            batch.putAll(catchUp);
+            catchUp.clear();
+            for (TimerInfo timer : wheel.advance(now)) {
+                if (timerMap.get(timer.mapKey) != timer) {
+                    // the timer has been removed
+                    continue;
+                }
+                if (collect(timer, batch) && timer.interval > 0) {
+                    // skip the periods missed while the ticks were delayed
+                    do {
+                        timer.nextTime += timer.interval;
+                    } while (timer.nextTime <= now);
+                    wheel.add(timer.nextTime, timer);
+                    journalSet(timer.mapKey, timer.nextTime);
+                } else {
+                    timerMap.remove(timer.mapKey);
+                    journalRemove(timer.mapKey);
+                }
             }
+            journalSync();
+        }
+
+        for (final Map.Entry<String, List<TimerRuleInfo>> entry : batch.entrySet()) {
+            scheduler.execute(new Runnable() {
+                public void run() {
+                    try {
+                        send(entry.getKey(), entry.getValue());
+                    } catch (Exception e) {
+                        log.error("Failed to send timer event: " + e.getMessage(), e);
+                    }
+                }
+            });
         }
     }
 
-    private boolean send(TimerInfo timer) {
+    /**
+     * Collect rules of the timer to send events for each cell.
+     * Rules already unregistered are removed from the timer.
+     * @param timer timer expired
+     * @param batch rules to send events for each cell id
+     * @return false if the timer has no rule
+     */
+    private boolean collect(TimerInfo timer, Map<String, List<TimerRuleInfo>> batch) {
         boolean validMap = false;
 
         for (Iterator<Map.Entry<String, List<TimerRuleInfo>>> iruleMap = timer.ruleMap.entrySet().iterator();
@@ -161,8 +369,6 @@ class TimerRuleManager {
             Map.Entry<String, List<TimerRuleInfo>> entry = iruleMap.next();
             String cellId = entry.getKey();
             List<TimerRuleInfo> ruleList = entry.getValue();
-            Cell cell = ModelFactory.cell(cellId, null);
-            EventBus eventBus = cell.getEventBus();
             boolean validList = false;
 
             for (Iterator<TimerRuleInfo> i = ruleList.iterator(); i.hasNext();) {
@@ -171,18 +377,12 @@ class TimerRuleManager {
                     i.remove();
                     continue;
                 }
-                String schema = null;
-                if (rule.boxId != null) {
-                    schema = RuleManager.getInstance().getSchemaForBoxId(cellId, rule.boxId);
+                List<TimerRuleInfo> cellBatch = batch.get(cellId);
+                if (cellBatch == null) {
+                    cellBatch = new ArrayList<>();
+                    batch.put(cellId, cellBatch);
                 }
-                PersoniumEvent event = new PersoniumEvent.Builder()
-                        .schema(schema)
-                        .subject(rule.subject)
-                        .type(rule.type)
-                        .object(rule.object)
-                        .info(rule.info)
-                        .build();
-                eventBus.post(event);
+                cellBatch.add(rule);
                 validList = true;
             }
 
@@ -195,6 +395,41 @@ class TimerRuleManager {
         return validMap;
     }
 
+    /**
+     * Send events of the rules of a cell.
+     * The cell and the schema of each box are looked up once for a batch.
+     * @param cellId cell id
+     * @param ruleList rules expired
+     */
+    void send(String cellId, List<TimerRuleInfo> ruleList) {
+        Cell cell = ModelFactory.cell(cellId, null);
+        if (cell == null) {
+            return;
+        }
+        EventBus eventBus = cell.getEventBus();
+        Map<String, String> schemas = new HashMap<>();
+
+        for (TimerRuleInfo rule : ruleList) {
+            String schema = null;
+            if (rule.boxId != null) {
+                if (schemas.containsKey(rule.boxId)) {
+                    schema = schemas.get(rule.boxId);
+                } else {
+                    schema = RuleManager.getInstance().getSchemaForBoxId(cellId, rule.boxId);
+                    schemas.put(rule.boxId, schema);
+                }
+            }
+            PersoniumEvent event = new PersoniumEvent.Builder()
+                    .schema(schema)
+                    .subject(rule.subject)
+                    .type(rule.type)
+                    .object(rule.object)
+                    .info(rule.info)
+                    .build();
+            eventBus.post(event);
+        }
+    }
+
     /**
      * Get key string for HashMap from subject, type, object, info, cellId and boxId.
      */
@@ -223,24 +458,8 @@ class TimerRuleManager {
         if (timer.nextTime == 0) {
             return;
         }
-
-        final String key = timer.mapKey;
-
-        if (timer.interval > 0) {
-            timer.handle = scheduler.scheduleAtFixedRate(new Runnable() {
-                public void run() {
-                    TimerRuleManager man = TimerRuleManager.getInstance();
-                    man.triggerPeriodic(key);
-                }
-            }, timer.interval, timer.interval, TimeUnit.MILLISECONDS);
-        } else {
-            timer.handle = scheduler.schedule(new Runnable() {
-                public void run() {
-                    TimerRuleManager man = TimerRuleManager.getInstance();
-                    man.triggerOneshot(key);
-                }
-            }, timer.nextTime - new Date().getTime(), TimeUnit.MILLISECONDS);
-        }
+        wheel.add(timer.nextTime, timer);
+        journalSet(timer.mapKey, timer.nextTime);
     }
 
     /**
@@ -259,6 +478,8 @@ class TimerRuleManager {
         long interval;
         long nextTime;
         String mapKey = null;
+        String timerKey;
+        MisfirePolicy misfire;
 
         // truncate to minutes
         Instant instant = Instant.now().truncatedTo(ChronoUnit.MINUTES);
@@ -268,11 +489,15 @@ class TimerRuleManager {
             interval = TimeUnit.MINUTES.toMillis(Long.parseLong(object));
             nextTime = now.getTime() + interval;
             mapKey = "p" + interval;
+            timerKey = mapKey;
+            misfire = MisfirePolicy.fromValue(PersoniumUnitConfig.getTimerEventPeriodicMisfirePolicy());
         } else if (PersoniumEventType.timerOneshot().equals(type)) {
             interval = 0;
             nextTime = Long.parseLong(object);
             Instant ins = Instant.ofEpochMilli(nextTime).truncatedTo(ChronoUnit.MINUTES);
             nextTime = Date.from(ins).getTime();
+            timerKey = "o" + nextTime;
+            misfire = MisfirePolicy.fromValue(PersoniumUnitConfig.getTimerEventOneshotMisfirePolicy());
             if (nextTime < now.getTime()) {
                 nextTime = 0;
             } else {
@@ -294,8 +519,43 @@ class TimerRuleManager {
                 rule.cellId = cellId;
                 rule.boxId = boxId;
                 rule.count = 1;
+                rule.misfire = misfire;
                 rules.put(keyString, rule);
 
+                long current = System.currentTimeMillis();
+                String ruleJournalKey = RULE_KEY_PREFIX + keyString;
+                Long registered = recovered.get(ruleJournalKey);
+                if (registered == null) {
+                    journalSet(ruleJournalKey, current);
+                }
+
+                // resume the timer recorded before restart
+                Long recoveredTime = recovered.get(timerKey);
+                if (recoveredTime != null) {
+                    // a oneshot timer in the current minute is still sent by the wheel.
+                    // rules not recorded before restart have missed no fire.
+                    int fires = 0;
+                    if (registered != null && (interval > 0 || mapKey == null)) {
+                        fires = countCatchUp(misfire, firstMissed(recoveredTime, registered, interval),
+                                interval, current);
+                    }
+                    for (int i = 0; i < fires; i++) {
+                        List<TimerRuleInfo> cellBatch = catchUp.get(cellId);
+                        if (cellBatch == null) {
+                            cellBatch = new ArrayList<>();
+                            catchUp.put(cellId, cellBatch);
+                        }
+                        cellBatch.add(rule);
+                    }
+                    if (interval > 0) {
+                        // keep the phase of the periodic timer
+                        nextTime = recoveredTime;
+                        if (nextTime <= current) {
+                            nextTime += ((current - nextTime) / interval + 1) * interval;
+                        }
+                    }
+                }
+
                 if (mapKey != null) {
                     TimerInfo timer = timerMap.get(mapKey);
                     if (timer != null) {
@@ -348,6 +608,7 @@ class TimerRuleManager {
                 rule.count--;
                 if (rule.count == 0) {
                     rules.remove(key, rule);
+                    journalRemove(RULE_KEY_PREFIX + key);
                 }
 
                 return true;
@@ -0,0 +1,162 @@
+/**
+ * personium.io
+ * Copyright 2018 FUJITSU LIMITED
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.personium.core.rule;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Hashed hierarchical timer wheel.
+ * <p>
+ * Each level is a ring of buckets, and a bucket of a level spans a whole ring of the level below
+ * (1 second x 60, 1 minute x 60, 1 hour x 24, 1 day x 512 by default). An item is put into the lowest level
+ * whose ring covers its expiration, and is moved down to lower levels as the time advances.
+ * Items beyond the top level are hashed into the top level buckets and put back until their round comes.
+ * Adding an item and expiring it cost O(1) regardless of the number of items.
+ * <p>
+ * This class is not thread safe.
+ * @param <T> type of item
+ */
+class TimerWheel<T> {
+
+    /** Default tick in milliseconds. */
+    static final long DEFAULT_TICK = 1000L;
+    /** Default number of buckets for each level. */
+    static final int[] DEFAULT_LEVELS = {60, 60, 24, 512 };
+
+    /**
+     * Item with expiration, linked in a bucket.
+     * @param <T> type of item
+     */
+    private static final class Node<T> {
+        private final T item;
+        private final long expiration;
+        private Node<T> next;
+
+        Node(T item, long expiration) {
+            this.item = item;
+            this.expiration = expiration;
+        }
+    }
+
+    private final long[] ticks;
+    private final Node<T>[][] buckets;
+    private final List<T> expired = new ArrayList<>();
+    private long currentTime;
+    private int size = 0;
+
+    /**
+     * Constructor.
+     * @param tick milliseconds of a tick of the lowest level
+     * @param levels number of buckets for each level from the lowest
+     * @param startTime start time in milliseconds
+     */
+    @SuppressWarnings("unchecked")
+    TimerWheel(long tick, int[] levels, long startTime) {
+        this.ticks = new long[levels.length];
+        this.buckets = new Node[levels.length][];
+        long levelTick = tick;
+        for (int i = 0; i < levels.length; i++) {
+            ticks[i] = levelTick;
+            buckets[i] = new Node[levels[i]];
+            levelTick *= levels[i];
+        }
+        this.currentTime = startTime - startTime % tick;
+    }
+
+    /**
+     * Constructor with default tick and levels.
+     * @param startTime start time in milliseconds
+     */
+    TimerWheel(long startTime) {
+        this(DEFAULT_TICK, DEFAULT_LEVELS, startTime);
+    }
+
+    /**
+     * Add item.
+     * An item whose expiration has already passed is returned by the next advance().
+     * @param expiration expiration time in milliseconds
+     * @param item item
+     */
+    void add(long expiration, T item) {
+        size++;
+        place(new Node<>(item, expiration));
+    }
+
+    private void place(Node<T> node) {
+        int top = ticks.length - 1;
+        for (int i = 0; i <= top; i++) {
+            long delta = node.expiration / ticks[i] - currentTime / ticks[i];
+            if (i == 0 && delta <= 0) {
+                expired.add(node.item);
+                size--;
+                return;
+            }
+            if (delta < buckets[i].length || i == top) {
+                int index = (int) ((node.expiration / ticks[i]) % buckets[i].length);
+                node.next = buckets[i][index];
+                buckets[i][index] = node;
+                return;
+            }
+        }
+    }
+
+    /**
+     * Advance the time tick by tick, and return items expired.
+     * All the ticks passed since the last call are processed, so that no item is skipped.
+     * @param now current time in milliseconds
+     * @return items expired in order of ticks
+     */
+    List<T> advance(long now) {
+        while (currentTime + ticks[0] <= now) {
+            currentTime += ticks[0];
+            // move items of higher levels down before expiring the lowest level
+            for (int i = ticks.length - 1; i >= 0; i--) {
+                if (currentTime % ticks[i] != 0) {
+                    continue;
+                }
+                int index = (int) ((currentTime / ticks[i]) % buckets[i].length);
+                Node<T> node = buckets[i][index];
+                buckets[i][index] = null;
+                while (node != null) {
+                    Node<T> next = node.next;
+                    place(node);
+                    node = next;
+                }
+            }
+        }
+        List<T> result = new ArrayList<>(expired);
+        expired.clear();
+        return result;
+    }
+
+    /**
+     * Get the time the wheel has advanced to.
+     * @return time in milliseconds
+     */
+    long getCurrentTime() {
+        return currentTime;
+    }
+
+    /**
+     * Get number of items not expired.
+     * @return number of items
+     */
+    int size() {
+        return size;
+    }
+}
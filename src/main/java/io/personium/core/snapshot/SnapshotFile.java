@@ -17,7 +17,6 @@
 package io.personium.core.snapshot;
 
 import java.io.BufferedReader;
-import java.io.BufferedWriter;
 import java.io.Closeable;
 import java.io.IOException;
 import java.io.LineNumberReader;
@@ -28,7 +27,6 @@ import java.nio.file.FileSystem;
 import java.nio.file.FileSystems;
 import java.nio.file.Files;
 import java.nio.file.Path;
-import java.nio.file.StandardOpenOption;
 import java.util.HashMap;
 import java.util.Map;
 
@@ -37,7 +35,8 @@ import org.apache.commons.io.Charsets;
 import io.personium.core.PersoniumCoreException;
 
 /**
- * Class for Read/Write interface of snapshot file.
+ * Class for Read interface of snapshot file.
+ * Snapshot file is written with {@link SnapshotFileWriter}.
  */
 public class SnapshotFile implements Closeable {
 
@@ -45,15 +44,40 @@ public class SnapshotFile implements Closeable {
     public static final String MAIN_BOX_DIR_NAME = "__";
 
     /** File name : manifest. */
-    private static final String MANIFEST_JSON = "00_manifest.json";
+    static final String MANIFEST_JSON = "00_manifest.json";
     /** Directory name : odata. */
-    private static final String ODATA_DIR = "10_odata";
+    static final String ODATA_DIR = "10_odata";
     /** File name : cell. */
-    private static final String CELL_JSON = "00_cell.json";
+    static final String CELL_JSON = "00_cell.json";
     /** File name : odata. */
-    private static final String DATA_PJSON = "10_data.pjson";
+    static final String DATA_PJSON = "10_data.pjson";
     /** Directory name : webdav. */
-    private static final String WEBDAV_DIR = "20_webdav";
+    static final String WEBDAV_DIR = "20_webdav";
+    /** File name : ids of odata. */
+    static final String IDS_TXT = "20_ids.txt";
+    /** File name : ids of deleted odata. */
+    static final String DELETED_IDS_TXT = "30_deleted.txt";
+    /** File name : versions of webdav directories. */
+    static final String WEBDAV_VERSIONS_TXT = "30_webdav_versions.txt";
+    /** File name : deleted webdav directories. */
+    static final String DELETED_WEBDAV_TXT = "31_webdav_deleted.txt";
+    /** Separator of the columns of the list file. */
+    static final String LIST_SEPARATOR = "\t";
+
+    /** Manifest json key : export api version. */
+    static final String MANIFEST_JSON_KEY_EXPORT_VERSION = "export_version";
+    /** Manifest json key : export unit url. */
+    static final String MANIFEST_JSON_KEY_UNIT_URL = "unit_url";
+    /** Manifest json key : snapshot create date. */
+    static final String MANIFEST_JSON_KEY_CREATE_DATE = "create_date";
+    /** Manifest json key : snapshot type. */
+    static final String MANIFEST_JSON_KEY_SNAPSHOT_TYPE = "snapshot_type";
+    /** Manifest json key : name of the base snapshot. Only for delta snapshot. */
+    static final String MANIFEST_JSON_KEY_BASE_SNAPSHOT = "base_snapshot";
+    /** Snapshot type : full. */
+    static final String SNAPSHOT_TYPE_FULL = "full";
+    /** Snapshot type : delta. Contains only the changes after the base snapshot. */
+    static final String SNAPSHOT_TYPE_DELTA = "delta";
 
     /** Number of skipped bytes at line count. */
     private static final long SKIP_DATA_NUM = 1024L;
@@ -102,7 +126,34 @@ public class SnapshotFile implements Closeable {
      * @return Total line number
      */
     public long countDataPJson() {
-        Path pathInZip = pathMap.get(DATA_PJSON);
+        return countLine(pathMap.get(DATA_PJSON), "read data pjson from snapshot file");
+    }
+
+    /**
+     * Count and return deleted odata and webdav directories.
+     * Snapshot file that is not delta has no deleted entries.
+     * @return Total line number
+     */
+    public long countDeletedEntry() {
+        long count = 0L;
+        Path deletedIds = fileSystem.getPath(ODATA_DIR, DELETED_IDS_TXT);
+        if (Files.exists(deletedIds)) {
+            count += countLine(deletedIds, "read deleted ids from snapshot file");
+        }
+        Path deletedWebDAV = fileSystem.getPath(DELETED_WEBDAV_TXT);
+        if (Files.exists(deletedWebDAV)) {
+            count += countLine(deletedWebDAV, "read deleted webdav from snapshot file");
+        }
+        return count;
+    }
+
+    /**
+     * Count and return file line.
+     * @param pathInZip file path in zip
+     * @param operation operation name for error message
+     * @return Total line number
+     */
+    private long countLine(Path pathInZip, String operation) {
         try (BufferedReader bufReader = Files.newBufferedReader(pathInZip, Charsets.UTF_8)) {
             LineNumberReader reader = new LineNumberReader(bufReader);
             while (true) {
@@ -113,7 +164,7 @@ public class SnapshotFile implements Closeable {
             }
             return reader.getLineNumber();
         } catch (IOException e) {
-            throw PersoniumCoreException.Common.FILE_IO_ERROR.params("read data pjson from snapshot file").reason(e);
+            throw PersoniumCoreException.Common.FILE_IO_ERROR.params(operation).reason(e);
         }
     }
 
@@ -149,20 +200,20 @@ public class SnapshotFile implements Closeable {
     }
 
     /**
-     * Write to manifest json.
-     * @param data Data to write
+     * Read manifest json.
+     * @return Read data
      */
-    public void writeManifestJson(String data) {
+    public String readManifestJson() {
         Path pathInZip = pathMap.get(MANIFEST_JSON);
-        try (BufferedWriter writer = Files.newBufferedWriter(pathInZip, Charsets.UTF_8)) {
-            writer.write(data);
+        try {
+            return new String(Files.readAllBytes(pathInZip), Charsets.UTF_8);
         } catch (IOException e) {
-            throw PersoniumCoreException.Common.FILE_IO_ERROR.params("add manifest to snapshot file").reason(e);
+            throw PersoniumCoreException.Common.FILE_IO_ERROR.params("read manifest json from snapshot file").reason(e);
         }
     }
 
     /**
-     * Read manifest json.
+     * Read cell json.
      * @return Read data
      */
     public String readCellJson() {
@@ -174,19 +225,6 @@ public class SnapshotFile implements Closeable {
         }
     }
 
-    /**
-     * Write to cell json.
-     * @param data Data to write
-     */
-    public void writeCellJson(String data) {
-        Path pathInZip = pathMap.get(CELL_JSON);
-        try (BufferedWriter writer = Files.newBufferedWriter(pathInZip, Charsets.UTF_8)) {
-            writer.write(data);
-        } catch (IOException e) {
-            throw PersoniumCoreException.Common.FILE_IO_ERROR.params("add cell json to snapshot file").reason(e);
-        }
-    }
-
     /**
      * Get and return the reader of data pjson.
      * @return reader of data pjson
@@ -198,29 +236,57 @@ public class SnapshotFile implements Closeable {
     }
 
     /**
-     * Create data pjson.
+     * Get and return the reader of ids of odata.
+     * Each line is "type{@value #LIST_SEPARATOR}id".
+     * @return reader of ids
+     * @throws IOException file I/O error
      */
-    public void createDataPJson() {
-        Path pathInZip = pathMap.get(DATA_PJSON);
-        try {
-            Files.createFile(pathInZip);
-        } catch (IOException e) {
-            throw PersoniumCoreException.Common.FILE_IO_ERROR.params("create data pjson to snapshot file").reason(e);
-        }
+    public BufferedReader getIdsReader() throws IOException {
+        return newListReader(fileSystem.getPath(ODATA_DIR, IDS_TXT));
     }
 
     /**
-     * Write to data pjson.
-     * @param data Data to write
+     * Get and return the reader of ids of deleted odata.
+     * Each line is "type{@value #LIST_SEPARATOR}id".
+     * @return reader of deleted ids
+     * @throws IOException file I/O error
      */
-    public void writeDataPJson(String data) {
-        Path pathInZip = pathMap.get(DATA_PJSON);
-        try (BufferedWriter writer = Files.newBufferedWriter(pathInZip, Charsets.UTF_8,
-                StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.APPEND)) {
-            writer.write(data);
-        } catch (IOException e) {
-            throw PersoniumCoreException.Common.FILE_IO_ERROR.params("add data pjson to snapshot file").reason(e);
+    public BufferedReader getDeletedIdsReader() throws IOException {
+        return newListReader(fileSystem.getPath(ODATA_DIR, DELETED_IDS_TXT));
+    }
+
+    /**
+     * Get and return the reader of versions of webdav directories.
+     * Each line is "directory path under the webdav directory{@value #LIST_SEPARATOR}version".
+     * @return reader of versions
+     * @throws IOException file I/O error
+     */
+    public BufferedReader getWebDAVVersionsReader() throws IOException {
+        return newListReader(fileSystem.getPath(WEBDAV_VERSIONS_TXT));
+    }
+
+    /**
+     * Get and return the reader of deleted webdav directories.
+     * Each line is directory path under the webdav directory.
+     * @return reader of deleted directories
+     * @throws IOException file I/O error
+     */
+    public BufferedReader getDeletedWebDAVReader() throws IOException {
+        return newListReader(fileSystem.getPath(DELETED_WEBDAV_TXT));
+    }
+
+    /**
+     * Get and return the reader of list file.
+     * List files are not checked by checkStructure because snapshot file of old version does not have them.
+     * @param pathInZip list file path in zip
+     * @return reader of list file
+     * @throws IOException file I/O error
+     */
+    private BufferedReader newListReader(Path pathInZip) throws IOException {
+        if (!Files.exists(pathInZip)) {
+            throw PersoniumCoreException.Misc.NOT_FOUND_IN_SNAPSHOT.params(pathInZip.toString());
         }
+        return Files.newBufferedReader(pathInZip, Charsets.UTF_8);
     }
 
     /**
@@ -280,11 +346,17 @@ public class SnapshotFile implements Closeable {
      * │
      * ├─ODATA_DIR
      * │  ├─CELL_JSON
-     * │  └─DATA_PJSON
+     * │  ├─DATA_PJSON
+     * │  ├─(IDS_TXT)
+     * │  └─(DELETED_IDS_TXT)
      * │
-     * └─WEBDAV_DIR
+     * ├─WEBDAV_DIR
+     * ├─(WEBDAV_VERSIONS_TXT)
+     * └─(DELETED_WEBDAV_TXT)
      * -------------------------
      * </pre>
+     * Files in parentheses are not contained in this map. They are not in the snapshot file of old version,
+     * and the deleted lists are only in the delta snapshot file.
      * @param fs FileSystem class of target zip file
      * @return Map that stores file path in zip file
      */
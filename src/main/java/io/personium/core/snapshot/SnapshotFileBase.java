@@ -0,0 +1,165 @@
+/**
+ * personium.io
+ * Copyright 2018 FUJITSU LIMITED
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.personium.core.snapshot;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+
+import org.json.simple.JSONObject;
+import org.json.simple.parser.JSONParser;
+import org.json.simple.parser.ParseException;
+
+import io.personium.core.PersoniumCoreException;
+
+/**
+ * Information of the base snapshot of the delta snapshot.
+ * <p>
+ * Holds the create date of the base snapshot, which is the high-water mark of the delta snapshot,
+ * and the ids of odata and the versions of webdav directories contained in the base snapshot.
+ * The entries that are found in the cell are removed while exporting, and the remaining entries are
+ * written to the delta snapshot as deleted.
+ */
+class SnapshotFileBase {
+
+    /** Base snapshot name. */
+    private final String name;
+    /** Create date of base snapshot. */
+    private final long createDate;
+    /** Ids of odata. "type{separator}id". */
+    private final Set<String> ids = new HashSet<>();
+    /** Versions of webdav directories. */
+    private final Map<String, Long> webdavVersions = new HashMap<>();
+
+    /**
+     * Constructor.
+     * @param name Base snapshot name
+     * @param createDate Create date of base snapshot
+     */
+    private SnapshotFileBase(String name, long createDate) {
+        this.name = name;
+        this.createDate = createDate;
+    }
+
+    /**
+     * Load the information from the base snapshot file.
+     * Snapshot file of old version that has no list files can not be the base.
+     * @param name Base snapshot name
+     * @param snapshotFilePath Base snapshot file path
+     * @return loaded information
+     */
+    static SnapshotFileBase load(String name, Path snapshotFilePath) {
+        try (SnapshotFile snapshotFile = SnapshotFile.newInstance(snapshotFilePath)) {
+            snapshotFile.checkStructure();
+            SnapshotFileBase base = new SnapshotFileBase(name, readCreateDate(snapshotFile));
+            try (BufferedReader reader = snapshotFile.getIdsReader()) {
+                String line;
+                while ((line = reader.readLine()) != null) {
+                    base.ids.add(line);
+                }
+            }
+            try (BufferedReader reader = snapshotFile.getWebDAVVersionsReader()) {
+                String line;
+                while ((line = reader.readLine()) != null) {
+                    int index = line.lastIndexOf(SnapshotFile.LIST_SEPARATOR);
+                    if (index < 0) {
+                        continue;
+                    }
+                    base.webdavVersions.put(line.substring(0, index), Long.valueOf(line.substring(index + 1)));
+                }
+            }
+            return base;
+        } catch (IOException | NumberFormatException e) {
+            throw PersoniumCoreException.Common.FILE_IO_ERROR.params("read base snapshot file").reason(e);
+        }
+    }
+
+    /**
+     * Read create date from manifest json.
+     * @param snapshotFile snapshot file
+     * @return create date
+     */
+    private static long readCreateDate(SnapshotFile snapshotFile) {
+        String manifestJsonStr = snapshotFile.readManifestJson();
+        JSONObject manifestJson;
+        try {
+            manifestJson = (JSONObject) new JSONParser().parse(manifestJsonStr);
+        } catch (ParseException e) {
+            throw PersoniumCoreException.Common.JSON_PARSE_ERROR.params(manifestJsonStr);
+        }
+        Object createDate = manifestJson.get(SnapshotFile.MANIFEST_JSON_KEY_CREATE_DATE);
+        if (!(createDate instanceof Long)) {
+            throw PersoniumCoreException.Misc.NOT_FOUND_IN_SNAPSHOT.params(
+                    SnapshotFile.MANIFEST_JSON + ":" + SnapshotFile.MANIFEST_JSON_KEY_CREATE_DATE);
+        }
+        return (Long) createDate;
+    }
+
+    /**
+     * Get base snapshot name.
+     * @return base snapshot name
+     */
+    String getName() {
+        return name;
+    }
+
+    /**
+     * Get create date of base snapshot.
+     * Data updated at or after this time is contained in the delta snapshot.
+     * @return create date
+     */
+    long getCreateDate() {
+        return createDate;
+    }
+
+    /**
+     * Remove the id of odata that exists in the cell.
+     * @param idLine "type{separator}id"
+     */
+    void removeId(String idLine) {
+        ids.remove(idLine);
+    }
+
+    /**
+     * Get ids of odata that are not removed, that is, deleted after the base snapshot.
+     * @return ids of deleted odata
+     */
+    Set<String> getRemainingIds() {
+        return ids;
+    }
+
+    /**
+     * Remove the version of webdav directory that exists in the cell.
+     * @param dir directory path under the webdav directory
+     * @return version in base snapshot. null if the directory is not in base snapshot
+     */
+    Long removeWebDAVVersion(String dir) {
+        return webdavVersions.remove(dir);
+    }
+
+    /**
+     * Get webdav directories that are not removed, that is, deleted after the base snapshot.
+     * @return deleted directories
+     */
+    Set<String> getRemainingWebDAVDirs() {
+        return webdavVersions.keySet();
+    }
+}
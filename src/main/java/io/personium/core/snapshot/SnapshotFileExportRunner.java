@@ -18,12 +18,11 @@ package io.personium.core.snapshot;
 
 import java.io.File;
 import java.io.IOException;
-import java.nio.file.FileVisitor;
+import java.io.Writer;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.util.ArrayList;
-import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 
@@ -67,19 +66,13 @@ public class SnapshotFileExportRunner implements Runnable {
     /** Limit when retrieving OData. */
     private static final int SEARCH_LIMIT = 1000;
 
-    /** Manifest json key : export api version. */
-    private static final String MANIFEST_JSON_KEY_EXPORT_VERSION = "export_version";
-    /** Manifest json key : export unit url. */
-    private static final String MANIFEST_JSON_KEY_UNIT_URL = "unit_url";
-    /** Manifest json key : snapshot create date. */
-    private static final String MANIFEST_JSON_KEY_CREATE_DATE = "create_date";
     /**
      * Export api version.
      * <p>
      * In the future, increment such as when changing the configuration of snapshot file.
      * Refer to the value with the import API and switch the processing.
      */
-    private static final long EXPORT_API_VERSION = 1L;
+    private static final long EXPORT_API_VERSION = 2L;
 
     /** Extension of the error file. */
     private static final String ERROR_FILE_EXTENSION = ".error";
@@ -90,6 +83,8 @@ public class SnapshotFileExportRunner implements Runnable {
     private Path snapshotFilePath;
     /** Progress info. */
     private SnapshotFileExportProgressInfo progressInfo;
+    /** Base snapshot. null if not delta. */
+    private SnapshotFileBase base;
 
     /**
      * Constructor.
@@ -97,8 +92,20 @@ public class SnapshotFileExportRunner implements Runnable {
      * @param snapshotFilePath Snapshot file path
      */
     public SnapshotFileExportRunner(Cell targetCell, Path snapshotFilePath) {
+        this(targetCell, snapshotFilePath, null);
+    }
+
+    /**
+     * Constructor.
+     * When the base snapshot is specified, export the delta snapshot that contains only the changes after it.
+     * @param targetCell Target cell
+     * @param snapshotFilePath Snapshot file path
+     * @param base Base snapshot. null if not delta
+     */
+    SnapshotFileExportRunner(Cell targetCell, Path snapshotFilePath, SnapshotFileBase base) {
         this.targetCell = targetCell;
         this.snapshotFilePath = snapshotFilePath;
+        this.base = base;
         String snapshotName = FilenameUtils.getBaseName(this.snapshotFilePath.getParent().getFileName().toString());
         Path webdavRootPath = Paths.get(PersoniumUnitConfig.getBlobStoreRoot(),
                 targetCell.getDataBundleName(), targetCell.getId());
@@ -117,7 +124,7 @@ public class SnapshotFileExportRunner implements Runnable {
             log.info(String.format("Start export. CellName:%s", targetCell.getName()));
             // start export.
             progressInfo.writeToCache(true);
-            try (SnapshotFile snapshotFile = SnapshotFile.newInstance(snapshotFilePath)) {
+            try (SnapshotFileWriter snapshotFile = new SnapshotFileWriter(snapshotFilePath)) {
                 // Make the contents of the zip file.
                 makeSnapshotFile(snapshotFile);
             } catch (IOException e) {
@@ -160,10 +167,7 @@ public class SnapshotFileExportRunner implements Runnable {
      */
     private long countODataEntry() {
         // Specifying filter
-        Map<String, Object> filter = new HashMap<String, Object>();
-        filter = QueryMapFactory.termQuery(OEntityDocHandler.KEY_CELL_ID, targetCell.getId());
-        Map<String, Object> filtered = new HashMap<String, Object>();
-        filtered = QueryMapFactory.filteredQuery(null, filter);
+        Map<String, Object> filtered = QueryMapFactory.filteredQuery(null, createDataFilter());
 
         // Generate query
         long queryFrom = 0L;
@@ -177,6 +181,22 @@ public class SnapshotFileExportRunner implements Runnable {
         return dataSourceAccessor.countForIndex(targetCell.getId(), query);
     }
 
+    /**
+     * Create filter of odata to export.
+     * In the case of delta, only data updated after the base snapshot was created.
+     * @return filter
+     */
+    Map<String, Object> createDataFilter() {
+        Map<String, Object> cellFilter = QueryMapFactory.termQuery(OEntityDocHandler.KEY_CELL_ID, targetCell.getId());
+        if (base == null) {
+            return cellFilter;
+        }
+        List<Map<String, Object>> filters = new ArrayList<Map<String, Object>>();
+        filters.add(cellFilter);
+        filters.add(QueryMapFactory.rangeFilter(OEntityDocHandler.KEY_UPDATED, "gte", base.getCreateDate()));
+        return QueryMapFactory.andFilter(filters);
+    }
+
     /**
      * Returns the number of files under the directory.
      * This method arg is directory only.
@@ -199,13 +219,15 @@ public class SnapshotFileExportRunner implements Runnable {
      * Make the contents of the zip file.
      * @param snapshotFile snapshot file
      */
-    private void makeSnapshotFile(SnapshotFile snapshotFile) {
+    private void makeSnapshotFile(SnapshotFileWriter snapshotFile) {
         addManifestToZip(snapshotFile);
         log.info(String.format("Added manifest json."));
         addCellToZip(snapshotFile);
         log.info(String.format("Added cell json."));
         addDataToZip(snapshotFile);
         log.info(String.format("Added odata pjson."));
+        addIdsToZip(snapshotFile);
+        log.info(String.format("Added odata ids."));
         addWebDAVToZip(snapshotFile);
         log.info(String.format("Added webdav file."));
     }
@@ -215,11 +237,19 @@ public class SnapshotFileExportRunner implements Runnable {
      * @param snapshotFile snapshot file
      */
     @SuppressWarnings("unchecked")
-    private void addManifestToZip(SnapshotFile snapshotFile) {
+    private void addManifestToZip(SnapshotFileWriter snapshotFile) {
         JSONObject manifestJson = new JSONObject();
-        manifestJson.put(MANIFEST_JSON_KEY_EXPORT_VERSION, EXPORT_API_VERSION);
-        manifestJson.put(MANIFEST_JSON_KEY_UNIT_URL, targetCell.getUnitUrl());
-        manifestJson.put(MANIFEST_JSON_KEY_CREATE_DATE, System.currentTimeMillis());
+        manifestJson.put(SnapshotFile.MANIFEST_JSON_KEY_EXPORT_VERSION, EXPORT_API_VERSION);
+        manifestJson.put(SnapshotFile.MANIFEST_JSON_KEY_UNIT_URL, targetCell.getUnitUrl());
+        // The create date is the high-water mark of the delta snapshot based on this snapshot.
+        // Since it is taken before reading the cell, data updated while exporting is also contained in the delta.
+        manifestJson.put(SnapshotFile.MANIFEST_JSON_KEY_CREATE_DATE, System.currentTimeMillis());
+        if (base == null) {
+            manifestJson.put(SnapshotFile.MANIFEST_JSON_KEY_SNAPSHOT_TYPE, SnapshotFile.SNAPSHOT_TYPE_FULL);
+        } else {
+            manifestJson.put(SnapshotFile.MANIFEST_JSON_KEY_SNAPSHOT_TYPE, SnapshotFile.SNAPSHOT_TYPE_DELTA);
+            manifestJson.put(SnapshotFile.MANIFEST_JSON_KEY_BASE_SNAPSHOT, base.getName());
+        }
         snapshotFile.writeManifestJson(manifestJson.toJSONString());
     }
 
@@ -228,7 +258,7 @@ public class SnapshotFileExportRunner implements Runnable {
      * @param snapshotFile snapshot file
      */
     @SuppressWarnings("unchecked")
-    private void addCellToZip(SnapshotFile snapshotFile) {
+    private void addCellToZip(SnapshotFileWriter snapshotFile) {
         // Get cell data by specifying CellID
         EntitySetAccessor accessor = EsModel.cell();
         PersoniumGetResponse response = accessor.get(targetCell.getId());
@@ -247,12 +277,9 @@ public class SnapshotFileExportRunner implements Runnable {
      * @param snapshotFile snapshot file
      */
     @SuppressWarnings("unchecked")
-    private void addDataToZip(SnapshotFile snapshotFile) {
+    private void addDataToZip(SnapshotFileWriter snapshotFile) {
         // Specifying filter
-        Map<String, Object> filter = new HashMap<String, Object>();
-        filter = QueryMapFactory.termQuery(OEntityDocHandler.KEY_CELL_ID, targetCell.getId());
-        Map<String, Object> filtered = new HashMap<String, Object>();
-        filtered = QueryMapFactory.filteredQuery(null, filter);
+        Map<String, Object> filtered = QueryMapFactory.filteredQuery(null, createDataFilter());
 
         // Specifying sort
         List<Map<String, Object>> sortList = new ArrayList<Map<String, Object>>();
@@ -273,41 +300,106 @@ public class SnapshotFileExportRunner implements Runnable {
         String indexName = targetCell.getDataBundleName();
         DataSourceAccessor dataSourceAccessor = EsModel.getDataSourceAccessorFromIndexName(indexName);
 
-        // At least create an empty file.
-        snapshotFile.createDataPJson();
-        while (true) {
-            // Search Es
-            PersoniumSearchResponse response = dataSourceAccessor.searchForIndex(
-                    targetCell.getId(), query);
-            if (response.getHits().getCount() == 0) {
-                break;
+        // Write all pages to one entry. At least create an empty file.
+        try (Writer writer = snapshotFile.newDataPJsonWriter()) {
+            JSONObject resultJson = new JSONObject();
+            while (true) {
+                // Search Es
+                PersoniumSearchResponse response = dataSourceAccessor.searchForIndex(
+                        targetCell.getId(), query);
+                if (response.getHits().getCount() == 0) {
+                    break;
+                }
+
+                for (PersoniumSearchHit hit : response.getHits().getHits()) {
+                    resultJson.put("_index", hit.getIndex());
+                    resultJson.put("_type", hit.getType());
+                    resultJson.put("_id", hit.getId());
+                    resultJson.put("_source", hit.getSource());
+
+                    writer.write(resultJson.toJSONString());
+                    writer.write(System.lineSeparator());
+
+                    resultJson.clear();
+                }
+
+                progressInfo.addDelta(response.getHits().getCount());
+                progressInfo.writeToCache();
+
+                // If the search result is smaller than LIMIT, the processing is terminated
+                if (SEARCH_LIMIT > response.getHits().getCount()) {
+                    break;
+                }
+                // If the search result is LIMIT, search again from the following
+                queryFrom += SEARCH_LIMIT;
+                query.put("from", queryFrom);
             }
+        } catch (IOException e) {
+            throw PersoniumCoreException.Common.FILE_IO_ERROR.params("add data pjson to snapshot file").reason(e);
+        }
+    }
 
-            JSONObject resultJson = new JSONObject();
-            StringBuilder builder = new StringBuilder();
-            for (PersoniumSearchHit hit : response.getHits().getHits()) {
-                resultJson.put("_index", hit.getIndex());
-                resultJson.put("_type", hit.getType());
-                resultJson.put("_id", hit.getId());
-                resultJson.put("_source", hit.getSource());
+    /**
+     * Extract ids of all data other than cells from OData and add it to the zip file.
+     * It is used to find deleted data when exporting the delta snapshot based on this snapshot.
+     * In the case of delta, ids of data deleted after the base snapshot are also added.
+     * @param snapshotFile snapshot file
+     */
+    private void addIdsToZip(SnapshotFileWriter snapshotFile) {
+        Map<String, Object> filtered = QueryMapFactory.filteredQuery(null,
+                QueryMapFactory.termQuery(OEntityDocHandler.KEY_CELL_ID, targetCell.getId()));
 
-                builder.append(resultJson.toJSONString());
-                builder.append(System.lineSeparator());
+        // Sort by the unique key so that paging is stable.
+        List<Map<String, Object>> sortList = new ArrayList<Map<String, Object>>();
+        sortList.add(QueryMapFactory.sortQuery("_uid", EsQueryHandler.SORT_ASC));
 
-                resultJson.clear();
-            }
-            snapshotFile.writeDataPJson(builder.toString());
+        // Generate query. Only ids are needed.
+        long queryFrom = 0L;
+        Map<String, Object> query = QueryMapFactory.query(filtered);
+        query.put("sort", sortList);
+        query.put("_source", false);
+        query.put("from", queryFrom);
+        query.put("size", SEARCH_LIMIT);
 
-            progressInfo.addDelta(response.getHits().getCount());
-            progressInfo.writeToCache();
+        String indexName = targetCell.getDataBundleName();
+        DataSourceAccessor dataSourceAccessor = EsModel.getDataSourceAccessorFromIndexName(indexName);
 
-            // If the search result is smaller than LIMIT, the processing is terminated
-            if (SEARCH_LIMIT > response.getHits().getCount()) {
-                break;
+        try (Writer writer = snapshotFile.newIdsWriter()) {
+            while (true) {
+                PersoniumSearchResponse response = dataSourceAccessor.searchForIndex(
+                        targetCell.getId(), query);
+                if (response.getHits().getCount() == 0) {
+                    break;
+                }
+                for (PersoniumSearchHit hit : response.getHits().getHits()) {
+                    String idLine = hit.getType() + SnapshotFile.LIST_SEPARATOR + hit.getId();
+                    writer.write(idLine);
+                    writer.write(System.lineSeparator());
+                    if (base != null) {
+                        base.removeId(idLine);
+                    }
+                }
+                if (SEARCH_LIMIT > response.getHits().getCount()) {
+                    break;
+                }
+                queryFrom += SEARCH_LIMIT;
+                query.put("from", queryFrom);
             }
-            // If the search result is LIMIT, search again from the following
-            queryFrom += SEARCH_LIMIT;
-            query.put("from", queryFrom);
+        } catch (IOException e) {
+            throw PersoniumCoreException.Common.FILE_IO_ERROR.params("add ids to snapshot file").reason(e);
+        }
+
+        if (base == null) {
+            return;
+        }
+        // The remaining ids of the base snapshot are deleted.
+        try (Writer writer = snapshotFile.newDeletedIdsWriter()) {
+            for (String idLine : base.getRemainingIds()) {
+                writer.write(idLine);
+                writer.write(System.lineSeparator());
+            }
+        } catch (IOException e) {
+            throw PersoniumCoreException.Common.FILE_IO_ERROR.params("add deleted ids to snapshot file").reason(e);
         }
     }
 
@@ -316,18 +408,41 @@ public class SnapshotFileExportRunner implements Runnable {
      * Encrypted data is decrypted.
      * @param snapshotFile snapshot file
      */
-    private void addWebDAVToZip(SnapshotFile snapshotFile) {
-        Path webdavRootPathInZip = snapshotFile.getWebDAVDirPath();
+    private void addWebDAVToZip(SnapshotFileWriter snapshotFile) {
         Path webdavRootPath = Paths.get(PersoniumUnitConfig.getBlobStoreRoot(),
                 targetCell.getDataBundleName(), targetCell.getId());
         // Use FileVisitor to process files recursively
-        FileVisitor<Path> visitor = new SnapshotFileExportVisitor(targetCell.getId(),
-                webdavRootPath, webdavRootPathInZip, progressInfo);
+        SnapshotFileExportVisitor visitor = new SnapshotFileExportVisitor(targetCell.getId(),
+                webdavRootPath, snapshotFile, progressInfo, base);
         try {
             Files.walkFileTree(webdavRootPath, visitor);
         } catch (IOException e) {
             throw PersoniumCoreException.Common.FILE_IO_ERROR.params("add webdav data to snapshot file").reason(e);
         }
+
+        try (Writer writer = snapshotFile.newWebDAVVersionsWriter()) {
+            for (Map.Entry<String, Long> entry : visitor.getWebDAVVersions().entrySet()) {
+                writer.write(entry.getKey() + SnapshotFile.LIST_SEPARATOR + entry.getValue());
+                writer.write(System.lineSeparator());
+            }
+        } catch (IOException e) {
+            throw PersoniumCoreException.Common.FILE_IO_ERROR.params("add webdav versions to snapshot file")
+                    .reason(e);
+        }
+
+        if (base == null) {
+            return;
+        }
+        // The remaining directories of the base snapshot are deleted.
+        try (Writer writer = snapshotFile.newDeletedWebDAVWriter()) {
+            for (String dir : base.getRemainingWebDAVDirs()) {
+                writer.write(dir);
+                writer.write(System.lineSeparator());
+            }
+        } catch (IOException e) {
+            throw PersoniumCoreException.Common.FILE_IO_ERROR.params("add deleted webdav to snapshot file")
+                    .reason(e);
+        }
     }
 
     /**
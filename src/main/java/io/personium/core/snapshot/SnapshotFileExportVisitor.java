@@ -16,7 +16,6 @@
  */
 package io.personium.core.snapshot;
 
-import java.io.BufferedWriter;
 import java.io.FileInputStream;
 import java.io.IOException;
 import java.io.InputStream;
@@ -26,8 +25,11 @@ import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.nio.file.attribute.BasicFileAttributes;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
 
-import org.apache.commons.io.Charsets;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -37,6 +39,11 @@ import io.personium.core.model.impl.fs.DavMetadataFile;
 /**
  * FileVisitor for copying WebDAV files recursively to zip files.
  * If the file is encrypted, decrypt it and copy it.
+ * <p>
+ * The version of each directory is collected from the metadata file.
+ * When the base snapshot is specified, only the files in the directories that are changed after the base snapshot
+ * are copied. The directory is changed if it is not in the base snapshot, its version differs from the base snapshot
+ * or the metadata file is updated after the base snapshot was created.
  */
 public class SnapshotFileExportVisitor implements FileVisitor<Path> {
 
@@ -47,24 +54,41 @@ public class SnapshotFileExportVisitor implements FileVisitor<Path> {
     private String cellId;
     /** WebDAV root directory. */
     private Path webdavRootDir;
-    /** WebDAV root directory in zip. */
-    private Path webdavRootDirInZip;
+    /** Writer of the snapshot file. */
+    private SnapshotFileWriter snapshotFileWriter;
     /** Export progress info. */
     private SnapshotFileExportProgressInfo progressInfo;
+    /** Base snapshot. null if not delta. */
+    private SnapshotFileBase base;
+    /** Versions of visited directories. */
+    private Map<String, Long> webdavVersions = new LinkedHashMap<>();
+    /** Visiting directories that are not changed after the base snapshot. */
+    private Set<Path> unchangedDirs = new HashSet<>();
 
     /**
      * Constructor.
      * @param cellId Target cell id
      * @param webdavRootDir WebDAV root directory
-     * @param webdavRootDirInZip WebDAV root directory in zip
+     * @param snapshotFileWriter Writer of the snapshot file
      * @param progressInfo Progress info
+     * @param base Base snapshot. null if not delta
      */
-    public SnapshotFileExportVisitor(String cellId, Path webdavRootDir, Path webdavRootDirInZip,
-            SnapshotFileExportProgressInfo progressInfo) {
+    SnapshotFileExportVisitor(String cellId, Path webdavRootDir, SnapshotFileWriter snapshotFileWriter,
+            SnapshotFileExportProgressInfo progressInfo, SnapshotFileBase base) {
         this.cellId = cellId;
         this.webdavRootDir = webdavRootDir;
-        this.webdavRootDirInZip = webdavRootDirInZip;
+        this.snapshotFileWriter = snapshotFileWriter;
         this.progressInfo = progressInfo;
+        this.base = base;
+    }
+
+    /**
+     * Get versions of visited directories.
+     * Key is directory path under the webdav directory.
+     * @return versions of directories
+     */
+    public Map<String, Long> getWebDAVVersions() {
+        return webdavVersions;
     }
 
     /**
@@ -74,18 +98,50 @@ public class SnapshotFileExportVisitor implements FileVisitor<Path> {
     public FileVisitResult preVisitDirectory(Path dir, BasicFileAttributes attrs) throws IOException {
         // Create directory in zip
         Path relativePath = replaceMainboxIdToUnderscore(webdavRootDir.relativize(dir));
-        Path pathInZip = webdavRootDirInZip.resolve(relativePath.toString());
-        Files.createDirectories(pathInZip);
+        if (!relativePath.toString().isEmpty()) {
+            snapshotFileWriter.createWebDAVDirectory(relativePath);
+        }
+
+        Path metadataPath = dir.resolve(DavMetadataFile.DAV_META_FILE_NAME);
+        if (Files.exists(metadataPath)) {
+            DavMetadataFile metadata = DavMetadataFile.newInstance(metadataPath.toFile());
+            metadata.load();
+            Long version = metadata.getVersion();
+            long currentVersion = version != null ? version : -1L;
+            webdavVersions.put(relativePath.toString(), currentVersion);
+            if (base != null && !isChanged(relativePath.toString(), currentVersion, metadata.getUpdated())) {
+                unchangedDirs.add(dir);
+            }
+        }
         return FileVisitResult.CONTINUE;
     }
 
+    /**
+     * Whether the directory is changed after the base snapshot.
+     * @param dir directory path under the webdav directory
+     * @param version current version
+     * @param updated update date of the metadata file
+     * @return true: changed
+     */
+    private boolean isChanged(String dir, long version, Long updated) {
+        Long baseVersion = base.removeWebDAVVersion(dir);
+        return baseVersion == null
+                || baseVersion != version
+                || updated == null
+                || updated >= base.getCreateDate();
+    }
+
     /**
      * {@inheritDoc}
      */
     @Override
     public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) throws IOException {
+        if (unchangedDirs.contains(file.getParent())) {
+            progressInfo.addDelta(1L);
+            progressInfo.writeToCache();
+            return FileVisitResult.CONTINUE;
+        }
         Path relativePath = replaceMainboxIdToUnderscore(webdavRootDir.relativize(file));
-        Path pathInZip = webdavRootDirInZip.resolve(relativePath.toString());
 
         if (DavMetadataFile.DAV_META_FILE_NAME.equals(file.getFileName().toString())) {
             // Metadata file
@@ -97,11 +153,11 @@ public class SnapshotFileExportVisitor implements FileVisitor<Path> {
                     && !encryptionType.isEmpty()
                     && !DataCryptor.ENCRYPTION_TYPE_NONE.equals(encryptionType)) {
                 metadata.setEncryptionType(DataCryptor.ENCRYPTION_TYPE_NONE);
-                try (BufferedWriter metadataWriter = Files.newBufferedWriter(pathInZip, Charsets.UTF_8)) {
-                    metadataWriter.write(metadata.toJSONString());
-                }
+                snapshotFileWriter.writeWebDAVFile(relativePath, metadata.toJSONString());
             } else {
-                Files.copy(file, pathInZip);
+                try (InputStream in = new FileInputStream(file.toFile())) {
+                    snapshotFileWriter.writeWebDAVFile(relativePath, in);
+                }
             }
         } else {
             // Content file
@@ -111,7 +167,7 @@ public class SnapshotFileExportVisitor implements FileVisitor<Path> {
             metadata.load();
             DataCryptor cryptor = new DataCryptor(cellId);
             try (InputStream in = cryptor.decode(new FileInputStream(file.toFile()), metadata.getEncryptionType())) {
-                Files.copy(in, pathInZip);
+                snapshotFileWriter.writeWebDAVFile(relativePath, in);
             }
         }
         progressInfo.addDelta(1L);
@@ -133,6 +189,7 @@ public class SnapshotFileExportVisitor implements FileVisitor<Path> {
      */
     @Override
     public FileVisitResult postVisitDirectory(Path dir, IOException exc) throws IOException {
+        unchangedDirs.remove(dir);
         return FileVisitResult.CONTINUE;
     }
 
@@ -0,0 +1,137 @@
+/**
+ * personium.io
+ * Copyright 2018 FUJITSU LIMITED
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.personium.core.snapshot;
+
+import java.io.IOException;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+
+import io.personium.core.PersoniumCoreException;
+
+/**
+ * Executor that runs the tasks of cell import in parallel.
+ * <p>
+ * When the number of threads is 1 or less, the tasks are run in the calling thread.
+ * Otherwise they are run in a fixed thread pool, and when all threads are busy the calling thread waits by running
+ * the task itself. If a task fails, the failure is thrown from the next {@link #execute(Task)} or {@link #await()}.
+ */
+class SnapshotFileImportExecutor {
+
+    /**
+     * Task of cell import.
+     */
+    interface Task {
+        /**
+         * Run the task.
+         * @throws IOException file I/O error
+         */
+        void run() throws IOException;
+    }
+
+    /** Thread pool. null if the tasks are run in the calling thread. */
+    private final ThreadPoolExecutor executor;
+    /** First failure of the tasks. */
+    private final AtomicReference<Throwable> failure = new AtomicReference<>();
+
+    /**
+     * Constructor.
+     * @param name Prefix of the thread name
+     * @param threadNum Number of threads
+     */
+    SnapshotFileImportExecutor(String name, int threadNum) {
+        if (threadNum <= 1) {
+            executor = null;
+            return;
+        }
+        executor = new ThreadPoolExecutor(threadNum, threadNum, 0L, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<Runnable>(threadNum),
+                new ThreadFactoryBuilder().setNameFormat(name + "-%d").setDaemon(true).build(),
+                new ThreadPoolExecutor.CallerRunsPolicy());
+    }
+
+    /**
+     * Run the task.
+     * @param task Task
+     * @throws IOException file I/O error of the task or of the task failed before
+     */
+    void execute(final Task task) throws IOException {
+        if (executor == null) {
+            task.run();
+            return;
+        }
+        throwIfFailed();
+        executor.execute(new Runnable() {
+            @Override
+            public void run() {
+                if (failure.get() != null) {
+                    return;
+                }
+                try {
+                    task.run();
+                } catch (Throwable e) {
+                    failure.compareAndSet(null, e);
+                }
+            }
+        });
+    }
+
+    /**
+     * Wait for all tasks to finish.
+     * @throws IOException file I/O error of the task
+     */
+    void await() throws IOException {
+        shutdown();
+        throwIfFailed();
+    }
+
+    /**
+     * Wait for the running tasks to finish and stop the threads.
+     * Failures of the tasks are not thrown.
+     */
+    void shutdown() {
+        if (executor == null) {
+            return;
+        }
+        executor.shutdown();
+        try {
+            executor.awaitTermination(Long.MAX_VALUE, TimeUnit.MILLISECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            executor.shutdownNow();
+            failure.compareAndSet(null, e);
+        }
+    }
+
+    private void throwIfFailed() throws IOException {
+        Throwable e = failure.get();
+        if (e == null) {
+            return;
+        }
+        if (e instanceof IOException) {
+            throw (IOException) e;
+        } else if (e instanceof RuntimeException) {
+            throw (RuntimeException) e;
+        } else if (e instanceof Error) {
+            throw (Error) e;
+        }
+        throw PersoniumCoreException.Server.UNKNOWN_ERROR.reason(e);
+    }
+}
@@ -22,9 +22,11 @@ import java.io.FileFilter;
 import java.io.IOException;
 import java.nio.file.FileVisitor;
 import java.nio.file.Files;
+import java.nio.file.InvalidPathException;
 import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
@@ -40,6 +42,8 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import io.personium.common.es.EsBulkRequest;
+import io.personium.common.es.response.PersoniumBulkItemResponse;
+import io.personium.common.es.response.PersoniumBulkResponse;
 import io.personium.core.PersoniumCoreException;
 import io.personium.core.PersoniumUnitConfig;
 import io.personium.core.event.EventBus;
@@ -59,6 +63,9 @@ import io.personium.core.utils.UriUtils;
 
 /**
  * Runner that performs cell import processing.
+ * <p>
+ * The snapshot files are applied in order. The first one is the full snapshot, which replaces all the data of the cell.
+ * The following ones are the delta snapshots, each of which contains the changes after the previous one.
  */
 public class SnapshotFileImportRunner implements Runnable {
 
@@ -67,11 +74,13 @@ public class SnapshotFileImportRunner implements Runnable {
 
     /** Limit when bulk request. */
     private static final int BULK_REQUEST_LIMIT = 1000;
+    /** Upper limit of doubling the retry interval of the bulk request. */
+    private static final int MAX_BACKOFF_SHIFT = 5;
 
     /** Target cell object. */
     private Cell targetCell;
-    /** Snapshot file path. */
-    private Path snapshotFilePath;
+    /** Snapshot file paths. The full snapshot followed by the delta snapshots. */
+    private List<Path> snapshotFilePaths;
     /** Progress info. */
     private SnapshotFileImportProgressInfo progressInfo;
 
@@ -81,9 +90,19 @@ public class SnapshotFileImportRunner implements Runnable {
      * @param snapshotFilePath Snapshot file path
      */
     public SnapshotFileImportRunner(Cell targetCell, Path snapshotFilePath) {
+        this(targetCell, Collections.singletonList(snapshotFilePath));
+    }
+
+    /**
+     * Constructor.
+     * @param targetCell Target cell
+     * @param snapshotFilePaths Snapshot file paths. The full snapshot followed by the delta snapshots
+     */
+    public SnapshotFileImportRunner(Cell targetCell, List<Path> snapshotFilePaths) {
         this.targetCell = targetCell;
-        this.snapshotFilePath = snapshotFilePath;
-        String snapshotName = FilenameUtils.getBaseName(this.snapshotFilePath.getParent().getFileName().toString());
+        this.snapshotFilePaths = snapshotFilePaths;
+        Path snapshotFilePath = snapshotFilePaths.get(snapshotFilePaths.size() - 1);
+        String snapshotName = FilenameUtils.getBaseName(snapshotFilePath.getParent().getFileName().toString());
         long entryCount = countEntry();
         progressInfo = new SnapshotFileImportProgressInfo(this.targetCell.getId(), snapshotName, entryCount);
         log.info(String.format("Setup cell import. CellName:%s, EntryCount:%d, SnapshotName:%s",
@@ -97,17 +116,30 @@ public class SnapshotFileImportRunner implements Runnable {
     public void run() {
         try {
             log.info(String.format("Start import. CellName:%s", targetCell.getName()));
-            try (SnapshotFile snapshotFile = SnapshotFile.newInstance(snapshotFilePath)) {
-                // start import.
-                progressInfo.writeToCache(true);
-                // Check export file structure.
-                snapshotFile.checkStructure();
-                // Delete cell data.
-                deleteCellData();
-                // Import snapshot.
-                makeCellData(snapshotFile);
-            } catch (IOException e) {
-                throw PersoniumCoreException.Common.FILE_IO_ERROR.params("read snapshot file").reason(e);
+            // start import.
+            progressInfo.writeToCache(true);
+            // Check export file structure of all snapshot files before changing the cell.
+            for (Path snapshotFilePath : snapshotFilePaths) {
+                try (SnapshotFile snapshotFile = SnapshotFile.newInstance(snapshotFilePath)) {
+                    snapshotFile.checkStructure();
+                } catch (IOException e) {
+                    throw PersoniumCoreException.Common.FILE_IO_ERROR.params("read snapshot file").reason(e);
+                }
+            }
+            for (int i = 0; i < snapshotFilePaths.size(); i++) {
+                try (SnapshotFile snapshotFile = SnapshotFile.newInstance(snapshotFilePaths.get(i))) {
+                    if (i == 0) {
+                        // Delete cell data.
+                        deleteCellData();
+                        // Import snapshot.
+                        makeCellData(snapshotFile);
+                    } else {
+                        // Apply delta snapshot.
+                        applyDelta(snapshotFile);
+                    }
+                } catch (IOException e) {
+                    throw PersoniumCoreException.Common.FILE_IO_ERROR.params("read snapshot file").reason(e);
+                }
             }
             // Write 100%. It clears immediately, but it writes once.
             progressInfo.writeToCache(true);
@@ -148,11 +180,16 @@ public class SnapshotFileImportRunner implements Runnable {
      * @return number of entry
      */
     private long countEntry() {
-        try (SnapshotFile snapshotFile = SnapshotFile.newInstance(snapshotFilePath)) {
-            return snapshotFile.countDataPJson() + snapshotFile.countWebDAVFile();
-        } catch (IOException e) {
-            throw PersoniumCoreException.Common.FILE_IO_ERROR.params("read snapshot file").reason(e);
+        long count = 0L;
+        for (Path snapshotFilePath : snapshotFilePaths) {
+            try (SnapshotFile snapshotFile = SnapshotFile.newInstance(snapshotFilePath)) {
+                count += snapshotFile.countDataPJson() + snapshotFile.countWebDAVFile()
+                        + snapshotFile.countDeletedEntry();
+            } catch (IOException e) {
+                throw PersoniumCoreException.Common.FILE_IO_ERROR.params("read snapshot file").reason(e);
+            }
         }
+        return count;
     }
 
     /**
@@ -212,6 +249,24 @@ public class SnapshotFileImportRunner implements Runnable {
         log.info(String.format("Added webdav file."));
     }
 
+    /**
+     * Apply the changes in the delta snapshot to the cell.
+     * Data in the delta snapshot overwrites the cell, and the deleted data is removed from the cell.
+     * @param snapshotFile delta snapshot file
+     */
+    void applyDelta(SnapshotFile snapshotFile) {
+        modifyCellInfo(snapshotFile);
+        log.info(String.format("Modified cell info."));
+        addDataToCell(snapshotFile);
+        log.info(String.format("Added odata."));
+        deleteDataFromCell(snapshotFile);
+        log.info(String.format("Deleted odata."));
+        deleteWebDAVFromCell(snapshotFile);
+        log.info(String.format("Deleted webdav file."));
+        addWebDAVToCell(snapshotFile);
+        log.info(String.format("Added webdav file."));
+    }
+
     /**
      * Extract cell data from snapshot file and modify the cell.
      * @param snapshotFile snapshot file
@@ -245,24 +300,34 @@ public class SnapshotFileImportRunner implements Runnable {
 
     /**
      * Extract odata from snapshot file and add it to cell.
+     * Bulk requests are sent in parallel according to the setting of the unitconfig property.
      * @param snapshotFile snapshot file
      */
+    @SuppressWarnings("unchecked")
     private void addDataToCell(SnapshotFile snapshotFile) {
+        SnapshotFileImportExecutor executor = new SnapshotFileImportExecutor("cell-import-bulk",
+                PersoniumUnitConfig.getCellSnapshotImportBulkThreadNum());
         try (BufferedReader bufferedReader = snapshotFile.getDataPJsonReader()) {
             String line = null;
-            DataSourceAccessor accessor = EsModel.batch(targetCell);
+            final DataSourceAccessor accessor = EsModel.batch(targetCell);
+            // The parser is reused because it holds the buffer of the lexer.
+            JSONParser parser = new JSONParser();
             List<EsBulkRequest> bulkRequestList = new ArrayList<>();
             while ((line = bufferedReader.readLine()) != null) {
                 JSONObject dataJson;
                 try {
-                    dataJson = (JSONObject) new JSONParser().parse(line);
+                    dataJson = (JSONObject) parser.parse(line);
                 } catch (ParseException e) {
                     throw PersoniumCoreException.Common.JSON_PARSE_ERROR.params(line);
                 }
 
+                // JSONObject and JSONArray are HashMap and ArrayList, so they are used without copying.
+                Map<String, Object> map = (JSONObject) dataJson.get("_source");
+                if (map == null) {
+                    map = new HashMap<String, Object>();
+                }
                 // When c attribute is rewritten, since it is treated as data of another cell,
                 // it is overwritten with information of target cell.
-                Map<String, Object> map = jsonToMap((JSONObject) dataJson.get("_source"));
                 map.put("c", targetCell.getId());
 
                 String type = (String) dataJson.get("_type");
@@ -270,38 +335,179 @@ public class SnapshotFileImportRunner implements Runnable {
                 bulkRequestList.add(new MapBulkRequest(EsBulkRequest.BulkRequestType.INDEX, type, id, map));
 
                 if (BULK_REQUEST_LIMIT <= bulkRequestList.size()) {
-                    accessor.bulkCreate(bulkRequestList, targetCell.getId());
-                    progressInfo.addDelta(bulkRequestList.size());
-                    progressInfo.writeToCache();
-                    bulkRequestList.clear();
+                    executeBulkRequest(executor, accessor, bulkRequestList);
+                    bulkRequestList = new ArrayList<>();
                 }
             }
             if (!bulkRequestList.isEmpty()) {
-                accessor.bulkCreate(bulkRequestList, targetCell.getId());
-                progressInfo.addDelta(bulkRequestList.size());
-                progressInfo.writeToCache();
+                executeBulkRequest(executor, accessor, bulkRequestList);
             }
+            executor.await();
         } catch (IOException e) {
             throw PersoniumCoreException.Common.FILE_IO_ERROR.params("read data pjson from snapshot file").reason(e);
+        } finally {
+            // Do not leave the requests running after the import is finished.
+            executor.shutdown();
         }
     }
 
+    /**
+     * Extract ids of deleted odata from delta snapshot file and delete them from cell.
+     * @param snapshotFile delta snapshot file
+     */
+    private void deleteDataFromCell(SnapshotFile snapshotFile) {
+        SnapshotFileImportExecutor executor = new SnapshotFileImportExecutor("cell-import-bulk",
+                PersoniumUnitConfig.getCellSnapshotImportBulkThreadNum());
+        try (BufferedReader bufferedReader = snapshotFile.getDeletedIdsReader()) {
+            String line = null;
+            final DataSourceAccessor accessor = EsModel.batch(targetCell);
+            List<EsBulkRequest> bulkRequestList = new ArrayList<>();
+            while ((line = bufferedReader.readLine()) != null) {
+                int index = line.indexOf(SnapshotFile.LIST_SEPARATOR);
+                if (index < 0) {
+                    continue;
+                }
+                bulkRequestList.add(new MapBulkRequest(EsBulkRequest.BulkRequestType.DELETE,
+                        line.substring(0, index), line.substring(index + 1), null));
+
+                if (BULK_REQUEST_LIMIT <= bulkRequestList.size()) {
+                    executeBulkRequest(executor, accessor, bulkRequestList);
+                    bulkRequestList = new ArrayList<>();
+                }
+            }
+            if (!bulkRequestList.isEmpty()) {
+                executeBulkRequest(executor, accessor, bulkRequestList);
+            }
+            executor.await();
+        } catch (IOException e) {
+            throw PersoniumCoreException.Common.FILE_IO_ERROR.params("read deleted ids from snapshot file").reason(e);
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    /**
+     * Send bulk request by executor.
+     * @param executor executor
+     * @param accessor accessor
+     * @param bulkRequestList bulk requests
+     * @throws IOException failure of the bulk request sent before
+     */
+    private void executeBulkRequest(SnapshotFileImportExecutor executor, final DataSourceAccessor accessor,
+            final List<EsBulkRequest> bulkRequestList) throws IOException {
+        executor.execute(new SnapshotFileImportExecutor.Task() {
+            @Override
+            public void run() {
+                bulkRequest(accessor, bulkRequestList);
+            }
+        });
+    }
+
+    /**
+     * Send bulk request.
+     * The failed items, which are mostly rejected by the full queue of ES, are retried with backoff.
+     * @param accessor accessor
+     * @param bulkRequestList bulk requests
+     * @throws PersoniumCoreException some items still fail after the retries
+     */
+    void bulkRequest(DataSourceAccessor accessor, List<EsBulkRequest> bulkRequestList) {
+        int retryTimes = Integer.parseInt(PersoniumUnitConfig.getESRetryTimes());
+        long retryInterval = Long.parseLong(PersoniumUnitConfig.getESRetryInterval());
+        List<EsBulkRequest> requests = bulkRequestList;
+        for (int retry = 0;; retry++) {
+            PersoniumBulkResponse response = accessor.bulkUpdate(requests, targetCell.getId());
+            List<EsBulkRequest> failedRequests = new ArrayList<>();
+            int index = 0;
+            for (PersoniumBulkItemResponse itemResponse : response.items()) {
+                if (itemResponse.isFailed()) {
+                    failedRequests.add(requests.get(index));
+                }
+                index++;
+            }
+            if (failedRequests.isEmpty()) {
+                break;
+            }
+            if (retry >= retryTimes) {
+                // Fail the import rather than losing the entities silently.
+                String message = String.format("Failed to import %d entities. CellName:%s",
+                        failedRequests.size(), targetCell.getName());
+                log.warn(message);
+                throw PersoniumCoreException.Server.ES_RETRY_OVER.params(message);
+            }
+            try {
+                Thread.sleep(retryInterval << Math.min(retry, MAX_BACKOFF_SHIFT));
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw PersoniumCoreException.Server.ES_RETRY_OVER.params(e.getMessage());
+            }
+            requests = failedRequests;
+        }
+        progressInfo.addDelta(bulkRequestList.size());
+        progressInfo.writeToCache();
+    }
+
     /**
      * Extract webdav file from snapshot file and add it to cell.
      * Encrypt the file according to the setting of the unitconfig property.
+     * Files are extracted in parallel according to the setting of the unitconfig property.
      * @param snapshotFile snapshot file
      */
     private void addWebDAVToCell(SnapshotFile snapshotFile) {
         Path webdavRootPathInZip = snapshotFile.getWebDAVDirPath();
         Path webdavRootPath = Paths.get(PersoniumUnitConfig.getBlobStoreRoot(),
                 targetCell.getDataBundleName(), targetCell.getId());
+        SnapshotFileImportExecutor executor = new SnapshotFileImportExecutor("cell-import-dav",
+                PersoniumUnitConfig.getCellSnapshotImportDavThreadNum());
         // Use FileVisitor to process files recursively
         FileVisitor<Path> visitor = new SnapshotFileImportVisitor(targetCell.getId(),
-                webdavRootPath, webdavRootPathInZip.toAbsolutePath(), progressInfo);
+                webdavRootPath, webdavRootPathInZip.toAbsolutePath(), progressInfo, executor);
         try {
             Files.walkFileTree(webdavRootPathInZip.toAbsolutePath(), visitor);
+            executor.await();
         } catch (IOException e) {
             throw PersoniumCoreException.Common.FILE_IO_ERROR.params("copy webdav data from snapshot file").reason(e);
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    /**
+     * Extract deleted webdav directories from delta snapshot file and delete them from cell.
+     * @param snapshotFile delta snapshot file
+     */
+    private void deleteWebDAVFromCell(SnapshotFile snapshotFile) {
+        Path webdavRootPath = Paths.get(PersoniumUnitConfig.getBlobStoreRoot(),
+                targetCell.getDataBundleName(), targetCell.getId());
+        try (BufferedReader bufferedReader = snapshotFile.getDeletedWebDAVReader()) {
+            String line = null;
+            while ((line = bufferedReader.readLine()) != null) {
+                Path dir;
+                try {
+                    dir = Paths.get(line);
+                } catch (InvalidPathException e) {
+                    log.warn(String.format("Ignored invalid deleted webdav directory. Dir:%s", line));
+                    continue;
+                }
+                // Only the first element "__" is the main box. Other names that start with "__" are not replaced.
+                if (dir.getNameCount() > 0 && SnapshotFile.MAIN_BOX_DIR_NAME.equals(dir.getName(0).toString())) {
+                    Path mainBoxDir = Paths.get(targetCell.getId());
+                    if (dir.getNameCount() > 1) {
+                        mainBoxDir = mainBoxDir.resolve(dir.subpath(1, dir.getNameCount()));
+                    }
+                    dir = mainBoxDir;
+                }
+                Path path = webdavRootPath.resolve(dir).normalize();
+                if (!path.startsWith(webdavRootPath) || path.equals(webdavRootPath)) {
+                    log.warn(String.format("Ignored invalid deleted webdav directory. Dir:%s", line));
+                    continue;
+                }
+                // The directory may be already deleted with its parent.
+                FileUtils.deleteDirectory(path.toFile());
+                progressInfo.addDelta(1L);
+                progressInfo.writeToCache();
+            }
+        } catch (IOException e) {
+            throw PersoniumCoreException.Common.FILE_IO_ERROR.params("delete WebDAV files").reason(e);
         }
     }
 
@@ -31,11 +31,13 @@ import org.slf4j.LoggerFactory;
 
 import io.personium.core.PersoniumUnitConfig;
 import io.personium.core.model.file.DataCryptor;
+import io.personium.core.model.impl.fs.DavContentStore;
 import io.personium.core.model.impl.fs.DavMetadataFile;
 
 /**
  * FileVisitor for copying WebDAV files recursively from zip file to file system.
  * If file encryption is on, encrypt the file and copy it.
+ * Directories are created while visiting, and files are copied by the given executor.
  */
 public class SnapshotFileImportVisitor implements FileVisitor<Path> {
 
@@ -50,6 +52,8 @@ public class SnapshotFileImportVisitor implements FileVisitor<Path> {
     private Path webdavRootDirInZip;
     /** Import progress info. */
     private SnapshotFileImportProgressInfo progressInfo;
+    /** Executor that copies files. */
+    private SnapshotFileImportExecutor executor;
 
     /**
      * Constructor.
@@ -57,13 +61,15 @@ public class SnapshotFileImportVisitor implements FileVisitor<Path> {
      * @param webdavRootDir WebDAV root directory
      * @param webdavRootDirInZip WebDAV root directory in zip
      * @param progressInfo Progress info
+     * @param executor Executor that copies files
      */
-    public SnapshotFileImportVisitor(String cellId, Path webdavRootDir, Path webdavRootDirInZip,
-            SnapshotFileImportProgressInfo progressInfo) {
+    SnapshotFileImportVisitor(String cellId, Path webdavRootDir, Path webdavRootDirInZip,
+            SnapshotFileImportProgressInfo progressInfo, SnapshotFileImportExecutor executor) {
         this.cellId = cellId;
         this.webdavRootDir = webdavRootDir;
         this.webdavRootDirInZip = webdavRootDirInZip;
         this.progressInfo = progressInfo;
+        this.executor = executor;
     }
 
     /**
@@ -82,7 +88,22 @@ public class SnapshotFileImportVisitor implements FileVisitor<Path> {
      * {@inheritDoc}
      */
     @Override
-    public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) throws IOException {
+    public FileVisitResult visitFile(final Path file, BasicFileAttributes attrs) throws IOException {
+        executor.execute(new SnapshotFileImportExecutor.Task() {
+            @Override
+            public void run() throws IOException {
+                copyFile(file);
+            }
+        });
+        return FileVisitResult.CONTINUE;
+    }
+
+    /**
+     * Copy the file in zip to file system.
+     * @param file file in zip
+     * @throws IOException file I/O error
+     */
+    private void copyFile(Path file) throws IOException {
         Path relativePath = replaceUnderscoreToMainboxId(webdavRootDirInZip.relativize(file));
         Path path = webdavRootDir.resolve(relativePath.toString());
 
@@ -108,12 +129,13 @@ public class SnapshotFileImportVisitor implements FileVisitor<Path> {
             DataCryptor cryptor = new DataCryptor(cellId);
             try (InputStream in = cryptor.encode(Files.newInputStream(file),
                     PersoniumUnitConfig.isDavEncryptEnabled())) {
-                Files.copy(in, path);
+                // Files of delta snapshot overwrite the existing files.
+                Files.deleteIfExists(path);
+                DavContentStore.write(in, path);
             }
         }
         progressInfo.addDelta(1L);
         progressInfo.writeToCache();
-        return FileVisitResult.CONTINUE;
     }
 
     /**
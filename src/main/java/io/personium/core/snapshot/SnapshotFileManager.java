@@ -20,6 +20,10 @@ import java.io.IOException;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.util.HashSet;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Set;
 
 import org.json.simple.JSONObject;
 import org.json.simple.parser.JSONParser;
@@ -32,10 +36,12 @@ import io.personium.common.utils.PersoniumThread;
 import io.personium.core.PersoniumCoreException;
 import io.personium.core.PersoniumUnitConfig;
 import io.personium.core.model.Cell;
+import io.personium.core.model.ctl.Common;
 import io.personium.core.model.impl.es.EsModel;
 import io.personium.core.model.impl.es.accessor.EntitySetAccessor;
 import io.personium.core.model.impl.fs.DavCmpFsImpl;
 import io.personium.core.model.lock.CellLockManager;
+import io.personium.core.utils.ODataUtils;
 
 /**
  * Manage the snapshot file.
@@ -72,12 +78,26 @@ public class SnapshotFileManager {
      * Execute export.
      */
     public void exportSnapshot() {
+        exportSnapshot(null);
+    }
+
+    /**
+     * Execute export.
+     * When the base snapshot is specified, export the delta snapshot
+     * that contains only the changes after the base snapshot was created.
+     * @param baseSnapshotName Base snapshot name(no extension). null if not delta
+     */
+    public void exportSnapshot(String baseSnapshotName) {
         Path snapshotDirPath = Paths.get(PersoniumUnitConfig.getCellSnapshotRoot(),
                 targetCell.getId(), snapshotFileName);
         // File duplication check
         if (Files.exists(snapshotDirPath)) {
             throw PersoniumCoreException.Dav.FILE_ALREADY_EXISTS.params(snapshotFileName);
         }
+        SnapshotFileBase base = null;
+        if (baseSnapshotName != null) {
+            base = SnapshotFileBase.load(baseSnapshotName, getSnapshotFilePath(baseSnapshotName));
+        }
         // Create snapshot directory.
         // A directory named {Name}.zip is created
         try {
@@ -91,7 +111,7 @@ public class SnapshotFileManager {
         waitCellAccessible(targetCell.getId());
         try {
             CellLockManager.setCellStatus(targetCell.getId(), CellLockManager.STATUS.EXPORT);
-            SnapshotFileExportRunner runner = new SnapshotFileExportRunner(targetCell, snapshotFilePath);
+            SnapshotFileExportRunner runner = new SnapshotFileExportRunner(targetCell, snapshotFilePath, base);
             PersoniumThread.CELL_IO.execute(runner);
         } catch (Throwable e) {
             // If an exception occurs before the execution of the thread, return the lock status to its original state.
@@ -117,10 +137,12 @@ public class SnapshotFileManager {
         // TODO Provisional
         validateCellExists(snapshotFilePath);
 
+        List<Path> snapshotFilePaths = resolveSnapshotChain(snapshotFilePath);
+
         waitCellAccessible(targetCell.getId());
         try {
             CellLockManager.setCellStatus(targetCell.getId(), CellLockManager.STATUS.IMPORT);
-            SnapshotFileImportRunner runner = new SnapshotFileImportRunner(targetCell, snapshotFilePath);
+            SnapshotFileImportRunner runner = new SnapshotFileImportRunner(targetCell, snapshotFilePaths);
             PersoniumThread.CELL_IO.execute(runner);
         } catch (Throwable e) {
             // If an exception occurs before the execution of the thread, return the lock status to its original state.
@@ -130,6 +152,75 @@ public class SnapshotFileManager {
         }
     }
 
+    /**
+     * Get snapshot file path from snapshot name.
+     * @param snapshotName snapshot name(no extension)
+     * @return snapshot file path
+     */
+    private Path getSnapshotFilePath(String snapshotName) {
+        String fileName = snapshotName + SNAPSHOT_FILE_EXTENSION;
+        Path snapshotDirPath = Paths.get(PersoniumUnitConfig.getCellSnapshotRoot(), targetCell.getId(), fileName);
+        Path snapshotFilePath = snapshotDirPath.resolve(DavCmpFsImpl.CONTENT_FILE_NAME);
+        if (!Files.exists(snapshotFilePath)) {
+            throw PersoniumCoreException.Dav.RESOURCE_NOT_FOUND.params(fileName);
+        }
+        return snapshotFilePath;
+    }
+
+    /**
+     * Resolve the snapshot files to import, following the base snapshots of the delta snapshots.
+     * @param snapshotFilePath snapshot file to import
+     * @return snapshot files. The full snapshot followed by the delta snapshots in order
+     */
+    List<Path> resolveSnapshotChain(Path snapshotFilePath) {
+        LinkedList<Path> snapshotFilePaths = new LinkedList<>();
+        Set<String> visited = new HashSet<>();
+        Path current = snapshotFilePath;
+        while (current != null) {
+            snapshotFilePaths.addFirst(current);
+            String baseSnapshotName = readBaseSnapshotName(current);
+            if (baseSnapshotName == null) {
+                break;
+            }
+            // Guard against the broken manifest which refers to itself.
+            if (!visited.add(baseSnapshotName)) {
+                throw PersoniumCoreException.Misc.NOT_FOUND_IN_SNAPSHOT.params(baseSnapshotName);
+            }
+            current = getSnapshotFilePath(baseSnapshotName);
+        }
+        return snapshotFilePaths;
+    }
+
+    /**
+     * Read base snapshot name from manifest json.
+     * @param snapshotFilePath snapshot file
+     * @return base snapshot name. null if not delta
+     */
+    private String readBaseSnapshotName(Path snapshotFilePath) {
+        try (SnapshotFile snapshotFile = SnapshotFile.newInstance(snapshotFilePath)) {
+            String manifestJsonStr = snapshotFile.readManifestJson();
+            JSONObject manifestJson;
+            try {
+                manifestJson = (JSONObject) new JSONParser().parse(manifestJsonStr);
+            } catch (ParseException e) {
+                throw PersoniumCoreException.Common.JSON_PARSE_ERROR.params(manifestJsonStr);
+            }
+            if (!SnapshotFile.SNAPSHOT_TYPE_DELTA.equals(
+                    manifestJson.get(SnapshotFile.MANIFEST_JSON_KEY_SNAPSHOT_TYPE))) {
+                return null;
+            }
+            String baseSnapshotName = (String) manifestJson.get(SnapshotFile.MANIFEST_JSON_KEY_BASE_SNAPSHOT);
+            if (baseSnapshotName == null
+                    || !ODataUtils.validateRegEx(baseSnapshotName, Common.PATTERN_SNAPSHOT_NAME)) {
+                throw PersoniumCoreException.Misc.NOT_FOUND_IN_SNAPSHOT.params(
+                        SnapshotFile.MANIFEST_JSON + ":" + SnapshotFile.MANIFEST_JSON_KEY_BASE_SNAPSHOT);
+            }
+            return baseSnapshotName;
+        } catch (IOException e) {
+            throw PersoniumCoreException.Common.FILE_IO_ERROR.params("read snapshot file").reason(e);
+        }
+    }
+
     /**
      * Wait for other access to the specified cell to be completed.
      * Exception is thrown if maximum wait time set by UnitConfig elapses.
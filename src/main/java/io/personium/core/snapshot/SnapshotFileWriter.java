@@ -0,0 +1,187 @@
+/**
+ * personium.io
+ * Copyright 2018 FUJITSU LIMITED
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.personium.core.snapshot;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.Writer;
+import java.nio.file.Path;
+
+import io.personium.core.PersoniumCoreException;
+import io.personium.core.utils.ZipEntryWriter;
+
+/**
+ * Class for sequential write interface of snapshot file.
+ * <p>
+ * Unlike {@link SnapshotFile}, which handles the zip as FileSystem, each entry is compressed and written
+ * to the snapshot file as soon as it is added, so no temporary copy of the entries is needed.
+ * Entries must be written in the order of the structure of the snapshot file.
+ */
+public class SnapshotFileWriter implements Closeable {
+
+    /** Writer of the zip entries. */
+    private final ZipEntryWriter zipWriter;
+
+    /**
+     * Constructor.
+     * Creates the OData directory and the WebDAV directory.
+     * @param filePath Target snapshot file path
+     * @throws IOException file I/O error
+     */
+    public SnapshotFileWriter(Path filePath) throws IOException {
+        zipWriter = new ZipEntryWriter(filePath.toFile());
+        zipWriter.putDirectory(SnapshotFile.ODATA_DIR);
+        zipWriter.putDirectory(SnapshotFile.WEBDAV_DIR);
+    }
+
+    /**
+     * Write to manifest json.
+     * @param data Data to write
+     */
+    public void writeManifestJson(String data) {
+        try {
+            zipWriter.writeEntry(SnapshotFile.MANIFEST_JSON, data);
+        } catch (IOException e) {
+            throw PersoniumCoreException.Common.FILE_IO_ERROR.params("add manifest to snapshot file").reason(e);
+        }
+    }
+
+    /**
+     * Write to cell json.
+     * @param data Data to write
+     */
+    public void writeCellJson(String data) {
+        try {
+            zipWriter.writeEntry(SnapshotFile.ODATA_DIR + "/" + SnapshotFile.CELL_JSON, data);
+        } catch (IOException e) {
+            throw PersoniumCoreException.Common.FILE_IO_ERROR.params("add cell json to snapshot file").reason(e);
+        }
+    }
+
+    /**
+     * Create data pjson and return the writer of it.
+     * The entry is completed when the writer is closed. No other entry can be written until then.
+     * @return writer of data pjson
+     */
+    public Writer newDataPJsonWriter() {
+        return newEntryWriter(SnapshotFile.ODATA_DIR + "/" + SnapshotFile.DATA_PJSON, "data pjson");
+    }
+
+    /**
+     * Create ids list of odata and return the writer of it.
+     * The entry is completed when the writer is closed. No other entry can be written until then.
+     * @return writer of ids list
+     */
+    public Writer newIdsWriter() {
+        return newEntryWriter(SnapshotFile.ODATA_DIR + "/" + SnapshotFile.IDS_TXT, "ids list");
+    }
+
+    /**
+     * Create ids list of deleted odata and return the writer of it.
+     * The entry is completed when the writer is closed. No other entry can be written until then.
+     * @return writer of deleted ids list
+     */
+    public Writer newDeletedIdsWriter() {
+        return newEntryWriter(SnapshotFile.ODATA_DIR + "/" + SnapshotFile.DELETED_IDS_TXT, "deleted ids list");
+    }
+
+    /**
+     * Create versions list of webdav directories and return the writer of it.
+     * The entry is completed when the writer is closed. No other entry can be written until then.
+     * @return writer of versions list
+     */
+    public Writer newWebDAVVersionsWriter() {
+        return newEntryWriter(SnapshotFile.WEBDAV_VERSIONS_TXT, "webdav versions list");
+    }
+
+    /**
+     * Create list of deleted webdav directories and return the writer of it.
+     * The entry is completed when the writer is closed. No other entry can be written until then.
+     * @return writer of deleted webdav directories list
+     */
+    public Writer newDeletedWebDAVWriter() {
+        return newEntryWriter(SnapshotFile.DELETED_WEBDAV_TXT, "deleted webdav list");
+    }
+
+    /**
+     * Create directory in webdav directory.
+     * @param relativePath Target dir path under the webdav directory
+     * @throws IOException file I/O error
+     */
+    public void createWebDAVDirectory(Path relativePath) throws IOException {
+        zipWriter.putDirectory(toWebDAVEntryName(relativePath));
+    }
+
+    /**
+     * Write file in webdav directory.
+     * @param relativePath Target file path under the webdav directory
+     * @param data Data to write
+     * @throws IOException file I/O error
+     */
+    public void writeWebDAVFile(Path relativePath, String data) throws IOException {
+        zipWriter.writeEntry(toWebDAVEntryName(relativePath), data);
+    }
+
+    /**
+     * Write file in webdav directory.
+     * @param relativePath Target file path under the webdav directory
+     * @param in Data to write. It is not closed
+     * @throws IOException file I/O error
+     */
+    public void writeWebDAVFile(Path relativePath, InputStream in) throws IOException {
+        zipWriter.writeEntry(toWebDAVEntryName(relativePath), in);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void close() throws IOException {
+        zipWriter.close();
+    }
+
+    /**
+     * Convert the path under the webdav directory to the entry name.
+     * @param relativePath path under the webdav directory
+     * @return entry name
+     */
+    private String toWebDAVEntryName(Path relativePath) {
+        StringBuilder builder = new StringBuilder(SnapshotFile.WEBDAV_DIR);
+        for (Path name : relativePath) {
+            if (!name.toString().isEmpty()) {
+                builder.append("/").append(name.toString());
+            }
+        }
+        return builder.toString();
+    }
+
+    /**
+     * Create entry and return the writer of it.
+     * @param entryName entry name
+     * @param fileName file name for error message
+     * @return writer of the entry
+     */
+    private Writer newEntryWriter(String entryName, String fileName) {
+        try {
+            return zipWriter.newEntryWriter(entryName);
+        } catch (IOException e) {
+            throw PersoniumCoreException.Common.FILE_IO_ERROR.params("create " + fileName + " to snapshot file")
+                    .reason(e);
+        }
+    }
+}
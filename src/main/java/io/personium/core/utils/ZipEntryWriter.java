@@ -0,0 +1,164 @@
+/**
+ * personium.io
+ * Copyright 2018 FUJITSU LIMITED
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.personium.core.utils;
+
+import java.io.BufferedWriter;
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.zip.Deflater;
+
+import org.apache.commons.compress.archivers.zip.ZipArchiveEntry;
+import org.apache.commons.compress.archivers.zip.ZipArchiveOutputStream;
+import org.apache.commons.io.IOUtils;
+import org.apache.commons.io.output.CloseShieldOutputStream;
+
+/**
+ * Sequential writer of zip entries.
+ * <p>
+ * Each entry is compressed and written as soon as it is added, so the zip can be written to a file
+ * or directly to a response without a temporary copy of the entries.
+ * Only one entry can be written at a time. Entry names are encoded in UTF-8.
+ */
+public class ZipEntryWriter implements Closeable {
+
+    /** Output stream of the zip. */
+    private final ZipArchiveOutputStream zipOutputStream;
+
+    /**
+     * Constructor.
+     * @param output Output stream to write the zip to
+     */
+    public ZipEntryWriter(OutputStream output) {
+        this(new ZipArchiveOutputStream(output));
+    }
+
+    /**
+     * Constructor.
+     * @param file Zip file to write
+     * @throws IOException file I/O error
+     */
+    public ZipEntryWriter(File file) throws IOException {
+        this(new ZipArchiveOutputStream(file));
+    }
+
+    private ZipEntryWriter(ZipArchiveOutputStream zipOutputStream) {
+        this.zipOutputStream = zipOutputStream;
+        this.zipOutputStream.setEncoding(StandardCharsets.UTF_8.name());
+    }
+
+    /**
+     * Add directory entry.
+     * @param dirName directory name without the trailing slash
+     * @throws IOException file I/O error
+     */
+    public void putDirectory(String dirName) throws IOException {
+        ZipArchiveEntry entry = new ZipArchiveEntry(dirName + "/");
+        entry.setTime(System.currentTimeMillis());
+        zipOutputStream.putArchiveEntry(entry);
+        zipOutputStream.closeArchiveEntry();
+    }
+
+    /**
+     * Start file entry and return the output stream of it.
+     * The entry is completed by {@link #closeEntry()}. Closing the returned stream does not close the zip.
+     * @param entryName entry name
+     * @param level compression level of {@link Deflater}
+     * @return output stream of the entry
+     * @throws IOException file I/O error
+     */
+    public OutputStream putEntry(String entryName, int level) throws IOException {
+        ZipArchiveEntry entry = new ZipArchiveEntry(entryName);
+        entry.setMethod(ZipArchiveEntry.DEFLATED);
+        entry.setTime(System.currentTimeMillis());
+        zipOutputStream.setLevel(level);
+        zipOutputStream.putArchiveEntry(entry);
+        return new CloseShieldOutputStream(zipOutputStream);
+    }
+
+    /**
+     * Complete the entry started by {@link #putEntry(String, int)}.
+     * @throws IOException file I/O error
+     */
+    public void closeEntry() throws IOException {
+        zipOutputStream.closeArchiveEntry();
+    }
+
+    /**
+     * Write file entry.
+     * @param entryName entry name
+     * @param data Data to write
+     * @throws IOException file I/O error
+     */
+    public void writeEntry(String entryName, String data) throws IOException {
+        putEntry(entryName, Deflater.DEFAULT_COMPRESSION).write(data.getBytes(StandardCharsets.UTF_8));
+        closeEntry();
+    }
+
+    /**
+     * Write file entry.
+     * @param entryName entry name
+     * @param in Data to write. It is not closed
+     * @throws IOException file I/O error
+     */
+    public void writeEntry(String entryName, InputStream in) throws IOException {
+        IOUtils.copyLarge(in, putEntry(entryName, Deflater.DEFAULT_COMPRESSION));
+        closeEntry();
+    }
+
+    /**
+     * Start file entry and return the writer of it.
+     * The entry is completed when the writer is closed. No other entry can be written until then.
+     * @param entryName entry name
+     * @return writer of the entry
+     * @throws IOException file I/O error
+     */
+    public Writer newEntryWriter(String entryName) throws IOException {
+        OutputStream output = putEntry(entryName, Deflater.DEFAULT_COMPRESSION);
+        return new BufferedWriter(new OutputStreamWriter(output, StandardCharsets.UTF_8)) {
+            @Override
+            public void close() throws IOException {
+                super.close();
+                closeEntry();
+            }
+        };
+    }
+
+    /**
+     * Write the central directory of the zip and flush it.
+     * The underlying output stream is not closed.
+     * @throws IOException file I/O error
+     */
+    public void finish() throws IOException {
+        zipOutputStream.finish();
+        zipOutputStream.flush();
+    }
+
+    /**
+     * Write the central directory of the zip and close the underlying output stream.
+     * @throws IOException file I/O error
+     */
+    @Override
+    public void close() throws IOException {
+        zipOutputStream.close();
+    }
+}
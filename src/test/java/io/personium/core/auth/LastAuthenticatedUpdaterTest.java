@@ -0,0 +1,247 @@
+/**
+ * personium.io
+ * Copyright 2018 FUJITSU LIMITED
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.personium.core.auth;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyMapOf;
+import static org.mockito.Matchers.eq;
+import static org.mockito.Matchers.same;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.experimental.categories.Category;
+import org.junit.runner.RunWith;
+import org.mockito.ArgumentCaptor;
+import org.odata4j.core.OEntityKey;
+import org.odata4j.edm.EdmDataServices;
+import org.odata4j.edm.EdmEntitySet;
+import org.powermock.api.mockito.PowerMockito;
+import org.powermock.core.classloader.annotations.PrepareForTest;
+import org.powermock.modules.junit4.PowerMockRunner;
+import org.powermock.reflect.Whitebox;
+
+import io.personium.core.PersoniumUnitConfig;
+import io.personium.core.model.Cell;
+import io.personium.core.model.ModelFactory;
+import io.personium.core.model.ctl.Account;
+import io.personium.core.odata.PersoniumODataProducer;
+import io.personium.test.categories.Unit;
+
+/**
+ * Unit Test class for LastAuthenticatedUpdater.
+ */
+@RunWith(PowerMockRunner.class)
+@PrepareForTest({ ModelFactory.ODataCtl.class })
+@Category({ Unit.class })
+public class LastAuthenticatedUpdaterTest {
+
+    private String interval;
+    private String threshold;
+
+    private Cell cell1;
+    private Cell cell2;
+    private EdmEntitySet eset;
+    private PersoniumODataProducer producer1;
+    private PersoniumODataProducer producer2;
+
+    /**
+     * Before.
+     */
+    @Before
+    public void before() {
+        interval = PersoniumUnitConfig.get(PersoniumUnitConfig.Account.ACCOUNT_LAST_AUTHENTICATED_FLUSH_INTERVAL);
+        threshold = PersoniumUnitConfig.get(PersoniumUnitConfig.Account.ACCOUNT_LAST_AUTHENTICATED_FLUSH_THRESHOLD);
+        // Flush only when the test calls flush().
+        PersoniumUnitConfig.set(PersoniumUnitConfig.Account.ACCOUNT_LAST_AUTHENTICATED_FLUSH_INTERVAL, "3600");
+        PersoniumUnitConfig.set(PersoniumUnitConfig.Account.ACCOUNT_LAST_AUTHENTICATED_FLUSH_THRESHOLD, "1000");
+        Whitebox.<Map<?, ?>>getInternalState(LastAuthenticatedUpdater.class, "pending").clear();
+
+        eset = mock(EdmEntitySet.class);
+        EdmDataServices metadata = mock(EdmDataServices.class);
+        when(metadata.getEdmEntitySet(Account.EDM_TYPE_NAME)).thenReturn(eset);
+        cell1 = mock(Cell.class);
+        when(cell1.getId()).thenReturn("cell1");
+        cell2 = mock(Cell.class);
+        when(cell2.getId()).thenReturn("cell2");
+        producer1 = mock(PersoniumODataProducer.class);
+        when(producer1.getMetadata()).thenReturn(metadata);
+        producer2 = mock(PersoniumODataProducer.class);
+        when(producer2.getMetadata()).thenReturn(metadata);
+
+        PowerMockito.mockStatic(ModelFactory.ODataCtl.class);
+        when(ModelFactory.ODataCtl.cellCtl(cell1)).thenReturn(producer1);
+        when(ModelFactory.ODataCtl.cellCtl(cell2)).thenReturn(producer2);
+    }
+
+    /**
+     * After.
+     */
+    @After
+    public void after() {
+        LastAuthenticatedUpdater.stop();
+        PersoniumUnitConfig.set(PersoniumUnitConfig.Account.ACCOUNT_LAST_AUTHENTICATED_FLUSH_INTERVAL, interval);
+        PersoniumUnitConfig.set(PersoniumUnitConfig.Account.ACCOUNT_LAST_AUTHENTICATED_FLUSH_THRESHOLD, threshold);
+    }
+
+    private static void put(Cell cell, String accountId, long time) throws Exception {
+        Whitebox.invokeMethod(LastAuthenticatedUpdater.class, "put",
+                new LastAuthenticatedUpdater.Entry(cell, accountId, time));
+    }
+
+    /**
+     * Verifies the number of bulk updates of the producer.
+     * @return LastAuthenticated passed to each bulk update
+     */
+    @SuppressWarnings({ "unchecked", "rawtypes" })
+    private List<Map<String, Long>> flushed(PersoniumODataProducer producer, int count) {
+        ArgumentCaptor<Map> captor = ArgumentCaptor.forClass(Map.class);
+        verify(producer, times(count)).updateLastAuthenticated(same(eset), captor.capture());
+        return (List) captor.getAllValues();
+    }
+
+    private static Map<String, Long> lastAuthenticated(Object... accountAndTime) {
+        Map<String, Long> times = new HashMap<String, Long>();
+        for (int i = 0; i < accountAndTime.length; i += 2) {
+            times.put((String) accountAndTime[i], (Long) accountAndTime[i + 1]);
+        }
+        return times;
+    }
+
+    /**
+     * Test update() and flush().
+     * updates are buffered until flush, and written in one request per cell.
+     */
+    @Test
+    public void update_Normal_buffered_and_flushed_per_cell() {
+        LastAuthenticatedUpdater.start();
+        long before = System.currentTimeMillis();
+        LastAuthenticatedUpdater.update(cell1, "user1", "acc1");
+        LastAuthenticatedUpdater.update(cell1, "user2", "acc2");
+        LastAuthenticatedUpdater.update(cell1, "user1", "acc1");
+        LastAuthenticatedUpdater.update(cell2, "user3", "acc3");
+        long after = System.currentTimeMillis();
+
+        verify(producer1, never()).updateLastAuthenticated(any(EdmEntitySet.class),
+                anyMapOf(String.class, Long.class));
+
+        LastAuthenticatedUpdater.flush();
+
+        Map<String, Long> cell1Times = flushed(producer1, 1).get(0);
+        assertThat(cell1Times.keySet(), is((Set<String>) new HashSet<String>(Arrays.asList("acc1", "acc2"))));
+        for (long time : cell1Times.values()) {
+            assertThat(time >= before && time <= after, is(true));
+        }
+        assertThat(flushed(producer2, 1).get(0).keySet(), is(Collections.singleton("acc3")));
+
+        // nothing is left to write
+        LastAuthenticatedUpdater.flush();
+        flushed(producer1, 1);
+        flushed(producer2, 1);
+    }
+
+    /**
+     * Test update().
+     * LastAuthenticated is written synchronously while the writer is stopped.
+     */
+    @Test
+    public void update_Normal_synchronous_when_stopped() {
+        LastAuthenticatedUpdater.update(cell1, "user1", "acc1");
+
+        verify(producer1, times(1)).updateLastAuthenticated(same(eset), eq(OEntityKey.parse("('user1')")),
+                eq("acc1"));
+        verify(producer1, never()).updateLastAuthenticated(any(EdmEntitySet.class),
+                anyMapOf(String.class, Long.class));
+    }
+
+    /**
+     * Test flush().
+     * the newer login time of the same account is kept.
+     * @throws Exception Unintended exception in test
+     */
+    @Test
+    public void flush_Normal_newer_time_wins() throws Exception {
+        put(cell1, "acc1", 200L);
+        put(cell1, "acc1", 100L);
+        put(cell1, "acc2", 100L);
+        put(cell1, "acc2", 300L);
+
+        LastAuthenticatedUpdater.flush();
+
+        assertThat(flushed(producer1, 1).get(0), is(lastAuthenticated("acc1", 200L, "acc2", 300L)));
+    }
+
+    /**
+     * Test flush().
+     * only the accounts that the producer failed to write are retried on the next flush.
+     * @throws Exception Unintended exception in test
+     */
+    @Test
+    public void flush_Normal_failed_accounts_are_requeued() throws Exception {
+        when(producer1.updateLastAuthenticated(any(EdmEntitySet.class), anyMapOf(String.class, Long.class)))
+                .thenReturn(Collections.singleton("acc2"))
+                .thenReturn(Collections.<String>emptySet());
+        put(cell1, "acc1", 100L);
+        put(cell1, "acc2", 200L);
+
+        LastAuthenticatedUpdater.flush();
+        LastAuthenticatedUpdater.flush();
+        LastAuthenticatedUpdater.flush();
+
+        List<Map<String, Long>> flushed = flushed(producer1, 2);
+        assertThat(flushed.get(0), is(lastAuthenticated("acc1", 100L, "acc2", 200L)));
+        assertThat(flushed.get(1), is(lastAuthenticated("acc2", 200L)));
+    }
+
+    /**
+     * Test flush().
+     * all accounts of the cell are retried when the producer throws, and a newer login time buffered
+     * in the meantime wins.
+     * @throws Exception Unintended exception in test
+     */
+    @Test
+    public void flush_Error_all_accounts_are_requeued() throws Exception {
+        when(producer1.updateLastAuthenticated(any(EdmEntitySet.class), anyMapOf(String.class, Long.class)))
+                .thenThrow(new RuntimeException("es is down"))
+                .thenReturn(Collections.<String>emptySet());
+        put(cell1, "acc1", 100L);
+        put(cell1, "acc2", 200L);
+
+        LastAuthenticatedUpdater.flush();
+        put(cell1, "acc1", 300L);
+        LastAuthenticatedUpdater.flush();
+
+        List<Map<String, Long>> flushed = flushed(producer1, 2);
+        assertThat(flushed.get(0), is(lastAuthenticated("acc1", 100L, "acc2", 200L)));
+        assertThat(flushed.get(1), is(lastAuthenticated("acc1", 300L, "acc2", 200L)));
+    }
+}
@@ -0,0 +1,197 @@
+/**
+ * personium.io
+ * Copyright 2018 FUJITSU LIMITED
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.personium.core.bar;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyString;
+import static org.mockito.Matchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.when;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.commons.compress.archivers.zip.ZipArchiveEntry;
+import org.apache.commons.compress.archivers.zip.ZipArchiveInputStream;
+import org.apache.commons.compress.archivers.zip.ZipArchiveOutputStream;
+import org.apache.commons.io.IOUtils;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.experimental.categories.Category;
+import org.junit.runner.RunWith;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
+import org.powermock.api.mockito.PowerMockito;
+import org.powermock.core.classloader.annotations.PrepareForTest;
+import org.powermock.core.classloader.annotations.SuppressStaticInitializationFor;
+import org.powermock.modules.junit4.PowerMockRunner;
+import org.powermock.reflect.Whitebox;
+import org.w3c.dom.Element;
+
+import io.personium.core.model.Box;
+import io.personium.core.model.Cell;
+import io.personium.core.model.DavCmp;
+import io.personium.core.model.progress.Progress;
+import io.personium.core.model.progress.ProgressManager;
+import io.personium.core.odata.PersoniumODataProducer;
+import io.personium.test.categories.Unit;
+
+/**
+ * Unit Test class for BarFileReadRunner.
+ */
+@RunWith(PowerMockRunner.class)
+@PrepareForTest({ Box.class, ProgressManager.class })
+@SuppressStaticInitializationFor("io.personium.core.model.progress.ProgressManager")
+@Category({ Unit.class })
+public class BarFileReadRunnerTest {
+
+    private static final String DAV_COL = "bar/90_contents/davcol/";
+    private static final int SMALL = 100;
+    private static final int LARGE = 2 * 1024 * 1024 + 1;
+
+    private BarFileReadRunner runner;
+    private DavCmp parentCmp;
+    /** Written files in the order of putForCreate. */
+    private List<String> written;
+    private Map<String, Integer> writtenSizes;
+    private List<Thread> writerThreads;
+    private String failingFile;
+
+    /**
+     * Before.
+     */
+    @Before
+    public void before() {
+        runner = new BarFileReadRunner(null, mock(Cell.class), "box", null, mock(PersoniumODataProducer.class),
+                "Box", null, "requestKey");
+        // large enough not to write the progress to the cache
+        Whitebox.setInternalState(runner, "progressInfo", new BarInstallProgressInfo("cell", "box", 1000000L));
+
+        written = Collections.synchronizedList(new ArrayList<String>());
+        writtenSizes = Collections.synchronizedMap(new HashMap<String, Integer>());
+        writerThreads = Collections.synchronizedList(new ArrayList<Thread>());
+        parentCmp = mock(DavCmp.class);
+        when(parentCmp.getType()).thenReturn(DavCmp.TYPE_COL_WEBDAV);
+        when(parentCmp.getChildrenCount()).thenReturn(0);
+        when(parentCmp.getChild(anyString())).thenAnswer(new Answer<DavCmp>() {
+            @Override
+            public DavCmp answer(InvocationOnMock invocation) throws Throwable {
+                return fileCmp((String) invocation.getArguments()[0]);
+            }
+        });
+        Map<String, DavCmp> davCmpMap = Whitebox.getInternalState(runner, "davCmpMap");
+        davCmpMap.put(DAV_COL, parentCmp);
+    }
+
+    private DavCmp fileCmp(final String name) {
+        DavCmp fileCmp = mock(DavCmp.class);
+        when(fileCmp.putForCreate(anyString(), any(InputStream.class))).thenAnswer(new Answer<Object>() {
+            @Override
+            public Object answer(InvocationOnMock invocation) throws Throwable {
+                writerThreads.add(Thread.currentThread());
+                byte[] data = IOUtils.toByteArray((InputStream) invocation.getArguments()[1]);
+                if (name.equals(failingFile)) {
+                    throw new RuntimeException("write failed");
+                }
+                written.add(name);
+                writtenSizes.put(name, data.length);
+                return null;
+            }
+        });
+        return fileCmp;
+    }
+
+    /**
+     * Set the bar contents. The files are registered to the dav collection in the given order.
+     * @param files file names and sizes
+     */
+    private void setContents(Object... files) throws Exception {
+        ByteArrayOutputStream bar = new ByteArrayOutputStream();
+        Map<String, String> contentTypes = Whitebox.getInternalState(runner, "davFileContentTypeMap");
+        Map<String, List<Element>> props = Whitebox.getInternalState(runner, "davFilePropsMap");
+        try (ZipArchiveOutputStream zos = new ZipArchiveOutputStream(bar)) {
+            for (int i = 0; i < files.length; i += 2) {
+                String entryName = DAV_COL + files[i];
+                byte[] data = new byte[(Integer) files[i + 1]];
+                Arrays.fill(data, (byte) 'a');
+                zos.putArchiveEntry(new ZipArchiveEntry(entryName));
+                zos.write(data);
+                zos.closeArchiveEntry();
+                contentTypes.put(entryName, "text/plain");
+                props.put(entryName, new ArrayList<Element>());
+            }
+        }
+        Whitebox.setInternalState(runner, "zipArchiveInputStream",
+                new ZipArchiveInputStream(new ByteArrayInputStream(bar.toByteArray())));
+    }
+
+    /**
+     * Test createContents().
+     * small and large webdav files are written in the order of the bar file on the install thread,
+     * so that they never wait for the box lock held by each other.
+     * @throws Exception Unintended exception in test
+     */
+    @Test
+    public void createContents_Normal_mixed_small_and_large_files() throws Exception {
+        setContents("small1.txt", SMALL, "large1.txt", LARGE, "small2.txt", SMALL, "small3.txt", SMALL,
+                "large2.txt", LARGE, "small4.txt", SMALL);
+
+        assertThat(runner.createContents(), is(true));
+
+        assertThat(written, is(Arrays.asList("small1.txt", "large1.txt", "small2.txt", "small3.txt", "large2.txt",
+                "small4.txt")));
+        assertThat(writtenSizes.get("small1.txt"), is(SMALL));
+        assertThat(writtenSizes.get("large1.txt"), is(LARGE));
+        assertThat(writtenSizes.get("large2.txt"), is(LARGE));
+        for (Thread thread : writerThreads) {
+            assertThat(thread, is(Thread.currentThread()));
+        }
+    }
+
+    /**
+     * Test createContents().
+     * the install stops at a large file that failed, and the files after it are not written.
+     * @throws Exception Unintended exception in test
+     */
+    @Test
+    public void createContents_Error_large_file_failed() throws Exception {
+        setContents("small1.txt", SMALL, "large1.txt", LARGE, "small2.txt", SMALL);
+        failingFile = "large1.txt";
+        // the error is written to the progress of the box
+        Box box = PowerMockito.mock(Box.class);
+        when(box.getId()).thenReturn("boxId");
+        Whitebox.setInternalState(runner, "box", box);
+        PowerMockito.mockStatic(ProgressManager.class);
+
+        assertThat(runner.createContents(), is(false));
+
+        assertThat(written, is(Arrays.asList("small1.txt")));
+        assertThat(writerThreads.size(), is(2));
+        PowerMockito.verifyStatic(times(1));
+        ProgressManager.putProgress(eq("box-boxId"), any(Progress.class));
+    }
+}
@@ -0,0 +1,133 @@
+/**
+ * personium.io
+ * Copyright 2018 FUJITSU LIMITED
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.personium.core.bar;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.MatcherAssert.assertThat;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Arrays;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+
+import javax.ws.rs.core.StreamingOutput;
+
+import org.apache.commons.io.IOUtils;
+import org.apache.wink.webdav.model.Multistatus;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.experimental.categories.Category;
+import org.junit.rules.TemporaryFolder;
+import org.powermock.reflect.Whitebox;
+
+import io.personium.test.categories.Unit;
+
+/**
+ * Unit Test class for BarFileStreamWriter.
+ */
+@Category({ Unit.class })
+public class BarFileStreamWriterTest {
+
+    private static final String MANIFEST = "{\"bar_version\":\"2\",\"box_version\":\"1\","
+            + "\"DefaultPath\":\"box\",\"schema\":\"https://app.example/\"}";
+    private static final String METADATA = "<edmx:Edmx Version=\"1.0\"></edmx:Edmx>";
+
+    /** Temporary directory. */
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private static StreamingOutput data(final byte[] data) {
+        return new StreamingOutput() {
+            @Override
+            public void write(OutputStream output) throws IOException {
+                output.write(data);
+                // the stream of the entry can be closed by the writer of the data
+                output.close();
+            }
+        };
+    }
+
+    private static byte[] repeat(String str, int count) {
+        StringBuilder builder = new StringBuilder();
+        for (int i = 0; i < count; i++) {
+            builder.append(str);
+        }
+        return builder.toString().getBytes(StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Test BarFileStreamWriter.
+     * the exported bar passes the structure and entry checks of the bar_version 2 install,
+     * and the entries are read back as written.
+     * @throws Exception Unintended exception in test
+     */
+    @Test
+    public void write_Normal_round_trip_through_install_validation() throws Exception {
+        byte[] text = repeat("personium text ", 1000);
+        byte[] image = repeat("x", 10000);
+        File file = folder.newFile("export.bar");
+        try (OutputStream output = Files.newOutputStream(file.toPath())) {
+            BarFileStreamWriter writer = new BarFileStreamWriter(output);
+            writer.writeManifestJson(MANIFEST);
+            writer.writeRelationsJson("{\"Relations\":[]}");
+            writer.writeRolesJson("{\"Roles\":[]}");
+            writer.writeRulesJson("{\"Rules\":[]}");
+            writer.writeRootPropsXml(new Multistatus());
+            writer.createDirectoryInContentsDir(Paths.get("davcol"));
+            writer.createFileInContentsDir(Paths.get("davcol", "text.txt"), "text/plain", data(text));
+            writer.createFileInContentsDir(Paths.get("davcol", "image.png"), "image/png", data(image));
+            writer.createDirectoryInContentsDir(Paths.get("odatacol"));
+            writer.writeMetadataXml(Paths.get("odatacol"), METADATA);
+            writer.close();
+        }
+
+        // validation on install
+        long entryCount = Whitebox.<Long>invokeMethod(new BarFileInstaller(null, "box", null, null),
+                "checkVer2BarFileEntries", file);
+        assertThat(entryCount, is(8L));
+        try (BarFile barFile = BarFile.newInstance(file.toPath())) {
+            barFile.checkStructure();
+            assertThat(IOUtils.toString(barFile.getReader(BarFile.MANIFEST_JSON)), is(MANIFEST));
+            assertThat(IOUtils.toString(barFile.getReader(BarFile.ROLES_JSON)), is("{\"Roles\":[]}"));
+            assertThat(barFile.exists(BarFile.ROOTPROPS_XML), is(true));
+            assertThat(barFile.exists(BarFile.EXTROLES_JSON), is(false));
+
+            Path contents = barFile.getPath(BarFile.CONTENTS_DIR);
+            assertThat(Files.isDirectory(contents.resolve("davcol")), is(true));
+            assertThat(Arrays.equals(Files.readAllBytes(contents.resolve("davcol").resolve("text.txt")), text),
+                    is(true));
+            assertThat(Arrays.equals(Files.readAllBytes(contents.resolve("davcol").resolve("image.png")), image),
+                    is(true));
+            assertThat(new String(Files.readAllBytes(contents.resolve("odatacol").resolve(BarFile.METADATA_XML)),
+                    StandardCharsets.UTF_8), is(METADATA));
+        }
+
+        // already compressed type is stored without compression
+        try (ZipFile zipFile = new ZipFile(file)) {
+            ZipEntry textEntry = zipFile.getEntry(BarFile.CONTENTS_DIR + "/davcol/text.txt");
+            assertThat(textEntry.getCompressedSize() < text.length / 10, is(true));
+            ZipEntry imageEntry = zipFile.getEntry(BarFile.CONTENTS_DIR + "/davcol/image.png");
+            assertThat(imageEntry.getCompressedSize() >= image.length, is(true));
+        }
+    }
+}
@@ -0,0 +1,169 @@
+/**
+ * personium.io
+ * Copyright 2018 FUJITSU LIMITED
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.personium.core.event;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.nullValue;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.ByteArrayOutputStream;
+import java.io.ObjectOutputStream;
+import java.util.Arrays;
+
+import org.junit.Test;
+import org.junit.experimental.categories.Category;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import io.personium.test.categories.Unit;
+
+/**
+ * Unit Test class for PersoniumEventCodec.
+ */
+@Category({ Unit.class })
+public class PersoniumEventCodecTest {
+    private static Logger log = LoggerFactory.getLogger(PersoniumEventCodecTest.class);
+
+    private static PersoniumEvent createEvent() {
+        PersoniumEvent event = new PersoniumEvent.Builder()
+                .external()
+                .schema("https://app.example/")
+                .subject("https://cell.example/#me")
+                .type("cellctl.Box.create")
+                .object("personium-localcell:/__ctl/Box('ボックス')")
+                .info("201")
+                .requestKey("req-1")
+                .eventId("event-1")
+                .ruleChain("1")
+                .via("https://cell.example/,https://other.example/")
+                .roles("https://cell.example/__role/__/admin,https://cell.example/__role/box/reader")
+                .build();
+        event.setCellId("cell-id");
+        event.setTime(1522576800123L);
+        return event;
+    }
+
+    private static void assertEvent(PersoniumEvent expected, PersoniumEvent actual) {
+        assertThat(actual.getExternal(), is(expected.getExternal()));
+        assertThat(actual.getSchema(), is(expected.getSchema()));
+        assertThat(actual.getSubject(), is(expected.getSubject()));
+        assertThat(actual.getType(), is(expected.getType()));
+        assertThat(actual.getObject(), is(expected.getObject()));
+        assertThat(actual.getInfo(), is(expected.getInfo()));
+        assertThat(actual.getRequestKey(), is(expected.getRequestKey()));
+        assertThat(actual.getEventId(), is(expected.getEventId()));
+        assertThat(actual.getRuleChain(), is(expected.getRuleChain()));
+        assertThat(actual.getVia(), is(expected.getVia()));
+        assertThat(actual.getRoles(), is(expected.getRoles()));
+        assertThat(actual.getCellId(), is(expected.getCellId()));
+        assertThat(actual.getTime(), is(expected.getTime()));
+    }
+
+    /**
+     * Test encode() and decode().
+     * all fields.
+     */
+    @Test
+    public void decode_Normal_round_trip() {
+        PersoniumEvent event = createEvent();
+        byte[] bytes = PersoniumEventCodec.encode(event);
+        assertTrue(PersoniumEventCodec.isEncoded(bytes));
+        assertEvent(event, PersoniumEventCodec.decode(bytes));
+    }
+
+    /**
+     * Test encode() and decode().
+     * null fields are kept null.
+     */
+    @Test
+    public void decode_Normal_null_fields() {
+        PersoniumEvent event = new PersoniumEvent.Builder().type("timer.oneshot").build();
+        event.external = null;
+        PersoniumEvent decoded = PersoniumEventCodec.decode(PersoniumEventCodec.encode(event));
+        assertThat(decoded.getType(), is("timer.oneshot"));
+        assertThat(decoded.getExternal(), is(nullValue()));
+        assertThat(decoded.getSubject(), is(nullValue()));
+        assertThat(decoded.getRoles(), is(nullValue()));
+    }
+
+    /**
+     * Test decode().
+     * unknown tag written by newer version is skipped.
+     */
+    @Test
+    public void decode_Normal_unknown_tag() {
+        PersoniumEvent event = createEvent();
+        byte[] bytes = PersoniumEventCodec.encode(event);
+        byte[] extended = Arrays.copyOf(bytes, bytes.length + 4);
+        extended[bytes.length] = 100;
+        extended[bytes.length + 1] = 2;
+        extended[bytes.length + 2] = 'x';
+        extended[bytes.length + 3] = 'y';
+        assertEvent(event, PersoniumEventCodec.decode(extended));
+    }
+
+    /**
+     * Test decode().
+     * JSON, unsupported version and truncated data are rejected.
+     */
+    @Test
+    public void decode_Error_invalid_bytes() {
+        assertFalse(PersoniumEventCodec.isEncoded("{\"type\":\"a\"}".getBytes()));
+        byte[] bytes = PersoniumEventCodec.encode(createEvent());
+        byte[] newer = bytes.clone();
+        newer[1] = PersoniumEventCodec.VERSION + 1;
+        byte[][] invalids = {newer, Arrays.copyOf(bytes, bytes.length - 1) };
+        for (byte[] invalid : invalids) {
+            try {
+                PersoniumEventCodec.decode(invalid);
+                fail("IllegalArgumentException is not thrown.");
+            } catch (IllegalArgumentException e) {
+                log.debug(e.getMessage());
+            }
+        }
+    }
+
+    /**
+     * Compare size with Java serialization and Jackson JSON.
+     * @throws Exception Unexpected error
+     */
+    @Test
+    public void encode_Normal_smaller_than_existing_serializers() throws Exception {
+        PersoniumEvent event = createEvent();
+        ObjectMapper mapper = new ObjectMapper();
+
+        byte[] binary = PersoniumEventCodec.encode(event);
+        byte[] json = mapper.writeValueAsBytes(event);
+        byte[] java = javaSerialize(event);
+        assertTrue(binary.length < json.length);
+        assertTrue(binary.length < java.length);
+        assertEvent(event, PersoniumEventCodec.decode(binary));
+    }
+
+    private static byte[] javaSerialize(PersoniumEvent event) throws Exception {
+        ByteArrayOutputStream baos = new ByteArrayOutputStream();
+        try (ObjectOutputStream oos = new ObjectOutputStream(baos)) {
+            oos.writeObject(event);
+        }
+        return baos.toByteArray();
+    }
+}
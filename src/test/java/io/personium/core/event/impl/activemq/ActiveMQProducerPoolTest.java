@@ -0,0 +1,212 @@
+/**
+ * personium.io
+ * Copyright 2018 FUJITSU LIMITED
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.personium.core.event.impl.activemq;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import javax.jms.Connection;
+import javax.jms.JMSException;
+import javax.jms.BytesMessage;
+import javax.jms.Message;
+import javax.jms.MessageConsumer;
+import javax.jms.ObjectMessage;
+import javax.jms.Session;
+
+import org.apache.activemq.ActiveMQConnectionFactory;
+import org.apache.activemq.broker.BrokerService;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.experimental.categories.Category;
+import org.powermock.reflect.Whitebox;
+
+import io.personium.core.PersoniumUnitConfig;
+import io.personium.core.event.PersoniumEvent;
+import io.personium.test.categories.Unit;
+
+/**
+ * Unit Test class for ActiveMQProducerPool.
+ */
+@Category({ Unit.class })
+public class ActiveMQProducerPoolTest {
+
+    private static final String BROKER_URL = "vm://producer-pool-test";
+    private static final String QUEUE_NAME = "producer_pool_test_queue";
+    private static final int POOL_SIZE = 2;
+    private static final int THREADS = 4;
+    private static final int EVENTS_PER_THREAD = 50;
+    private static final long RECEIVE_TIMEOUT = 5000L;
+
+    private BrokerService broker;
+    private Connection connection;
+
+    /**
+     * Start embedded broker.
+     * @throws Exception Unexpected error
+     */
+    @Before
+    public void before() throws Exception {
+        broker = new BrokerService();
+        broker.setBrokerName("producer-pool-test");
+        broker.setPersistent(false);
+        broker.setUseJmx(false);
+        broker.start();
+        ActiveMQConnectionFactory factory = new ActiveMQConnectionFactory(BROKER_URL);
+        factory.setTrustedPackages(Arrays.asList("java.lang", "io.personium.core.event"));
+        factory.setUseAsyncSend(true);
+        connection = factory.createConnection();
+        connection.start();
+    }
+
+    /**
+     * Stop embedded broker.
+     * @throws Exception Unexpected error
+     */
+    @After
+    public void after() throws Exception {
+        connection.close();
+        broker.stop();
+    }
+
+    /**
+     * Test send().
+     * events sent from several threads are all delivered and sessions are reused.
+     * @throws Exception Unexpected error
+     */
+    @Test
+    public void send_Normal_concurrent() throws Exception {
+        final ActiveMQProducerPool pool = new ActiveMQProducerPool(connection, QUEUE_NAME, false, POOL_SIZE);
+        ExecutorService executor = Executors.newFixedThreadPool(THREADS);
+        try {
+            List<Future<Void>> futures = new ArrayList<Future<Void>>();
+            for (int t = 0; t < THREADS; t++) {
+                final int thread = t;
+                futures.add(executor.submit(new Callable<Void>() {
+                    @Override
+                    public Void call() throws Exception {
+                        for (int i = 0; i < EVENTS_PER_THREAD; i++) {
+                            pool.send(new PersoniumEvent.Builder()
+                                    .type("test").object(thread + "-" + i).build());
+                        }
+                        return null;
+                    }
+                }));
+            }
+            for (Future<Void> future : futures) {
+                future.get();
+            }
+        } finally {
+            executor.shutdown();
+        }
+        assertTrue(pool.getIdleCount() <= POOL_SIZE);
+
+        Session session = connection.createSession(false, Session.AUTO_ACKNOWLEDGE);
+        MessageConsumer consumer = session.createConsumer(session.createQueue(QUEUE_NAME));
+        Set<String> received = new HashSet<String>();
+        for (int i = 0; i < THREADS * EVENTS_PER_THREAD; i++) {
+            PersoniumEvent event = ActiveMQMessageConverter.toEvent(consumer.receive(RECEIVE_TIMEOUT));
+            assertNotNull(event);
+            received.add(event.getObject());
+        }
+        assertThat(received.size(), is(THREADS * EVENTS_PER_THREAD));
+        session.close();
+        pool.close();
+        assertThat(pool.getIdleCount(), is(0));
+    }
+
+    /**
+     * Test send() and close().
+     * a session returned after close() is closed instead of being pooled, and no more event is sent.
+     * @throws Exception Unexpected error
+     */
+    @Test
+    public void close_Normal_session_returned_after_close() throws Exception {
+        ActiveMQProducerPool pool = new ActiveMQProducerPool(connection, QUEUE_NAME, false, POOL_SIZE);
+        pool.send(new PersoniumEvent.Builder().type("test").build());
+        assertThat(pool.getIdleCount(), is(1));
+
+        // borrowed before the pool is closed, and returned after it
+        Object pooled = Whitebox.invokeMethod(pool, "borrow");
+        pool.close();
+        Whitebox.invokeMethod(pool, "release", pooled, false);
+
+        assertThat(pool.getIdleCount(), is(0));
+        Session session = Whitebox.getInternalState(pooled, "session");
+        try {
+            session.createQueue(QUEUE_NAME);
+            fail("session is not closed");
+        } catch (JMSException e) {
+            // closed
+        }
+        try {
+            pool.send(new PersoniumEvent.Builder().type("test").build());
+            fail("event is sent after close");
+        } catch (JMSException e) {
+            assertThat(e.getMessage(), is("Producer pool is closed: " + QUEUE_NAME));
+        }
+    }
+
+    /**
+     * Test send().
+     * events are sent in the format of older versions until the binary format is enabled,
+     * and both formats are received.
+     * @throws Exception Unexpected error
+     */
+    @Test
+    public void send_Normal_format() throws Exception {
+        String binaryFormat = PersoniumUnitConfig.get(PersoniumUnitConfig.EventBus.BINARY_FORMAT);
+        ActiveMQProducerPool pool = new ActiveMQProducerPool(connection, QUEUE_NAME, false, POOL_SIZE);
+        Session session = connection.createSession(false, Session.AUTO_ACKNOWLEDGE);
+        try {
+            MessageConsumer consumer = session.createConsumer(session.createQueue(QUEUE_NAME));
+
+            PersoniumUnitConfig.set(PersoniumUnitConfig.EventBus.BINARY_FORMAT, "false");
+            pool.send(new PersoniumEvent.Builder().type("test").object("legacy").build());
+            Message legacy = consumer.receive(RECEIVE_TIMEOUT);
+            assertTrue(legacy instanceof ObjectMessage);
+            assertThat(ActiveMQMessageConverter.toEvent(legacy).getObject(), is("legacy"));
+
+            PersoniumUnitConfig.set(PersoniumUnitConfig.EventBus.BINARY_FORMAT, "true");
+            pool.send(new PersoniumEvent.Builder().type("test").object("binary").build());
+            Message binary = consumer.receive(RECEIVE_TIMEOUT);
+            assertTrue(binary instanceof BytesMessage);
+            assertThat(ActiveMQMessageConverter.toEvent(binary).getObject(), is("binary"));
+        } finally {
+            session.close();
+            pool.close();
+            if (binaryFormat == null) {
+                PersoniumUnitConfig.getProperties().remove(PersoniumUnitConfig.EventBus.BINARY_FORMAT);
+            } else {
+                PersoniumUnitConfig.set(PersoniumUnitConfig.EventBus.BINARY_FORMAT, binaryFormat);
+            }
+        }
+    }
+}
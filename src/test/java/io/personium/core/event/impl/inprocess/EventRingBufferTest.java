@@ -0,0 +1,177 @@
+/**
+ * personium.io
+ * Copyright 2018 FUJITSU LIMITED
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.personium.core.event.impl.inprocess;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.nullValue;
+import static org.hamcrest.CoreMatchers.sameInstance;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Test;
+import org.junit.experimental.categories.Category;
+
+import io.personium.core.event.PersoniumEvent;
+import io.personium.test.categories.Unit;
+
+/**
+ * Unit Test class for EventRingBuffer and in-process EventBus.
+ */
+@Category({ Unit.class })
+public class EventRingBufferTest {
+
+    private static final int THREADS = 4;
+    private static final int EVENTS_PER_THREAD = 20000;
+
+    private static PersoniumEvent event(String object) {
+        return new PersoniumEvent.Builder().type("test").object(object).build();
+    }
+
+    /**
+     * Test offer() and poll().
+     * events are taken in order across the end of the array.
+     */
+    @Test
+    public void poll_Normal_fifo() {
+        EventRingBuffer buffer = new EventRingBuffer(3, EventRingBuffer.OverflowPolicy.DROP_NEWEST, 0L);
+        assertThat(buffer.capacity(), is(4));
+        for (int round = 0; round < 3; round++) {
+            for (int i = 0; i < 4; i++) {
+                assertTrue(buffer.offer(event(round + "-" + i)));
+            }
+            assertFalse(buffer.offer(event("full")));
+            assertThat(buffer.size(), is(4));
+            for (int i = 0; i < 4; i++) {
+                assertThat(buffer.poll().getObject(), is(round + "-" + i));
+            }
+            assertThat(buffer.poll(), is(nullValue()));
+        }
+    }
+
+    /**
+     * Test put().
+     * overflow policies.
+     */
+    @Test
+    public void put_Normal_overflow_policy() {
+        EventRingBuffer newest = new EventRingBuffer(2, EventRingBuffer.OverflowPolicy.DROP_NEWEST, 0L);
+        EventRingBuffer oldest = new EventRingBuffer(2, EventRingBuffer.OverflowPolicy.DROP_OLDEST, 0L);
+        EventRingBuffer block = new EventRingBuffer(2, EventRingBuffer.OverflowPolicy.BLOCK, 10L);
+        for (EventRingBuffer buffer : new EventRingBuffer[] {newest, oldest, block }) {
+            assertTrue(buffer.put(event("1")));
+            assertTrue(buffer.put(event("2")));
+            assertFalse(buffer.put(event("3")));
+            assertThat(buffer.getDroppedCount(), is(1L));
+        }
+        assertThat(newest.poll().getObject(), is("1"));
+        assertThat(newest.poll().getObject(), is("2"));
+        assertThat(oldest.poll().getObject(), is("2"));
+        assertThat(oldest.poll().getObject(), is("3"));
+        assertThat(block.poll().getObject(), is("1"));
+        assertThat(block.poll().getObject(), is("2"));
+    }
+
+    /**
+     * Test put() and poll().
+     * events put by several threads are taken exactly once by several threads.
+     * @throws Exception Unexpected error
+     */
+    @Test
+    public void poll_Normal_concurrent() throws Exception {
+        final EventRingBuffer buffer = new EventRingBuffer(64, EventRingBuffer.OverflowPolicy.BLOCK, 60000L);
+        final int total = THREADS * EVENTS_PER_THREAD;
+        final AtomicInteger taken = new AtomicInteger();
+        final long deadline = System.currentTimeMillis() + 60000L;
+        ExecutorService executor = Executors.newFixedThreadPool(THREADS * 2);
+        try {
+            List<Future<List<PersoniumEvent>>> consumers = new ArrayList<Future<List<PersoniumEvent>>>();
+            for (int t = 0; t < THREADS; t++) {
+                final int thread = t;
+                executor.submit(new Callable<Void>() {
+                    @Override
+                    public Void call() throws Exception {
+                        for (int i = 0; i < EVENTS_PER_THREAD; i++) {
+                            assertTrue(buffer.put(event(thread + "-" + i)));
+                        }
+                        return null;
+                    }
+                });
+                consumers.add(executor.submit(new Callable<List<PersoniumEvent>>() {
+                    @Override
+                    public List<PersoniumEvent> call() throws Exception {
+                        List<PersoniumEvent> list = new ArrayList<PersoniumEvent>();
+                        while (taken.get() < total && System.currentTimeMillis() < deadline) {
+                            PersoniumEvent event = buffer.poll(100L);
+                            if (event != null) {
+                                list.add(event);
+                                taken.incrementAndGet();
+                            }
+                        }
+                        return list;
+                    }
+                }));
+            }
+            Set<String> objects = new HashSet<String>();
+            for (Future<List<PersoniumEvent>> consumer : consumers) {
+                for (PersoniumEvent event : consumer.get()) {
+                    assertTrue(objects.add(event.getObject()));
+                }
+            }
+            assertThat(objects.size(), is(total));
+            assertThat(buffer.getDroppedCount(), is(0L));
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    /**
+     * Test InProcessEventPublisher and InProcessEventSubscriber.
+     * a published event is passed to every subscriber without copying.
+     */
+    @Test
+    public void publish_Normal_fan_out() {
+        String topic = "inprocess_test_topic";
+        InProcessEventSubscriber subscriber1 = new InProcessEventSubscriber();
+        InProcessEventSubscriber subscriber2 = new InProcessEventSubscriber();
+        subscriber1.subscribe(topic);
+        subscriber2.subscribe(topic);
+        InProcessEventPublisher publisher = new InProcessEventPublisher();
+        publisher.open(topic);
+        PersoniumEvent event = event("published");
+        publisher.send(event);
+
+        assertThat(subscriber1.receive().get(0), is(sameInstance(event)));
+        assertThat(subscriber2.receive().get(0), is(sameInstance(event)));
+        subscriber2.unsubscribe();
+        publisher.send(event("second"));
+        assertThat(subscriber1.receive().size(), is(1));
+        assertThat(subscriber2.receive().size(), is(0));
+        subscriber1.unsubscribe();
+        publisher.close();
+    }
+}
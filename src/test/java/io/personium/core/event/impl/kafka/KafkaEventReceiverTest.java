@@ -0,0 +1,208 @@
+/**
+ * personium.io
+ * Copyright 2018 FUJITSU LIMITED
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.personium.core.event.impl.kafka;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.ClassRule;
+import org.junit.Test;
+import org.junit.experimental.categories.Category;
+import org.powermock.reflect.Whitebox;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.kafka.test.rule.KafkaEmbedded;
+
+import io.personium.core.PersoniumUnitConfig;
+import io.personium.core.event.PersoniumEvent;
+import io.personium.test.categories.Unit;
+
+/**
+ * Unit Test class for KafkaEventSender and KafkaEventReceiver.
+ */
+@Category({ Unit.class })
+public class KafkaEventReceiverTest {
+    private static Logger log = LoggerFactory.getLogger(KafkaEventReceiverTest.class);
+
+    private static final String ORDER_TOPIC = "kafka_receiver_test_order";
+    private static final String COMMIT_TOPIC = "kafka_receiver_test_commit";
+    private static final int PARTITIONS = 4;
+    private static final int RECEIVERS = 2;
+    private static final int CELLS = 8;
+    private static final int EVENTS_PER_CELL = 50;
+    private static final long TIMEOUT = 60000L;
+
+    /** Embedded Kafka broker. */
+    @ClassRule
+    public static KafkaEmbedded embeddedKafka = new KafkaEmbedded(1, true, PARTITIONS, ORDER_TOPIC, COMMIT_TOPIC);
+
+    /** Original setting of bootstrap servers. */
+    private static String kafkaServers;
+
+    /**
+     * Set embedded broker to configuration.
+     */
+    @BeforeClass
+    public static void beforeClass() {
+        kafkaServers = PersoniumUnitConfig.get(PersoniumUnitConfig.EventBus.KAFKA_SERVERS);
+        PersoniumUnitConfig.set(PersoniumUnitConfig.EventBus.KAFKA_SERVERS, embeddedKafka.getBrokersAsString());
+    }
+
+    /**
+     * Restore configuration.
+     */
+    @AfterClass
+    public static void afterClass() {
+        if (kafkaServers == null) {
+            PersoniumUnitConfig.getProperties().remove(PersoniumUnitConfig.EventBus.KAFKA_SERVERS);
+        } else {
+            PersoniumUnitConfig.set(PersoniumUnitConfig.EventBus.KAFKA_SERVERS, kafkaServers);
+        }
+    }
+
+    private static void send(String topic, int cells, int eventsPerCell) {
+        KafkaEventSender sender = new KafkaEventSender();
+        sender.open(topic);
+        try {
+            for (int i = 0; i < eventsPerCell; i++) {
+                for (int c = 0; c < cells; c++) {
+                    PersoniumEvent event = new PersoniumEvent.Builder()
+                            .type("test").object(String.valueOf(i)).build();
+                    Whitebox.setInternalState(event, "cellId", "cell" + c);
+                    sender.send(event);
+                }
+            }
+        } finally {
+            // flush events not sent yet
+            sender.close();
+        }
+    }
+
+    /**
+     * Test receive() and commit().
+     * events of a cell are received in order while several receivers share the partitions.
+     * @throws Exception Unexpected error
+     */
+    @Test
+    public void receive_Normal_ordered_per_cell() throws Exception {
+        final int total = CELLS * EVENTS_PER_CELL;
+        send(ORDER_TOPIC, CELLS, EVENTS_PER_CELL);
+
+        final AtomicInteger received = new AtomicInteger();
+        final long deadline = System.currentTimeMillis() + TIMEOUT;
+        long start = System.currentTimeMillis();
+        ExecutorService executor = Executors.newFixedThreadPool(RECEIVERS);
+        List<Future<List<PersoniumEvent>>> futures = new ArrayList<Future<List<PersoniumEvent>>>();
+        try {
+            for (int r = 0; r < RECEIVERS; r++) {
+                futures.add(executor.submit(new Callable<List<PersoniumEvent>>() {
+                    @Override
+                    public List<PersoniumEvent> call() throws Exception {
+                        List<PersoniumEvent> events = new ArrayList<PersoniumEvent>();
+                        KafkaEventReceiver receiver = new KafkaEventReceiver();
+                        receiver.subscribe(ORDER_TOPIC);
+                        try {
+                            while (received.get() < total && System.currentTimeMillis() < deadline) {
+                                List<PersoniumEvent> list = receiver.receive();
+                                events.addAll(list);
+                                receiver.commit();
+                                received.addAndGet(list.size());
+                            }
+                        } finally {
+                            receiver.unsubscribe();
+                        }
+                        return events;
+                    }
+                }));
+            }
+
+            Set<String> unique = new HashSet<String>();
+            for (Future<List<PersoniumEvent>> future : futures) {
+                Map<String, Integer> last = new HashMap<String, Integer>();
+                for (PersoniumEvent event : future.get()) {
+                    int index = Integer.parseInt(event.getObject());
+                    Integer previous = last.put(event.getCellId(), index);
+                    assertTrue(previous == null || previous < index);
+                    unique.add(event.getCellId() + "/" + index);
+                }
+            }
+            assertThat(unique.size(), is(total));
+        } finally {
+            executor.shutdown();
+        }
+        log.info(String.format("received %d events with %d receivers in %d ms",
+                total, RECEIVERS, System.currentTimeMillis() - start));
+    }
+
+    /**
+     * Test commit().
+     * events not committed are received again by next receiver.
+     */
+    @Test
+    public void commit_Normal_uncommitted_events_are_received_again() {
+        final int total = EVENTS_PER_CELL;
+        send(COMMIT_TOPIC, 1, total);
+        long deadline = System.currentTimeMillis() + TIMEOUT;
+
+        // receive without commit
+        Set<String> first = new HashSet<String>();
+        KafkaEventReceiver receiver = new KafkaEventReceiver();
+        receiver.subscribe(COMMIT_TOPIC);
+        try {
+            while (first.isEmpty() && System.currentTimeMillis() < deadline) {
+                for (PersoniumEvent event : receiver.receive()) {
+                    first.add(event.getObject());
+                }
+            }
+        } finally {
+            receiver.unsubscribe();
+        }
+        assertTrue(!first.isEmpty());
+
+        // receive again and commit
+        Set<String> second = new HashSet<String>();
+        receiver = new KafkaEventReceiver();
+        receiver.subscribe(COMMIT_TOPIC);
+        try {
+            while (second.size() < total && System.currentTimeMillis() < deadline) {
+                for (PersoniumEvent event : receiver.receive()) {
+                    second.add(event.getObject());
+                }
+                receiver.commit();
+            }
+        } finally {
+            receiver.unsubscribe();
+        }
+        assertThat(second.size(), is(total));
+        assertTrue(second.containsAll(first));
+    }
+}
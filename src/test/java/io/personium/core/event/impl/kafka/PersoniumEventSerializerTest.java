@@ -0,0 +1,105 @@
+/**
+ * personium.io
+ * Copyright 2018 FUJITSU LIMITED
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.personium.core.event.impl.kafka;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.experimental.categories.Category;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import io.personium.core.PersoniumUnitConfig;
+import io.personium.core.event.PersoniumEvent;
+import io.personium.core.event.PersoniumEventCodec;
+import io.personium.test.categories.Unit;
+
+/**
+ * Unit Test class for PersoniumEventSerializer and PersoniumEventDeserializer.
+ */
+@Category({ Unit.class })
+public class PersoniumEventSerializerTest {
+
+    private static final String TOPIC = "topic";
+
+    private String binaryFormat;
+    private PersoniumEvent event;
+
+    /**
+     * Before.
+     */
+    @Before
+    public void before() {
+        binaryFormat = PersoniumUnitConfig.get(PersoniumUnitConfig.EventBus.BINARY_FORMAT);
+        event = new PersoniumEvent.Builder()
+                .type("cellctl.Box.create")
+                .object("personium-localcell:/__ctl/Box('box1')")
+                .info("201")
+                .build();
+    }
+
+    /**
+     * After.
+     */
+    @After
+    public void after() {
+        if (binaryFormat == null) {
+            PersoniumUnitConfig.getProperties().remove(PersoniumUnitConfig.EventBus.BINARY_FORMAT);
+        } else {
+            PersoniumUnitConfig.set(PersoniumUnitConfig.EventBus.BINARY_FORMAT, binaryFormat);
+        }
+    }
+
+    /**
+     * Test serialize().
+     * event is written in JSON of older versions until the binary format is enabled.
+     * @throws Exception Unintended exception in test
+     */
+    @Test
+    public void serialize_Normal_legacy_format() throws Exception {
+        PersoniumUnitConfig.set(PersoniumUnitConfig.EventBus.BINARY_FORMAT, "false");
+
+        byte[] bytes = new PersoniumEventSerializer().serialize(TOPIC, event);
+
+        assertFalse(PersoniumEventCodec.isEncoded(bytes));
+        // readable as older versions do
+        PersoniumEvent legacy = new ObjectMapper().readValue(bytes, PersoniumEvent.class);
+        assertThat(legacy.getObject(), is(event.getObject()));
+        assertThat(new PersoniumEventDeserializer().deserialize(TOPIC, bytes).getType(), is(event.getType()));
+    }
+
+    /**
+     * Test serialize().
+     * event is encoded by PersoniumEventCodec when the binary format is enabled.
+     */
+    @Test
+    public void serialize_Normal_binary_format() {
+        PersoniumUnitConfig.set(PersoniumUnitConfig.EventBus.BINARY_FORMAT, "true");
+
+        byte[] bytes = new PersoniumEventSerializer().serialize(TOPIC, event);
+
+        assertTrue(PersoniumEventCodec.isEncoded(bytes));
+        PersoniumEvent decoded = new PersoniumEventDeserializer().deserialize(TOPIC, bytes);
+        assertThat(decoded.getObject(), is(event.getObject()));
+        assertThat(decoded.getInfo(), is(event.getInfo()));
+    }
+}
@@ -0,0 +1,201 @@
+/**
+ * personium.io
+ * Copyright 2018 FUJITSU LIMITED
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.personium.core.eventlog;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.MatcherAssert.assertThat;
+
+import java.io.File;
+import java.io.OutputStream;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.experimental.categories.Category;
+import org.junit.rules.TemporaryFolder;
+
+import io.personium.core.rs.cell.LogResource;
+import io.personium.test.categories.Unit;
+
+/**
+ * Unit Test class for EventLogQuery.
+ */
+@Category({ Unit.class })
+public class EventLogQueryTest {
+
+    private static final long BASE_TIME = Instant.parse("2018-04-01T10:00:00.000Z").toEpochMilli();
+
+    /** Temporary directory. */
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private File dir;
+
+    /**
+     * Before.
+     * @throws Exception Unexpected error
+     */
+    @Before
+    public void before() throws Exception {
+        dir = folder.newFolder();
+    }
+
+    /**
+     * Record of the n-th second from BASE_TIME.
+     * @param n seconds
+     * @return record
+     */
+    static String record(int n) {
+        return Instant.ofEpochMilli(time(n)) + ",[INFO ],\"req-" + n + "\",\"true\",\"schema\",\"subject\","
+                + "\"cellctl.Box.create\",\"personium-localcell:/__ctl/Box" + n + "\",\"info\"";
+    }
+
+    /**
+     * Time of the n-th second from BASE_TIME.
+     * @param n seconds
+     * @return epoch millis
+     */
+    static long time(int n) {
+        return BASE_TIME + n * 1000L;
+    }
+
+    private static List<String> records(int from, int to) {
+        List<String> records = new ArrayList<String>();
+        for (int n = from; n <= to; n++) {
+            records.add(record(n));
+        }
+        return records;
+    }
+
+    private static byte[] join(List<String> records) {
+        StringBuilder sb = new StringBuilder();
+        for (String record : records) {
+            sb.append(record).append("\n");
+        }
+        return sb.toString().getBytes(StandardCharsets.UTF_8);
+    }
+
+    private void writeArchive(int number, List<String> records) throws Exception {
+        File archiveDir = new File(dir, LogResource.ARCHIVE_COLLECTION);
+        archiveDir.mkdirs();
+        File file = EventLogWriter.getArchiveFile(archiveDir, number);
+        try (ZipOutputStream zos = new ZipOutputStream(Files.newOutputStream(file.toPath()))) {
+            zos.putNextEntry(new ZipEntry(LogResource.DEFAULT_LOG + "." + number));
+            zos.write(join(records));
+            zos.closeEntry();
+        }
+    }
+
+    private void writeCurrent(List<String> records) throws Exception {
+        File currentDir = new File(dir, LogResource.CURRENT_COLLECTION);
+        currentDir.mkdirs();
+        try (OutputStream os = Files.newOutputStream(new File(currentDir, LogResource.DEFAULT_LOG).toPath())) {
+            os.write(join(records));
+        }
+    }
+
+    /**
+     * Archives default.log.2.zip (oldest), default.log.1.zip and the current log.
+     * @throws Exception Unexpected error
+     */
+    private void writeRotatedLogs() throws Exception {
+        writeArchive(2, records(0, 2));
+        writeArchive(1, records(3, 5));
+        writeCurrent(records(6, 8));
+        // a file that is not an archive is ignored
+        try (Writer writer = Files.newBufferedWriter(new File(new File(dir, LogResource.ARCHIVE_COLLECTION),
+                "default.log.rotating.1").toPath(), StandardCharsets.UTF_8)) {
+            writer.write(record(100));
+        }
+    }
+
+    private List<String> execute(Long from, Long to, int skip, int top) {
+        return new EventLogQuery(from, to, null, null, null, null, skip, top).execute(dir);
+    }
+
+    /**
+     * Test execute().
+     * archives are searched from the oldest, then the current log.
+     * @throws Exception Unexpected error
+     */
+    @Test
+    public void execute_Normal_archive_then_current() throws Exception {
+        writeRotatedLogs();
+        assertThat(execute(null, null, 0, 100), is(records(0, 8)));
+    }
+
+    /**
+     * Test execute().
+     * archive files are ordered by the rotation number, not by the file name.
+     * @throws Exception Unexpected error
+     */
+    @Test
+    public void execute_Normal_rotation_number_order() throws Exception {
+        for (int number = 11; number >= 1; number--) {
+            writeArchive(number, Arrays.asList(record(11 - number)));
+        }
+        assertThat(execute(null, null, 0, 100), is(records(0, 10)));
+    }
+
+    /**
+     * Test execute().
+     * $skip and $top are applied across the files.
+     * @throws Exception Unexpected error
+     */
+    @Test
+    public void execute_Normal_skip_top_across_files() throws Exception {
+        writeRotatedLogs();
+        // default.log.2.zip -> default.log.1.zip
+        assertThat(execute(null, null, 1, 3), is(records(1, 3)));
+        // default.log.1.zip -> current
+        assertThat(execute(null, null, 4, 3), is(records(4, 6)));
+        // current only
+        assertThat(execute(null, null, 7, 3), is(records(7, 8)));
+        assertThat(execute(null, null, 9, 3), is(records(0, -1)));
+    }
+
+    /**
+     * Test execute().
+     * time range is applied to the archives and the current log, and is recorded to the archive index.
+     * @throws Exception Unexpected error
+     */
+    @Test
+    public void execute_Normal_time_range() throws Exception {
+        writeRotatedLogs();
+        assertThat(execute(time(2), time(6), 0, 100), is(records(2, 6)));
+        assertThat(execute(time(2), time(6), 1, 2), is(records(3, 4)));
+
+        ArchiveLogIndex index = new ArchiveLogIndex(new File(dir, LogResource.ARCHIVE_COLLECTION));
+        File archive = EventLogWriter.getArchiveFile(new File(dir, LogResource.ARCHIVE_COLLECTION), 1);
+        ArchiveLogIndex.Entry entry = index.get(archive.getName(),
+                Files.getLastModifiedTime(archive.toPath()).toMillis(), archive.length());
+        assertThat(entry.getMinTime(), is(time(3)));
+        assertThat(entry.getMaxTime(), is(time(5)));
+
+        // searched again with the recorded time range
+        assertThat(execute(time(4), null, 0, 100), is(records(4, 8)));
+    }
+}
@@ -0,0 +1,113 @@
+/**
+ * personium.io
+ * Copyright 2018 FUJITSU LIMITED
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.personium.core.eventlog;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.nio.charset.StandardCharsets;
+
+import org.junit.Test;
+import org.junit.experimental.categories.Category;
+
+import io.personium.test.categories.Unit;
+
+/**
+ * Unit Test class for EventLogRecord, EventLogReader and EventLogQuery.
+ */
+@Category({ Unit.class })
+public class EventLogRecordTest {
+
+    private static final String RECORD = "2018-04-01T10:00:00.123Z,[INFO ],\"req-1\",\"true\",\"schema\","
+            + "\"subject\",\"cellctl.Box.create\",\"personium-localcell:/__ctl/Box\",\"a,\"\"b\"\"\"";
+
+    /**
+     * Test parse().
+     * normal.
+     */
+    @Test
+    public void parse_Normal() {
+        EventLogRecord record = EventLogRecord.parse(RECORD);
+        assertThat(record.getTime(), is(1522576800123L));
+        assertThat(record.getRequestKey(), is("req-1"));
+        assertThat(record.getSubject(), is("subject"));
+        assertThat(record.getType(), is("cellctl.Box.create"));
+        assertThat(record.getObject(), is("personium-localcell:/__ctl/Box"));
+        assertThat(record.getRaw(), is(RECORD));
+    }
+
+    /**
+     * Test parse().
+     * unquoted null item.
+     */
+    @Test
+    public void parse_Normal_null_item() {
+        EventLogRecord record = EventLogRecord.parse(
+                "2018-04-01T10:00:00Z,[INFO ],\"req-1\",\"true\",null,null,\"type\",null,null");
+        assertThat(record.getTime(), is(1522576800000L));
+        assertNull(record.getSubject());
+        assertNull(record.getObject());
+    }
+
+    /**
+     * Test parse().
+     * broken record.
+     */
+    @Test
+    public void parse_Error_broken_record() {
+        assertNull(EventLogRecord.parse("not a record"));
+        assertNull(EventLogRecord.parse("2018-04-01T10:00:00Z,[INFO ],\"req-1"));
+    }
+
+    /**
+     * Test readRecord().
+     * line break in quoted item and incomplete last record.
+     * @throws Exception Unexpected error
+     */
+    @Test
+    public void readRecord_Normal_line_break_in_quoted_item() throws Exception {
+        byte[] bytes = "a,\"x\ny\"\nb,\"z\"\nc,\"incomplete".getBytes(StandardCharsets.UTF_8);
+        try (EventLogReader reader = new EventLogReader(new ByteArrayInputStream(bytes), 0L)) {
+            assertThat(reader.readRecord(), is("a,\"x\ny\""));
+            assertThat(reader.getOffset(), is(8L));
+            assertThat(reader.readRecord(), is("b,\"z\""));
+            assertThat(reader.getOffset(), is(14L));
+            assertNull(reader.readRecord());
+            assertThat(reader.getOffset(), is(14L));
+        }
+    }
+
+    /**
+     * Test matches().
+     * time range and prefix conditions.
+     */
+    @Test
+    public void matches_Normal() {
+        EventLogRecord record = EventLogRecord.parse(RECORD);
+        assertTrue(new EventLogQuery(null, null, null, null, null, null, 0, 1).matches(record));
+        assertTrue(new EventLogQuery(1522576800123L, 1522576800123L, "cellctl.", "sub",
+                "personium-localcell:/__ctl", "req-1", 0, 1).matches(record));
+        assertFalse(new EventLogQuery(1522576800124L, null, null, null, null, null, 0, 1).matches(record));
+        assertFalse(new EventLogQuery(null, 1522576800122L, null, null, null, null, 0, 1).matches(record));
+        assertFalse(new EventLogQuery(null, null, "boxctl.", null, null, null, 0, 1).matches(record));
+        assertFalse(new EventLogQuery(null, null, null, null, null, "req-2", 0, 1).matches(record));
+    }
+}
@@ -0,0 +1,195 @@
+/**
+ * personium.io
+ * Copyright 2018 FUJITSU LIMITED
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.personium.core.eventlog;
+
+import static io.personium.core.eventlog.EventLogQueryTest.record;
+import static io.personium.core.eventlog.EventLogQueryTest.time;
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.MatcherAssert.assertThat;
+
+import java.io.File;
+import java.io.OutputStream;
+import java.io.RandomAccessFile;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.experimental.categories.Category;
+import org.junit.rules.TemporaryFolder;
+import org.powermock.reflect.Whitebox;
+
+import io.personium.core.rs.cell.LogResource;
+import io.personium.test.categories.Unit;
+
+/**
+ * Unit Test class for EventLogTimeIndex.
+ */
+@Category({ Unit.class })
+public class EventLogTimeIndexTest {
+
+    private static final int BLOCK = EventLogTimeIndex.BLOCK_SIZE;
+
+    /** Temporary directory. */
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private File dir;
+    private File logFile;
+
+    /**
+     * Before.
+     * @throws Exception Unexpected error
+     */
+    @Before
+    public void before() throws Exception {
+        dir = folder.newFolder();
+        File currentDir = new File(dir, LogResource.CURRENT_COLLECTION);
+        currentDir.mkdirs();
+        logFile = new File(currentDir, LogResource.DEFAULT_LOG);
+    }
+
+    /**
+     * Append the records of the n-th second (from <= n <= to) to the file.
+     * @return byte offset of each appended record
+     */
+    private static List<Long> append(File file, int from, int to) throws Exception {
+        List<Long> offsets = new ArrayList<Long>();
+        long offset = file.length();
+        try (OutputStream os = Files.newOutputStream(file.toPath(), StandardOpenOption.CREATE,
+                StandardOpenOption.APPEND)) {
+            for (int n = from; n <= to; n++) {
+                byte[] line = (record(n) + "\n").getBytes(StandardCharsets.UTF_8);
+                offsets.add(offset);
+                os.write(line);
+                offset += line.length;
+            }
+        }
+        return offsets;
+    }
+
+    private static List<?> blocks(EventLogTimeIndex index) {
+        return Whitebox.getInternalState(index, "blocks");
+    }
+
+    private static long indexedLength(EventLogTimeIndex index) {
+        return Whitebox.<Long>getInternalState(index, "indexedLength");
+    }
+
+    private EventLogTimeIndex update() {
+        EventLogTimeIndex index = new EventLogTimeIndex(logFile);
+        index.update();
+        return index;
+    }
+
+    /**
+     * Test update(), seek() and end().
+     * the file is read from the head of the block that may contain the time, and up to the block after it.
+     * @throws Exception Unexpected error
+     */
+    @Test
+    public void seek_Normal_block() throws Exception {
+        List<Long> offsets = append(logFile, 0, BLOCK * 2 + BLOCK / 2 - 1);
+
+        EventLogTimeIndex index = update();
+
+        // the last half block is not indexed yet
+        assertThat(blocks(index).size(), is(2));
+        assertThat(indexedLength(index), is(offsets.get(BLOCK * 2)));
+        assertThat(index.seek(time(0)), is(0L));
+        assertThat(index.seek(time(BLOCK - 1)), is(0L));
+        assertThat(index.seek(time(BLOCK)), is(offsets.get(BLOCK)));
+        assertThat(index.seek(time(BLOCK + BLOCK / 2)), is(offsets.get(BLOCK)));
+        assertThat(index.seek(time(BLOCK * 2 + 1)), is(offsets.get(BLOCK * 2)));
+        assertThat(index.end(time(BLOCK / 2)), is(offsets.get(BLOCK)));
+        assertThat(index.end(time(BLOCK)), is(Long.MAX_VALUE));
+
+        // the query reads only the blocks in the time range
+        List<String> results = new EventLogQuery(time(BLOCK + 10), time(BLOCK + 12), null, null, null, null,
+                0, 100).execute(dir);
+        assertThat(results.size(), is(3));
+        assertThat(results.get(0), is(record(BLOCK + 10)));
+    }
+
+    /**
+     * Test update().
+     * the index is saved to the file, and only the appended records are indexed on the next update.
+     * @throws Exception Unexpected error
+     */
+    @Test
+    public void update_Normal_incremental() throws Exception {
+        List<Long> first = append(logFile, 0, BLOCK + BLOCK / 2 - 1);
+        assertThat(blocks(update()).size(), is(1));
+        File indexFile = new File(logFile.getParentFile(), "." + LogResource.DEFAULT_LOG + ".idx");
+        assertThat(indexFile.exists(), is(true));
+
+        List<Long> offsets = append(logFile, BLOCK + BLOCK / 2, BLOCK * 3 - 1);
+        EventLogTimeIndex index = update();
+
+        assertThat(blocks(index).size(), is(3));
+        assertThat(index.seek(time(BLOCK)), is(first.get(BLOCK)));
+        assertThat(index.seek(time(BLOCK * 2)), is(offsets.get(BLOCK / 2)));
+    }
+
+    /**
+     * Test update().
+     * the index is rebuilt when the current log is replaced by rotation.
+     * @throws Exception Unexpected error
+     */
+    @Test
+    public void update_Normal_reset_on_rotation() throws Exception {
+        append(logFile, 0, BLOCK * 3 - 1);
+        assertThat(blocks(update()).size(), is(3));
+
+        // a new file larger than the indexed length is moved to the current log, as the old one is being archived
+        File newFile = new File(logFile.getParentFile(), "new.log");
+        List<Long> offsets = append(newFile, BLOCK * 10, BLOCK * 14 + 1);
+        Files.move(newFile.toPath(), logFile.toPath(), StandardCopyOption.REPLACE_EXISTING,
+                StandardCopyOption.ATOMIC_MOVE);
+        EventLogTimeIndex index = update();
+
+        assertThat(blocks(index).size(), is(4));
+        assertThat(indexedLength(index), is(offsets.get(BLOCK * 4)));
+        assertThat(index.seek(time(0)), is(0L));
+        assertThat(index.seek(time(BLOCK * 11)), is(offsets.get(BLOCK)));
+        assertThat(index.seek(time(BLOCK * 14)), is(offsets.get(BLOCK * 4)));
+    }
+
+    /**
+     * Test update().
+     * the index is rebuilt when the current log becomes shorter than the indexed length.
+     * @throws Exception Unexpected error
+     */
+    @Test
+    public void update_Normal_reset_on_truncate() throws Exception {
+        List<Long> offsets = append(logFile, 0, BLOCK * 2 - 1);
+        assertThat(blocks(update()).size(), is(2));
+
+        try (RandomAccessFile raf = new RandomAccessFile(logFile, "rw")) {
+            raf.setLength(offsets.get(BLOCK + BLOCK / 2));
+        }
+        EventLogTimeIndex index = update();
+
+        assertThat(blocks(index).size(), is(1));
+        assertThat(indexedLength(index), is(offsets.get(BLOCK)));
+    }
+}
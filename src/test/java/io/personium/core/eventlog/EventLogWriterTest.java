@@ -0,0 +1,312 @@
+/**
+ * personium.io
+ * Copyright 2018 FUJITSU LIMITED
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.personium.core.eventlog;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Map;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+
+import org.junit.After;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.experimental.categories.Category;
+import org.junit.rules.TemporaryFolder;
+import org.powermock.reflect.Whitebox;
+
+import io.personium.core.rs.cell.LogResource;
+import io.personium.test.categories.Unit;
+
+/**
+ * Unit Test class for EventLogWriter.
+ */
+@Category({ Unit.class })
+public class EventLogWriterTest {
+
+    private static final long NO_FLUSH = 3600000L;
+    private static final long LARGE = 1024L * 1024L;
+
+    /** Temporary directory. */
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    /**
+     * Stop writer.
+     */
+    @After
+    public void after() {
+        EventLogWriter.stop();
+        EventLogWriter.start(0, 256, LARGE, 12, LARGE);
+    }
+
+    private static String readCurrent(File dir) throws Exception {
+        File file = new File(new File(dir, LogResource.CURRENT_COLLECTION), LogResource.DEFAULT_LOG);
+        return new String(Files.readAllBytes(file.toPath()), StandardCharsets.UTF_8);
+    }
+
+    private static String readArchive(File dir, int number) throws Exception {
+        File file = EventLogWriter.getArchiveFile(new File(dir, LogResource.ARCHIVE_COLLECTION), number);
+        try (ZipFile zipFile = new ZipFile(file)) {
+            ZipEntry entry = zipFile.entries().nextElement();
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            try (InputStream in = zipFile.getInputStream(entry)) {
+                byte[] buf = new byte[1024];
+                int len;
+                while ((len = in.read(buf)) >= 0) {
+                    out.write(buf, 0, len);
+                }
+            }
+            return new String(out.toByteArray(), StandardCharsets.UTF_8);
+        }
+    }
+
+    /**
+     * Test append().
+     * not started, record is written synchronously.
+     * @throws Exception Unexpected error
+     */
+    @Test
+    public void append_Normal_sync() throws Exception {
+        File dir = folder.newFolder();
+        EventLogWriter.start(0, 256, LARGE, 12, LARGE);
+        EventLogWriter.append(dir, "a");
+        EventLogWriter.append(dir, "b");
+        String ls = System.lineSeparator();
+        assertThat(readCurrent(dir), is("a" + ls + "b" + ls));
+    }
+
+    /**
+     * Test append().
+     * started, records are buffered until flush.
+     * @throws Exception Unexpected error
+     */
+    @Test
+    public void append_Normal_buffered() throws Exception {
+        File dir1 = folder.newFolder();
+        File dir2 = folder.newFolder();
+        EventLogWriter.start(NO_FLUSH, 256, LARGE, 12, LARGE);
+        EventLogWriter.append(dir1, "a");
+        EventLogWriter.append(dir2, "b");
+        EventLogWriter.append(dir1, "c");
+        assertFalse(new File(dir1, LogResource.CURRENT_COLLECTION).exists());
+
+        EventLogWriter.flush();
+        String ls = System.lineSeparator();
+        assertThat(readCurrent(dir1), is("a" + ls + "c" + ls));
+        assertThat(readCurrent(dir2), is("b" + ls));
+    }
+
+    /**
+     * Test append().
+     * buffered size exceeds the limit, records are written by the caller.
+     * @throws Exception Unexpected error
+     */
+    @Test
+    public void append_Normal_pending_limit() throws Exception {
+        File dir = folder.newFolder();
+        EventLogWriter.start(NO_FLUSH, 256, LARGE, 12, 10);
+        EventLogWriter.append(dir, "a");
+        assertFalse(new File(dir, LogResource.CURRENT_COLLECTION).exists());
+        EventLogWriter.append(dir, "0123456789");
+        String ls = System.lineSeparator();
+        assertThat(readCurrent(dir), is("a" + ls + "0123456789" + ls));
+    }
+
+    /**
+     * Test stop().
+     * buffered records are written.
+     * @throws Exception Unexpected error
+     */
+    @Test
+    public void stop_Normal() throws Exception {
+        File dir = folder.newFolder();
+        EventLogWriter.start(NO_FLUSH, 256, LARGE, 12, LARGE);
+        EventLogWriter.append(dir, "a");
+        EventLogWriter.stop();
+        assertThat(readCurrent(dir), is("a" + System.lineSeparator()));
+    }
+
+    /**
+     * Test append().
+     * current log is archived when it reaches the size, and old archives are deleted.
+     * @throws Exception Unexpected error
+     */
+    @Test
+    public void append_Normal_rotate() throws Exception {
+        File dir = folder.newFolder();
+        EventLogWriter.start(NO_FLUSH, 256, 8, 2, LARGE);
+        for (int i = 1; i <= 4; i++) {
+            EventLogWriter.append(dir, "record" + i);
+            EventLogWriter.flush();
+        }
+        EventLogWriter.append(dir, "r5");
+        EventLogWriter.stop();
+
+        String ls = System.lineSeparator();
+        assertThat(readCurrent(dir), is("r5" + ls));
+        assertThat(readArchive(dir, 1), is("record4" + ls));
+        assertThat(readArchive(dir, 2), is("record3" + ls));
+        File archiveDir = new File(dir, LogResource.ARCHIVE_COLLECTION);
+        assertThat(archiveDir.list().length, is(2));
+        assertFalse(EventLogWriter.getArchiveFile(archiveDir, 3).exists());
+    }
+
+    /**
+     * Test append().
+     * number of open files is bounded.
+     * @throws Exception Unexpected error
+     */
+    @Test
+    public void append_Normal_open_files_bounded() throws Exception {
+        EventLogWriter.start(0, 2, LARGE, 12, LARGE);
+        File[] dirs = {folder.newFolder(), folder.newFolder(), folder.newFolder()};
+        for (int i = 0; i < 2; i++) {
+            for (File dir : dirs) {
+                EventLogWriter.append(dir, "record" + i);
+            }
+        }
+        Map<?, ?> openFiles = Whitebox.getInternalState(EventLogWriter.class, "openFiles");
+        assertThat(openFiles.size(), is(2));
+        assertTrue(openFiles.containsKey(dirs[2].getPath()));
+        String ls = System.lineSeparator();
+        for (File dir : dirs) {
+            assertThat(readCurrent(dir), is("record0" + ls + "record1" + ls));
+        }
+    }
+
+    /**
+     * Test append().
+     * records from many threads and more cells than open files are all written.
+     * @throws Exception Unexpected error
+     */
+    @Test
+    public void append_Normal_concurrent_many_cells() throws Exception {
+        final int cells = 16;
+        final int records = 10;
+        final int threads = 4;
+        final File root = folder.newFolder();
+        EventLogWriter.start(50, 4, LARGE, 12, 8 * LARGE);
+        final String record = "2018-04-01T10:00:00.123Z,[INFO ],\"req-1\",\"true\",\"schema\","
+                + "\"subject\",\"cellctl.Box.create\",\"personium-localcell:/__ctl/Box\",\"info\"";
+        Thread[] workers = new Thread[threads];
+        for (int t = 0; t < threads; t++) {
+            final int offset = t;
+            workers[t] = new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    for (int r = 0; r < records; r++) {
+                        for (int c = offset; c < cells; c += threads) {
+                            EventLogWriter.append(new File(root, "cell" + c), record);
+                        }
+                    }
+                }
+            });
+            workers[t].start();
+        }
+        for (Thread worker : workers) {
+            worker.join();
+        }
+        EventLogWriter.stop();
+
+        long expected = (long) records * (record.length() + System.lineSeparator().length());
+        for (int c = 0; c < cells; c++) {
+            File file = new File(new File(new File(root, "cell" + c), LogResource.CURRENT_COLLECTION),
+                    LogResource.DEFAULT_LOG);
+            assertThat(file.length(), is(expected));
+        }
+    }
+
+    private static void write(File file, String data, long lastModified) throws Exception {
+        file.getParentFile().mkdirs();
+        Files.write(file.toPath(), data.getBytes(StandardCharsets.UTF_8));
+        assertTrue(file.setLastModified(lastModified));
+    }
+
+    private static String read(File file) throws Exception {
+        return new String(Files.readAllBytes(file.toPath()), StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Test append().
+     * current log is moved to a unique file, so that the rotating files of other nodes on the shared storage
+     * and of the previous run are not replaced.
+     * @throws Exception Unexpected error
+     */
+    @Test
+    public void append_Normal_rotate_not_replace_other_rotating_files() throws Exception {
+        File dir = folder.newFolder();
+        File archiveDir = new File(dir, LogResource.ARCHIVE_COLLECTION);
+        String nodePrefix = Whitebox.getInternalState(EventLogWriter.class, "NODE_ROTATING_PREFIX");
+        File otherNode = new File(archiveDir, EventLogWriter.ROTATING_PREFIX + "othernode.1");
+        File oldName = new File(archiveDir, EventLogWriter.ROTATING_PREFIX + "1");
+        File sameNode = new File(archiveDir, nodePrefix + "1");
+        write(otherNode, "other", System.currentTimeMillis());
+        write(oldName, "old", System.currentTimeMillis());
+        write(sameNode, "same", System.currentTimeMillis());
+
+        EventLogWriter.start(0, 256, 8, 12, LARGE);
+        EventLogWriter.append(dir, "record1");
+
+        assertThat(readArchive(dir, 1), is("record1" + System.lineSeparator()));
+        assertThat(read(otherNode), is("other"));
+        assertThat(read(oldName), is("old"));
+        assertThat(read(sameNode), is("same"));
+    }
+
+    /**
+     * Test recover().
+     * rotating files this node left are archived from the oldest, and those of other nodes are left.
+     * @throws Exception Unexpected error
+     */
+    @Test
+    public void recover_Normal_leftover_rotating_files() throws Exception {
+        File root = folder.newFolder();
+        File archiveDir = new File(new File(root, "cell1"), LogResource.ARCHIVE_COLLECTION);
+        String nodePrefix = Whitebox.getInternalState(EventLogWriter.class, "NODE_ROTATING_PREFIX");
+        long now = System.currentTimeMillis();
+        write(EventLogWriter.getArchiveFile(archiveDir, 1), "not a zip", now - 30000L);
+        write(new File(archiveDir, nodePrefix + "b"), "older", now - 20000L);
+        write(new File(archiveDir, nodePrefix + "a"), "newer", now - 10000L);
+        File zipping = new File(archiveDir, nodePrefix + "a.zip.tmp");
+        write(zipping, "partial", now);
+        File otherNode = new File(archiveDir, EventLogWriter.ROTATING_PREFIX + "othernode.1");
+        write(otherNode, "other", now);
+        // the current log is not archived
+        write(new File(new File(new File(root, "cell1"), LogResource.CURRENT_COLLECTION), LogResource.DEFAULT_LOG),
+                "current", now);
+
+        EventLogWriter.recover(root, 3);
+
+        File dir = new File(root, "cell1");
+        assertThat(readArchive(dir, 1), is("newer"));
+        assertThat(readArchive(dir, 2), is("older"));
+        assertThat(read(EventLogWriter.getArchiveFile(archiveDir, 3)), is("not a zip"));
+        assertFalse(zipping.exists());
+        assertThat(read(otherNode), is("other"));
+        assertThat(readCurrent(dir), is("current"));
+        assertThat(archiveDir.list().length, is(4));
+    }
+}
@@ -629,6 +629,32 @@ public class RangeHeaderHandlerTest {
             assertEquals(false, range.isValid());
         }
 
+        /**
+         * getCoalescedByteRangeSpecList()のテスト.
+         * 範囲が重なる、または隣接しているbyte-range-specが結合され、開始位置の昇順に並ぶこと.
+         * @throws Exception Exception
+         */
+        @Test
+        public void 正常系マルチバイトレンジ結合() throws Exception {
+            long fileSize = 27;
+            String rangeHeader = "bytes=20-22,3-5,6-8,4-4,-2";
+
+            RangeHeaderHandler range = RangeHeaderHandler.parse(rangeHeader, fileSize);
+
+            // 指定された順序のまま保持されていることの確認
+            assertEquals(5, range.getByteRangeSpecCount());
+
+            List<ByteRangeSpec> coalesced = range.getCoalescedByteRangeSpecList();
+            assertEquals(3, coalesced.size());
+            assertEquals(3, coalesced.get(0).getFirstBytePos());
+            assertEquals(8, coalesced.get(0).getLastBytePos());
+            assertEquals(20, coalesced.get(1).getFirstBytePos());
+            assertEquals(22, coalesced.get(1).getLastBytePos());
+            assertEquals(25, coalesced.get(2).getFirstBytePos());
+            assertEquals(26, coalesced.get(2).getLastBytePos());
+            assertEquals("bytes 3-8/27", coalesced.get(0).makeContentRangeHeaderField());
+        }
+
         /**
          * 正常系テストの共通チェック処理.
          * @param exInstanceLength instance-length期待値
@@ -0,0 +1,195 @@
+/**
+ * personium.io
+ * Copyright 2018 FUJITSU LIMITED
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.personium.core.jersey.filter;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyLong;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.OutputStream;
+import java.util.Arrays;
+import java.util.List;
+import java.util.zip.GZIPInputStream;
+
+import org.apache.commons.io.IOUtils;
+import org.apache.http.HttpHeaders;
+import org.apache.http.HttpStatus;
+import org.junit.Test;
+import org.junit.experimental.categories.Category;
+
+import com.sun.jersey.core.header.OutBoundHeaders;
+import com.sun.jersey.spi.container.ContainerResponse;
+import com.sun.jersey.spi.container.ContainerResponseWriter;
+
+import io.personium.test.categories.Unit;
+
+/**
+ * Unit Test class for CompressingResponseWriter.
+ */
+@Category({ Unit.class })
+public class CompressingResponseWriterTest {
+
+    private static final int MIN_SIZE = 16;
+
+    /**
+     * Test acceptsGzip().
+     * gzip, wildcard and quality values.
+     */
+    @Test
+    public void acceptsGzip_Normal() {
+        assertTrue(CompressingResponseWriter.acceptsGzip("gzip, deflate"));
+        assertTrue(CompressingResponseWriter.acceptsGzip("deflate, GZIP;q=0.5"));
+        assertTrue(CompressingResponseWriter.acceptsGzip("*"));
+        assertFalse(CompressingResponseWriter.acceptsGzip(null));
+        assertFalse(CompressingResponseWriter.acceptsGzip("deflate"));
+        assertFalse(CompressingResponseWriter.acceptsGzip("gzip;q=0, *"));
+        assertFalse(CompressingResponseWriter.acceptsGzip("identity, *;q=0"));
+    }
+
+    /**
+     * Test isCompressibleType().
+     * wildcard, suffix and parameters.
+     */
+    @Test
+    public void isCompressibleType_Normal() {
+        List<String> types = Arrays.asList("text/*", "application/json");
+        assertTrue(CompressingResponseWriter.isCompressibleType("text/csv", types));
+        assertTrue(CompressingResponseWriter.isCompressibleType("application/json; charset=utf-8", types));
+        assertTrue(CompressingResponseWriter.isCompressibleType("application/atom+xml;type=feed", types));
+        assertFalse(CompressingResponseWriter.isCompressibleType("image/png", types));
+        assertFalse(CompressingResponseWriter.isCompressibleType("application/zip", types));
+        assertFalse(CompressingResponseWriter.isCompressibleType(null, types));
+    }
+
+    /**
+     * Test writeStatusAndHeaders().
+     * body over the threshold is compressed.
+     * @throws Exception Unexpected error
+     */
+    @Test
+    public void writeStatusAndHeaders_Normal_compressed() throws Exception {
+        ByteArrayOutputStream sent = new ByteArrayOutputStream();
+        ContainerResponse response = mockResponse(HttpStatus.SC_OK, "application/json");
+        CompressingResponseWriter writer = new CompressingResponseWriter(mockWriter(sent), MIN_SIZE);
+
+        byte[] body = "{\"d\":{\"results\":[1,2,3,4,5,6,7,8,9]}}".getBytes("UTF-8");
+        OutputStream out = writer.writeStatusAndHeaders(-1, response);
+        out.write(body, 0, 10);
+        out.write(body, 10, body.length - 10);
+        writer.finish();
+
+        assertThat(response.getHttpHeaders().getFirst(HttpHeaders.CONTENT_ENCODING), is((Object) "gzip"));
+        assertThat(response.getHttpHeaders().getFirst(HttpHeaders.VARY), is((Object) HttpHeaders.ACCEPT_ENCODING));
+        byte[] decoded = IOUtils.toByteArray(new GZIPInputStream(new ByteArrayInputStream(sent.toByteArray())));
+        assertThat(decoded, is(body));
+    }
+
+    /**
+     * Test writeStatusAndHeaders().
+     * strong ETag of the compressed response is changed to weak ETag.
+     * @throws Exception Unexpected error
+     */
+    @Test
+    public void writeStatusAndHeaders_Normal_etag_is_weakened() throws Exception {
+        byte[] body = "0123456789012345678901234567890123456789".getBytes("UTF-8");
+
+        ContainerResponse response = mockResponse(HttpStatus.SC_OK, "text/plain");
+        response.getHttpHeaders().putSingle(HttpHeaders.ETAG, "\"1-1487652733383\"");
+        CompressingResponseWriter writer = new CompressingResponseWriter(
+                mockWriter(new ByteArrayOutputStream()), MIN_SIZE);
+        writer.writeStatusAndHeaders(body.length, response).write(body);
+        writer.finish();
+        assertThat(response.getHttpHeaders().getFirst(HttpHeaders.ETAG), is((Object) "W/\"1-1487652733383\""));
+
+        // weak ETag is not changed.
+        response = mockResponse(HttpStatus.SC_OK, "text/plain");
+        response.getHttpHeaders().putSingle(HttpHeaders.ETAG, "W/\"1-1487652733383\"");
+        writer = new CompressingResponseWriter(mockWriter(new ByteArrayOutputStream()), MIN_SIZE);
+        writer.writeStatusAndHeaders(-1, response).write(body);
+        writer.finish();
+        assertThat(response.getHttpHeaders().getFirst(HttpHeaders.ETAG), is((Object) "W/\"1-1487652733383\""));
+
+        // ETag of the uncompressed response is not changed.
+        response = mockResponse(HttpStatus.SC_OK, "text/plain");
+        response.getHttpHeaders().putSingle(HttpHeaders.ETAG, "\"1-1487652733383\"");
+        writer = new CompressingResponseWriter(mockWriter(new ByteArrayOutputStream()), MIN_SIZE);
+        writer.writeStatusAndHeaders(-1, response).write("short".getBytes("UTF-8"));
+        writer.finish();
+        assertThat(response.getHttpHeaders().getFirst(HttpHeaders.ETAG), is((Object) "\"1-1487652733383\""));
+    }
+
+    /**
+     * Test writeStatusAndHeaders().
+     * body under the threshold is not compressed.
+     * @throws Exception Unexpected error
+     */
+    @Test
+    public void writeStatusAndHeaders_Normal_under_threshold() throws Exception {
+        ByteArrayOutputStream sent = new ByteArrayOutputStream();
+        ContainerResponse response = mockResponse(HttpStatus.SC_OK, "text/plain");
+        CompressingResponseWriter writer = new CompressingResponseWriter(mockWriter(sent), MIN_SIZE);
+
+        byte[] body = "short".getBytes("UTF-8");
+        writer.writeStatusAndHeaders(-1, response).write(body);
+        writer.finish();
+
+        assertNull(response.getHttpHeaders().getFirst(HttpHeaders.CONTENT_ENCODING));
+        assertThat(sent.toByteArray(), is(body));
+    }
+
+    /**
+     * Test writeStatusAndHeaders().
+     * partial content is not compressed.
+     * @throws Exception Unexpected error
+     */
+    @Test
+    public void writeStatusAndHeaders_Normal_partial_content() throws Exception {
+        ByteArrayOutputStream sent = new ByteArrayOutputStream();
+        ContainerResponse response = mockResponse(HttpStatus.SC_PARTIAL_CONTENT, "text/plain");
+        CompressingResponseWriter writer = new CompressingResponseWriter(mockWriter(sent), MIN_SIZE);
+
+        byte[] body = "0123456789012345678901234567890123456789".getBytes("UTF-8");
+        writer.writeStatusAndHeaders(body.length, response).write(body);
+        writer.finish();
+
+        assertNull(response.getHttpHeaders().getFirst(HttpHeaders.CONTENT_ENCODING));
+        assertThat(sent.toByteArray(), is(body));
+    }
+
+    private static ContainerResponse mockResponse(int status, String contentType) {
+        OutBoundHeaders headers = new OutBoundHeaders();
+        headers.putSingle(HttpHeaders.CONTENT_TYPE, contentType);
+        ContainerResponse response = mock(ContainerResponse.class);
+        when(response.getStatus()).thenReturn(status);
+        when(response.getHttpHeaders()).thenReturn(headers);
+        return response;
+    }
+
+    private static ContainerResponseWriter mockWriter(OutputStream sent) throws Exception {
+        ContainerResponseWriter writer = mock(ContainerResponseWriter.class);
+        when(writer.writeStatusAndHeaders(anyLong(), any(ContainerResponse.class))).thenReturn(sent);
+        return writer;
+    }
+}
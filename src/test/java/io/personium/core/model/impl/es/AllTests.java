@@ -25,6 +25,7 @@ import org.junit.runners.Suite.SuiteClasses;
  */
 @RunWith(Suite.class)
 @SuiteClasses({
+    CellPurgeQueueTest.class,
     EsModelTest.class
     })
 public class AllTests {
@@ -0,0 +1,294 @@
+/**
+ * personium.io
+ * Copyright 2018 FUJITSU LIMITED
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.personium.core.model.impl.es;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.MatcherAssert.assertThat;
+
+import java.io.File;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.commons.io.FileUtils;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.experimental.categories.Category;
+import org.powermock.reflect.Whitebox;
+
+import io.personium.core.PersoniumUnitConfig;
+import io.personium.test.categories.Unit;
+
+/**
+ * Unit Test class for CellPurgeQueue.
+ */
+@Category({ Unit.class })
+public class CellPurgeQueueTest {
+
+    private static final String TEST_DIR = "/personium_nfs/personium-core/unitTest/CellPurgeQueueTest/";
+    private static final String OTHER_NODE = "other-node";
+
+    private String root;
+    private String retryInterval;
+    private String staleTimeout;
+
+    /**
+     * Before.
+     * @throws Exception Unintended exception in test
+     */
+    @Before
+    public void before() throws Exception {
+        root = PersoniumUnitConfig.get(PersoniumUnitConfig.CellPurge.ROOT);
+        retryInterval = PersoniumUnitConfig.get(PersoniumUnitConfig.CellPurge.RETRY_INTERVAL);
+        staleTimeout = PersoniumUnitConfig.get(PersoniumUnitConfig.CellPurge.STALE_TIMEOUT);
+        PersoniumUnitConfig.set(PersoniumUnitConfig.CellPurge.ROOT, TEST_DIR);
+        PersoniumUnitConfig.set(PersoniumUnitConfig.CellPurge.RETRY_INTERVAL, "10");
+        PersoniumUnitConfig.set(PersoniumUnitConfig.CellPurge.STALE_TIMEOUT, "600");
+        FileUtils.deleteDirectory(new File(TEST_DIR));
+    }
+
+    /**
+     * After.
+     * @throws Exception Unintended exception in test
+     */
+    @After
+    public void after() throws Exception {
+        Whitebox.setInternalState(CellPurgeQueue.class, "stopped", false);
+        Whitebox.<Map<?, ?>>getInternalState(CellPurgeQueue.class, "ACTIVE_JOBS").clear();
+        FileUtils.deleteDirectory(new File(TEST_DIR));
+        restore(PersoniumUnitConfig.CellPurge.ROOT, root);
+        restore(PersoniumUnitConfig.CellPurge.RETRY_INTERVAL, retryInterval);
+        restore(PersoniumUnitConfig.CellPurge.STALE_TIMEOUT, staleTimeout);
+    }
+
+    private static void restore(String key, String value) {
+        if (value != null) {
+            PersoniumUnitConfig.set(key, value);
+        } else {
+            PersoniumUnitConfig.getProperties().remove(key);
+        }
+    }
+
+    private static CellPurgeQueue.Job saveJob(File dir, String cellId) throws Exception {
+        dir.mkdirs();
+        CellPurgeQueue.Job job = new CellPurgeQueue.Job(new File(dir, cellId + ".json"), cellId, "cell-" + cellId,
+                "owner", "bundle", "bundle");
+        job.save();
+        return job;
+    }
+
+    private static CellPurgeQueue.Job saveReleasedJob(String cellId, long retryAfter) throws Exception {
+        CellPurgeQueue.Job job = saveJob(new File(TEST_DIR), cellId);
+        Whitebox.setInternalState(job, "retryAfter", retryAfter);
+        job.save();
+        return job;
+    }
+
+    private static File otherNodeDir() {
+        return new File(CellPurgeQueue.getRunningDir().getParentFile(), OTHER_NODE);
+    }
+
+    private static long retries(CellPurgeQueue.Job job) {
+        return Whitebox.<Long>getInternalState(job, "retries");
+    }
+
+    private static long retryAfter(CellPurgeQueue.Job job) {
+        return Whitebox.<Long>getInternalState(job, "retryAfter");
+    }
+
+    private static boolean takenOver(CellPurgeQueue.Job job) {
+        return Whitebox.<Boolean>getInternalState(job, "takenOver");
+    }
+
+    /**
+     * Test claimReleasedJobs().
+     * only the released jobs whose retry time has come are moved to the running directory.
+     * @throws Exception Unintended exception in test
+     */
+    @Test
+    public void claimReleasedJobs_Normal_due_jobs_only() throws Exception {
+        long now = System.currentTimeMillis();
+        saveJob(new File(TEST_DIR), "new");
+        saveReleasedJob("due", now - 1);
+        saveReleasedJob("backedoff", now + 60000);
+
+        List<File> claimed = CellPurgeQueue.claimReleasedJobs(now);
+
+        File runningDir = CellPurgeQueue.getRunningDir();
+        assertThat(claimed.size(), is(2));
+        assertThat(claimed.contains(new File(runningDir, "new.json")), is(true));
+        assertThat(claimed.contains(new File(runningDir, "due.json")), is(true));
+        assertThat(new File(runningDir, "new.json").exists(), is(true));
+        assertThat(new File(runningDir, "due.json").exists(), is(true));
+        assertThat(new File(TEST_DIR, "backedoff.json").exists(), is(true));
+        assertThat(new File(runningDir, "backedoff.json").exists(), is(false));
+
+        // claimed once the backoff has passed
+        claimed = CellPurgeQueue.claimReleasedJobs(now + 60001);
+        assertThat(claimed.size(), is(1));
+        assertThat(new File(runningDir, "backedoff.json").exists(), is(true));
+    }
+
+    /**
+     * Test release().
+     * a failed job is released with a retry time that doubles on every failure.
+     * @throws Exception Unintended exception in test
+     */
+    @Test
+    public void release_Normal_failed_job_is_backed_off() throws Exception {
+        CellPurgeQueue.Job job = saveJob(CellPurgeQueue.getRunningDir(), "cell1");
+
+        long before = System.currentTimeMillis();
+        job.release(true);
+        File released = new File(TEST_DIR, "cell1.json");
+        assertThat(released.exists(), is(true));
+        CellPurgeQueue.Job loaded = CellPurgeQueue.Job.load(released);
+        assertThat(retries(loaded), is(1L));
+        assertThat(retryAfter(loaded) >= before + 10000L, is(true));
+        assertThat(retryAfter(loaded) <= System.currentTimeMillis() + 10000L, is(true));
+
+        // released again after the retry failed
+        List<File> claimed = CellPurgeQueue.claimReleasedJobs(retryAfter(loaded));
+        loaded = CellPurgeQueue.Job.load(claimed.get(0));
+        before = System.currentTimeMillis();
+        loaded.release(true);
+        loaded = CellPurgeQueue.Job.load(released);
+        assertThat(retries(loaded), is(2L));
+        assertThat(retryAfter(loaded) >= before + 20000L, is(true));
+    }
+
+    /**
+     * Test release().
+     * a job interrupted by shutdown is released without backoff.
+     * @throws Exception Unintended exception in test
+     */
+    @Test
+    public void release_Normal_interrupted_job_is_not_backed_off() throws Exception {
+        CellPurgeQueue.Job job = saveJob(CellPurgeQueue.getRunningDir(), "cell1");
+        Whitebox.setInternalState(CellPurgeQueue.class, "stopped", true);
+
+        job.run();
+
+        File released = new File(TEST_DIR, "cell1.json");
+        assertThat(new File(CellPurgeQueue.getRunningDir(), "cell1.json").exists(), is(false));
+        CellPurgeQueue.Job loaded = CellPurgeQueue.Job.load(released);
+        assertThat(retries(loaded), is(0L));
+        assertThat(retryAfter(loaded), is(0L));
+        assertThat(CellPurgeQueue.claimReleasedJobs(System.currentTimeMillis()).size(), is(1));
+    }
+
+    /**
+     * Test getRetryDelay().
+     * the delay doubles from the retry interval and stops doubling after the sixth failure.
+     */
+    @Test
+    public void getRetryDelay_Normal() {
+        assertThat(CellPurgeQueue.getRetryDelay(1), is(10000L));
+        assertThat(CellPurgeQueue.getRetryDelay(2), is(20000L));
+        assertThat(CellPurgeQueue.getRetryDelay(3), is(40000L));
+        assertThat(CellPurgeQueue.getRetryDelay(7), is(640000L));
+        assertThat(CellPurgeQueue.getRetryDelay(100), is(640000L));
+    }
+
+    /**
+     * Test takeOverStaleJobs().
+     * only the jobs of another node without heartbeat for the stale timeout are taken over.
+     * @throws Exception Unintended exception in test
+     */
+    @Test
+    public void takeOverStaleJobs_Normal_stale_jobs_only() throws Exception {
+        long now = System.currentTimeMillis();
+        File otherDir = otherNodeDir();
+        saveJob(otherDir, "stale");
+        saveJob(otherDir, "fresh");
+        new File(otherDir, "stale.json").setLastModified(now - 601000L);
+        new File(otherDir, "fresh.json").setLastModified(now - 599000L);
+        saveJob(CellPurgeQueue.getRunningDir(), "own");
+        new File(CellPurgeQueue.getRunningDir(), "own.json").setLastModified(now - 601000L);
+
+        List<File> claimed = CellPurgeQueue.takeOverStaleJobs(now);
+
+        File runningDir = CellPurgeQueue.getRunningDir();
+        File taken = new File(runningDir, "stale.json");
+        assertThat(claimed.size(), is(1));
+        assertThat(claimed.get(0), is(taken));
+        assertThat(taken.exists(), is(true));
+        // touched at once so that a third node does not take it over again
+        assertThat(Math.abs(taken.lastModified() - now) < 2000L, is(true));
+        assertThat(new File(otherDir, "stale.json").exists(), is(false));
+        assertThat(new File(otherDir, "fresh.json").exists(), is(true));
+        // the jobs of this node are never taken over by itself
+        assertThat(new File(runningDir, "own.json").exists(), is(true));
+    }
+
+    /**
+     * Test heartbeat().
+     * the job file is touched, and the job notices when another node has taken it over.
+     * @throws Exception Unintended exception in test
+     */
+    @Test
+    public void heartbeat_Normal_detects_take_over() throws Exception {
+        long now = System.currentTimeMillis();
+        CellPurgeQueue.Job job = saveJob(CellPurgeQueue.getRunningDir(), "cell1");
+        File jobFile = new File(CellPurgeQueue.getRunningDir(), "cell1.json");
+        jobFile.setLastModified(now - 601000L);
+        Whitebox.<Map<String, CellPurgeQueue.Job>>getInternalState(CellPurgeQueue.class, "ACTIVE_JOBS")
+                .put("cell1", job);
+
+        CellPurgeQueue.heartbeat(now);
+        assertThat(Math.abs(jobFile.lastModified() - now) < 2000L, is(true));
+        assertThat(takenOver(job), is(false));
+
+        // taken over by another node
+        File otherDir = otherNodeDir();
+        otherDir.mkdirs();
+        Files.move(jobFile.toPath(), new File(otherDir, "cell1.json").toPath());
+        CellPurgeQueue.heartbeat(now);
+        assertThat(takenOver(job), is(true));
+
+        // a job taken over is neither executed nor released
+        job.run();
+        assertThat(new File(otherDir, "cell1.json").exists(), is(true));
+        assertThat(new File(TEST_DIR, "cell1.json").exists(), is(false));
+    }
+
+    /**
+     * Test Job.load().
+     * a job file written by an older version without the retry state is loaded as never failed.
+     * @throws Exception Unintended exception in test
+     */
+    @Test
+    public void load_Normal_job_file_without_retry_state() throws Exception {
+        File dir = new File(TEST_DIR);
+        dir.mkdirs();
+        File jobFile = new File(dir, "cell1.json");
+        try (Writer writer = Files.newBufferedWriter(jobFile.toPath(), StandardCharsets.UTF_8)) {
+            writer.write("{\"CellId\":\"cell1\",\"CellName\":\"cell-cell1\",\"Owner\":null,"
+                    + "\"DataBundleName\":\"bundle\",\"DataBundleNameWithOutPrefix\":\"bundle\",\"Phase\":\"DAV\","
+                    + "\"DeletedFiles\":10,\"DeletedEntities\":0,\"StartedAt\":\"2018-01-01T00:00:00.000Z\"}");
+        }
+
+        CellPurgeQueue.Job job = CellPurgeQueue.Job.load(jobFile);
+
+        assertThat(retries(job), is(0L));
+        assertThat(retryAfter(job), is(0L));
+        assertThat(CellPurgeQueue.claimReleasedJobs(System.currentTimeMillis()).size(), is(1));
+    }
+}
@@ -0,0 +1,247 @@
+/**
+ * personium.io
+ * Copyright 2018 FUJITSU LIMITED
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.personium.core.model.impl.es.memory;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.experimental.categories.Category;
+
+import io.personium.common.es.EsBulkRequest;
+import io.personium.common.es.EsIndex;
+import io.personium.common.es.EsType;
+import io.personium.common.es.response.PersoniumBulkResponse;
+import io.personium.common.es.response.PersoniumGetResponse;
+import io.personium.common.es.response.PersoniumIndexResponse;
+import io.personium.common.es.response.PersoniumItem;
+import io.personium.common.es.response.PersoniumMultiSearchResponse;
+import io.personium.common.es.response.PersoniumSearchHit;
+import io.personium.common.es.response.PersoniumSearchResponse;
+import io.personium.core.PersoniumCoreException;
+import io.personium.core.model.impl.es.QueryMapFactory;
+import io.personium.core.rs.odata.MapBulkRequest;
+import io.personium.test.categories.Unit;
+
+/**
+ * Unit Test class for MemoryDataStore.
+ */
+@Category({ Unit.class })
+public class MemoryDataStoreTest {
+
+    private static final String INDEX_NAME = "u0_test";
+    private static final String TYPE_NAME = "UserData";
+
+    private EsIndex index;
+    private EsType type;
+
+    /**
+     * Before.
+     */
+    @Before
+    public void before() {
+        MemoryDataStore.clear();
+        index = MemoryDataStore.index(INDEX_NAME, EsIndex.CATEGORY_USR);
+        type = MemoryDataStore.type(INDEX_NAME, TYPE_NAME);
+    }
+
+    /**
+     * After.
+     */
+    @After
+    public void after() {
+        MemoryDataStore.clear();
+    }
+
+    private static Map<String, Object> doc(String cellId, String name, long updated) {
+        Map<String, Object> source = new HashMap<String, Object>();
+        Map<String, Object> staticFields = new HashMap<String, Object>();
+        staticFields.put("Name", name);
+        staticFields.put("Tags", Arrays.asList("a", name));
+        source.put("c", cellId);
+        source.put("s", staticFields);
+        source.put("u", updated);
+        return source;
+    }
+
+    private static List<String> ids(PersoniumSearchResponse response) {
+        List<String> ids = new ArrayList<String>();
+        for (PersoniumSearchHit hit : response.getHits().getHits()) {
+            ids.add(hit.getId());
+        }
+        return ids;
+    }
+
+    /**
+     * Test create(), get(), update() and delete().
+     * versions are incremented and source is copied.
+     */
+    @Test
+    public void crud_Normal() {
+        Map<String, Object> source = doc("cell1", "taro", 1L);
+        PersoniumIndexResponse created = type.create("id1", source);
+        assertThat(created.getId(), is("id1"));
+        assertThat(created.getVersion(), is(1L));
+        source.put("c", "modified");
+
+        PersoniumGetResponse got = type.get("id1");
+        assertTrue(got.isExists());
+        assertThat(got.getVersion(), is(1L));
+        assertThat((String) got.getSource().get("c"), is("cell1"));
+
+        PersoniumIndexResponse updated = type.update("id1", doc("cell1", "jiro", 2L), 1L);
+        assertThat(updated.getVersion(), is(2L));
+
+        type.delete("id1", 2L);
+        assertFalse(type.get("id1").isExists());
+        assertNull(type.get("id1").getSource());
+    }
+
+    /**
+     * Test update().
+     * version mismatch.
+     */
+    @Test
+    public void update_Error_version_mismatch() {
+        type.create("id1", doc("cell1", "taro", 1L));
+        try {
+            type.update("id1", doc("cell1", "jiro", 2L), 5L);
+            fail("version mismatch was not detected");
+        } catch (PersoniumCoreException e) {
+            assertThat(e.getCode(), is(PersoniumCoreException.OData.ETAG_NOT_MATCH.getCode()));
+        }
+        assertThat(type.get("id1").getVersion(), is(1L));
+    }
+
+    /**
+     * Test search().
+     * filtered query with implicit filters, range, missing, sort and paging.
+     */
+    @Test
+    public void search_Normal_filtered_query() {
+        type.create("id1", doc("cell1", "taro", 3L));
+        type.create("id2", doc("cell1", "jiro", 1L));
+        type.create("id3", doc("cell1", "saburo", 2L));
+        type.create("id4", doc("cell2", "shiro", 4L));
+
+        List<Map<String, Object>> filters = new ArrayList<Map<String, Object>>();
+        filters.add(QueryMapFactory.termFilter("c", "cell1", true));
+        filters.add(QueryMapFactory.rangeFilter("u", "gte", 2L));
+        Map<String, Object> request = QueryMapFactory.query(
+                QueryMapFactory.filteredQuery(null, QueryMapFactory.andFilter(filters)));
+        request.put("sort", Arrays.asList(QueryMapFactory.sortQuery("u", "desc")));
+        assertThat(ids(type.search(request)), is(Arrays.asList("id1", "id3")));
+
+        request = QueryMapFactory.query(QueryMapFactory.filteredQuery(null,
+                QueryMapFactory.termFilter("s.Name.untouched", "jiro", false)));
+        assertThat(ids(type.search(request)), is(Arrays.asList("id2")));
+
+        request = QueryMapFactory.query(QueryMapFactory.filteredQuery(null, QueryMapFactory.missingFilter("s.Age")));
+        request.put("sort", Arrays.asList(QueryMapFactory.sortQuery("u", "asc")));
+        request.put("from", 1);
+        request.put("size", 2);
+        PersoniumSearchResponse response = type.search(request);
+        assertThat(ids(response), is(Arrays.asList("id3", "id1")));
+        assertThat(response.getHits().getAllPages(), is(4L));
+    }
+
+    /**
+     * Test search().
+     * bool query, terms on arrays and match.
+     */
+    @Test
+    public void search_Normal_bool_query() {
+        type.create("id1", doc("cell1", "Taro", 1L));
+        type.create("id2", doc("cell1", "jiro", 2L));
+        type.create("id3", doc("cell2", "saburo", 3L));
+
+        Map<String, Object> match = new HashMap<String, Object>();
+        match.put("s.Name", "TAR");
+        Map<String, Object> matchQuery = new HashMap<String, Object>();
+        matchQuery.put("match", match);
+        List<Map<String, Object>> should = new ArrayList<Map<String, Object>>();
+        should.add(matchQuery);
+        should.add(QueryMapFactory.termQuery("s.Tags", "saburo"));
+        Map<String, Object> request = QueryMapFactory.query(QueryMapFactory.shouldQuery(should));
+        request.put("sort", "u");
+        assertThat(ids(type.search(request)), is(Arrays.asList("id1", "id3")));
+
+        List<Map<String, Object>> must = new ArrayList<Map<String, Object>>();
+        must.add(QueryMapFactory.termQuery("c", "cell1"));
+        must.add(QueryMapFactory.termQuery("_id", "id2"));
+        request = QueryMapFactory.query(QueryMapFactory.mustQuery(must));
+        assertThat(ids(type.search(request)), is(Arrays.asList("id2")));
+    }
+
+    /**
+     * Test search().
+     * unsupported query is rejected instead of being ignored.
+     */
+    @Test(expected = UnsupportedOperationException.class)
+    public void search_Error_unsupported_query() {
+        type.create("id1", doc("cell1", "taro", 1L));
+        Map<String, Object> script = new HashMap<String, Object>();
+        script.put("script", new HashMap<String, Object>());
+        type.search(QueryMapFactory.query(script));
+    }
+
+    /**
+     * Test bulkRequest(), multiSearch() and deleteByQuery().
+     */
+    @Test
+    public void bulkRequest_Normal() {
+        List<EsBulkRequest> requests = new ArrayList<EsBulkRequest>();
+        requests.add(new MapBulkRequest(EsBulkRequest.BulkRequestType.INDEX, TYPE_NAME, "id1",
+                doc("cell1", "taro", 1L)));
+        requests.add(new MapBulkRequest(EsBulkRequest.BulkRequestType.INDEX, "link", "id2",
+                doc("cell1", "jiro", 2L)));
+        PersoniumBulkResponse bulkResponse = index.bulkRequest("cell1", requests, false);
+        assertThat(bulkResponse.items().length, is(2));
+        assertFalse(bulkResponse.items()[0].isFailed());
+
+        List<Map<String, Object>> queries = new ArrayList<Map<String, Object>>();
+        queries.add(QueryMapFactory.query(QueryMapFactory.termQuery("_type", "link")));
+        queries.add(QueryMapFactory.query(QueryMapFactory.termQuery("c", "cell1")));
+        PersoniumMultiSearchResponse multi = index.multiSearch("cell1", queries);
+        List<Integer> counts = new ArrayList<Integer>();
+        for (PersoniumItem item : multi) {
+            counts.add(item.getSearchHits().length);
+        }
+        assertThat(counts, is(Arrays.asList(1, 2)));
+
+        index.deleteByQuery("cell1", QueryMapFactory.query(QueryMapFactory.termQuery("s.Name", "taro")));
+        assertFalse(type.get("id1").isExists());
+        assertTrue(MemoryDataStore.type(INDEX_NAME, "link").get("id2").isExists());
+
+        requests.clear();
+        requests.add(new MapBulkRequest(EsBulkRequest.BulkRequestType.DELETE, "link", "id2", null));
+        index.bulkRequest("cell1", requests, false);
+        assertFalse(MemoryDataStore.type(INDEX_NAME, "link").get("id2").isExists());
+    }
+}
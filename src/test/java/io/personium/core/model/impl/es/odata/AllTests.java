@@ -25,6 +25,8 @@ import org.junit.runners.Suite.SuiteClasses;
  */
 @RunWith(Suite.class)
 @SuiteClasses({
+    EsODataProducerMemoryStoreTest.class,
+    EsODataProducerTest.class,
     MessageODataProducerTest.class,
     UnitCtlODataProducerTest.class
 })
@@ -0,0 +1,208 @@
+/**
+ * personium.io
+ * Copyright 2018 FUJITSU LIMITED
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.personium.core.model.impl.es.odata;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.nullValue;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyString;
+import static org.mockito.Mockito.doNothing;
+import static org.mockito.Mockito.doReturn;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.spy;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.joda.time.LocalDateTime;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.experimental.categories.Category;
+import org.odata4j.core.OEntities;
+import org.odata4j.core.OEntity;
+import org.odata4j.core.OEntityKey;
+import org.odata4j.core.OLink;
+import org.odata4j.core.OProperties;
+import org.odata4j.core.OProperty;
+import org.odata4j.edm.EdmEntitySet;
+import org.odata4j.expression.BoolCommonExpression;
+import org.odata4j.producer.EntitiesResponse;
+import org.odata4j.producer.EntityResponse;
+import org.odata4j.producer.QueryInfo;
+
+import io.personium.common.es.response.PersoniumSearchHit;
+import io.personium.common.es.response.PersoniumSearchResponse;
+import io.personium.common.es.util.PersoniumUUID;
+import io.personium.core.PersoniumCoreException;
+import io.personium.core.PersoniumUnitConfig;
+import io.personium.core.auth.AccessContext;
+import io.personium.core.model.Cell;
+import io.personium.core.model.impl.es.EsModel;
+import io.personium.core.model.impl.es.doc.EntitySetDocHandler;
+import io.personium.core.model.impl.es.memory.MemoryDataStore;
+import io.personium.core.model.lock.Lock;
+import io.personium.core.odata.OEntityWrapper;
+import io.personium.core.odata.PersoniumODataProducer.BulkDeleteHook;
+import io.personium.core.odata.PersoniumOptionsQueryParser;
+import io.personium.core.rs.odata.BulkRequest;
+import io.personium.test.categories.Unit;
+
+/**
+ * Unit Test class for EsODataProducer running against the in-memory data store.
+ */
+@Category({ Unit.class })
+public class EsODataProducerMemoryStoreTest {
+
+    private static final BulkDeleteHook NOOP_HOOK = new BulkDeleteHook() {
+        @Override
+        public void beforeDelete(String entitySetName, OEntityKey oEntityKey) {
+        }
+    };
+
+    private String store;
+    private EsODataProducer producer;
+
+    /**
+     * Before.
+     */
+    @Before
+    public void before() {
+        store = PersoniumUnitConfig.get(PersoniumUnitConfig.ES.STORE);
+        PersoniumUnitConfig.set(PersoniumUnitConfig.ES.STORE, MemoryDataStore.STORE_MEMORY);
+        MemoryDataStore.clear();
+
+        producer = spy(new UnitCtlODataProducer(mock(AccessContext.class)));
+        doReturn(mock(Lock.class)).when(producer).lock();
+        // Cell creation and deletion touch the file system and the cell cache, which are out of scope here.
+        doNothing().when(producer).afterCreate(anyString(), any(OEntity.class), any(EntitySetDocHandler.class));
+        doNothing().when(producer).beforeDelete(anyString(), any(OEntityKey.class), any(EntitySetDocHandler.class));
+    }
+
+    /**
+     * After.
+     */
+    @After
+    public void after() {
+        MemoryDataStore.clear();
+        if (store != null) {
+            PersoniumUnitConfig.set(PersoniumUnitConfig.ES.STORE, store);
+        } else {
+            PersoniumUnitConfig.getProperties().remove(PersoniumUnitConfig.ES.STORE);
+        }
+    }
+
+    private OEntityWrapper cell(String name) {
+        EdmEntitySet eSet = producer.getMetadata().findEdmEntitySet(Cell.EDM_TYPE_NAME);
+        LocalDateTime now = new LocalDateTime();
+        List<OProperty<?>> props = new ArrayList<OProperty<?>>();
+        props.add(OProperties.string("Name", name));
+        props.add(OProperties.datetime("__published", now));
+        props.add(OProperties.datetime("__updated", now));
+        OEntity entity = OEntities.create(eSet, OEntityKey.create(name), props, Collections.<OLink>emptyList());
+        return new OEntityWrapper(PersoniumUUID.randomUUID(), entity, null);
+    }
+
+    private List<String> names(String filter) {
+        BoolCommonExpression filterExp = null;
+        if (filter != null) {
+            filterExp = PersoniumOptionsQueryParser.parseFilter(filter);
+        }
+        QueryInfo queryInfo = new QueryInfo(null, null, null, filterExp, null, null, null, null, null);
+        EntitiesResponse response = producer.getEntities(Cell.EDM_TYPE_NAME, queryInfo);
+        List<String> names = new ArrayList<String>();
+        for (OEntity entity : response.getEntities()) {
+            names.add((String) entity.getProperty("Name").getValue());
+        }
+        Collections.sort(names);
+        return names;
+    }
+
+    private static BulkRequest deleteRequest(String name) {
+        BulkRequest request = new BulkRequest();
+        request.setEntitySetName(Cell.EDM_TYPE_NAME);
+        request.setOriginalKey(OEntityKey.create(name));
+        return request;
+    }
+
+    /**
+     * Test createEntity(), getEntities() with $filter and bulkDeleteEntity().
+     * the entities are stored, searched and deleted through the data source accessors.
+     */
+    @Test
+    public void createEntity_getEntities_bulkDeleteEntity_Normal() {
+        List<String> ids = new ArrayList<String>();
+        for (String name : Arrays.asList("cell1", "cell2", "cell3")) {
+            OEntityWrapper oew = cell(name);
+            EntityResponse created = producer.createEntity(Cell.EDM_TYPE_NAME, oew);
+            assertTrue(((OEntityWrapper) created.getEntity()).getEtag().startsWith("1-"));
+            ids.add(oew.getUuid());
+        }
+
+        // the documents are visible through DataSourceAccessor
+        Map<String, Object> query = new HashMap<String, Object>();
+        query.put("size", 10);
+        PersoniumSearchResponse stored = EsModel.batch().searchForIndex(null, query);
+        List<String> storedIds = new ArrayList<String>();
+        for (PersoniumSearchHit hit : stored.getHits().getHits()) {
+            storedIds.add(hit.getId());
+        }
+        Collections.sort(storedIds);
+        Collections.sort(ids);
+        assertThat(storedIds, is(ids));
+
+        // $filter
+        assertThat(names(null), is(Arrays.asList("cell1", "cell2", "cell3")));
+        assertThat(names("Name eq 'cell2'"), is(Arrays.asList("cell2")));
+        assertThat(names("Name ne 'cell2'"), is(Arrays.asList("cell1", "cell3")));
+
+        // $batch
+        BulkRequest delete1 = deleteRequest("cell1");
+        BulkRequest delete3 = deleteRequest("cell3");
+        BulkRequest missing = deleteRequest("cell4");
+        producer.bulkDeleteEntity(Arrays.asList(delete1, delete3, missing), NOOP_HOOK);
+
+        assertThat(delete1.getError(), is(nullValue()));
+        assertThat(delete3.getError(), is(nullValue()));
+        assertThat(((PersoniumCoreException) missing.getError()).getCode(),
+                is(PersoniumCoreException.OData.NO_SUCH_ENTITY.getCode()));
+        assertThat(names(null), is(Arrays.asList("cell2")));
+    }
+
+    /**
+     * Test createEntity().
+     * an entity with an existing key is rejected by the uniqueness check.
+     */
+    @Test
+    public void createEntity_Error_already_exists() {
+        producer.createEntity(Cell.EDM_TYPE_NAME, cell("cell1"));
+        try {
+            producer.createEntity(Cell.EDM_TYPE_NAME, cell("cell1"));
+            fail("Not exception.");
+        } catch (PersoniumCoreException e) {
+            assertThat(e.getCode(), is(PersoniumCoreException.OData.ENTITY_ALREADY_EXISTS.getCode()));
+        }
+        assertThat(names(null), is(Arrays.asList("cell1")));
+    }
+}
@@ -0,0 +1,360 @@
+/**
+ * personium.io
+ * Copyright 2018 FUJITSU LIMITED
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.personium.core.model.impl.es.odata;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.nullValue;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyListOf;
+import static org.mockito.Matchers.anyMapOf;
+import static org.mockito.Matchers.anyString;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.doNothing;
+import static org.mockito.Mockito.doReturn;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.spy;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.joda.time.LocalDateTime;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.experimental.categories.Category;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
+import org.odata4j.core.OEntities;
+import org.odata4j.core.OEntity;
+import org.odata4j.core.OEntityKey;
+import org.odata4j.core.OLink;
+import org.odata4j.core.OProperties;
+import org.odata4j.core.OProperty;
+import org.odata4j.edm.EdmEntitySet;
+import org.odata4j.producer.QueryInfo;
+
+import io.personium.common.es.EsBulkRequest;
+import io.personium.common.es.response.PersoniumBulkItemResponse;
+import io.personium.common.es.response.PersoniumBulkResponse;
+import io.personium.common.es.util.PersoniumUUID;
+import io.personium.core.PersoniumCoreException;
+import io.personium.core.PersoniumUnitConfig;
+import io.personium.core.auth.AccessContext;
+import io.personium.core.model.impl.es.EsModel;
+import io.personium.core.model.impl.es.accessor.DataSourceAccessor;
+import io.personium.core.model.impl.es.accessor.EntitySetAccessor;
+import io.personium.core.model.impl.es.doc.EntitySetDocHandler;
+import io.personium.core.model.impl.es.memory.MemoryDataStore;
+import io.personium.core.model.lock.Lock;
+import io.personium.core.odata.OEntityWrapper;
+import io.personium.core.odata.PersoniumODataProducer.BulkDeleteHook;
+import io.personium.core.rs.odata.BulkRequest;
+import io.personium.test.categories.Unit;
+
+/**
+ * Unit Test class for EsODataProducer.
+ */
+@Category({ Unit.class })
+public class EsODataProducerTest {
+
+    private static final String ENTITY_SET = "Cell";
+    private static final String PARENT = "parent";
+    private static final String CHILD = "child";
+
+    private static final BulkDeleteHook NOOP_HOOK = new BulkDeleteHook() {
+        @Override
+        public void beforeDelete(String entitySetName, OEntityKey oEntityKey) {
+        }
+    };
+
+    private EsODataProducer producer;
+    /** Ids deleted from the data store, in order. */
+    private List<String> deleted = new ArrayList<String>();
+    /** Number of bulk requests sent to the data store. */
+    private int bulkCount = 0;
+
+    /** es.store before the test. */
+    private String store;
+    /** Producer running against the in-memory data store. */
+    private EsODataProducer memoryProducer;
+    /** Batch accessor of memoryProducer. */
+    private DataSourceAccessor memoryAccessor;
+
+    /**
+     * Before.
+     */
+    @Before
+    public void before() {
+        store = PersoniumUnitConfig.get(PersoniumUnitConfig.ES.STORE);
+
+        producer = spy(new UnitCtlODataProducer(mock(AccessContext.class)));
+        doReturn(mock(Lock.class)).when(producer).lock();
+
+        DataSourceAccessor accessor = mock(DataSourceAccessor.class);
+        doReturn(accessor).when(producer).getAccessorForBatch();
+        when(accessor.bulkUpdate(anyListOf(EsBulkRequest.class), anyString())).thenAnswer(
+                new Answer<PersoniumBulkResponse>() {
+                    @SuppressWarnings("unchecked")
+                    @Override
+                    public PersoniumBulkResponse answer(InvocationOnMock invocation) throws Throwable {
+                        bulkCount++;
+                        List<EsBulkRequest> requests = (List<EsBulkRequest>) invocation.getArguments()[0];
+                        List<PersoniumBulkItemResponse> items = new ArrayList<PersoniumBulkItemResponse>();
+                        for (EsBulkRequest request : requests) {
+                            deleted.add(request.getId());
+                            PersoniumBulkItemResponse item = mock(PersoniumBulkItemResponse.class);
+                            when(item.getId()).thenReturn(request.getId());
+                            when(item.isFailed()).thenReturn(false);
+                            items.add(item);
+                        }
+                        PersoniumBulkResponse response = mock(PersoniumBulkResponse.class);
+                        when(response.items()).thenReturn(items.toArray(new PersoniumBulkItemResponse[0]));
+                        return response;
+                    }
+                });
+
+        // The parent has a related entity until the child is deleted from the data store.
+        doAnswer(new Answer<EntitySetDocHandler>() {
+            @Override
+            public EntitySetDocHandler answer(InvocationOnMock invocation) throws Throwable {
+                BulkRequest request = (BulkRequest) invocation.getArguments()[0];
+                String id = (String) request.getOriginalKey().asSingleValue();
+                if (PARENT.equals(id) && !deleted.contains(CHILD)) {
+                    throw PersoniumCoreException.OData.CONFLICT_HAS_RELATED;
+                }
+                EntitySetDocHandler docHandler = mock(EntitySetDocHandler.class);
+                when(docHandler.getId()).thenReturn(id);
+                return docHandler;
+            }
+        }).when(producer).prepareBulkDelete(any(BulkRequest.class), any(BulkDeleteHook.class));
+    }
+
+    /**
+     * After.
+     */
+    @After
+    public void after() {
+        MemoryDataStore.clear();
+        if (store != null) {
+            PersoniumUnitConfig.set(PersoniumUnitConfig.ES.STORE, store);
+        } else {
+            PersoniumUnitConfig.getProperties().remove(PersoniumUnitConfig.ES.STORE);
+        }
+    }
+
+    /**
+     * Switches to the in-memory data store and creates a producer that writes through it.
+     * The batch accessor is spied on so that the number of bulk requests can be verified.
+     */
+    private void useMemoryStore() {
+        PersoniumUnitConfig.set(PersoniumUnitConfig.ES.STORE, MemoryDataStore.STORE_MEMORY);
+        MemoryDataStore.clear();
+
+        memoryProducer = spy(new UnitCtlODataProducer(mock(AccessContext.class)));
+        doReturn(mock(Lock.class)).when(memoryProducer).lock();
+        // Cell creation and update touch the file system and the cell cache, which are out of scope here.
+        doNothing().when(memoryProducer).afterCreate(anyString(), any(OEntity.class), any(EntitySetDocHandler.class));
+        doNothing().when(memoryProducer).beforeUpdate(anyString(), any(OEntityKey.class),
+                any(EntitySetDocHandler.class));
+        memoryAccessor = spy(EsModel.batch());
+        doReturn(memoryAccessor).when(memoryProducer).getAccessorForBatch();
+    }
+
+    private OEntityWrapper cell(String name, String etag) {
+        EdmEntitySet eSet = memoryProducer.getMetadata().findEdmEntitySet(ENTITY_SET);
+        LocalDateTime now = new LocalDateTime();
+        List<OProperty<?>> props = new ArrayList<OProperty<?>>();
+        props.add(OProperties.string("Name", name));
+        props.add(OProperties.datetime("__published", now));
+        props.add(OProperties.datetime("__updated", now));
+        OEntity entity = OEntities.create(eSet, OEntityKey.create(name), props, Collections.<OLink>emptyList());
+        return new OEntityWrapper(PersoniumUUID.randomUUID(), entity, etag);
+    }
+
+    /**
+     * Creates a cell in the in-memory data store.
+     * @return the created cell, with its ETag and id
+     */
+    private OEntityWrapper createCell(String name) {
+        return (OEntityWrapper) memoryProducer.createEntity(ENTITY_SET, cell(name, null)).getEntity();
+    }
+
+    private List<String> cellNames() {
+        QueryInfo queryInfo = new QueryInfo(null, null, null, null, null, null, null, null, null);
+        List<String> names = new ArrayList<String>();
+        for (OEntity entity : memoryProducer.getEntities(ENTITY_SET, queryInfo).getEntities()) {
+            names.add((String) entity.getProperty("Name").getValue());
+        }
+        Collections.sort(names);
+        return names;
+    }
+
+    private static BulkRequest updateRequest(String key, OEntityWrapper oew) {
+        BulkRequest request = new BulkRequest();
+        request.setEntitySetName(ENTITY_SET);
+        request.setOriginalKey(OEntityKey.create(key));
+        request.setOEntityWrapper(oew);
+        return request;
+    }
+
+    private static BulkRequest deleteRequest(String key) {
+        BulkRequest request = new BulkRequest();
+        request.setEntitySetName(ENTITY_SET);
+        request.setOriginalKey(OEntityKey.create(key));
+        return request;
+    }
+
+    /**
+     * Test bulkDeleteEntity().
+     * the child is deleted before the parent in the same group.
+     */
+    @Test
+    public void bulkDeleteEntity_Normal_child_then_parent() {
+        BulkRequest child = deleteRequest(CHILD);
+        BulkRequest parent = deleteRequest(PARENT);
+
+        producer.bulkDeleteEntity(Arrays.asList(child, parent), NOOP_HOOK);
+
+        assertThat(child.getError(), is(nullValue()));
+        assertThat(parent.getError(), is(nullValue()));
+        assertThat(deleted, is(Arrays.asList(CHILD, PARENT)));
+        // the pending child deletion is written before the parent is checked again
+        assertThat(bulkCount, is(2));
+    }
+
+    /**
+     * Test bulkDeleteEntity().
+     * the parent is deleted before the child in the same group.
+     */
+    @Test
+    public void bulkDeleteEntity_Error_parent_then_child() {
+        BulkRequest parent = deleteRequest(PARENT);
+        BulkRequest child = deleteRequest(CHILD);
+
+        producer.bulkDeleteEntity(Arrays.asList(parent, child), NOOP_HOOK);
+
+        assertThat((PersoniumCoreException) parent.getError(), is(PersoniumCoreException.OData.CONFLICT_HAS_RELATED));
+        assertThat(child.getError(), is(nullValue()));
+        assertThat(deleted, is(Arrays.asList(CHILD)));
+        assertThat(bulkCount, is(1));
+    }
+
+    /**
+     * Test bulkDeleteEntity().
+     * requests without related entities are written in one bulk request.
+     */
+    @Test
+    public void bulkDeleteEntity_Normal_one_bulk_request() {
+        Set<String> keys = new HashSet<String>(Arrays.asList("a", "b", "c"));
+        List<BulkRequest> requests = new ArrayList<BulkRequest>();
+        for (String key : keys) {
+            requests.add(deleteRequest(key));
+        }
+
+        producer.bulkDeleteEntity(requests, NOOP_HOOK);
+
+        assertThat(new HashSet<String>(deleted), is(keys));
+        assertThat(bulkCount, is(1));
+    }
+
+    /**
+     * Test bulkUpdateEntity().
+     * If-Match is checked for each part, and a stale part does not stop the others.
+     */
+    @Test
+    public void bulkUpdateEntity_Error_etag_not_match_in_one_part() {
+        useMemoryStore();
+        String etag = createCell("cell1").getEtag();
+        createCell("cell2");
+
+        BulkRequest match = updateRequest("cell1", cell("cell1", etag));
+        BulkRequest stale = updateRequest("cell2", cell("cell2", "9-0"));
+        memoryProducer.bulkUpdateEntity(Arrays.asList(match, stale));
+
+        assertThat(match.getError(), is(nullValue()));
+        assertThat(match.getOEntityWrapper().getEtag().startsWith("2-"), is(true));
+        assertThat((PersoniumCoreException) stale.getError(), is(PersoniumCoreException.OData.ETAG_NOT_MATCH));
+        verify(memoryAccessor, times(1)).bulkUpdate(anyListOf(EsBulkRequest.class), anyString());
+    }
+
+    /**
+     * Test bulkUpdateEntity().
+     * a part that uses the key written by an earlier part is checked after the earlier parts are flushed.
+     */
+    @Test
+    public void bulkUpdateEntity_Normal_flush_after_key_change() {
+        useMemoryStore();
+        createCell("cell1");
+        createCell("cell2");
+
+        BulkRequest rename = updateRequest("cell1", cell("cell4", null));
+        BulkRequest other = updateRequest("cell2", cell("cell2", null));
+        BulkRequest renamed = updateRequest("cell4", cell("cell4", null));
+        memoryProducer.bulkUpdateEntity(Arrays.asList(rename, other, renamed));
+
+        assertThat(rename.getError(), is(nullValue()));
+        assertThat(other.getError(), is(nullValue()));
+        // without the flush the renamed cell would not be found
+        assertThat(renamed.getError(), is(nullValue()));
+        assertThat(renamed.getOEntityWrapper().getEtag().startsWith("3-"), is(true));
+        verify(memoryAccessor, times(2)).bulkUpdate(anyListOf(EsBulkRequest.class), anyString());
+        assertThat(cellNames(), is(Arrays.asList("cell2", "cell4")));
+    }
+
+    /**
+     * Test updateLastAuthenticated().
+     * the accounts are searched and written in chunks, and deleted accounts are ignored.
+     */
+    @SuppressWarnings("unchecked")
+    @Test
+    public void updateLastAuthenticated_Normal_chunked() {
+        useMemoryStore();
+        EntitySetAccessor accessor = spy(EsModel.cell());
+        doReturn(accessor).when(memoryProducer).getAccessorForEntitySet(ENTITY_SET);
+        String id1 = createCell("cell1").getUuid();
+        String id2 = createCell("cell2").getUuid();
+
+        Map<String, Long> lastAuthenticated = new LinkedHashMap<String, Long>();
+        lastAuthenticated.put(id1, 100L);
+        for (int i = 0; i < EsODataProducer.LAST_AUTHENTICATED_CHUNK_SIZE * 2 - 1; i++) {
+            lastAuthenticated.put("deleted" + i, 0L);
+        }
+        lastAuthenticated.put(id2, 200L);
+        EdmEntitySet eSet = memoryProducer.getMetadata().findEdmEntitySet(ENTITY_SET);
+
+        Set<String> failed = memoryProducer.updateLastAuthenticated(eSet, lastAuthenticated);
+
+        assertThat(failed.isEmpty(), is(true));
+        // 1000 + 1000 + 1
+        verify(accessor, times(3)).search(anyMapOf(String.class, Object.class));
+        verify(memoryAccessor, times(2)).bulkUpdate(anyListOf(EsBulkRequest.class), anyString());
+        Map<String, Object> s1 = (Map<String, Object>) accessor.get(id1).getSource().get("s");
+        Map<String, Object> s2 = (Map<String, Object>) accessor.get(id2).getSource().get("s");
+        assertThat(s1.get("LastAuthenticated"), is((Object) 100L));
+        assertThat(s2.get("LastAuthenticated"), is((Object) 200L));
+    }
+}
@@ -0,0 +1,296 @@
+/**
+ * personium.io
+ * Copyright 2018 FUJITSU LIMITED
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.personium.core.model.impl.fs;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.nullValue;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.commons.io.FileUtils;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.experimental.categories.Category;
+import org.powermock.reflect.Whitebox;
+
+import io.personium.core.PersoniumCoreException;
+import io.personium.core.PersoniumUnitConfig;
+import io.personium.test.categories.Unit;
+
+/**
+ * Unit Test class for DavChunkedUpload.
+ */
+@Category({ Unit.class })
+public class DavChunkedUploadTest {
+
+    /** Class name. */
+    private static final String CLASS_NAME = "DavChunkedUploadTest";
+    /** Test dir path. */
+    private static final String TEST_DIR_PATH = "/personium_nfs/personium-core/unitTest/" + CLASS_NAME + "/";
+    /** Cell id. */
+    private static final String CELL_ID = "cellId";
+    /** Path of the target resource. */
+    private static final String FS_PATH = "/cellId/box/file";
+
+    /** Test dir. */
+    private File testDir;
+    /** Original settings. */
+    private String blobStoreRoot;
+    private String encryptEnabled;
+    private String contentAddressedEnabled;
+    private String uploadExpire;
+    /** Contents passed to the finalizer. */
+    private List<String> committed;
+
+    /**
+     * Before.
+     */
+    @Before
+    public void before() {
+        testDir = new File(TEST_DIR_PATH);
+        testDir.mkdirs();
+        blobStoreRoot = PersoniumUnitConfig.get(PersoniumUnitConfig.BlobStore.ROOT);
+        encryptEnabled = PersoniumUnitConfig.get(PersoniumUnitConfig.Security.DAV_ENCRYPT_ENABLED);
+        contentAddressedEnabled = PersoniumUnitConfig.get(PersoniumUnitConfig.BlobStore.CONTENT_ADDRESSED_ENABLED);
+        uploadExpire = PersoniumUnitConfig.get(PersoniumUnitConfig.Dav.UPLOAD_EXPIRE);
+        PersoniumUnitConfig.set(PersoniumUnitConfig.BlobStore.ROOT, testDir.getAbsolutePath());
+        PersoniumUnitConfig.set(PersoniumUnitConfig.Security.DAV_ENCRYPT_ENABLED, "false");
+        PersoniumUnitConfig.set(PersoniumUnitConfig.BlobStore.CONTENT_ADDRESSED_ENABLED, "false");
+        committed = new ArrayList<String>();
+    }
+
+    /**
+     * After.
+     * @throws Exception Unintended exception in test
+     */
+    @After
+    public void after() throws Exception {
+        PersoniumUnitConfig.set(PersoniumUnitConfig.BlobStore.ROOT, blobStoreRoot);
+        PersoniumUnitConfig.set(PersoniumUnitConfig.Security.DAV_ENCRYPT_ENABLED, encryptEnabled);
+        PersoniumUnitConfig.set(PersoniumUnitConfig.BlobStore.CONTENT_ADDRESSED_ENABLED, contentAddressedEnabled);
+        PersoniumUnitConfig.set(PersoniumUnitConfig.Dav.UPLOAD_EXPIRE, uploadExpire);
+        FileUtils.deleteDirectory(testDir);
+    }
+
+    /**
+     * Test append().
+     * Chunks are appended in order and the content is committed by the final chunk.
+     * @throws Exception Unintended exception in test
+     */
+    @Test
+    public void append_Normal_final_chunk_is_committed() throws Exception {
+        DavChunkedUpload upload = new DavChunkedUpload(CELL_ID, FS_PATH, "bytes 0-3/10");
+        assertTrue(upload.isFirstChunk());
+        assertFalse(upload.append(chunk("0123"), CELL_ID, finalizer()));
+        assertThat(upload.getRangeHeaderValue(), is("bytes=0-3"));
+
+        upload = new DavChunkedUpload(CELL_ID, FS_PATH, "bytes 4-7/10");
+        assertFalse(upload.isFirstChunk());
+        assertFalse(upload.append(chunk("4567"), CELL_ID, finalizer()));
+        assertThat(upload.getRangeHeaderValue(), is("bytes=0-7"));
+        assertThat(committed.size(), is(0));
+
+        upload = new DavChunkedUpload(CELL_ID, FS_PATH, "bytes 8-9/10");
+        assertTrue(upload.append(chunk("89"), CELL_ID, finalizer()));
+        assertThat(committed.size(), is(1));
+        assertThat(committed.get(0), is("10:0123456789"));
+        // Neither the staging file nor the prepared file is left.
+        assertThat(uploadDir().toFile().list().length, is(0));
+    }
+
+    /**
+     * Test append().
+     * The received range is returned to the query.
+     * @throws Exception Unintended exception in test
+     */
+    @Test
+    public void append_Normal_query_received_range() throws Exception {
+        DavChunkedUpload upload = new DavChunkedUpload(CELL_ID, FS_PATH, "bytes */10");
+        assertFalse(upload.append(chunk(""), CELL_ID, finalizer()));
+        assertThat(upload.getRangeHeaderValue(), is(nullValue()));
+
+        new DavChunkedUpload(CELL_ID, FS_PATH, "bytes 0-4/10").append(chunk("01234"), CELL_ID, finalizer());
+
+        upload = new DavChunkedUpload(CELL_ID, FS_PATH, "bytes */10");
+        assertFalse(upload.append(chunk(""), CELL_ID, finalizer()));
+        assertThat(upload.getRangeHeaderValue(), is("bytes=0-4"));
+        // The upload of another total length is independent.
+        upload = new DavChunkedUpload(CELL_ID, FS_PATH, "bytes */11");
+        assertFalse(upload.append(chunk(""), CELL_ID, finalizer()));
+        assertThat(upload.getRangeHeaderValue(), is(nullValue()));
+    }
+
+    /**
+     * Test append().
+     * A chunk that does not start at the received offset is rejected.
+     * @throws Exception Unintended exception in test
+     */
+    @Test
+    public void append_Error_out_of_order_chunk() throws Exception {
+        new DavChunkedUpload(CELL_ID, FS_PATH, "bytes 0-3/10").append(chunk("0123"), CELL_ID, finalizer());
+
+        DavChunkedUpload upload = new DavChunkedUpload(CELL_ID, FS_PATH, "bytes 6-9/10");
+        try {
+            upload.append(chunk("6789"), CELL_ID, finalizer());
+            fail("Not exception.");
+        } catch (PersoniumCoreException e) {
+            assertThat(e.getCode(), is(PersoniumCoreException.Dav.UPLOAD_OFFSET_NOT_MATCH.getCode()));
+        }
+        assertThat(upload.getRangeHeaderValue(), is("bytes=0-3"));
+        assertThat(committed.size(), is(0));
+
+        // The client can resume from the received offset.
+        upload = new DavChunkedUpload(CELL_ID, FS_PATH, "bytes 4-9/10");
+        assertTrue(upload.append(chunk("456789"), CELL_ID, finalizer()));
+        assertThat(committed.get(0), is("10:0123456789"));
+    }
+
+    /**
+     * Test append().
+     * A chunk longer than the Content-Range is rejected and the received range is not changed.
+     * @throws Exception Unintended exception in test
+     */
+    @Test
+    public void append_Error_size_mismatch() throws Exception {
+        new DavChunkedUpload(CELL_ID, FS_PATH, "bytes 0-3/10").append(chunk("0123"), CELL_ID, finalizer());
+
+        DavChunkedUpload upload = new DavChunkedUpload(CELL_ID, FS_PATH, "bytes 4-9/10");
+        try {
+            upload.append(chunk("456789X"), CELL_ID, finalizer());
+            fail("Not exception.");
+        } catch (PersoniumCoreException e) {
+            assertThat(e.getCode(), is(PersoniumCoreException.Dav.INVALID_REQUEST_HEADER.getCode()));
+        }
+        assertThat(upload.getRangeHeaderValue(), is("bytes=0-3"));
+        assertThat(committed.size(), is(0));
+
+        // A shorter chunk is kept and the client resumes from the received offset.
+        upload = new DavChunkedUpload(CELL_ID, FS_PATH, "bytes 4-9/10");
+        assertFalse(upload.append(chunk("45"), CELL_ID, finalizer()));
+        assertThat(upload.getRangeHeaderValue(), is("bytes=0-5"));
+        assertThat(committed.size(), is(0));
+    }
+
+    /**
+     * Test constructor.
+     * Content-Range out of the total length is rejected.
+     */
+    @Test
+    public void constructor_Error_invalid_content_range() {
+        String[] invalidRanges = {"bytes 5-4/10", "bytes 0-10/10", "bytes 0-3/*", "0-3/10",
+            "bytes 0-99999999999999999999/10" };
+        for (String contentRange : invalidRanges) {
+            try {
+                new DavChunkedUpload(CELL_ID, FS_PATH, contentRange);
+                fail("Not exception. " + contentRange);
+            } catch (PersoniumCoreException e) {
+                assertThat(e.getCode(), is(PersoniumCoreException.Dav.INVALID_REQUEST_HEADER.getCode()));
+            }
+        }
+    }
+
+    /**
+     * Test cleanupExpired().
+     * Expired staging files are deleted and the upload has to be restarted.
+     * @throws Exception Unintended exception in test
+     */
+    @Test
+    public void cleanupExpired_Normal_expired_upload_is_deleted() throws Exception {
+        PersoniumUnitConfig.set(PersoniumUnitConfig.Dav.UPLOAD_EXPIRE, "60");
+        new DavChunkedUpload(CELL_ID, FS_PATH, "bytes 0-3/10").append(chunk("0123"), CELL_ID, finalizer());
+        // Only the upload of total length 10 is expired.
+        for (File file : uploadDir().toFile().listFiles()) {
+            file.setLastModified(System.currentTimeMillis() - TimeUnit.SECONDS.toMillis(120));
+        }
+        new DavChunkedUpload(CELL_ID, FS_PATH, "bytes 0-3/20").append(chunk("0123"), CELL_ID, finalizer());
+        assertThat(uploadDir().toFile().listFiles().length, is(2));
+
+        resetLastCleanup();
+        DavChunkedUpload.cleanupExpired();
+        assertThat(uploadDir().toFile().listFiles().length, is(1));
+
+        DavChunkedUpload upload = new DavChunkedUpload(CELL_ID, FS_PATH, "bytes 4-9/10");
+        try {
+            upload.append(chunk("456789"), CELL_ID, finalizer());
+            fail("Not exception.");
+        } catch (PersoniumCoreException e) {
+            assertThat(e.getCode(), is(PersoniumCoreException.Dav.UPLOAD_OFFSET_NOT_MATCH.getCode()));
+        }
+        upload = new DavChunkedUpload(CELL_ID, FS_PATH, "bytes */20");
+        upload.append(chunk(""), CELL_ID, finalizer());
+        assertThat(upload.getRangeHeaderValue(), is("bytes=0-3"));
+    }
+
+    /**
+     * Test cleanupExpired() and append().
+     * The empty upload directory is deleted, and it is created again by the next chunk.
+     * @throws Exception Unintended exception in test
+     */
+    @Test
+    public void cleanupExpired_Normal_empty_directory_is_recreated() throws Exception {
+        PersoniumUnitConfig.set(PersoniumUnitConfig.Dav.UPLOAD_EXPIRE, "60");
+        new DavChunkedUpload(CELL_ID, FS_PATH, "bytes 0-3/10").append(chunk("0123"), CELL_ID, finalizer());
+        for (File file : uploadDir().toFile().listFiles()) {
+            file.setLastModified(System.currentTimeMillis() - TimeUnit.SECONDS.toMillis(120));
+        }
+
+        resetLastCleanup();
+        DavChunkedUpload.cleanupExpired();
+        assertFalse(Files.exists(uploadDir()));
+
+        DavChunkedUpload upload = new DavChunkedUpload(CELL_ID, FS_PATH, "bytes 0-9/10");
+        assertTrue(upload.append(chunk("0123456789"), CELL_ID, finalizer()));
+        assertThat(committed.get(0), is("10:0123456789"));
+    }
+
+    private static void resetLastCleanup() {
+        AtomicLong lastCleanup = Whitebox.getInternalState(DavChunkedUpload.class, "LAST_CLEANUP");
+        lastCleanup.set(0L);
+    }
+
+    private Path uploadDir() {
+        return testDir.toPath().resolve(DavChunkedUpload.UPLOAD_DIR_NAME).resolve(CELL_ID);
+    }
+
+    private static ByteArrayInputStream chunk(String data) {
+        return new ByteArrayInputStream(data.getBytes(StandardCharsets.UTF_8));
+    }
+
+    private DavChunkedUpload.Finalizer finalizer() {
+        return new DavChunkedUpload.Finalizer() {
+            @Override
+            public void commit(Path preparedFile, long contentLength) throws IOException {
+                committed.add(contentLength + ":"
+                        + new String(Files.readAllBytes(preparedFile), StandardCharsets.UTF_8));
+            }
+        };
+    }
+}
@@ -35,12 +35,14 @@ import static org.mockito.Mockito.spy;
 import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.verify;
 
+import java.io.ByteArrayInputStream;
 import java.io.ByteArrayOutputStream;
 import java.io.File;
 import java.io.FileInputStream;
 import java.io.InputStream;
 import java.lang.reflect.InvocationTargetException;
 import java.lang.reflect.Method;
+import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 import java.util.HashMap;
 import java.util.Map;
@@ -579,6 +581,37 @@ public class DavCmpFsImplTest {
         }
     }
 
+    /**
+     * Test putChunk().
+     * Error case.
+     * ETag not match on the first chunk. Nothing is staged.
+     * @throws Exception Unintended exception in test
+     */
+    @Test
+    public void putChunk_Error_Not_match_ETag_on_first_chunk() throws Exception {
+        InputStream inputStream = new ByteArrayInputStream("0123".getBytes(StandardCharsets.UTF_8));
+        String etag = "\"1-1487652733383\"";
+
+        // Mock settings
+        davCmpFsImpl = PowerMockito.spy(DavCmpFsImpl.create("", null));
+        doNothing().when(davCmpFsImpl).load();
+        doReturn(true).when(davCmpFsImpl).exists();
+        doReturn(CELL_ID).when(davCmpFsImpl).getCellId();
+        PowerMockito.doReturn(false).when(davCmpFsImpl, "matchesETag", anyString());
+        PowerMockito.mockStatic(PersoniumUnitConfig.class);
+        PowerMockito.doReturn(TEST_DIR_PATH).when(PersoniumUnitConfig.class, "getBlobStoreRoot");
+
+        try {
+            // Run method
+            davCmpFsImpl.putChunk("text/plain", "bytes 0-3/10", inputStream, etag);
+            fail("Not throws exception.");
+        } catch (PersoniumCoreException e) {
+            // Confirm result
+            assertThat(e.getCode(), is(PersoniumCoreException.Dav.ETAG_NOT_MATCH.getCode()));
+        }
+        assertThat(new File(TEST_DIR_PATH, DavChunkedUpload.UPLOAD_DIR_NAME).exists(), is(false));
+    }
+
     /**
      * Test get().
      * normal.
@@ -0,0 +1,151 @@
+/**
+ * personium.io
+ * Copyright 2018 FUJITSU LIMITED
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.personium.core.model.impl.fs;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.commons.io.FileUtils;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.experimental.categories.Category;
+
+import io.personium.test.categories.Unit;
+
+/**
+ * Unit Test class for DavContentStore.
+ */
+@Category({ Unit.class })
+public class DavContentStoreTest {
+
+    /** Class name. */
+    private static final String CLASS_NAME = "DavContentStoreTest";
+    /** Test dir path. */
+    private static final String TEST_DIR_PATH = "/personium_nfs/personium-core/unitTest/" + CLASS_NAME + "/";
+
+    /** Test dir. */
+    private File testDir;
+
+    /**
+     * Before.
+     */
+    @Before
+    public void before() {
+        testDir = new File(TEST_DIR_PATH);
+        testDir.mkdirs();
+    }
+
+    /**
+     * After.
+     * @throws Exception Unintended exception in test
+     */
+    @After
+    public void after() throws Exception {
+        FileUtils.deleteDirectory(testDir);
+    }
+
+    /**
+     * Test store() and gc().
+     * Same content is stored once and deleted when no longer referenced.
+     * @throws Exception Unintended exception in test
+     */
+    @Test
+    public void store_Normal_same_content_is_shared() throws Exception {
+        Path root = testDir.toPath();
+        DavContentStore store = new DavContentStore(root.resolve(DavContentStore.STORE_DIR_NAME));
+        Path content1 = Files.createDirectories(root.resolve("cell/box/file1")).resolve("content");
+        Path content2 = Files.createDirectories(root.resolve("cell/box/file2")).resolve("content");
+        Path content3 = Files.createDirectories(root.resolve("cell/box/file3")).resolve("content");
+
+        store.store(new ByteArrayInputStream("same".getBytes(StandardCharsets.UTF_8)), content1);
+        store.store(new ByteArrayInputStream("same".getBytes(StandardCharsets.UTF_8)), content2);
+        store.store(new ByteArrayInputStream("other".getBytes(StandardCharsets.UTF_8)), content3);
+
+        // blob + 2 content files.
+        assertThat(DavContentStore.getLinkCount(content1), is(3));
+        assertThat(DavContentStore.getLinkCount(content3), is(2));
+        assertThat(new String(Files.readAllBytes(content2), StandardCharsets.UTF_8), is("same"));
+        assertThat(store.gc(), is(0L));
+
+        Files.delete(content1);
+        assertThat(store.gc(), is(0L));
+        Files.delete(content2);
+        assertThat(store.gc(), is(1L));
+        assertThat(DavContentStore.getLinkCount(content3), is(2));
+        assertThat(new String(Files.readAllBytes(content3), StandardCharsets.UTF_8), is("other"));
+        // No temporary file is left.
+        assertThat(root.resolve(DavContentStore.STORE_DIR_NAME).resolve(DavContentStore.TEMP_DIR_NAME)
+                .toFile().list().length, is(0));
+    }
+
+    /**
+     * Test store().
+     * Content file is not created if the directory does not exist.
+     * @throws Exception Unintended exception in test
+     */
+    @Test
+    public void store_Error_no_parent_directory() throws Exception {
+        Path root = testDir.toPath();
+        DavContentStore store = new DavContentStore(root.resolve(DavContentStore.STORE_DIR_NAME));
+        Path content = root.resolve("nodir/content");
+        try {
+            store.store(new ByteArrayInputStream("data".getBytes(StandardCharsets.UTF_8)), content);
+        } catch (NoSuchFileException e) {
+            assertFalse(Files.exists(content));
+            assertThat(store.gc(), is(1L));
+            return;
+        }
+        fail("NoSuchFileException is not thrown.");
+    }
+
+    /**
+     * Test gc().
+     * Nothing is deleted while gc is running on another node, and the expired lock is taken over.
+     * @throws Exception Unintended exception in test
+     */
+    @Test
+    public void gc_Normal_lock() throws Exception {
+        Path root = testDir.toPath();
+        Path storeDir = root.resolve(DavContentStore.STORE_DIR_NAME);
+        DavContentStore store = new DavContentStore(storeDir);
+        Path content = Files.createDirectories(root.resolve("cell/box/file1")).resolve("content");
+        store.store(new ByteArrayInputStream("data".getBytes(StandardCharsets.UTF_8)), content);
+        Files.delete(content);
+
+        Path lockFile = Files.createFile(storeDir.resolve(DavContentStore.GC_LOCK_FILE_NAME));
+        assertThat(store.gc(), is(0L));
+        assertTrue(Files.exists(lockFile));
+
+        long expired = System.currentTimeMillis() - TimeUnit.DAYS.toMillis(2);
+        Files.setLastModifiedTime(lockFile, FileTime.fromMillis(expired));
+        assertThat(store.gc(), is(1L));
+        assertFalse(Files.exists(lockFile));
+    }
+}
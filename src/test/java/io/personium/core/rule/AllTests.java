@@ -25,7 +25,10 @@ import org.junit.runners.Suite.SuiteClasses;
  */
 @RunWith(Suite.class)
 @SuiteClasses({
-    RuleManagerTest.class
+    RuleManagerTest.class,
+    TimerJournalTest.class,
+    TimerRuleManagerTest.class,
+    TimerWheelTest.class
 })
 public class AllTests {
 }
@@ -0,0 +1,138 @@
+/**
+ * personium.io
+ * Copyright 2018 FUJITSU LIMITED
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.personium.core.rule;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.MatcherAssert.assertThat;
+
+import java.io.File;
+import java.io.RandomAccessFile;
+import java.util.Map;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.experimental.categories.Category;
+import org.junit.rules.TemporaryFolder;
+
+import io.personium.core.rule.TimerRuleManager.MisfirePolicy;
+import io.personium.test.categories.Unit;
+
+/**
+ * Unit Test class for TimerJournal and recovery of TimerRuleManager.
+ */
+@Category({ Unit.class })
+public class TimerJournalTest {
+
+    /** Temporary directory. */
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    /**
+     * Test TimerJournal().
+     * timers set and removed are recovered after reopen.
+     * @throws Exception Unexpected error
+     */
+    @Test
+    public void replay_Normal() throws Exception {
+        File dir = folder.newFolder();
+        TimerJournal journal = new TimerJournal(dir);
+        journal.set("p60000", 1000L);
+        journal.set("o120000", 120000L);
+        journal.set("p60000", 61000L);
+        journal.remove("o120000");
+        journal.close();
+
+        Map<String, Long> timers = new TimerJournal(dir).getTimers();
+        assertThat(timers.size(), is(1));
+        assertThat(timers.get("p60000"), is(61000L));
+    }
+
+    /**
+     * Test TimerJournal().
+     * a record partially written is ignored.
+     * @throws Exception Unexpected error
+     */
+    @Test
+    public void replay_Normal_partial_record() throws Exception {
+        File dir = folder.newFolder();
+        TimerJournal journal = new TimerJournal(dir);
+        journal.set("p60000", 1000L);
+        journal.set("p120000", 2000L);
+        journal.close();
+        File file = new File(dir, TimerJournal.FILE_NAME);
+        try (RandomAccessFile raf = new RandomAccessFile(file, "rw")) {
+            raf.setLength(raf.length() - 3);
+        }
+
+        journal = new TimerJournal(dir);
+        Map<String, Long> timers = journal.getTimers();
+        assertThat(timers.size(), is(1));
+        assertThat(timers.get("p60000"), is(1000L));
+        // journal is usable after the broken record is dropped
+        journal.set("p120000", 3000L);
+        journal.close();
+        assertThat(new TimerJournal(dir).getTimers().get("p120000"), is(3000L));
+    }
+
+    /**
+     * Test set().
+     * journal is compacted as records grow.
+     * @throws Exception Unexpected error
+     */
+    @Test
+    public void set_Normal_compact() throws Exception {
+        File dir = folder.newFolder();
+        TimerJournal journal = new TimerJournal(dir);
+        for (int i = 0; i < 10000; i++) {
+            journal.set("p60000", i);
+        }
+        journal.close();
+        File file = new File(dir, TimerJournal.FILE_NAME);
+        assertThat(file.length() < 1024L * 20, is(true));
+        assertThat(new TimerJournal(dir).getTimers().get("p60000"), is(9999L));
+    }
+
+    /**
+     * Test countCatchUp().
+     * misfire policies.
+     */
+    @Test
+    public void countCatchUp_Normal() {
+        long minute = 60000L;
+        assertThat(TimerRuleManager.countCatchUp(MisfirePolicy.FIRE_ONCE, 10 * minute, minute, 5 * minute), is(0));
+        assertThat(TimerRuleManager.countCatchUp(MisfirePolicy.SKIP, 0L, minute, 5 * minute), is(0));
+        assertThat(TimerRuleManager.countCatchUp(MisfirePolicy.FIRE_ONCE, 0L, minute, 5 * minute), is(1));
+        assertThat(TimerRuleManager.countCatchUp(MisfirePolicy.FIRE_ALL, 0L, minute, 5 * minute), is(6));
+        assertThat(TimerRuleManager.countCatchUp(MisfirePolicy.FIRE_ALL, 0L, 0L, 5 * minute), is(1));
+        assertThat(TimerRuleManager.countCatchUp(MisfirePolicy.FIRE_ALL, 0L, minute, 1000 * minute),
+                is(TimerRuleManager.MAX_CATCH_UP));
+    }
+
+    /**
+     * Test firstMissed().
+     * fires before the registration of the rule are not missed by the rule.
+     */
+    @Test
+    public void firstMissed_Normal() {
+        long minute = 60000L;
+        assertThat(TimerRuleManager.firstMissed(5 * minute, 2 * minute, minute), is(5 * minute));
+        assertThat(TimerRuleManager.firstMissed(5 * minute, 5 * minute, minute), is(5 * minute));
+        assertThat(TimerRuleManager.firstMissed(5 * minute, 7 * minute + 1, minute), is(8 * minute));
+        assertThat(TimerRuleManager.firstMissed(5 * minute, 7 * minute, minute), is(7 * minute));
+        assertThat(TimerRuleManager.firstMissed(5 * minute, 7 * minute, 0L), is(Long.MAX_VALUE));
+    }
+}
@@ -0,0 +1,277 @@
+/**
+ * personium.io
+ * Copyright 2018 FUJITSU LIMITED
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.personium.core.rule;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyListOf;
+import static org.mockito.Matchers.anyString;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.spy;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ScheduledExecutorService;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.experimental.categories.Category;
+import org.junit.rules.TemporaryFolder;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
+import org.powermock.reflect.Whitebox;
+
+import io.personium.core.PersoniumUnitConfig;
+import io.personium.core.event.PersoniumEventType;
+import io.personium.core.rule.TimerRuleManager.TimerInfo;
+import io.personium.core.rule.TimerRuleManager.TimerRuleInfo;
+import io.personium.test.categories.Unit;
+
+/**
+ * Unit Test class for TimerRuleManager.
+ */
+@Category({ Unit.class })
+public class TimerRuleManagerTest {
+
+    private static final long MINUTE = 60000L;
+    private static final String PERIODIC_KEY = "p" + MINUTE;
+
+    /** Temporary directory. */
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private TimerRuleManager manager;
+    /** Infos of the rules sent for each cell, in order of send(). */
+    private Map<String, List<List<String>>> sent;
+    private String periodicMisfire;
+
+    /**
+     * Before.
+     * @throws Exception Unintended exception in test
+     */
+    @Before
+    public void before() throws Exception {
+        periodicMisfire = PersoniumUnitConfig.get(PersoniumUnitConfig.Rule.TIMEREVENT_MISFIRE_PERIODIC);
+        TimerRuleManager instance = Whitebox.invokeConstructor(TimerRuleManager.class);
+        Whitebox.setInternalState(instance, "wheel", new TimerWheel<TimerInfo>(System.currentTimeMillis()));
+        // events are sent on the thread of tick()
+        ScheduledExecutorService scheduler = mock(ScheduledExecutorService.class);
+        doAnswer(new Answer<Void>() {
+            @Override
+            public Void answer(InvocationOnMock invocation) throws Throwable {
+                ((Runnable) invocation.getArguments()[0]).run();
+                return null;
+            }
+        }).when(scheduler).execute(any(Runnable.class));
+        Whitebox.setInternalState(instance, "scheduler", scheduler);
+
+        manager = spy(instance);
+        sent = new HashMap<>();
+        doAnswer(new Answer<Void>() {
+            @Override
+            public Void answer(InvocationOnMock invocation) throws Throwable {
+                String cellId = (String) invocation.getArguments()[0];
+                @SuppressWarnings("unchecked")
+                List<TimerRuleInfo> rules = (List<TimerRuleInfo>) invocation.getArguments()[1];
+                List<String> infos = new ArrayList<>();
+                for (TimerRuleInfo rule : rules) {
+                    infos.add(rule.info);
+                }
+                if (!sent.containsKey(cellId)) {
+                    sent.put(cellId, new ArrayList<List<String>>());
+                }
+                sent.get(cellId).add(infos);
+                return null;
+            }
+        }).when(manager).send(anyString(), anyListOf(TimerRuleInfo.class));
+    }
+
+    /**
+     * After.
+     */
+    @After
+    public void after() {
+        if (periodicMisfire == null) {
+            PersoniumUnitConfig.getProperties().remove(PersoniumUnitConfig.Rule.TIMEREVENT_MISFIRE_PERIODIC);
+        } else {
+            PersoniumUnitConfig.set(PersoniumUnitConfig.Rule.TIMEREVENT_MISFIRE_PERIODIC, periodicMisfire);
+        }
+    }
+
+    private void registerPeriodic(String info, String cellId) {
+        assertThat(manager.registerRule("rule", null, PersoniumEventType.timerPeriodic(), "1", info, cellId, null),
+                is(true));
+    }
+
+    private TimerInfo timer(String key) {
+        Map<String, TimerInfo> timerMap = Whitebox.getInternalState(manager, "timerMap");
+        return timerMap.get(key);
+    }
+
+    private static String ruleJournalKey(String info, String cellId) {
+        return TimerRuleManager.RULE_KEY_PREFIX + PersoniumEventType.timerPeriodic() + ".1." + info + "." + cellId
+                + "..";
+    }
+
+    private static List<List<String>> batches(String... infos) {
+        List<List<String>> batches = new ArrayList<>();
+        for (String info : infos) {
+            List<String> batch = new ArrayList<>();
+            Collections.addAll(batch, info.split(","));
+            batches.add(batch);
+        }
+        return batches;
+    }
+
+    /**
+     * Test tick().
+     * the rules of the timers expired in a tick are sent in one batch for each cell,
+     * and the oneshot timer is removed after it is sent.
+     * @throws Exception Unintended exception in test
+     */
+    @Test
+    public void tick_Normal_batch_per_cell() throws Exception {
+        registerPeriodic("a1", "cellA");
+        registerPeriodic("a2", "cellA");
+        registerPeriodic("b1", "cellB");
+        TimerInfo periodic = timer(PERIODIC_KEY);
+        long fireTime = periodic.nextTime;
+        assertThat(manager.registerRule("oneshot", null, PersoniumEventType.timerOneshot(),
+                String.valueOf(fireTime), "b2", "cellB", null), is(true));
+        assertThat(timer("o" + fireTime) != null, is(true));
+
+        manager.tick(fireTime - 1000L);
+        assertThat(sent.isEmpty(), is(true));
+
+        manager.tick(fireTime);
+        assertThat(sent.size(), is(2));
+        assertThat(sent.get("cellA"), is(batches("a1,a2")));
+        // the order of the timers expired in the same tick is not defined
+        assertThat(sent.get("cellB").size(), is(1));
+        assertThat(new HashSet<String>(sent.get("cellB").get(0)),
+                is((Set<String>) new HashSet<String>(Arrays.asList("b1", "b2"))));
+        assertThat(periodic.nextTime, is(fireTime + MINUTE));
+        assertThat(timer("o" + fireTime) == null, is(true));
+    }
+
+    /**
+     * Test tick().
+     * a periodic timer whose ticks were delayed over several periods is sent once,
+     * and the next fire time is the first period after the current time.
+     * @throws Exception Unintended exception in test
+     */
+    @Test
+    public void tick_Normal_skip_missed_periods() throws Exception {
+        registerPeriodic("a1", "cellA");
+        TimerInfo periodic = timer(PERIODIC_KEY);
+        long fireTime = periodic.nextTime;
+
+        manager.tick(fireTime + 3 * MINUTE + 500L);
+
+        assertThat(sent.get("cellA"), is(batches("a1")));
+        assertThat(periodic.nextTime, is(fireTime + 4 * MINUTE));
+
+        manager.tick(fireTime + 4 * MINUTE);
+        assertThat(sent.get("cellA"), is(batches("a1", "a1")));
+    }
+
+    /**
+     * Test tick().
+     * a timer no longer in the timer map is not sent even if it is still in the wheel,
+     * and a timer whose rules are all unregistered is removed.
+     * @throws Exception Unintended exception in test
+     */
+    @Test
+    public void tick_Normal_removed_timer() throws Exception {
+        registerPeriodic("old", "cellA");
+        TimerInfo removed = timer(PERIODIC_KEY);
+        Map<String, TimerInfo> timerMap = Whitebox.getInternalState(manager, "timerMap");
+        timerMap.remove(PERIODIC_KEY);
+        registerPeriodic("new", "cellA");
+        TimerInfo current = timer(PERIODIC_KEY);
+        assertThat(current != removed, is(true));
+
+        manager.tick(Math.max(removed.nextTime, current.nextTime));
+        assertThat(sent.get("cellA"), is(batches("new")));
+
+        // unregistered rule is not sent and the timer is removed
+        assertThat(manager.unregisterRule(null, PersoniumEventType.timerPeriodic(), "1", "new", "cellA", null),
+                is(true));
+        manager.tick(current.nextTime);
+        assertThat(sent.get("cellA"), is(batches("new")));
+        assertThat(timer(PERIODIC_KEY) == null, is(true));
+    }
+
+    /**
+     * Test registerRule() and finishRecovery().
+     * the missed fires of a recovered timer are sent only for the rules recorded before restart,
+     * and the timers and rules not registered again are removed from the journal.
+     * @throws Exception Unintended exception in test
+     */
+    @Test
+    public void registerRule_Normal_recovery() throws Exception {
+        PersoniumUnitConfig.set(PersoniumUnitConfig.Rule.TIMEREVENT_MISFIRE_PERIODIC, "fireOnce");
+        long now = System.currentTimeMillis();
+        long missed = now - now % MINUTE - MINUTE;
+        File dir = folder.newFolder();
+        TimerJournal journal = new TimerJournal(dir);
+        journal.set(PERIODIC_KEY, missed);
+        journal.set(ruleJournalKey("old", "cellA"), missed - 10 * MINUTE);
+        journal.set("p" + 5 * MINUTE, missed);
+        journal.set(ruleJournalKey("gone", "cellA"), missed - 10 * MINUTE);
+        Whitebox.setInternalState(manager, "journal", journal);
+        Whitebox.setInternalState(manager, "recovered", journal.getTimers());
+
+        // "new" is created while the unit is stopped and shares the timer with "old"
+        registerPeriodic("old", "cellA");
+        registerPeriodic("new", "cellA");
+
+        Map<String, List<TimerRuleInfo>> catchUp = Whitebox.getInternalState(manager, "catchUp");
+        assertThat(catchUp.size(), is(1));
+        assertThat(catchUp.get("cellA").size(), is(1));
+        assertThat(catchUp.get("cellA").get(0).info, is("old"));
+        // the phase of the timer is kept
+        TimerInfo periodic = timer(PERIODIC_KEY);
+        assertThat(periodic.nextTime > now, is(true));
+        assertThat((periodic.nextTime - missed) % MINUTE, is(0L));
+
+        manager.finishRecovery();
+        Map<String, Long> timers = journal.getTimers();
+        assertThat(timers.containsKey(PERIODIC_KEY), is(true));
+        assertThat(timers.get(ruleJournalKey("old", "cellA")), is(missed - 10 * MINUTE));
+        assertThat(timers.containsKey(ruleJournalKey("new", "cellA")), is(true));
+        assertThat(timers.containsKey("p" + 5 * MINUTE), is(false));
+        assertThat(timers.containsKey(ruleJournalKey("gone", "cellA")), is(false));
+
+        // unregistered rule is removed from the journal
+        assertThat(manager.unregisterRule(null, PersoniumEventType.timerPeriodic(), "1", "new", "cellA", null),
+                is(true));
+        assertThat(journal.getTimers().containsKey(ruleJournalKey("new", "cellA")), is(false));
+        journal.close();
+    }
+}
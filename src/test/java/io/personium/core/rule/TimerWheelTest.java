@@ -0,0 +1,82 @@
+/**
+ * personium.io
+ * Copyright 2018 FUJITSU LIMITED
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.personium.core.rule;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.MatcherAssert.assertThat;
+
+import java.util.List;
+import java.util.Random;
+
+import org.junit.Test;
+import org.junit.experimental.categories.Category;
+
+import io.personium.test.categories.Unit;
+
+/**
+ * Unit Test class for TimerWheel.
+ */
+@Category({ Unit.class })
+public class TimerWheelTest {
+
+    /**
+     * Test advance().
+     * every item expires at the tick of its expiration on any level, including the rounds over the top level.
+     */
+    @Test
+    public void advance_Normal_expire_at_tick() {
+        TimerWheel<Long> wheel = new TimerWheel<>(10L, new int[] {4, 4, 4 }, 5L);
+        Random random = new Random(1L);
+        int count = 2000;
+        for (int i = 0; i < count; i++) {
+            long expiration = random.nextInt(3000);
+            wheel.add(expiration, expiration);
+        }
+        assertThat(wheel.getCurrentTime(), is(0L));
+
+        int expired = 0;
+        for (long now = 0; now <= 3000; now += 10) {
+            for (long expiration : wheel.advance(now)) {
+                assertThat(expiration / 10, is(Math.max(0, now / 10)));
+                expired++;
+            }
+        }
+        assertThat(expired, is(count));
+        assertThat(wheel.size(), is(0));
+    }
+
+    /**
+     * Test advance().
+     * ticks missed are processed at once in order.
+     */
+    @Test
+    public void advance_Normal_catch_up() {
+        TimerWheel<String> wheel = new TimerWheel<>(0L);
+        wheel.add(3600000L, "1h");
+        wheel.add(60000L, "1m");
+        wheel.add(86400000L * 600, "600d");
+        wheel.add(1000L, "1s");
+        assertThat(wheel.advance(999L).size(), is(0));
+
+        List<String> expired = wheel.advance(86400000L);
+        assertThat(expired.size(), is(3));
+        assertThat(expired.get(0), is("1s"));
+        assertThat(expired.get(1), is("1m"));
+        assertThat(expired.get(2), is("1h"));
+        assertThat(wheel.size(), is(1));
+    }
+}
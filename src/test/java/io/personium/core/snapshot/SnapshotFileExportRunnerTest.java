@@ -0,0 +1,221 @@
+/**
+ * personium.io
+ * Copyright 2018 FUJITSU LIMITED
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.personium.core.snapshot;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+import org.apache.commons.io.FileUtils;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.experimental.categories.Category;
+
+import io.personium.common.es.EsBulkRequest;
+import io.personium.common.es.response.PersoniumSearchHit;
+import io.personium.core.PersoniumUnitConfig;
+import io.personium.core.model.Cell;
+import io.personium.core.model.impl.es.EsModel;
+import io.personium.core.model.impl.es.QueryMapFactory;
+import io.personium.core.model.impl.es.accessor.DataSourceAccessor;
+import io.personium.core.model.impl.es.doc.OEntityDocHandler;
+import io.personium.core.model.impl.es.memory.MemoryDataStore;
+import io.personium.core.rs.odata.MapBulkRequest;
+import io.personium.test.categories.Unit;
+
+/**
+ * Unit Test class for SnapshotFileExportRunner.
+ */
+@Category({ Unit.class })
+public class SnapshotFileExportRunnerTest {
+
+    /** Class name. */
+    private static final String CLASS_NAME = "SnapshotFileExportRunnerTest";
+    /** Test dir path. */
+    private static final String TEST_DIR_PATH = "/personium_nfs/personium-core/unitTest/" + CLASS_NAME + "/";
+    /** Cell ID. */
+    private static final String CELL_ID = "cellId";
+    /** Data bundle name. */
+    private static final String DATA_BUNDLE_NAME = "u0_test";
+    /** Create date of the base snapshot. */
+    private static final long BASE_CREATE_DATE = 1000L;
+
+    /** Test dir. */
+    private File testDir;
+    /** Target cell. */
+    private Cell cell;
+    /** Unit config before the test. */
+    private Map<String, String> config;
+
+    /**
+     * Before.
+     * @throws Exception Unintended exception in test
+     */
+    @Before
+    public void before() throws Exception {
+        testDir = new File(TEST_DIR_PATH);
+        testDir.mkdirs();
+        cell = mock(Cell.class);
+        when(cell.getId()).thenReturn(CELL_ID);
+        when(cell.getName()).thenReturn("cell");
+        when(cell.getDataBundleName()).thenReturn(DATA_BUNDLE_NAME);
+        config = new HashMap<String, String>();
+        setConfig(PersoniumUnitConfig.ES.STORE, MemoryDataStore.STORE_MEMORY);
+        setConfig(PersoniumUnitConfig.BlobStore.ROOT, new File(testDir, "dav").getAbsolutePath());
+        Files.createDirectories(testDir.toPath().resolve("dav").resolve(DATA_BUNDLE_NAME).resolve(CELL_ID));
+        MemoryDataStore.clear();
+
+        List<EsBulkRequest> requests = new ArrayList<EsBulkRequest>();
+        requests.add(doc(CELL_ID, "before", BASE_CREATE_DATE - 1));
+        requests.add(doc(CELL_ID, "same", BASE_CREATE_DATE));
+        requests.add(doc(CELL_ID, "after", BASE_CREATE_DATE + 1));
+        requests.add(doc("otherCellId", "other", BASE_CREATE_DATE + 1));
+        EsModel.getDataSourceAccessorFromIndexName(DATA_BUNDLE_NAME).bulkUpdate(requests, CELL_ID);
+    }
+
+    /**
+     * After.
+     * @throws Exception Unintended exception in test
+     */
+    @After
+    public void after() throws Exception {
+        for (Map.Entry<String, String> entry : config.entrySet()) {
+            PersoniumUnitConfig.set(entry.getKey(), entry.getValue());
+        }
+        MemoryDataStore.clear();
+        FileUtils.deleteDirectory(testDir);
+    }
+
+    /**
+     * Set unit config, keeping the value before the test.
+     * @param key key
+     * @param value value
+     */
+    private void setConfig(String key, String value) {
+        config.put(key, PersoniumUnitConfig.get(key));
+        PersoniumUnitConfig.set(key, value);
+    }
+
+    /**
+     * Test createDataFilter().
+     * Full snapshot contains all data of the cell.
+     * @throws Exception Unintended exception in test
+     */
+    @Test
+    public void createDataFilter_Normal_full() throws Exception {
+        SnapshotFileExportRunner runner = new SnapshotFileExportRunner(cell, snapshotFilePath("full"), null);
+        assertThat(search(runner.createDataFilter()), is(Arrays.asList("after", "before", "same")));
+    }
+
+    /**
+     * Test createDataFilter().
+     * Delta snapshot contains data updated at or after the create date of the base snapshot.
+     * @throws Exception Unintended exception in test
+     */
+    @Test
+    public void createDataFilter_Normal_delta() throws Exception {
+        SnapshotFileBase base = SnapshotFileBase.load("full", writeBaseSnapshot());
+        assertThat(base.getCreateDate(), is(BASE_CREATE_DATE));
+
+        SnapshotFileExportRunner runner = new SnapshotFileExportRunner(cell, snapshotFilePath("delta"), base);
+        assertThat(search(runner.createDataFilter()), is(Arrays.asList("after", "same")));
+    }
+
+    /**
+     * Search the data bundle with the filter.
+     * @param filter filter
+     * @return sorted ids
+     */
+    private List<String> search(Map<String, Object> filter) {
+        DataSourceAccessor accessor = EsModel.getDataSourceAccessorFromIndexName(DATA_BUNDLE_NAME);
+        Map<String, Object> query = QueryMapFactory.query(QueryMapFactory.filteredQuery(null, filter));
+        List<String> ids = new ArrayList<String>();
+        for (PersoniumSearchHit hit : accessor.searchForIndex(CELL_ID, query).getHits().getHits()) {
+            ids.add(hit.getId());
+        }
+        Collections.sort(ids);
+        return ids;
+    }
+
+    /**
+     * Create bulk request of the box.
+     * @param cellId cell id
+     * @param id id
+     * @param updated updated time
+     * @return bulk request
+     */
+    private EsBulkRequest doc(String cellId, String id, long updated) {
+        Map<String, Object> source = new HashMap<String, Object>();
+        source.put(OEntityDocHandler.KEY_CELL_ID, cellId);
+        source.put(OEntityDocHandler.KEY_UPDATED, updated);
+        return new MapBulkRequest(EsBulkRequest.BulkRequestType.INDEX, "Box", id, source);
+    }
+
+    /**
+     * Get snapshot file path to export.
+     * @param name snapshot name
+     * @return snapshot file path
+     */
+    private Path snapshotFilePath(String name) {
+        return testDir.toPath().resolve(CELL_ID).resolve(name + ".zip").resolve("content");
+    }
+
+    /**
+     * Write the base snapshot file.
+     * @return snapshot file path
+     * @throws IOException Unintended exception in test
+     */
+    private Path writeBaseSnapshot() throws IOException {
+        Map<String, String> entries = new LinkedHashMap<String, String>();
+        entries.put(SnapshotFile.MANIFEST_JSON, "{\"" + SnapshotFile.MANIFEST_JSON_KEY_CREATE_DATE + "\":"
+                + BASE_CREATE_DATE + "}");
+        entries.put(SnapshotFile.ODATA_DIR + "/" + SnapshotFile.CELL_JSON, "{}");
+        entries.put(SnapshotFile.ODATA_DIR + "/" + SnapshotFile.DATA_PJSON, "");
+        entries.put(SnapshotFile.ODATA_DIR + "/" + SnapshotFile.IDS_TXT, "Box\tbefore\n");
+        entries.put(SnapshotFile.WEBDAV_DIR + "/", null);
+        entries.put(SnapshotFile.WEBDAV_VERSIONS_TXT, "");
+        Path snapshotFilePath = Files.createDirectories(snapshotFilePath("full").getParent()).resolve("content");
+        try (ZipOutputStream out = new ZipOutputStream(new FileOutputStream(snapshotFilePath.toFile()))) {
+            for (Map.Entry<String, String> entry : entries.entrySet()) {
+                out.putNextEntry(new ZipEntry(entry.getKey()));
+                if (entry.getValue() != null) {
+                    out.write(entry.getValue().getBytes(StandardCharsets.UTF_8));
+                }
+                out.closeEntry();
+            }
+        }
+        return snapshotFilePath;
+    }
+}
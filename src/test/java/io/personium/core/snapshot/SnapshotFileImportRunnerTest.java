@@ -0,0 +1,352 @@
+/**
+ * personium.io
+ * Copyright 2018 FUJITSU LIMITED
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.personium.core.snapshot;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+import static org.mockito.Matchers.anyListOf;
+import static org.mockito.Matchers.anyString;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+import org.apache.commons.io.FileUtils;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.experimental.categories.Category;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
+import org.powermock.reflect.Whitebox;
+
+import io.personium.common.es.EsBulkRequest;
+import io.personium.common.es.response.PersoniumBulkItemResponse;
+import io.personium.common.es.response.PersoniumBulkResponse;
+import io.personium.common.es.response.PersoniumSearchHit;
+import io.personium.core.PersoniumCoreException;
+import io.personium.core.PersoniumUnitConfig;
+import io.personium.core.model.Cell;
+import io.personium.core.model.impl.es.EsModel;
+import io.personium.core.model.impl.es.QueryMapFactory;
+import io.personium.core.model.impl.es.accessor.DataSourceAccessor;
+import io.personium.core.model.impl.es.memory.MemoryDataStore;
+import io.personium.core.rs.odata.MapBulkRequest;
+import io.personium.test.categories.Unit;
+
+/**
+ * Unit Test class for SnapshotFileImportRunner.
+ */
+@Category({ Unit.class })
+public class SnapshotFileImportRunnerTest {
+
+    /** Class name. */
+    private static final String CLASS_NAME = "SnapshotFileImportRunnerTest";
+    /** Test dir path. */
+    private static final String TEST_DIR_PATH = "/personium_nfs/personium-core/unitTest/" + CLASS_NAME + "/";
+    /** Cell ID. */
+    private static final String CELL_ID = "cellId";
+    /** Data bundle name. */
+    private static final String DATA_BUNDLE_NAME = "u0_test";
+
+    /** Test dir. */
+    private File testDir;
+    /** Target cell. */
+    private Cell cell;
+    /** Unit config before the test. */
+    private Map<String, String> config;
+    /** Ids sent by each bulk request. */
+    private List<List<String>> bulkIds;
+
+    /**
+     * Before.
+     */
+    @Before
+    public void before() {
+        testDir = new File(TEST_DIR_PATH);
+        testDir.mkdirs();
+        cell = mock(Cell.class);
+        when(cell.getId()).thenReturn(CELL_ID);
+        when(cell.getName()).thenReturn("cell");
+        when(cell.getUnitUrl()).thenReturn("https://unit.example/");
+        when(cell.getDataBundleName()).thenReturn(DATA_BUNDLE_NAME);
+        config = new HashMap<String, String>();
+        setConfig(PersoniumUnitConfig.ES.RETRY_TIMES, "2");
+        setConfig(PersoniumUnitConfig.ES.RETRY_INTERVAL, "1");
+        setConfig(PersoniumUnitConfig.ES.STORE, MemoryDataStore.STORE_MEMORY);
+        setConfig(PersoniumUnitConfig.BlobStore.ROOT, new File(testDir, "dav").getAbsolutePath());
+        setConfig(PersoniumUnitConfig.CellSnapshot.IMPORT_BULK_THREAD_NUM, "1");
+        setConfig(PersoniumUnitConfig.CellSnapshot.IMPORT_DAV_THREAD_NUM, "1");
+        setConfig(PersoniumUnitConfig.Security.DAV_ENCRYPT_ENABLED, "false");
+        MemoryDataStore.clear();
+        bulkIds = new ArrayList<List<String>>();
+    }
+
+    /**
+     * After.
+     * @throws Exception Unintended exception in test
+     */
+    @After
+    public void after() throws Exception {
+        for (Map.Entry<String, String> entry : config.entrySet()) {
+            PersoniumUnitConfig.set(entry.getKey(), entry.getValue());
+        }
+        MemoryDataStore.clear();
+        FileUtils.deleteDirectory(testDir);
+    }
+
+    /**
+     * Set unit config, keeping the value before the test.
+     * @param key key
+     * @param value value
+     */
+    private void setConfig(String key, String value) {
+        config.put(key, PersoniumUnitConfig.get(key));
+        PersoniumUnitConfig.set(key, value);
+    }
+
+    /**
+     * Test bulkRequest().
+     * Only the failed items are retried, and the request succeeds when they are accepted.
+     * @throws Exception Unintended exception in test
+     */
+    @Test
+    public void bulkRequest_Normal_failed_items_are_retried() throws Exception {
+        SnapshotFileImportRunner runner = newRunner();
+        // "id2" is rejected once.
+        DataSourceAccessor accessor = mockAccessor(Arrays.asList("id2"));
+
+        runner.bulkRequest(accessor, bulkRequests("id1", "id2", "id3"));
+
+        assertThat(bulkIds.size(), is(2));
+        assertThat(bulkIds.get(0), is(Arrays.asList("id1", "id2", "id3")));
+        assertThat(bulkIds.get(1), is(Arrays.asList("id2")));
+    }
+
+    /**
+     * Test bulkRequest().
+     * The import fails when some items still fail after the retries.
+     * @throws Exception Unintended exception in test
+     */
+    @Test
+    public void bulkRequest_Error_retry_over() throws Exception {
+        SnapshotFileImportRunner runner = newRunner();
+        // "id2" is always rejected.
+        DataSourceAccessor accessor = mockAccessor(Arrays.asList("id2", "id2", "id2", "id2"));
+
+        try {
+            runner.bulkRequest(accessor, bulkRequests("id1", "id2", "id3"));
+            fail("Not thrown");
+        } catch (PersoniumCoreException e) {
+            assertThat(e.getCode(), is(PersoniumCoreException.Server.ES_RETRY_OVER.getCode()));
+        }
+        // The first request and 2 retries.
+        assertThat(bulkIds.size(), is(3));
+        assertThat(bulkIds.get(2), is(Arrays.asList("id2")));
+    }
+
+    /**
+     * Test applyDelta().
+     * Data in the delta snapshot is upserted, and the deleted ids and directories are removed.
+     * @throws Exception Unintended exception in test
+     */
+    @Test
+    public void applyDelta_Normal() throws Exception {
+        // Cell before the delta.
+        DataSourceAccessor accessor = EsModel.batch(cell);
+        accessor.bulkUpdate(bulkRequests("box1", "box2", "box4"), CELL_ID);
+        Path cellRoot = testDir.toPath().resolve("dav").resolve(DATA_BUNDLE_NAME).resolve(CELL_ID);
+        Path mainBoxDir = writeFile(cellRoot.resolve(CELL_ID).resolve("dirA/content"), "a").getParent();
+        Path underscoreDir = writeFile(cellRoot.resolve("__x/dirB/content"), "b").getParent();
+        // The directory that "__x/dirB" was wrongly resolved to when "__" was replaced as a prefix.
+        Path prefixDir = writeFile(cellRoot.resolve(CELL_ID + "x/dirB/content"), "b").getParent();
+        Path boxFile = writeFile(cellRoot.resolve("box1/dirD/content"), "old");
+        Path outsideDir = writeFile(testDir.toPath().resolve("dav/outside/content"), "o").getParent();
+
+        Map<String, String> entries = new LinkedHashMap<String, String>();
+        entries.put(SnapshotFile.MANIFEST_JSON, "{\"snapshot_type\":\"delta\",\"base_snapshot\":\"full\"}");
+        entries.put(SnapshotFile.ODATA_DIR + "/" + SnapshotFile.CELL_JSON,
+                "{\"_source\":{\"s\":{\"Name\":\"exported\"},\"h\":{}}}");
+        entries.put(SnapshotFile.ODATA_DIR + "/" + SnapshotFile.DATA_PJSON,
+                "{\"_type\":\"Box\",\"_id\":\"box1\",\"_source\":{\"s\":{\"Name\":\"updated\"}}}\n"
+                + "{\"_type\":\"Box\",\"_id\":\"box3\",\"_source\":{\"s\":{\"Name\":\"created\"}}}\n");
+        entries.put(SnapshotFile.ODATA_DIR + "/" + SnapshotFile.DELETED_IDS_TXT, "Box\tbox2\n");
+        entries.put(SnapshotFile.DELETED_WEBDAV_TXT, "__/dirA\n__x/dirB\n../../outside\n");
+        entries.put(SnapshotFile.WEBDAV_DIR + "/", null);
+        entries.put(SnapshotFile.WEBDAV_DIR + "/__/dirC/content", "new");
+        entries.put(SnapshotFile.WEBDAV_DIR + "/box1/dirD/content", "changed");
+        Path deltaFilePath = writeSnapshot("delta", entries);
+
+        SnapshotFileImportRunner runner = new SnapshotFileImportRunner(cell, deltaFilePath);
+        Whitebox.setInternalState(runner, "progressInfo", mock(SnapshotFileImportProgressInfo.class));
+        try (SnapshotFile snapshotFile = SnapshotFile.newInstance(deltaFilePath)) {
+            runner.applyDelta(snapshotFile);
+        }
+
+        // OData
+        Map<String, String> names = new TreeMap<String, String>();
+        Map<String, Object> query = QueryMapFactory.query(QueryMapFactory.filteredQuery(null,
+                QueryMapFactory.termQuery("c", CELL_ID)));
+        for (PersoniumSearchHit hit : accessor.searchForIndex(CELL_ID, query).getHits().getHits()) {
+            Map<?, ?> s = (Map<?, ?>) hit.getSource().get("s");
+            names.put(hit.getId(), s == null ? null : (String) s.get("Name"));
+        }
+        Map<String, String> expectedNames = new TreeMap<String, String>();
+        expectedNames.put("box1", "updated");
+        expectedNames.put("box3", "created");
+        expectedNames.put("box4", null);
+        assertThat(names, is(expectedNames));
+        Map<?, ?> cellSource = EsModel.cell().get(CELL_ID).getSource();
+        assertThat((String) ((Map<?, ?>) cellSource.get("s")).get("Name"), is("cell"));
+
+        // WebDAV
+        assertFalse(Files.exists(mainBoxDir));
+        assertFalse(Files.exists(underscoreDir));
+        assertTrue(Files.exists(prefixDir));
+        assertTrue(Files.exists(outsideDir));
+        assertThat(readFile(boxFile), is("changed"));
+        assertThat(readFile(cellRoot.resolve(CELL_ID).resolve("dirC/content")), is("new"));
+    }
+
+    /**
+     * Write file with its parent directories.
+     * @param path file path
+     * @param content content
+     * @return file path
+     * @throws IOException Unintended exception in test
+     */
+    private Path writeFile(Path path, String content) throws IOException {
+        Files.createDirectories(path.getParent());
+        return Files.write(path, content.getBytes(StandardCharsets.UTF_8));
+    }
+
+    /**
+     * Read file.
+     * @param path file path
+     * @return content
+     * @throws IOException Unintended exception in test
+     */
+    private String readFile(Path path) throws IOException {
+        return new String(Files.readAllBytes(path), StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Create runner with the full snapshot file that has 100 data lines.
+     * The progress written by the tests stays below the threshold, so the cache is not used.
+     * @return runner
+     * @throws IOException Unintended exception in test
+     */
+    private SnapshotFileImportRunner newRunner() throws IOException {
+        StringBuilder data = new StringBuilder();
+        for (int i = 0; i < 100; i++) {
+            data.append("{\"_type\":\"Box\",\"_id\":\"box").append(i).append("\",\"_source\":{}}\n");
+        }
+        Map<String, String> entries = new LinkedHashMap<String, String>();
+        entries.put(SnapshotFile.MANIFEST_JSON, "{}");
+        entries.put(SnapshotFile.ODATA_DIR + "/" + SnapshotFile.CELL_JSON, "{}");
+        entries.put(SnapshotFile.ODATA_DIR + "/" + SnapshotFile.DATA_PJSON, data.toString());
+        entries.put(SnapshotFile.WEBDAV_DIR + "/", null);
+        Path snapshotFilePath = writeSnapshot("full", entries);
+        return new SnapshotFileImportRunner(cell, snapshotFilePath);
+    }
+
+    /**
+     * Write snapshot file.
+     * @param name snapshot name
+     * @param entries path and content of each entry. The content of a directory is null
+     * @return snapshot file path
+     * @throws IOException Unintended exception in test
+     */
+    private Path writeSnapshot(String name, Map<String, String> entries) throws IOException {
+        Path snapshotDir = Files.createDirectories(testDir.toPath().resolve(name));
+        Path snapshotFilePath = snapshotDir.resolve("content");
+        try (ZipOutputStream out = new ZipOutputStream(new FileOutputStream(snapshotFilePath.toFile()))) {
+            for (Map.Entry<String, String> entry : entries.entrySet()) {
+                out.putNextEntry(new ZipEntry(entry.getKey()));
+                if (entry.getValue() != null) {
+                    out.write(entry.getValue().getBytes(StandardCharsets.UTF_8));
+                }
+                out.closeEntry();
+            }
+        }
+        return snapshotFilePath;
+    }
+
+    /**
+     * Create bulk requests of the boxes in the target cell.
+     * @param ids ids
+     * @return bulk requests
+     */
+    private List<EsBulkRequest> bulkRequests(String... ids) {
+        List<EsBulkRequest> requests = new ArrayList<EsBulkRequest>();
+        for (String id : ids) {
+            Map<String, Object> source = new LinkedHashMap<String, Object>();
+            source.put("c", CELL_ID);
+            requests.add(new MapBulkRequest(EsBulkRequest.BulkRequestType.INDEX, "Box", id, source));
+        }
+        return requests;
+    }
+
+    /**
+     * Create accessor that records the ids of the bulk requests.
+     * @param rejectedIds ids to fail. Each one is consumed by a failure
+     * @return accessor
+     */
+    private DataSourceAccessor mockAccessor(List<String> rejectedIds) {
+        final List<String> rejected = new ArrayList<String>(rejectedIds);
+        DataSourceAccessor accessor = mock(DataSourceAccessor.class);
+        when(accessor.bulkUpdate(anyListOf(EsBulkRequest.class), anyString())).thenAnswer(
+                new Answer<PersoniumBulkResponse>() {
+                    @SuppressWarnings("unchecked")
+                    @Override
+                    public PersoniumBulkResponse answer(InvocationOnMock invocation) throws Throwable {
+                        List<EsBulkRequest> requests = (List<EsBulkRequest>) invocation.getArguments()[0];
+                        List<String> ids = new ArrayList<String>();
+                        List<PersoniumBulkItemResponse> items = new ArrayList<PersoniumBulkItemResponse>();
+                        for (EsBulkRequest request : requests) {
+                            ids.add(request.getId());
+                            PersoniumBulkItemResponse item = mock(PersoniumBulkItemResponse.class);
+                            when(item.getId()).thenReturn(request.getId());
+                            when(item.isFailed()).thenReturn(rejected.remove(request.getId()));
+                            items.add(item);
+                        }
+                        bulkIds.add(ids);
+                        PersoniumBulkResponse response = mock(PersoniumBulkResponse.class);
+                        when(response.items()).thenReturn(items.toArray(new PersoniumBulkItemResponse[0]));
+                        return response;
+                    }
+                });
+        return accessor;
+    }
+}
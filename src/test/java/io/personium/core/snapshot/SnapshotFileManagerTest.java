@@ -0,0 +1,169 @@
+/**
+ * personium.io
+ * Copyright 2018 FUJITSU LIMITED
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.personium.core.snapshot;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.junit.Assert.fail;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+import org.apache.commons.io.FileUtils;
+import org.json.simple.JSONObject;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.experimental.categories.Category;
+
+import io.personium.core.PersoniumCoreException;
+import io.personium.core.PersoniumUnitConfig;
+import io.personium.core.model.Cell;
+import io.personium.test.categories.Unit;
+
+/**
+ * Unit Test class for SnapshotFileManager.
+ */
+@Category({ Unit.class })
+public class SnapshotFileManagerTest {
+
+    /** Class name. */
+    private static final String CLASS_NAME = "SnapshotFileManagerTest";
+    /** Test dir path. */
+    private static final String TEST_DIR_PATH = "/personium_nfs/personium-core/unitTest/" + CLASS_NAME + "/";
+    /** Cell ID. */
+    private static final String CELL_ID = "cellId";
+
+    /** Test dir. */
+    private File testDir;
+    /** Target cell. */
+    private Cell cell;
+    /** Snapshot root before the test. */
+    private String snapshotRoot;
+
+    /**
+     * Before.
+     */
+    @Before
+    public void before() {
+        testDir = new File(TEST_DIR_PATH);
+        testDir.mkdirs();
+        cell = mock(Cell.class);
+        when(cell.getId()).thenReturn(CELL_ID);
+        snapshotRoot = PersoniumUnitConfig.getCellSnapshotRoot();
+        PersoniumUnitConfig.set(PersoniumUnitConfig.CellSnapshot.ROOT, testDir.getAbsolutePath());
+    }
+
+    /**
+     * After.
+     * @throws Exception Unintended exception in test
+     */
+    @After
+    public void after() throws Exception {
+        PersoniumUnitConfig.set(PersoniumUnitConfig.CellSnapshot.ROOT, snapshotRoot);
+        FileUtils.deleteDirectory(testDir);
+    }
+
+    /**
+     * Test resolveSnapshotChain().
+     * The base snapshots are followed up to the full snapshot.
+     * @throws Exception Unintended exception in test
+     */
+    @Test
+    public void resolveSnapshotChain_Normal_delta_of_delta() throws Exception {
+        Path full = writeSnapshot("full", null);
+        Path delta1 = writeSnapshot("delta1", "full");
+        Path delta2 = writeSnapshot("delta2", "delta1");
+
+        SnapshotFileManager manager = new SnapshotFileManager(cell, "delta2");
+        assertThat(manager.resolveSnapshotChain(delta2), is(Arrays.asList(full, delta1, delta2)));
+        assertThat(manager.resolveSnapshotChain(full), is(Arrays.asList(full)));
+    }
+
+    /**
+     * Test resolveSnapshotChain().
+     * The base snapshot does not exist.
+     * @throws Exception Unintended exception in test
+     */
+    @Test
+    public void resolveSnapshotChain_Error_base_not_found() throws Exception {
+        Path delta = writeSnapshot("delta", "removed");
+
+        SnapshotFileManager manager = new SnapshotFileManager(cell, "delta");
+        try {
+            manager.resolveSnapshotChain(delta);
+            fail("Not thrown");
+        } catch (PersoniumCoreException e) {
+            assertThat(e.getCode(), is(PersoniumCoreException.Dav.RESOURCE_NOT_FOUND.getCode()));
+        }
+    }
+
+    /**
+     * Test resolveSnapshotChain().
+     * The chain that loops is rejected.
+     * @throws Exception Unintended exception in test
+     */
+    @Test
+    public void resolveSnapshotChain_Error_loop() throws Exception {
+        writeSnapshot("delta1", "delta2");
+        Path delta2 = writeSnapshot("delta2", "delta1");
+
+        SnapshotFileManager manager = new SnapshotFileManager(cell, "delta2");
+        try {
+            manager.resolveSnapshotChain(delta2);
+            fail("Not thrown");
+        } catch (PersoniumCoreException e) {
+            assertThat(e.getCode(), is(PersoniumCoreException.Misc.NOT_FOUND_IN_SNAPSHOT.getCode()));
+        }
+    }
+
+    /**
+     * Write snapshot file that has only the manifest.
+     * @param name snapshot name
+     * @param baseName base snapshot name. null if full
+     * @return snapshot file path
+     * @throws IOException Unintended exception in test
+     */
+    private Path writeSnapshot(String name, String baseName) throws IOException {
+        Map<String, String> manifest = new LinkedHashMap<String, String>();
+        if (baseName == null) {
+            manifest.put(SnapshotFile.MANIFEST_JSON_KEY_SNAPSHOT_TYPE, SnapshotFile.SNAPSHOT_TYPE_FULL);
+        } else {
+            manifest.put(SnapshotFile.MANIFEST_JSON_KEY_SNAPSHOT_TYPE, SnapshotFile.SNAPSHOT_TYPE_DELTA);
+            manifest.put(SnapshotFile.MANIFEST_JSON_KEY_BASE_SNAPSHOT, baseName);
+        }
+        Path snapshotDir = Files.createDirectories(testDir.toPath().resolve(CELL_ID).resolve(name + ".zip"));
+        Path snapshotFilePath = snapshotDir.resolve("content");
+        try (ZipOutputStream out = new ZipOutputStream(new FileOutputStream(snapshotFilePath.toFile()))) {
+            out.putNextEntry(new ZipEntry(SnapshotFile.MANIFEST_JSON));
+            out.write(JSONObject.toJSONString(manifest).getBytes(StandardCharsets.UTF_8));
+            out.closeEntry();
+        }
+        return snapshotFilePath;
+    }
+}
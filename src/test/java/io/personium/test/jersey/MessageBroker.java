@@ -44,7 +44,7 @@ public class MessageBroker {
     public void start() throws Exception {
         if ("kafka".equals(PersoniumUnitConfig.getEventBusMQ())) {
             startKafka();
-        } else {
+        } else if (!"inprocess".equals(PersoniumUnitConfig.getEventBusMQ())) {
             startActiveMQ();
         }
     }
@@ -56,7 +56,7 @@ public class MessageBroker {
     public void stop() throws Exception {
         if ("kafka".equals(PersoniumUnitConfig.getEventBusMQ())) {
             stopKafka();
-        } else {
+        } else if (!"inprocess".equals(PersoniumUnitConfig.getEventBusMQ())) {
             stopActiveMQ();
         }
     }
@@ -72,7 +72,9 @@ public class MessageBroker {
     }
 
     private void startKafka() throws Exception {
-        embeddedKafka = new KafkaEmbedded(1, true, 1, PersoniumUnitConfig.getEventBusQueueName());
+        // one partition for each event receiver
+        embeddedKafka = new KafkaEmbedded(1, true, PersoniumUnitConfig.getEventProcThreadNum(),
+                PersoniumUnitConfig.getEventBusQueueName());
         embeddedKafka.before();
         PersoniumUnitConfig.set(
                 "io.personium.core.eventbus.kafka.bootstrap.servers",
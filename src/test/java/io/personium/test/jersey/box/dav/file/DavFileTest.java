@@ -517,11 +517,10 @@ public class DavFileTest extends JerseyTest {
     }
 
     /**
-     * Rangeヘッダで複数範囲指定すると501レスポンスが返却されること.
-     * MultiPartレスポンスを制限事項とするため501を返却する.
+     * Rangeヘッダで隣接する複数範囲を指定すると結合した範囲が返却されること.
      */
     @Test
-    public final void Rangeヘッダで複数範囲指定すると501レスポンスが返却されること() {
+    public final void Rangeヘッダで隣接する複数範囲を指定すると結合した範囲が返却されること() {
         try {
             String body = "abcdefghijklmn";
 
@@ -530,11 +529,49 @@ public class DavFileTest extends JerseyTest {
             theReq.returns().statusCode(HttpStatus.SC_CREATED);
 
             // ファイル取得
-            String rangeHeader = "bytes=1-2,3-4";
+            String rangeHeader = "bytes=3-4,1-2";
             TResponse getResp = this.getFileRequestAtRange(FILE_NAME, TEST_BOX1, rangeHeader)
                     .returns();
 
-            getResp.statusCode(HttpStatus.SC_NOT_IMPLEMENTED);
+            getResp.statusCode(HttpStatus.SC_PARTIAL_CONTENT);
+            assertEquals(String.format("bytes 1-4/%s", body.length()),
+                    getResp.getHeader(PersoniumCoreUtils.HttpHeaders.CONTENT_RANGE));
+            assertEquals(body.substring(1, 5), getResp.getBody());
+        } finally {
+            this.deleteFileRequest(FILE_NAME, null, Setup.TEST_BOX1).returns()
+                    .statusCode(HttpStatus.SC_NO_CONTENT);
+        }
+    }
+
+    /**
+     * Rangeヘッダで離れた複数範囲を指定するとmultipart/byterangesで返却されること.
+     */
+    @Test
+    public final void Rangeヘッダで離れた複数範囲を指定するとmultipart_byterangesで返却されること() {
+        try {
+            String body = "abcdefghijklmn";
+
+            // ファイル新規作成
+            final Http theReq = this.putFileRequest(FILE_NAME, body, null, Setup.TEST_BOX1);
+            theReq.returns().statusCode(HttpStatus.SC_CREATED);
+
+            // ファイル取得
+            String rangeHeader = "bytes=8-9,1-2";
+            TResponse getResp = this.getFileRequestAtRange(FILE_NAME, TEST_BOX1, rangeHeader)
+                    .returns();
+
+            getResp.statusCode(HttpStatus.SC_PARTIAL_CONTENT);
+            String contentType = getResp.getHeader(HttpHeaders.CONTENT_TYPE);
+            assertTrue(contentType.startsWith("multipart/byteranges; boundary="));
+            String boundary = contentType.substring(contentType.indexOf('=') + 1);
+            String expected = "\r\n--" + boundary + "\r\n"
+                    + "Content-Type: text/plain\r\n"
+                    + String.format("Content-Range: bytes 1-2/%s\r\n\r\n", body.length())
+                    + "bc\r\n--" + boundary + "\r\n"
+                    + "Content-Type: text/plain\r\n"
+                    + String.format("Content-Range: bytes 8-9/%s\r\n\r\n", body.length())
+                    + "ij\r\n--" + boundary + "--\r\n";
+            assertEquals(expected, getResp.getBody());
         } finally {
             this.deleteFileRequest(FILE_NAME, null, Setup.TEST_BOX1).returns()
                     .statusCode(HttpStatus.SC_NO_CONTENT);
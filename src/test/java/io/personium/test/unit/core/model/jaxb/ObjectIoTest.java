@@ -0,0 +1,119 @@
+/**
+ * personium.io
+ * Copyright 2018 FUJITSU LIMITED
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.personium.test.unit.core.model.jaxb;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.junit.Assert.fail;
+
+import java.io.ByteArrayInputStream;
+import java.io.StringReader;
+import java.io.StringWriter;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import javax.xml.bind.JAXBException;
+
+import org.junit.Test;
+import org.junit.experimental.categories.Category;
+
+import io.personium.core.model.jaxb.Acl;
+import io.personium.core.model.jaxb.ObjectIo;
+import io.personium.test.categories.Unit;
+
+/**
+ * Unit Test class for ObjectIo.
+ */
+@Category({Unit.class })
+public class ObjectIoTest {
+
+    private static String createAcl(String href) {
+        return "<D:acl xmlns:D='DAV:' xml:base='https://fqdn/cell/__role/__/'>"
+                + "<D:ace><D:principal><D:href>" + href + "</D:href></D:principal>"
+                + "<D:grant><D:privilege><D:read/></D:privilege></D:grant></D:ace>"
+                + "</D:acl>";
+    }
+
+    /**
+     * Test unmarshal().
+     * Normal case.
+     * encoding of input stream follows the XML declaration.
+     * @throws Exception Unintended exception in test
+     */
+    @Test
+    public void unmarshal_Normal_encoding_declaration() throws Exception {
+        String xml = "<?xml version='1.0' encoding='ISO-8859-1'?>" + createAcl("r\u00f4le");
+        Acl acl = ObjectIo.unmarshal(new ByteArrayInputStream(xml.getBytes(StandardCharsets.ISO_8859_1)), Acl.class);
+        assertThat(acl.getAceList().get(0).getPrincipalHref(), is("r\u00f4le"));
+        assertThat(acl.getBase(), is("https://fqdn/cell/__role/__/"));
+    }
+
+    /**
+     * Test unmarshal().
+     * Error case.
+     * external entity is not resolved.
+     * @throws Exception Unintended exception in test
+     */
+    @Test
+    public void unmarshal_Error_external_entity() throws Exception {
+        String xml = "<?xml version='1.0'?><!DOCTYPE D:acl [<!ENTITY xxe SYSTEM 'file:///etc/passwd'>]>"
+                + createAcl("&xxe;");
+        try {
+            ObjectIo.unmarshal(new StringReader(xml), Acl.class);
+            fail("JAXBException is not thrown.");
+        } catch (JAXBException e) {
+            // the entity is rejected as undeclared because DTD is not supported
+        }
+    }
+
+    /**
+     * Test unmarshal() and marshal().
+     * Normal case.
+     * pooled marshallers are used from multiple threads.
+     * @throws Exception Unintended exception in test
+     */
+    @Test
+    public void marshal_Normal_concurrent() throws Exception {
+        ExecutorService executor = Executors.newFixedThreadPool(8);
+        try {
+            List<Future<String>> futures = new ArrayList<Future<String>>();
+            for (int i = 0; i < 200; i++) {
+                final String href = "role" + i;
+                futures.add(executor.submit(new Callable<String>() {
+                    @Override
+                    public String call() throws Exception {
+                        Acl acl = ObjectIo.unmarshal(new StringReader(createAcl(href)), Acl.class);
+                        StringWriter writer = new StringWriter();
+                        ObjectIo.marshal(acl, writer);
+                        acl = ObjectIo.unmarshal(new StringReader(writer.toString()), Acl.class);
+                        return acl.getAceList().get(0).getPrincipalHref();
+                    }
+                }));
+            }
+            for (int i = 0; i < futures.size(); i++) {
+                assertThat(futures.get(i).get(), is("role" + i));
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+}